@@ -7,9 +7,11 @@
 SET session_replication_role = 'replica';
 
 TRUNCATE TABLE "api_account" CASCADE;
+TRUNCATE TABLE "api_key" CASCADE;
 TRUNCATE TABLE "company" CASCADE;
 TRUNCATE TABLE "company_account" CASCADE;
 TRUNCATE TABLE "company_vehicles" CASCADE;
+TRUNCATE TABLE "email_outbox" CASCADE;
 TRUNCATE TABLE "info" CASCADE;
 TRUNCATE TABLE "license_levels" CASCADE;
 TRUNCATE TABLE "logins" CASCADE;
@@ -0,0 +1,244 @@
+-- Migration: partition progress by month on time
+-- For databases created before progress was partitioned; new databases get the partitioned
+-- table from tables.sql, sp.sql and triggers.sql. Self-contained, run once, before the
+-- other migrations:
+--   psql -d fleetmaster -f backend/sql/migrations/001_partition_progress.sql
+-- Brings its own partition and retention procedures and progress tracking trigger; sp.sql
+-- and triggers.sql are for new databases only (their trailing backfills expect the current
+-- schema).
+-- Writes to progress are blocked for the duration of the copy.
+
+BEGIN;
+
+LOCK TABLE progress IN ACCESS EXCLUSIVE MODE;
+
+ALTER TABLE progress RENAME TO progress_unpartitioned;
+ALTER INDEX IF EXISTS idx_progress_order_time RENAME TO idx_progress_unpartitioned_order_time;
+ALTER TABLE progress_unpartitioned RENAME CONSTRAINT progress_pkey TO progress_unpartitioned_pkey;
+-- Keep the id sequence when the old table is dropped
+ALTER SEQUENCE progress_id_seq OWNED BY NONE;
+ALTER TABLE order_progress DROP CONSTRAINT IF EXISTS order_progress_progress_id_fkey;
+
+CREATE TABLE progress (
+    id BIGINT NOT NULL DEFAULT nextval('progress_id_seq'),
+    order_id BIGINT REFERENCES orders(id),
+    current_pos POINT,
+    time TIMESTAMP NOT NULL DEFAULT NOW(),
+    type progress_type NOT NULL,
+    description JSONB,
+    PRIMARY KEY (id, time)
+) PARTITION BY RANGE (time);
+
+ALTER SEQUENCE progress_id_seq OWNED BY progress.id;
+
+CREATE TABLE progress_default PARTITION OF progress DEFAULT;
+
+CREATE TABLE IF NOT EXISTS progress_archive (
+    order_id BIGINT NOT NULL REFERENCES orders(id) ON DELETE CASCADE,
+    bucket_start TIMESTAMP NOT NULL,
+    type progress_type NOT NULL,
+    current_pos POINT,
+    first_time TIMESTAMP NOT NULL,
+    last_time TIMESTAMP NOT NULL,
+    samples INT NOT NULL,
+    PRIMARY KEY (order_id, bucket_start, type)
+);
+
+-- One partition per month that has data, so the copy below routes rows straight into them
+DO $$
+DECLARE
+    v_month DATE;
+BEGIN
+    FOR v_month IN
+        SELECT DISTINCT date_trunc('month', COALESCE(time, NOW()))::DATE FROM progress_unpartitioned
+    LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF progress FOR VALUES FROM (%L) TO (%L)',
+            'progress_' || to_char(v_month, 'YYYY_MM'), v_month, (v_month + INTERVAL '1 month')::DATE);
+    END LOOP;
+END
+$$;
+
+-- Rows without a time get the migration time; time is now the partition key
+INSERT INTO progress (id, order_id, current_pos, time, type, description)
+SELECT id, order_id, current_pos, COALESCE(time, NOW()), type, description
+FROM progress_unpartitioned;
+
+-- Built once per partition after the copy instead of row by row during it
+CREATE INDEX idx_progress_order_time ON progress(order_id, time, id);
+
+-- The view is bound to the renamed table; point it at the new one
+CREATE OR REPLACE VIEW vw_order_tracking AS
+SELECT DISTINCT ON (o.id)
+    o.id AS order_id,
+    cv.company_id,
+    o.driver_id,
+    o.vehicle_id,
+    o.status AS order_status,
+    o.pick_up,
+    o.delivery,
+    p.type AS last_progress_event,
+    p.current_pos AS last_known_location,
+    p.time AS last_update_time
+FROM orders o
+JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id
+LEFT JOIN progress p ON o.id = p.order_id
+WHERE o.status != 'DELIVERED' AND o.status != 'CANCELED'
+ORDER BY o.id, p.time DESC NULLS LAST;
+
+-- Tracking payloads of the given orders, one per company the order's vehicle belongs to
+CREATE OR REPLACE FUNCTION order_tracking_payloads(p_order_ids BIGINT[])
+RETURNS SETOF JSONB AS $$
+    -- Latest progress through idx_progress_order_time instead of the view's DISTINCT ON
+    SELECT jsonb_build_object(
+        'event', CASE WHEN o.status IN ('DELIVERED', 'CANCELED') THEN 'removed' ELSE 'update' END,
+        'order_id', o.id,
+        'company_id', cv.company_id,
+        'driver_id', o.driver_id,
+        'vehicle_id', o.vehicle_id,
+        'order_status', o.status,
+        'pick_up', o.pick_up::text,
+        'delivery', o.delivery::text,
+        'last_progress_event', p.type,
+        'last_known_location', p.current_pos::text,
+        'last_update_time', p.time)
+    FROM orders o
+    JOIN company_vehicles cv ON cv.vehicle_id = o.vehicle_id
+    LEFT JOIN LATERAL (
+        SELECT type, current_pos, time
+        FROM progress
+        WHERE order_id = o.id
+        ORDER BY time DESC, id DESC
+        LIMIT 1
+    ) p ON TRUE
+    WHERE o.id = ANY(p_order_ids)
+$$ LANGUAGE sql STABLE;
+
+-- Once per statement, so a batch of pings costs one lookup and one notify per distinct
+-- order rather than per ping
+CREATE OR REPLACE FUNCTION notify_progress_tracking()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_payload JSONB;
+BEGIN
+    FOR v_payload IN
+        SELECT * FROM order_tracking_payloads(ARRAY(
+            SELECT DISTINCT order_id FROM new_progress WHERE order_id IS NOT NULL))
+    LOOP
+        PERFORM pg_notify('order_tracking', v_payload::text);
+    END LOOP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Created after the copy so moving history does not notify tracking listeners
+DROP TRIGGER IF EXISTS trg_notify_progress_tracking ON progress_unpartitioned;
+CREATE TRIGGER trg_notify_progress_tracking
+AFTER INSERT ON progress
+REFERENCING NEW TABLE AS new_progress
+FOR EACH STATEMENT EXECUTE FUNCTION notify_progress_tracking();
+
+DROP TABLE progress_unpartitioned;
+
+-- Function: sp_ensure_progress_partitions(p_months_ahead INT)
+-- Purpose: Creates the monthly progress partitions from the current month up to p_months_ahead
+--          months ahead, plus one for every month that has rows in progress_default, and moves
+--          those rows into it
+-- Returns the number of partitions created
+CREATE OR REPLACE FUNCTION sp_ensure_progress_partitions(
+    p_months_ahead INT DEFAULT 3
+) RETURNS INT AS $$
+DECLARE
+    v_month DATE;
+    v_next DATE;
+    v_name TEXT;
+    v_created INT := 0;
+BEGIN
+    -- Serialize concurrent runs from several backend instances
+    PERFORM pg_advisory_xact_lock(hashtext('sp_ensure_progress_partitions'));
+
+    FOR v_month IN
+        SELECT generate_series(
+            date_trunc('month', NOW()),
+            date_trunc('month', NOW()) + make_interval(months => p_months_ahead),
+            INTERVAL '1 month')::DATE
+        UNION
+        SELECT DISTINCT date_trunc('month', time)::DATE FROM progress_default
+        ORDER BY 1
+    LOOP
+        v_name := 'progress_' || to_char(v_month, 'YYYY_MM');
+        CONTINUE WHEN to_regclass(v_name) IS NOT NULL;
+        v_next := (v_month + INTERVAL '1 month')::DATE;
+
+        -- The default partition may not keep rows of a range that gets its own partition,
+        -- so they are moved into the new table before it is attached
+        EXECUTE format('CREATE TABLE %I (LIKE progress INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', v_name);
+        EXECUTE format(
+            'WITH moved AS (DELETE FROM progress_default WHERE time >= %L AND time < %L RETURNING *) ' ||
+            'INSERT INTO %I SELECT * FROM moved',
+            v_month, v_next, v_name);
+        EXECUTE format('ALTER TABLE progress ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+            v_name, v_month, v_next);
+        v_created := v_created + 1;
+    END LOOP;
+
+    RETURN v_created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: sp_archive_delivered_progress(p_retention_days INT, p_bucket_minutes INT, p_max_orders INT)
+-- Purpose: Rolls the position pings (STOP, STOPOVER) of delivered orders without progress in the
+--          last p_retention_days days into progress_archive, keeping the last position per order,
+--          p_bucket_minutes bucket and type, and deletes the raw pings. Milestone events stay in
+--          progress. At most p_max_orders orders are handled per call.
+-- Returns the number of raw progress rows archived
+CREATE OR REPLACE FUNCTION sp_archive_delivered_progress(
+    p_retention_days INT DEFAULT 90,
+    p_bucket_minutes INT DEFAULT 15,
+    p_max_orders INT DEFAULT 1000
+) RETURNS BIGINT AS $$
+DECLARE
+    v_archived BIGINT;
+BEGIN
+    WITH expired AS (
+        SELECT o.id
+        FROM orders o
+        WHERE o.status = 'DELIVERED'
+          AND EXISTS (
+              SELECT 1 FROM progress p
+              WHERE p.order_id = o.id AND p.type IN ('STOP', 'STOPOVER'))
+          AND NOT EXISTS (
+              SELECT 1 FROM progress p
+              WHERE p.order_id = o.id AND p.time >= NOW() - make_interval(days => p_retention_days))
+        LIMIT p_max_orders
+    ), removed AS (
+        DELETE FROM progress p
+        USING expired e
+        WHERE p.order_id = e.id AND p.type IN ('STOP', 'STOPOVER')
+        RETURNING p.id, p.order_id, p.current_pos, p.time, p.type
+    ), rolled_up AS (
+        INSERT INTO progress_archive(order_id, bucket_start, type, current_pos, first_time, last_time, samples)
+        SELECT order_id,
+               date_bin(make_interval(mins => p_bucket_minutes), time, TIMESTAMP '2000-01-01'),
+               type,
+               (array_agg(current_pos ORDER BY time DESC, id DESC))[1],
+               MIN(time),
+               MAX(time),
+               COUNT(*)
+        FROM removed
+        GROUP BY 1, 2, 3
+        ON CONFLICT (order_id, bucket_start, type) DO UPDATE SET
+            current_pos = CASE WHEN EXCLUDED.last_time >= progress_archive.last_time
+                               THEN EXCLUDED.current_pos ELSE progress_archive.current_pos END,
+            first_time = LEAST(progress_archive.first_time, EXCLUDED.first_time),
+            last_time = GREATEST(progress_archive.last_time, EXCLUDED.last_time),
+            samples = progress_archive.samples + EXCLUDED.samples
+    )
+    SELECT COUNT(*) INTO v_archived FROM removed;
+
+    RETURN v_archived;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT sp_ensure_progress_partitions();
+
+COMMIT;
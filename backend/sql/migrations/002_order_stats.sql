@@ -0,0 +1,148 @@
+-- Migration: per-company order counters
+-- For databases created before order_stats existed; new databases get it from tables.sql,
+-- sp.sql and triggers.sql. Self-contained, run once:
+--   psql -d fleetmaster -f backend/sql/migrations/002_order_stats.sql
+-- Order writes wait for it while the counters are built.
+
+BEGIN;
+
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivered_at TIMESTAMP;
+
+-- Delivered orders get the time of their last ARRIVAL or COMPLETION event, when there is one
+UPDATE orders o SET delivered_at = p.time
+FROM (
+    SELECT order_id, MAX(time) AS time
+    FROM progress
+    WHERE type IN ('ARRIVAL', 'COMPLETION')
+    GROUP BY order_id
+) p
+WHERE p.order_id = o.id AND o.status = 'DELIVERED' AND o.delivered_at IS NULL;
+
+CREATE TABLE IF NOT EXISTS order_stats (
+    company_id BIGINT PRIMARY KEY REFERENCES company(id) ON DELETE CASCADE,
+    pending BIGINT NOT NULL DEFAULT 0,
+    in_transit BIGINT NOT NULL DEFAULT 0,
+    delivered BIGINT NOT NULL DEFAULT 0,
+    canceled BIGINT NOT NULL DEFAULT 0,
+    on_time BIGINT NOT NULL DEFAULT 0,
+    late BIGINT NOT NULL DEFAULT 0,
+    transit_count BIGINT NOT NULL DEFAULT 0,
+    transit_seconds DOUBLE PRECISION NOT NULL DEFAULT 0
+);
+
+-- Function: sp_rebuild_order_stats()
+-- Purpose: Recomputes order_stats from orders, e.g. after loading orders with the triggers
+-- disabled. Order writes wait for it, so the counters cannot miss a concurrent change.
+-- Returns the number of companies with orders.
+CREATE OR REPLACE FUNCTION sp_rebuild_order_stats()
+RETURNS INT AS $$
+DECLARE
+    v_companies INT;
+BEGIN
+    LOCK TABLE orders IN SHARE MODE;
+
+    DELETE FROM order_stats;
+
+    INSERT INTO order_stats (company_id, pending, in_transit, delivered, canceled,
+                             on_time, late, transit_count, transit_seconds)
+    SELECT cv.company_id,
+           COUNT(*) FILTER (WHERE o.status = 'PENDING'),
+           COUNT(*) FILTER (WHERE o.status = 'IN_TRANSIT'),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED'),
+           COUNT(*) FILTER (WHERE o.status = 'CANCELED'),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED' AND o.delivered_at <= o.arrival_time),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED' AND o.delivered_at > o.arrival_time),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED' AND o.delivered_at IS NOT NULL AND o.departure_time IS NOT NULL),
+           COALESCE(SUM(EXTRACT(EPOCH FROM o.delivered_at - o.departure_time))
+                    FILTER (WHERE o.status = 'DELIVERED'), 0)
+    FROM orders o
+    JOIN company_vehicles cv ON cv.vehicle_id = o.vehicle_id
+    GROUP BY cv.company_id;
+
+    GET DIAGNOSTICS v_companies = ROW_COUNT;
+    RETURN v_companies;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger: Stamp delivered_at when an order becomes DELIVERED and clear it when it leaves
+CREATE OR REPLACE FUNCTION set_order_delivered_at()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.status = 'DELIVERED' THEN
+        NEW.delivered_at := COALESCE(NEW.delivered_at, NOW());
+    ELSE
+        NEW.delivered_at := NULL;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_set_order_delivered_at ON orders;
+CREATE TRIGGER trg_set_order_delivered_at
+BEFORE INSERT OR UPDATE OF status ON orders
+FOR EACH ROW EXECUTE FUNCTION set_order_delivered_at();
+
+-- Trigger: Keep order_stats current
+-- Every write path (createOrder, CSV import, sp_create_order, sp_add_progress, batch progress
+-- ingestion, status updates, deletes) goes through orders, so each change takes the old row's
+-- contribution off its company's counters and adds the new row's.
+CREATE OR REPLACE FUNCTION apply_order_stats(o orders, p_sign INT)
+RETURNS VOID AS $$
+    INSERT INTO order_stats AS s (company_id, pending, in_transit, delivered, canceled,
+                                  on_time, late, transit_count, transit_seconds)
+    SELECT cv.company_id,
+           p_sign * (o.status = 'PENDING')::INT,
+           p_sign * (o.status = 'IN_TRANSIT')::INT,
+           p_sign * (o.status = 'DELIVERED')::INT,
+           p_sign * (o.status = 'CANCELED')::INT,
+           p_sign * COALESCE(o.status = 'DELIVERED' AND o.delivered_at <= o.arrival_time, FALSE)::INT,
+           p_sign * COALESCE(o.status = 'DELIVERED' AND o.delivered_at > o.arrival_time, FALSE)::INT,
+           p_sign * COALESCE(o.status = 'DELIVERED' AND o.delivered_at IS NOT NULL AND o.departure_time IS NOT NULL, FALSE)::INT,
+           p_sign * CASE WHEN o.status = 'DELIVERED'
+                         THEN COALESCE(EXTRACT(EPOCH FROM o.delivered_at - o.departure_time), 0)
+                         ELSE 0 END
+    FROM company_vehicles cv
+    WHERE cv.vehicle_id = o.vehicle_id
+    ON CONFLICT (company_id) DO UPDATE SET
+        pending = s.pending + EXCLUDED.pending,
+        in_transit = s.in_transit + EXCLUDED.in_transit,
+        delivered = s.delivered + EXCLUDED.delivered,
+        canceled = s.canceled + EXCLUDED.canceled,
+        on_time = s.on_time + EXCLUDED.on_time,
+        late = s.late + EXCLUDED.late,
+        transit_count = s.transit_count + EXCLUDED.transit_count,
+        transit_seconds = s.transit_seconds + EXCLUDED.transit_seconds;
+$$ LANGUAGE sql;
+
+CREATE OR REPLACE FUNCTION maintain_order_stats()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM apply_order_stats(OLD, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM apply_order_stats(NEW, 1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_order_stats_insert_delete ON orders;
+CREATE TRIGGER trg_order_stats_insert_delete
+AFTER INSERT OR DELETE ON orders
+FOR EACH ROW EXECUTE FUNCTION maintain_order_stats();
+
+DROP TRIGGER IF EXISTS trg_order_stats_update ON orders;
+CREATE TRIGGER trg_order_stats_update
+AFTER UPDATE OF status, delivered_at, departure_time, arrival_time, vehicle_id ON orders
+FOR EACH ROW
+WHEN (OLD.status IS DISTINCT FROM NEW.status
+      OR OLD.delivered_at IS DISTINCT FROM NEW.delivered_at
+      OR OLD.departure_time IS DISTINCT FROM NEW.departure_time
+      OR OLD.arrival_time IS DISTINCT FROM NEW.arrival_time
+      OR OLD.vehicle_id IS DISTINCT FROM NEW.vehicle_id)
+EXECUTE FUNCTION maintain_order_stats();
+
+SELECT sp_rebuild_order_stats();
+
+COMMIT;
@@ -0,0 +1,47 @@
+-- Migration: check the vehicle limit once per statement instead of once per row
+-- For databases created before trg_enforce_vehicle_limit became a statement trigger; new
+-- databases get it from triggers.sql. Self-contained, run once:
+--   psql -d fleetmaster -f backend/sql/migrations/003_statement_vehicle_limit.sql
+
+BEGIN;
+
+CREATE OR REPLACE FUNCTION enforce_vehicle_limit()
+RETURNS TRIGGER AS $$
+DECLARE
+    r RECORD;
+BEGIN
+    FOR r IN
+        SELECT n.company_id, sub.max_vehicles, sub.license_name,
+               (SELECT COUNT(*) FROM company_vehicles cv WHERE cv.company_id = n.company_id) AS current_count
+        FROM (SELECT DISTINCT company_id FROM inserted_vehicles) n
+        LEFT JOIN LATERAL (
+            SELECT COALESCE(ll.max_vehicles, 1000000000) AS max_vehicles, ll.name AS license_name
+            FROM subscriptions s
+            JOIN license_levels ll ON s.license_id = ll.id
+            WHERE s.company_id = n.company_id
+              AND (s.end_date IS NULL OR s.end_date > CURRENT_DATE)
+            ORDER BY s.start_date DESC
+            LIMIT 1
+        ) sub ON TRUE
+    LOOP
+        IF r.max_vehicles IS NULL THEN
+            RAISE EXCEPTION 'No active subscription found for company %', r.company_id;
+        END IF;
+
+        IF r.current_count > r.max_vehicles THEN
+            RAISE EXCEPTION 'Vehicle limit exceeded. Company % is limited to % vehicles (license: %)',
+                r.company_id, r.max_vehicles, r.license_name;
+        END IF;
+    END LOOP;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_enforce_vehicle_limit ON company_vehicles;
+CREATE TRIGGER trg_enforce_vehicle_limit
+AFTER INSERT ON company_vehicles
+REFERENCING NEW TABLE AS inserted_vehicles
+FOR EACH STATEMENT EXECUTE FUNCTION enforce_vehicle_limit();
+
+COMMIT;
@@ -0,0 +1,188 @@
+-- Migration: counter-based subscription limits
+-- For databases created before company_usage existed; new databases get it from tables.sql,
+-- views.sql, sp.sql and triggers.sql. Replaces the COUNT(*) limit triggers (including the
+-- statement trigger of 003). Self-contained, run once:
+--   psql -d fleetmaster -f backend/sql/migrations/004_company_usage.sql
+-- Vehicle and account writes wait for it while the counters are built.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS company_usage (
+    company_id BIGINT PRIMARY KEY REFERENCES company(id) ON DELETE CASCADE,
+    vehicles BIGINT NOT NULL DEFAULT 0,
+    drivers BIGINT NOT NULL DEFAULT 0
+);
+
+-- Function: company_license(p_company_id) - limits of the company's active subscription,
+-- no limit on the license meaning no limit; no row when there is no active subscription
+CREATE OR REPLACE FUNCTION company_license(p_company_id BIGINT,
+    OUT max_vehicles BIGINT, OUT max_drivers BIGINT, OUT license_tier license_name)
+AS $$
+    SELECT COALESCE(ll.max_vehicles, 1000000000), COALESCE(ll.max_drivers, 1000000000), ll.name
+    FROM subscriptions s
+    JOIN license_levels ll ON s.license_id = ll.id
+    WHERE s.company_id = p_company_id
+      AND (s.end_date IS NULL OR s.end_date > CURRENT_DATE)
+    ORDER BY s.start_date DESC
+    LIMIT 1;
+$$ LANGUAGE sql STABLE;
+
+-- Trigger: Enforce max vehicles per company based on license level
+-- Statement level: adds each company's new vehicles to its company_usage counter in one
+-- upsert and checks the result. The upsert keeps the counter row locked until commit, so
+-- concurrent inserts for one company queue there and cannot both slip under the limit.
+CREATE OR REPLACE FUNCTION enforce_vehicle_limit()
+RETURNS TRIGGER AS $$
+DECLARE
+    r RECORD;
+    v_license RECORD;
+BEGIN
+    FOR r IN
+        INSERT INTO company_usage AS u (company_id, vehicles)
+        SELECT company_id, COUNT(*) FROM inserted_vehicles GROUP BY company_id ORDER BY company_id
+        ON CONFLICT (company_id) DO UPDATE SET vehicles = u.vehicles + EXCLUDED.vehicles
+        RETURNING u.company_id, u.vehicles
+    LOOP
+        SELECT * INTO v_license FROM company_license(r.company_id);
+
+        IF v_license.max_vehicles IS NULL THEN
+            RAISE EXCEPTION 'No active subscription found for company %', r.company_id;
+        END IF;
+
+        -- The counter already includes the new vehicles
+        IF r.vehicles > v_license.max_vehicles THEN
+            RAISE EXCEPTION 'Vehicle limit exceeded. Company % is limited to % vehicles (license: %)',
+                r.company_id, v_license.max_vehicles, v_license.license_tier;
+        END IF;
+    END LOOP;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_enforce_vehicle_limit ON company_vehicles;
+CREATE TRIGGER trg_enforce_vehicle_limit
+AFTER INSERT ON company_vehicles
+REFERENCING NEW TABLE AS inserted_vehicles
+FOR EACH STATEMENT EXECUTE FUNCTION enforce_vehicle_limit();
+
+-- Trigger: Give removed vehicles back to their companies' counters
+CREATE OR REPLACE FUNCTION release_vehicle_usage()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE company_usage u SET vehicles = u.vehicles - d.removed
+    FROM (SELECT company_id, COUNT(*) AS removed FROM deleted_vehicles GROUP BY company_id) d
+    WHERE u.company_id = d.company_id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_release_vehicle_usage ON company_vehicles;
+CREATE TRIGGER trg_release_vehicle_usage
+AFTER DELETE ON company_vehicles
+REFERENCING OLD TABLE AS deleted_vehicles
+FOR EACH STATEMENT EXECUTE FUNCTION release_vehicle_usage();
+
+-- Trigger: Enforce max drivers per company based on license level
+-- Counts active accounts with the DRIVER role in company_usage. Gaining the role, being
+-- activated or moving to another company adds one to that company's counter under its row
+-- lock and checks the limit; losing any of them, or deletion, takes one off.
+CREATE OR REPLACE FUNCTION enforce_driver_limit()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_was_driver BOOLEAN := FALSE;
+    v_is_driver BOOLEAN := FALSE;
+    v_drivers BIGINT;
+    v_license RECORD;
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        v_was_driver := OLD.company_id IS NOT NULL AND OLD.is_active IS TRUE
+            AND COALESCE('DRIVER' = ANY(OLD.roles), FALSE);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        v_is_driver := NEW.company_id IS NOT NULL AND NEW.is_active IS TRUE
+            AND COALESCE('DRIVER' = ANY(NEW.roles), FALSE);
+    END IF;
+
+    -- Same company and still (not) a driver: nothing to count
+    IF TG_OP = 'UPDATE' AND v_was_driver = v_is_driver
+       AND OLD.company_id IS NOT DISTINCT FROM NEW.company_id THEN
+        RETURN NULL;
+    END IF;
+
+    IF v_was_driver THEN
+        UPDATE company_usage SET drivers = drivers - 1 WHERE company_id = OLD.company_id;
+    END IF;
+
+    IF v_is_driver THEN
+        INSERT INTO company_usage AS u (company_id, drivers) VALUES (NEW.company_id, 1)
+        ON CONFLICT (company_id) DO UPDATE SET drivers = u.drivers + 1
+        RETURNING u.drivers INTO v_drivers;
+
+        SELECT * INTO v_license FROM company_license(NEW.company_id);
+
+        IF v_license.max_drivers IS NULL THEN
+            RAISE EXCEPTION 'No active subscription found for company %', NEW.company_id;
+        END IF;
+
+        IF v_drivers > v_license.max_drivers THEN
+            RAISE EXCEPTION 'Driver limit exceeded. Company % is limited to % drivers (license: %)',
+                NEW.company_id, v_license.max_drivers, v_license.license_tier;
+        END IF;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_enforce_driver_limit ON company_account;
+CREATE TRIGGER trg_enforce_driver_limit
+AFTER INSERT OR UPDATE OF roles, is_active, company_id OR DELETE ON company_account
+FOR EACH ROW EXECUTE FUNCTION enforce_driver_limit();
+
+-- View: vw_subscription_usage for retrieving subscription usage details per company
+CREATE OR REPLACE VIEW vw_subscription_usage AS
+SELECT 
+    c.id AS company_id,
+    c.name AS company_name,
+    ll.name AS license_tier,
+    ll.max_vehicles,
+    ll.max_drivers,
+    -- Counters kept by the limit triggers; drivers are active accounts with the DRIVER role
+    COALESCE(u.vehicles, 0) AS current_vehicles,
+    COALESCE(u.drivers, 0) AS current_drivers
+FROM company c
+JOIN subscriptions s ON c.id = s.company_id
+JOIN license_levels ll ON s.license_id = ll.id
+LEFT JOIN company_usage u ON u.company_id = c.id
+WHERE s.end_date IS NULL OR s.end_date > CURRENT_DATE;
+
+-- Function: sp_rebuild_company_usage()
+-- Purpose: Recomputes company_usage from company_vehicles and company_account, e.g. after
+-- loading them with the triggers disabled. Vehicle and account writes wait for it.
+-- Returns the number of companies.
+CREATE OR REPLACE FUNCTION sp_rebuild_company_usage()
+RETURNS INT AS $$
+DECLARE
+    v_companies INT;
+BEGIN
+    LOCK TABLE company_vehicles, company_account IN SHARE MODE;
+
+    DELETE FROM company_usage;
+
+    INSERT INTO company_usage (company_id, vehicles, drivers)
+    SELECT c.id,
+           (SELECT COUNT(*) FROM company_vehicles cv WHERE cv.company_id = c.id),
+           (SELECT COUNT(*) FROM company_account ca
+            WHERE ca.company_id = c.id AND ca.is_active = TRUE AND 'DRIVER' = ANY(ca.roles))
+    FROM company c;
+
+    GET DIAGNOSTICS v_companies = ROW_COUNT;
+    RETURN v_companies;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT sp_rebuild_company_usage();
+
+COMMIT;
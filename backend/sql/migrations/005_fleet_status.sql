@@ -0,0 +1,182 @@
+-- Migration: fleet status snapshot
+-- For databases created before fleet_status existed; new databases get it from tables.sql,
+-- views.sql, sp.sql and triggers.sql. vw_fleet_status is rebuilt on top of the snapshot,
+-- which drops and recreates sp_read_fleet_status with it. Self-contained, run once:
+--   psql -d fleetmaster -f backend/sql/migrations/005_fleet_status.sql
+-- Vehicle and maintenance writes wait for it while the snapshot is built.
+
+BEGIN;
+
+-- Denormalized vw_fleet_status: one row per company vehicle with the text forms of load_type
+-- and sensor_data and the status of its latest maintenance record, kept by the fleet status
+-- triggers (triggers.sql). The primary key serves the per-company reads.
+CREATE TABLE IF NOT EXISTS fleet_status (
+    company_id BIGINT NOT NULL REFERENCES company(id) ON DELETE CASCADE,
+    vehicle_id BIGINT NOT NULL REFERENCES vehicles(id) ON DELETE CASCADE,
+    vehicle_type vehicle_type NOT NULL,
+    load_capacity BIGINT,
+    load_type TEXT,
+    sensor_data TEXT,
+    last_odometer BIGINT,
+    current_maintenance_status maintenance_status,
+    PRIMARY KEY (company_id, vehicle_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_fleet_status_vehicle_id ON fleet_status(vehicle_id);
+CREATE INDEX IF NOT EXISTS idx_maintenance_records_vehicle_latest ON maintenance_records(vehicle_id, date_created DESC);
+
+-- View: vw_fleet_status for overview of vehicles and their maintenance status per company
+DROP VIEW IF EXISTS vw_fleet_status CASCADE;
+-- Reads the fleet_status snapshot; the triggers keep it current on every write, so a read
+-- no longer looks up each vehicle's latest maintenance record or casts its arrays
+CREATE OR REPLACE VIEW vw_fleet_status AS
+SELECT 
+    company_id,
+    vehicle_id,
+    vehicle_type,
+    load_capacity,
+    load_type, -- array of normal, refrigerated, hazardous, as text
+    sensor_data, -- JSONB for real-time temp/fuel, as text
+    last_odometer,
+    current_maintenance_status -- status of the most recent maintenance record
+FROM fleet_status;
+
+--- Function: sp_read_fleet_status(p_company_id BIGINT)
+CREATE OR REPLACE FUNCTION sp_read_fleet_status(p_company_id BIGINT)
+RETURNS SETOF vw_fleet_status AS $$
+BEGIN
+    RETURN QUERY 
+    SELECT * FROM vw_fleet_status 
+    WHERE company_id = p_company_id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: latest_maintenance_status(p_vehicle_id BIGINT)
+-- Purpose: Status of the vehicle's most recent maintenance record, one probe of
+-- idx_maintenance_records_vehicle_latest. Used by the fleet status triggers.
+CREATE OR REPLACE FUNCTION latest_maintenance_status(p_vehicle_id BIGINT)
+RETURNS maintenance_status AS $$
+    SELECT status FROM maintenance_records
+    WHERE vehicle_id = p_vehicle_id
+    ORDER BY date_created DESC
+    LIMIT 1;
+$$ LANGUAGE sql STABLE;
+
+-- Function: sp_rebuild_fleet_status()
+-- Purpose: Recomputes fleet_status from vehicles, company_vehicles and maintenance_records,
+-- e.g. after loading them with the triggers disabled. Writes to those tables wait for it.
+-- Returns the number of company vehicles.
+CREATE OR REPLACE FUNCTION sp_rebuild_fleet_status()
+RETURNS INT AS $$
+DECLARE
+    v_vehicles INT;
+BEGIN
+    LOCK TABLE vehicles, company_vehicles, maintenance_records IN SHARE MODE;
+
+    DELETE FROM fleet_status;
+
+    INSERT INTO fleet_status (company_id, vehicle_id, vehicle_type, load_capacity, load_type,
+                              sensor_data, last_odometer, current_maintenance_status)
+    SELECT cv.company_id, v.id, v.type, v.load_capacity, CAST(v.load_type AS TEXT),
+           CAST(v.sensor_data AS TEXT), v.last_odometer, latest_maintenance_status(v.id)
+    FROM vehicles v
+    JOIN company_vehicles cv ON v.id = cv.vehicle_id;
+
+    GET DIAGNOSTICS v_vehicles = ROW_COUNT;
+    RETURN v_vehicles;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger: Keep the fleet_status snapshot current
+-- Vehicles joining or leaving a company fleet add or remove their snapshot rows
+CREATE OR REPLACE FUNCTION add_fleet_status()
+RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO fleet_status (company_id, vehicle_id, vehicle_type, load_capacity, load_type,
+                              sensor_data, last_odometer, current_maintenance_status)
+    SELECT n.company_id, v.id, v.type, v.load_capacity, CAST(v.load_type AS TEXT),
+           CAST(v.sensor_data AS TEXT), v.last_odometer, latest_maintenance_status(v.id)
+    FROM new_links n
+    JOIN vehicles v ON v.id = n.vehicle_id
+    ON CONFLICT (company_id, vehicle_id) DO NOTHING;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_fleet_status_link ON company_vehicles;
+CREATE TRIGGER trg_fleet_status_link
+AFTER INSERT ON company_vehicles
+REFERENCING NEW TABLE AS new_links
+FOR EACH STATEMENT EXECUTE FUNCTION add_fleet_status();
+
+CREATE OR REPLACE FUNCTION remove_fleet_status()
+RETURNS TRIGGER AS $$
+BEGIN
+    DELETE FROM fleet_status f
+    USING old_links o
+    WHERE f.company_id = o.company_id AND f.vehicle_id = o.vehicle_id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_fleet_status_unlink ON company_vehicles;
+CREATE TRIGGER trg_fleet_status_unlink
+AFTER DELETE ON company_vehicles
+REFERENCING OLD TABLE AS old_links
+FOR EACH STATEMENT EXECUTE FUNCTION remove_fleet_status();
+
+-- Vehicle edits are copied to the vehicle's rows
+CREATE OR REPLACE FUNCTION update_fleet_status_vehicle()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE fleet_status SET
+        vehicle_type = NEW.type,
+        load_capacity = NEW.load_capacity,
+        load_type = CAST(NEW.load_type AS TEXT),
+        sensor_data = CAST(NEW.sensor_data AS TEXT),
+        last_odometer = NEW.last_odometer
+    WHERE vehicle_id = NEW.id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_fleet_status_vehicle ON vehicles;
+CREATE TRIGGER trg_fleet_status_vehicle
+AFTER UPDATE OF type, load_capacity, load_type, sensor_data, last_odometer ON vehicles
+FOR EACH ROW
+WHEN (OLD.type IS DISTINCT FROM NEW.type
+      OR OLD.load_capacity IS DISTINCT FROM NEW.load_capacity
+      OR OLD.load_type IS DISTINCT FROM NEW.load_type
+      OR OLD.sensor_data IS DISTINCT FROM NEW.sensor_data
+      OR OLD.last_odometer IS DISTINCT FROM NEW.last_odometer)
+EXECUTE FUNCTION update_fleet_status_vehicle();
+
+-- Any maintenance change may change which record is the latest, so the status is looked up
+-- again for the vehicle(s) involved rather than taken from the changed row
+CREATE OR REPLACE FUNCTION update_fleet_status_maintenance()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE fleet_status SET current_maintenance_status = latest_maintenance_status(OLD.vehicle_id)
+        WHERE vehicle_id = OLD.vehicle_id;
+    END IF;
+    IF TG_OP = 'INSERT' OR (TG_OP = 'UPDATE' AND NEW.vehicle_id IS DISTINCT FROM OLD.vehicle_id) THEN
+        UPDATE fleet_status SET current_maintenance_status = latest_maintenance_status(NEW.vehicle_id)
+        WHERE vehicle_id = NEW.vehicle_id;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_fleet_status_maintenance ON maintenance_records;
+CREATE TRIGGER trg_fleet_status_maintenance
+AFTER INSERT OR UPDATE OF vehicle_id, status, date_created OR DELETE ON maintenance_records
+FOR EACH ROW EXECUTE FUNCTION update_fleet_status_maintenance();
+
+SELECT sp_rebuild_fleet_status();
+
+COMMIT;
@@ -0,0 +1,135 @@
+-- Migration: latest progress per order for vw_order_tracking
+-- For databases created before order_latest_progress existed; new databases get it from
+-- tables.sql, views.sql, sp.sql and triggers.sql. Self-contained, run once:
+--   psql -d fleetmaster -f backend/sql/migrations/006_order_latest_progress.sql
+-- Reads the whole progress history once; progress writes wait for it meanwhile.
+
+BEGIN;
+
+-- Newest progress event of each order, kept by the latest progress triggers (triggers.sql)
+-- so vw_order_tracking joins one row per order instead of the order's whole ping history
+CREATE TABLE IF NOT EXISTS order_latest_progress (
+    order_id BIGINT PRIMARY KEY REFERENCES orders(id) ON DELETE CASCADE,
+    progress_id BIGINT NOT NULL,
+    type progress_type NOT NULL,
+    position POINT,
+    time TIMESTAMP NOT NULL
+);
+
+-- Active orders per vehicle for vw_order_tracking; same predicate as the view
+CREATE INDEX IF NOT EXISTS idx_orders_active_vehicle ON orders(vehicle_id)
+    WHERE status != 'DELIVERED' AND status != 'CANCELED';
+
+-- View: vw_order_tracking for monitoring active orders with their latest progress
+-- The latest progress comes from order_latest_progress, one row per order, so the cost follows
+-- the number of active orders rather than their ping history
+CREATE OR REPLACE VIEW vw_order_tracking AS
+SELECT
+    o.id AS order_id,
+    -- Joining through company_vehicles to find the owner of the truck on this order
+    cv.company_id, 
+    o.driver_id,
+    o.vehicle_id,
+    o.status AS order_status,
+    o.pick_up,
+    o.delivery,
+    lp.type AS last_progress_event,
+    lp.position AS last_known_location,
+    lp.time AS last_update_time
+FROM orders o
+JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id
+LEFT JOIN order_latest_progress lp ON lp.order_id = o.id
+-- We filter out completed ones (idx_orders_active_vehicle)
+WHERE o.status != 'DELIVERED' AND o.status != 'CANCELED';
+
+-- Function: sp_rebuild_order_latest_progress()
+-- Purpose: Recomputes order_latest_progress from progress, e.g. after loading progress with
+-- the triggers disabled. Progress writes wait for it. Returns the number of orders.
+CREATE OR REPLACE FUNCTION sp_rebuild_order_latest_progress()
+RETURNS INT AS $$
+DECLARE
+    v_orders INT;
+BEGIN
+    LOCK TABLE progress IN SHARE MODE;
+
+    DELETE FROM order_latest_progress;
+
+    INSERT INTO order_latest_progress (order_id, progress_id, type, position, time)
+    SELECT DISTINCT ON (order_id) order_id, id, type, current_pos, time
+    FROM progress
+    WHERE order_id IS NOT NULL
+    ORDER BY order_id, time DESC, id DESC;
+
+    GET DIAGNOSTICS v_orders = ROW_COUNT;
+    RETURN v_orders;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger: Keep order_latest_progress current
+-- Statement level, so a batch of pings (sp_add_progress, batch ingestion, the write-behind
+-- buffer) does one upsert per order it touches. Orders are upserted in id order, so
+-- concurrent batches lock them in the same order. An event only replaces a newer one when
+-- it is later by (time, id), the order the tracking notifications use too.
+CREATE OR REPLACE FUNCTION advance_order_latest_progress()
+RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO order_latest_progress AS l (order_id, progress_id, type, position, time)
+    SELECT DISTINCT ON (order_id) order_id, id, type, current_pos, time
+    FROM new_progress
+    WHERE order_id IS NOT NULL
+    ORDER BY order_id, time DESC, id DESC
+    ON CONFLICT (order_id) DO UPDATE SET
+        progress_id = EXCLUDED.progress_id,
+        type = EXCLUDED.type,
+        position = EXCLUDED.position,
+        time = EXCLUDED.time
+    WHERE (EXCLUDED.time, EXCLUDED.progress_id) > (l.time, l.progress_id);
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_order_latest_progress_insert ON progress;
+CREATE TRIGGER trg_order_latest_progress_insert
+AFTER INSERT ON progress
+REFERENCING NEW TABLE AS new_progress
+FOR EACH STATEMENT EXECUTE FUNCTION advance_order_latest_progress();
+
+-- Orders whose latest event was deleted (e.g. rolled up by sp_archive_delivered_progress)
+-- fall back to their newest remaining one, or lose their row when none is left. Moving rows
+-- between partitions works on the partitions directly and does not fire this.
+CREATE OR REPLACE FUNCTION retreat_order_latest_progress()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE order_latest_progress l SET
+        progress_id = p.id,
+        type = p.type,
+        position = p.current_pos,
+        time = p.time
+    FROM old_progress r
+    CROSS JOIN LATERAL (
+        SELECT id, type, current_pos, time
+        FROM progress
+        WHERE order_id = r.order_id
+        ORDER BY time DESC, id DESC
+        LIMIT 1
+    ) p
+    WHERE l.order_id = r.order_id AND l.progress_id = r.id;
+
+    DELETE FROM order_latest_progress l
+    USING old_progress r
+    WHERE l.order_id = r.order_id AND l.progress_id = r.id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_order_latest_progress_delete ON progress;
+CREATE TRIGGER trg_order_latest_progress_delete
+AFTER DELETE ON progress
+REFERENCING OLD TABLE AS old_progress
+FOR EACH STATEMENT EXECUTE FUNCTION retreat_order_latest_progress();
+
+SELECT sp_rebuild_order_latest_progress();
+
+COMMIT;
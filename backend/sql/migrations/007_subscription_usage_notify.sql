@@ -0,0 +1,56 @@
+-- Migration: publish subscription usage changes for the backend's subscription usage cache
+-- For databases created before the subscription_usage triggers; new databases get them
+-- from triggers.sql. Self-contained, run once:
+--   psql -d fleetmaster -f backend/sql/migrations/007_subscription_usage_notify.sql
+
+BEGIN;
+
+-- Trigger: Publish subscription usage changes on the subscription_usage channel
+-- The payload is the company id, so the backend drops that company's cached
+-- vw_subscription_usage row; an empty payload (a license level changed) drops them all.
+-- Covers the limit counters (vehicle links, driver roles through sp_assign_role and
+-- sp_remove_role, activation), subscriptions (sp_activate_referral_discount) and company
+-- names. Identical notifications in one transaction are delivered once, so a batch of
+-- vehicle inserts sends one per company.
+CREATE OR REPLACE FUNCTION notify_subscription_usage()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_TABLE_NAME = 'license_levels' THEN
+        PERFORM pg_notify('subscription_usage', '');
+    ELSIF TG_TABLE_NAME = 'company' THEN
+        PERFORM pg_notify('subscription_usage', NEW.id::text);
+    ELSE
+        IF TG_OP <> 'INSERT' THEN
+            PERFORM pg_notify('subscription_usage', OLD.company_id::text);
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            PERFORM pg_notify('subscription_usage', NEW.company_id::text);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_notify_company_usage ON company_usage;
+CREATE TRIGGER trg_notify_company_usage
+AFTER INSERT OR UPDATE OR DELETE ON company_usage
+FOR EACH ROW EXECUTE FUNCTION notify_subscription_usage();
+
+DROP TRIGGER IF EXISTS trg_notify_subscriptions ON subscriptions;
+CREATE TRIGGER trg_notify_subscriptions
+AFTER INSERT OR UPDATE OR DELETE ON subscriptions
+FOR EACH ROW EXECUTE FUNCTION notify_subscription_usage();
+
+DROP TRIGGER IF EXISTS trg_notify_license_levels ON license_levels;
+CREATE TRIGGER trg_notify_license_levels
+AFTER UPDATE ON license_levels
+FOR EACH STATEMENT EXECUTE FUNCTION notify_subscription_usage();
+
+DROP TRIGGER IF EXISTS trg_notify_company_name ON company;
+CREATE TRIGGER trg_notify_company_name
+AFTER UPDATE OF name ON company
+FOR EACH ROW
+WHEN (OLD.name IS DISTINCT FROM NEW.name)
+EXECUTE FUNCTION notify_subscription_usage();
+
+COMMIT;
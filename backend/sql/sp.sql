@@ -245,6 +245,7 @@ $$ LANGUAGE plpgsql;
 --  - Validates token is active and not expired
 --  - Updates password_hash in company_account
 --  - Deactivates recovery token to prevent reuse
+--  - Bumps token_version so tokens issued before the reset stop working
 CREATE OR REPLACE FUNCTION sp_reset_password(
     p_token UUID,
     p_new_password_hash VARCHAR
@@ -271,7 +272,9 @@ BEGIN
 
     -- Update user password
     UPDATE company_account 
-    SET password_hash = p_new_password_hash
+    SET password_hash = p_new_password_hash,
+        token_version = token_version + 1,
+        tokens_revoked_at = NOW()
     WHERE id = v_recovery.user_id
     RETURNING email INTO v_email;
 
@@ -311,12 +314,31 @@ DECLARE
     v_success BOOLEAN := FALSE;
     v_reason VARCHAR := NULL;
 BEGIN
-    -- Find user by email or username (case-insensitive)
-    SELECT ca.id, ca.company_id, ca.username, ca.email, ca.password_hash, ca.is_active
+    -- Find user by email, then by username (case-insensitive). Two probes each hit
+    -- one LOWER() expression index; an OR of both would fall back to a scan.
+    SELECT ca.id, ca.company_id, ca.username, ca.email, ca.password_hash, ca.is_active,
+           COUNT(*) OVER () AS matches
     INTO v_user
     FROM company_account ca
-    WHERE LOWER(ca.email) = LOWER(p_identity) 
-       OR LOWER(ca.username) = LOWER(p_identity);
+    WHERE LOWER(ca.email) = LOWER(p_identity)
+    ORDER BY ca.email = p_identity DESC
+    LIMIT 1;
+
+    IF NOT FOUND THEN
+        SELECT ca.id, ca.company_id, ca.username, ca.email, ca.password_hash, ca.is_active,
+               COUNT(*) OVER () AS matches
+        INTO v_user
+        FROM company_account ca
+        WHERE LOWER(ca.username) = LOWER(p_identity)
+        ORDER BY ca.username = p_identity DESC
+        LIMIT 1;
+    END IF;
+
+    -- Accounts that differ only in case are not unique: only the exact-case match
+    -- identifies one of them, any other spelling is ambiguous
+    IF v_user.matches > 1 AND p_identity NOT IN (v_user.email, v_user.username) THEN
+        v_user := NULL;
+    END IF;
 
     -- User not found
     IF v_user IS NULL THEN
@@ -454,6 +476,9 @@ $$ LANGUAGE plpgsql;
 
 -- Function: sp_create_order(p_vehicle_id BIGINT, p_driver_id BIGINT, ...)
 -- Purpose: Creates a new transport order
+-- Deprecated: the backend no longer calls this. OrderService.createOrder checks company
+-- ownership and inserts in one statement; this only checks that vehicle and driver exist.
+-- Kept for manual SQL use, to be dropped once nothing depends on it
 CREATE OR REPLACE FUNCTION sp_create_order(
     p_vehicle_id BIGINT,
     p_driver_id BIGINT,
@@ -564,3 +589,224 @@ BEGIN
     RETURN TRUE;
 END;
 $$ LANGUAGE plpgsql;
+
+-- Function: sp_ensure_progress_partitions(p_months_ahead INT)
+-- Purpose: Creates the monthly progress partitions from the current month up to p_months_ahead
+--          months ahead, plus one for every month that has rows in progress_default, and moves
+--          those rows into it
+-- Returns the number of partitions created
+CREATE OR REPLACE FUNCTION sp_ensure_progress_partitions(
+    p_months_ahead INT DEFAULT 3
+) RETURNS INT AS $$
+DECLARE
+    v_month DATE;
+    v_next DATE;
+    v_name TEXT;
+    v_created INT := 0;
+BEGIN
+    -- Serialize concurrent runs from several backend instances
+    PERFORM pg_advisory_xact_lock(hashtext('sp_ensure_progress_partitions'));
+
+    FOR v_month IN
+        SELECT generate_series(
+            date_trunc('month', NOW()),
+            date_trunc('month', NOW()) + make_interval(months => p_months_ahead),
+            INTERVAL '1 month')::DATE
+        UNION
+        SELECT DISTINCT date_trunc('month', time)::DATE FROM progress_default
+        ORDER BY 1
+    LOOP
+        v_name := 'progress_' || to_char(v_month, 'YYYY_MM');
+        CONTINUE WHEN to_regclass(v_name) IS NOT NULL;
+        v_next := (v_month + INTERVAL '1 month')::DATE;
+
+        -- The default partition may not keep rows of a range that gets its own partition,
+        -- so they are moved into the new table before it is attached
+        EXECUTE format('CREATE TABLE %I (LIKE progress INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', v_name);
+        EXECUTE format(
+            'WITH moved AS (DELETE FROM progress_default WHERE time >= %L AND time < %L RETURNING *) ' ||
+            'INSERT INTO %I SELECT * FROM moved',
+            v_month, v_next, v_name);
+        EXECUTE format('ALTER TABLE progress ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+            v_name, v_month, v_next);
+        v_created := v_created + 1;
+    END LOOP;
+
+    RETURN v_created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: sp_archive_delivered_progress(p_retention_days INT, p_bucket_minutes INT, p_max_orders INT)
+-- Purpose: Rolls the position pings (STOP, STOPOVER) of delivered orders without progress in the
+--          last p_retention_days days into progress_archive, keeping the last position per order,
+--          p_bucket_minutes bucket and type, and deletes the raw pings. Milestone events stay in
+--          progress. At most p_max_orders orders are handled per call.
+-- Returns the number of raw progress rows archived
+CREATE OR REPLACE FUNCTION sp_archive_delivered_progress(
+    p_retention_days INT DEFAULT 90,
+    p_bucket_minutes INT DEFAULT 15,
+    p_max_orders INT DEFAULT 1000
+) RETURNS BIGINT AS $$
+DECLARE
+    v_archived BIGINT;
+BEGIN
+    WITH expired AS (
+        SELECT o.id
+        FROM orders o
+        WHERE o.status = 'DELIVERED'
+          AND EXISTS (
+              SELECT 1 FROM progress p
+              WHERE p.order_id = o.id AND p.type IN ('STOP', 'STOPOVER'))
+          AND NOT EXISTS (
+              SELECT 1 FROM progress p
+              WHERE p.order_id = o.id AND p.time >= NOW() - make_interval(days => p_retention_days))
+        LIMIT p_max_orders
+    ), removed AS (
+        DELETE FROM progress p
+        USING expired e
+        WHERE p.order_id = e.id AND p.type IN ('STOP', 'STOPOVER')
+        RETURNING p.id, p.order_id, p.current_pos, p.time, p.type
+    ), rolled_up AS (
+        INSERT INTO progress_archive(order_id, bucket_start, type, current_pos, first_time, last_time, samples)
+        SELECT order_id,
+               date_bin(make_interval(mins => p_bucket_minutes), time, TIMESTAMP '2000-01-01'),
+               type,
+               (array_agg(current_pos ORDER BY time DESC, id DESC))[1],
+               MIN(time),
+               MAX(time),
+               COUNT(*)
+        FROM removed
+        GROUP BY 1, 2, 3
+        ON CONFLICT (order_id, bucket_start, type) DO UPDATE SET
+            current_pos = CASE WHEN EXCLUDED.last_time >= progress_archive.last_time
+                               THEN EXCLUDED.current_pos ELSE progress_archive.current_pos END,
+            first_time = LEAST(progress_archive.first_time, EXCLUDED.first_time),
+            last_time = GREATEST(progress_archive.last_time, EXCLUDED.last_time),
+            samples = progress_archive.samples + EXCLUDED.samples
+    )
+    SELECT COUNT(*) INTO v_archived FROM removed;
+
+    RETURN v_archived;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: sp_rebuild_order_stats()
+-- Purpose: Recomputes order_stats from orders, e.g. after loading orders with the triggers
+-- disabled. Order writes wait for it, so the counters cannot miss a concurrent change.
+-- Returns the number of companies with orders.
+CREATE OR REPLACE FUNCTION sp_rebuild_order_stats()
+RETURNS INT AS $$
+DECLARE
+    v_companies INT;
+BEGIN
+    LOCK TABLE orders IN SHARE MODE;
+
+    DELETE FROM order_stats;
+
+    INSERT INTO order_stats (company_id, pending, in_transit, delivered, canceled,
+                             on_time, late, transit_count, transit_seconds)
+    SELECT cv.company_id,
+           COUNT(*) FILTER (WHERE o.status = 'PENDING'),
+           COUNT(*) FILTER (WHERE o.status = 'IN_TRANSIT'),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED'),
+           COUNT(*) FILTER (WHERE o.status = 'CANCELED'),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED' AND o.delivered_at <= o.arrival_time),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED' AND o.delivered_at > o.arrival_time),
+           COUNT(*) FILTER (WHERE o.status = 'DELIVERED' AND o.delivered_at IS NOT NULL AND o.departure_time IS NOT NULL),
+           COALESCE(SUM(EXTRACT(EPOCH FROM o.delivered_at - o.departure_time))
+                    FILTER (WHERE o.status = 'DELIVERED'), 0)
+    FROM orders o
+    JOIN company_vehicles cv ON cv.vehicle_id = o.vehicle_id
+    GROUP BY cv.company_id;
+
+    GET DIAGNOSTICS v_companies = ROW_COUNT;
+    RETURN v_companies;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: sp_rebuild_company_usage()
+-- Purpose: Recomputes company_usage from company_vehicles and company_account, e.g. after
+-- loading them with the triggers disabled. Vehicle and account writes wait for it.
+-- Returns the number of companies.
+CREATE OR REPLACE FUNCTION sp_rebuild_company_usage()
+RETURNS INT AS $$
+DECLARE
+    v_companies INT;
+BEGIN
+    LOCK TABLE company_vehicles, company_account IN SHARE MODE;
+
+    DELETE FROM company_usage;
+
+    INSERT INTO company_usage (company_id, vehicles, drivers)
+    SELECT c.id,
+           (SELECT COUNT(*) FROM company_vehicles cv WHERE cv.company_id = c.id),
+           (SELECT COUNT(*) FROM company_account ca
+            WHERE ca.company_id = c.id AND ca.is_active = TRUE AND 'DRIVER' = ANY(ca.roles))
+    FROM company c;
+
+    GET DIAGNOSTICS v_companies = ROW_COUNT;
+    RETURN v_companies;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: latest_maintenance_status(p_vehicle_id BIGINT)
+-- Purpose: Status of the vehicle's most recent maintenance record, one probe of
+-- idx_maintenance_records_vehicle_latest. Used by the fleet status triggers.
+CREATE OR REPLACE FUNCTION latest_maintenance_status(p_vehicle_id BIGINT)
+RETURNS maintenance_status AS $$
+    SELECT status FROM maintenance_records
+    WHERE vehicle_id = p_vehicle_id
+    ORDER BY date_created DESC
+    LIMIT 1;
+$$ LANGUAGE sql STABLE;
+
+-- Function: sp_rebuild_fleet_status()
+-- Purpose: Recomputes fleet_status from vehicles, company_vehicles and maintenance_records,
+-- e.g. after loading them with the triggers disabled. Writes to those tables wait for it.
+-- Returns the number of company vehicles.
+CREATE OR REPLACE FUNCTION sp_rebuild_fleet_status()
+RETURNS INT AS $$
+DECLARE
+    v_vehicles INT;
+BEGIN
+    LOCK TABLE vehicles, company_vehicles, maintenance_records IN SHARE MODE;
+
+    DELETE FROM fleet_status;
+
+    INSERT INTO fleet_status (company_id, vehicle_id, vehicle_type, load_capacity, load_type,
+                              sensor_data, last_odometer, current_maintenance_status)
+    SELECT cv.company_id, v.id, v.type, v.load_capacity, CAST(v.load_type AS TEXT),
+           CAST(v.sensor_data AS TEXT), v.last_odometer, latest_maintenance_status(v.id)
+    FROM vehicles v
+    JOIN company_vehicles cv ON v.id = cv.vehicle_id;
+
+    GET DIAGNOSTICS v_vehicles = ROW_COUNT;
+    RETURN v_vehicles;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Function: sp_rebuild_order_latest_progress()
+-- Purpose: Recomputes order_latest_progress from progress, e.g. after loading progress with
+-- the triggers disabled. Progress writes wait for it. Returns the number of orders.
+CREATE OR REPLACE FUNCTION sp_rebuild_order_latest_progress()
+RETURNS INT AS $$
+DECLARE
+    v_orders INT;
+BEGIN
+    LOCK TABLE progress IN SHARE MODE;
+
+    DELETE FROM order_latest_progress;
+
+    INSERT INTO order_latest_progress (order_id, progress_id, type, position, time)
+    SELECT DISTINCT ON (order_id) order_id, id, type, current_pos, time
+    FROM progress
+    WHERE order_id IS NOT NULL
+    ORDER BY order_id, time DESC, id DESC;
+
+    GET DIAGNOSTICS v_orders = ROW_COUNT;
+    RETURN v_orders;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Move the seeded progress rows out of progress_default into monthly partitions
+SELECT sp_ensure_progress_partitions();
@@ -117,9 +117,24 @@ CREATE TABLE IF NOT EXISTS company_account (
 
     date_created TIMESTAMP DEFAULT NOW(),
     roles user_role[] NOT NULL DEFAULT ARRAY[]::user_role[],
-    preferences JSONB
+    preferences JSONB,
+
+    -- Tokens carrying a lower version are rejected; bumped on block / password reset
+    token_version INT NOT NULL DEFAULT 0,
+    tokens_revoked_at TIMESTAMP
 );
 
+-- Identity lookups compare LOWER(...), which the plain UNIQUE constraints cannot serve.
+-- Lookup only, not unique: accounts that differ only in case are accepted as before
+CREATE INDEX IF NOT EXISTS idx_company_account_email_lower
+    ON company_account(LOWER(email));
+
+CREATE INDEX IF NOT EXISTS idx_company_account_username_lower
+    ON company_account(LOWER(username));
+
+CREATE INDEX IF NOT EXISTS idx_company_account_tokens_revoked
+    ON company_account(tokens_revoked_at) WHERE tokens_revoked_at IS NOT NULL;
+
 CREATE TABLE IF NOT EXISTS logins (
     id BIGSERIAL PRIMARY KEY,
     user_id BIGINT NOT NULL REFERENCES company_account(id),
@@ -227,21 +242,105 @@ CREATE TABLE IF NOT EXISTS orders (
     arrival_time TIMESTAMP,
     status order_status NOT NULL DEFAULT 'PENDING',
     vehicle_id BIGINT REFERENCES vehicles(id),
-    driver_id BIGINT REFERENCES company_account(id)
+    driver_id BIGINT REFERENCES company_account(id),
+    -- Set by trg_set_order_delivered_at when the status becomes DELIVERED
+    delivered_at TIMESTAMP
 );
 
+-- Range partitioned by month on time. sp_ensure_progress_partitions creates the monthly
+-- partitions ahead of time and moves rows that landed in progress_default into new ones.
 CREATE TABLE IF NOT EXISTS progress (
-    id BIGSERIAL PRIMARY KEY,
+    id BIGSERIAL,
     order_id BIGINT REFERENCES orders(id),
     current_pos POINT,
-    time TIMESTAMP DEFAULT NOW(),
+    time TIMESTAMP NOT NULL DEFAULT NOW(),
     type progress_type NOT NULL,
-    description JSONB
+    description JSONB,
+    PRIMARY KEY (id, time)
+) PARTITION BY RANGE (time);
+
+CREATE TABLE IF NOT EXISTS progress_default PARTITION OF progress DEFAULT;
+
+-- Position pings (STOP, STOPOVER) of delivered orders past the retention period, rolled up
+-- by sp_archive_delivered_progress into one row per order, time bucket and type
+CREATE TABLE IF NOT EXISTS progress_archive (
+    order_id BIGINT NOT NULL REFERENCES orders(id) ON DELETE CASCADE,
+    bucket_start TIMESTAMP NOT NULL,
+    type progress_type NOT NULL,
+    current_pos POINT,
+    first_time TIMESTAMP NOT NULL,
+    last_time TIMESTAMP NOT NULL,
+    samples INT NOT NULL,
+    PRIMARY KEY (order_id, bucket_start, type)
 );
 
+-- Per-company order counters kept current by the order stats triggers, so a dashboard
+-- reads one row instead of scanning orders. on_time and late count delivered orders with
+-- a planned arrival; transit_seconds sums delivered_at - departure_time over transit_count
+-- delivered orders with a planned departure.
+CREATE TABLE IF NOT EXISTS order_stats (
+    company_id BIGINT PRIMARY KEY REFERENCES company(id) ON DELETE CASCADE,
+    pending BIGINT NOT NULL DEFAULT 0,
+    in_transit BIGINT NOT NULL DEFAULT 0,
+    delivered BIGINT NOT NULL DEFAULT 0,
+    canceled BIGINT NOT NULL DEFAULT 0,
+    on_time BIGINT NOT NULL DEFAULT 0,
+    late BIGINT NOT NULL DEFAULT 0,
+    transit_count BIGINT NOT NULL DEFAULT 0,
+    transit_seconds DOUBLE PRECISION NOT NULL DEFAULT 0
+);
+
+-- Per-company usage counters, kept by the vehicle and driver limit triggers (triggers.sql)
+-- and read by vw_subscription_usage instead of counting company_vehicles / company_account
+CREATE TABLE IF NOT EXISTS company_usage (
+    company_id BIGINT PRIMARY KEY REFERENCES company(id) ON DELETE CASCADE,
+    vehicles BIGINT NOT NULL DEFAULT 0,
+    drivers BIGINT NOT NULL DEFAULT 0
+);
+
+-- Denormalized vw_fleet_status: one row per company vehicle with the text forms of load_type
+-- and sensor_data and the status of its latest maintenance record, kept by the fleet status
+-- triggers (triggers.sql). The primary key serves the per-company reads.
+CREATE TABLE IF NOT EXISTS fleet_status (
+    company_id BIGINT NOT NULL REFERENCES company(id) ON DELETE CASCADE,
+    vehicle_id BIGINT NOT NULL REFERENCES vehicles(id) ON DELETE CASCADE,
+    vehicle_type vehicle_type NOT NULL,
+    load_capacity BIGINT,
+    load_type TEXT,
+    sensor_data TEXT,
+    last_odometer BIGINT,
+    current_maintenance_status maintenance_status,
+    PRIMARY KEY (company_id, vehicle_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_fleet_status_vehicle_id ON fleet_status(vehicle_id);
+CREATE INDEX IF NOT EXISTS idx_maintenance_records_vehicle_latest ON maintenance_records(vehicle_id, date_created DESC);
+
+-- Newest progress event of each order, kept by the latest progress triggers (triggers.sql)
+-- so vw_order_tracking joins one row per order instead of the order's whole ping history
+CREATE TABLE IF NOT EXISTS order_latest_progress (
+    order_id BIGINT PRIMARY KEY REFERENCES orders(id) ON DELETE CASCADE,
+    progress_id BIGINT NOT NULL,
+    type progress_type NOT NULL,
+    position POINT,
+    time TIMESTAMP NOT NULL
+);
+
+-- Keyset pagination and listing filters
+CREATE INDEX IF NOT EXISTS idx_orders_vehicle_id ON orders(vehicle_id, id);
+CREATE INDEX IF NOT EXISTS idx_orders_driver_id ON orders(driver_id, id);
+CREATE INDEX IF NOT EXISTS idx_orders_status_id ON orders(status, id);
+CREATE INDEX IF NOT EXISTS idx_orders_departure_time ON orders(departure_time);
+CREATE INDEX IF NOT EXISTS idx_orders_arrival_time ON orders(arrival_time);
+-- Active orders per vehicle for vw_order_tracking; same predicate as the view
+CREATE INDEX IF NOT EXISTS idx_orders_active_vehicle ON orders(vehicle_id)
+    WHERE status != 'DELIVERED' AND status != 'CANCELED';
+CREATE INDEX IF NOT EXISTS idx_progress_order_time ON progress(order_id, time, id);
+
+-- progress_id has no foreign key: progress is partitioned, so id alone is not a unique key
 CREATE TABLE IF NOT EXISTS order_progress (
     order_id BIGINT REFERENCES orders(id),
-    progress_id BIGINT REFERENCES progress(id),
+    progress_id BIGINT,
     PRIMARY KEY (order_id, progress_id)
 );
 
@@ -252,9 +351,31 @@ CREATE TABLE IF NOT EXISTS api_account (
     username VARCHAR NOT NULL UNIQUE,
     password_hash VARCHAR NOT NULL,
     is_active BOOLEAN DEFAULT TRUE,
-    date_created TIMESTAMP DEFAULT NOW()
+    date_created TIMESTAMP DEFAULT NOW(),
+    token_version INT NOT NULL DEFAULT 0,
+    tokens_revoked_at TIMESTAMP
 );
 
+CREATE INDEX IF NOT EXISTS idx_api_account_tokens_revoked
+    ON api_account(tokens_revoked_at) WHERE tokens_revoked_at IS NOT NULL;
+
+-- API KEYS (long-lived machine credentials; only an HMAC-SHA256 of the key is stored)
+
+CREATE TABLE IF NOT EXISTS api_key (
+    id BIGSERIAL PRIMARY KEY,
+    api_account_id BIGINT NOT NULL REFERENCES api_account(id) ON DELETE CASCADE,
+    name VARCHAR NOT NULL,
+    key_prefix VARCHAR NOT NULL,
+    key_hash VARCHAR NOT NULL UNIQUE,
+    scopes VARCHAR NOT NULL DEFAULT '',
+    is_active BOOLEAN NOT NULL DEFAULT TRUE,
+    expires_at TIMESTAMP,
+    date_created TIMESTAMP DEFAULT NOW(),
+    revoked_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_api_key_account ON api_key(api_account_id);
+
 -- INFO TABLE (for general information)
 
 CREATE TABLE IF NOT EXISTS info (
@@ -264,3 +385,25 @@ CREATE TABLE IF NOT EXISTS info (
     created_at TIMESTAMP DEFAULT NOW(),
     updated_at TIMESTAMP DEFAULT NOW()
 );
+
+-- EMAIL OUTBOX (written in the business transaction, delivered by the backend dispatcher)
+
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    recipient VARCHAR NOT NULL,
+    subject VARCHAR NOT NULL,
+    body TEXT NOT NULL,
+    status VARCHAR NOT NULL DEFAULT 'PENDING',
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    last_error TEXT,
+    date_created TIMESTAMP DEFAULT NOW(),
+    date_sent TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_email_outbox_pending
+    ON email_outbox(next_attempt_at) WHERE status = 'PENDING';
+
+-- Keeps the failed-messages gauge from scanning every sent message
+CREATE INDEX IF NOT EXISTS idx_email_outbox_failed
+    ON email_outbox(id) WHERE status = 'FAILED';
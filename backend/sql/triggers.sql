@@ -1,91 +1,498 @@
--- Trigger: Enforce max vehicles per company based on license level
-CREATE OR REPLACE FUNCTION enforce_vehicle_limit()
-RETURNS TRIGGER AS $$
-DECLARE
-    v_max_vehicles BIGINT;
-    v_current_count BIGINT;
-BEGIN
-    -- Get max vehicles from active subscription
-        SELECT COALESCE(ll.max_vehicles, 1000000000) INTO v_max_vehicles
+-- Function: company_license(p_company_id) - limits of the company's active subscription,
+-- no limit on the license meaning no limit; no row when there is no active subscription
+CREATE OR REPLACE FUNCTION company_license(p_company_id BIGINT,
+    OUT max_vehicles BIGINT, OUT max_drivers BIGINT, OUT license_tier license_name)
+AS $$
+    SELECT COALESCE(ll.max_vehicles, 1000000000), COALESCE(ll.max_drivers, 1000000000), ll.name
     FROM subscriptions s
     JOIN license_levels ll ON s.license_id = ll.id
-    WHERE s.company_id = NEW.company_id
+    WHERE s.company_id = p_company_id
       AND (s.end_date IS NULL OR s.end_date > CURRENT_DATE)
     ORDER BY s.start_date DESC
     LIMIT 1;
+$$ LANGUAGE sql STABLE;
 
-    IF v_max_vehicles IS NULL THEN
-        RAISE EXCEPTION 'No active subscription found for company %', NEW.company_id;
-    END IF;
+-- Trigger: Enforce max vehicles per company based on license level
+-- Statement level: adds each company's new vehicles to its company_usage counter in one
+-- upsert and checks the result. The upsert keeps the counter row locked until commit, so
+-- concurrent inserts for one company queue there and cannot both slip under the limit.
+CREATE OR REPLACE FUNCTION enforce_vehicle_limit()
+RETURNS TRIGGER AS $$
+DECLARE
+    r RECORD;
+    v_license RECORD;
+BEGIN
+    FOR r IN
+        INSERT INTO company_usage AS u (company_id, vehicles)
+        SELECT company_id, COUNT(*) FROM inserted_vehicles GROUP BY company_id ORDER BY company_id
+        ON CONFLICT (company_id) DO UPDATE SET vehicles = u.vehicles + EXCLUDED.vehicles
+        RETURNING u.company_id, u.vehicles
+    LOOP
+        SELECT * INTO v_license FROM company_license(r.company_id);
 
-    -- Count current vehicles (after this insert would happen)
-    SELECT COUNT(*) INTO v_current_count
-    FROM company_vehicles
-    WHERE company_id = NEW.company_id;
-
-    IF v_current_count >= v_max_vehicles THEN
-        RAISE EXCEPTION 'Vehicle limit exceeded. Company % is limited to % vehicles (license: %)',
-            NEW.company_id, v_max_vehicles,
-            (SELECT ll.name FROM subscriptions s JOIN license_levels ll ON s.license_id = ll.id 
-             WHERE s.company_id = NEW.company_id AND (s.end_date IS NULL OR s.end_date > CURRENT_DATE) 
-             ORDER BY s.start_date DESC LIMIT 1);
-    END IF;
+        IF v_license.max_vehicles IS NULL THEN
+            RAISE EXCEPTION 'No active subscription found for company %', r.company_id;
+        END IF;
 
-    RETURN NEW;
+        -- The counter already includes the new vehicles
+        IF r.vehicles > v_license.max_vehicles THEN
+            RAISE EXCEPTION 'Vehicle limit exceeded. Company % is limited to % vehicles (license: %)',
+                r.company_id, v_license.max_vehicles, v_license.license_tier;
+        END IF;
+    END LOOP;
+
+    RETURN NULL;
 END;
 $$ LANGUAGE plpgsql;
 
 CREATE TRIGGER trg_enforce_vehicle_limit
-BEFORE INSERT ON company_vehicles
-FOR EACH ROW EXECUTE FUNCTION enforce_vehicle_limit();
+AFTER INSERT ON company_vehicles
+REFERENCING NEW TABLE AS inserted_vehicles
+FOR EACH STATEMENT EXECUTE FUNCTION enforce_vehicle_limit();
+
+-- Trigger: Give removed vehicles back to their companies' counters
+CREATE OR REPLACE FUNCTION release_vehicle_usage()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE company_usage u SET vehicles = u.vehicles - d.removed
+    FROM (SELECT company_id, COUNT(*) AS removed FROM deleted_vehicles GROUP BY company_id) d
+    WHERE u.company_id = d.company_id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_release_vehicle_usage
+AFTER DELETE ON company_vehicles
+REFERENCING OLD TABLE AS deleted_vehicles
+FOR EACH STATEMENT EXECUTE FUNCTION release_vehicle_usage();
 
 -- Trigger: Enforce max drivers per company based on license level
+-- Counts active accounts with the DRIVER role in company_usage. Gaining the role, being
+-- activated or moving to another company adds one to that company's counter under its row
+-- lock and checks the limit; losing any of them, or deletion, takes one off.
 CREATE OR REPLACE FUNCTION enforce_driver_limit()
 RETURNS TRIGGER AS $$
 DECLARE
-    v_max_drivers BIGINT;
-    v_current_count BIGINT;
-    v_company_id BIGINT;
+    v_was_driver BOOLEAN := FALSE;
+    v_is_driver BOOLEAN := FALSE;
+    v_drivers BIGINT;
+    v_license RECORD;
 BEGIN
-    v_company_id := COALESCE(NEW.company_id, OLD.company_id);
-
-    -- Only check if DRIVER role is being added
-    IF (NEW.roles IS NOT NULL) AND ('DRIVER' = ANY(NEW.roles)) AND 
-       (OLD.roles IS NULL OR NOT ('DRIVER' = ANY(OLD.roles))) THEN
-        
-        -- Get max drivers from active subscription
-                SELECT COALESCE(ll.max_drivers, 1000000000) INTO v_max_drivers
-        FROM subscriptions s
-        JOIN license_levels ll ON s.license_id = ll.id
-        WHERE s.company_id = v_company_id
-          AND (s.end_date IS NULL OR s.end_date > CURRENT_DATE)
-        ORDER BY s.start_date DESC
-        LIMIT 1;
-
-        IF v_max_drivers IS NULL THEN
-            RAISE EXCEPTION 'No active subscription found for company %', v_company_id;
-        END IF;
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        v_was_driver := OLD.company_id IS NOT NULL AND OLD.is_active IS TRUE
+            AND COALESCE('DRIVER' = ANY(OLD.roles), FALSE);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        v_is_driver := NEW.company_id IS NOT NULL AND NEW.is_active IS TRUE
+            AND COALESCE('DRIVER' = ANY(NEW.roles), FALSE);
+    END IF;
+
+    -- Same company and still (not) a driver: nothing to count
+    IF TG_OP = 'UPDATE' AND v_was_driver = v_is_driver
+       AND OLD.company_id IS NOT DISTINCT FROM NEW.company_id THEN
+        RETURN NULL;
+    END IF;
+
+    IF v_was_driver THEN
+        UPDATE company_usage SET drivers = drivers - 1 WHERE company_id = OLD.company_id;
+    END IF;
+
+    IF v_is_driver THEN
+        INSERT INTO company_usage AS u (company_id, drivers) VALUES (NEW.company_id, 1)
+        ON CONFLICT (company_id) DO UPDATE SET drivers = u.drivers + 1
+        RETURNING u.drivers INTO v_drivers;
 
-        -- Count current active drivers
-        SELECT COUNT(*) INTO v_current_count
-        FROM company_account
-        WHERE company_id = v_company_id
-          AND is_active = TRUE
-          AND 'DRIVER' = ANY(roles);
+        SELECT * INTO v_license FROM company_license(NEW.company_id);
+
+        IF v_license.max_drivers IS NULL THEN
+            RAISE EXCEPTION 'No active subscription found for company %', NEW.company_id;
+        END IF;
 
-        IF v_current_count >= v_max_drivers THEN
+        IF v_drivers > v_license.max_drivers THEN
             RAISE EXCEPTION 'Driver limit exceeded. Company % is limited to % drivers (license: %)',
-                v_company_id, v_max_drivers,
-                (SELECT ll.name FROM subscriptions s JOIN license_levels ll ON s.license_id = ll.id 
-                 WHERE s.company_id = v_company_id AND (s.end_date IS NULL OR s.end_date > CURRENT_DATE) 
-                 ORDER BY s.start_date DESC LIMIT 1);
+                NEW.company_id, v_license.max_drivers, v_license.license_tier;
         END IF;
     END IF;
 
-    RETURN NEW;
+    RETURN NULL;
 END;
 $$ LANGUAGE plpgsql;
 
 CREATE TRIGGER trg_enforce_driver_limit
-BEFORE INSERT OR UPDATE OF roles ON company_account
+AFTER INSERT OR UPDATE OF roles, is_active, company_id OR DELETE ON company_account
 FOR EACH ROW EXECUTE FUNCTION enforce_driver_limit();
+
+-- Trigger: Publish subscription usage changes on the subscription_usage channel
+-- The payload is the company id, so the backend drops that company's cached
+-- vw_subscription_usage row; an empty payload (a license level changed) drops them all.
+-- Covers the limit counters (vehicle links, driver roles through sp_assign_role and
+-- sp_remove_role, activation), subscriptions (sp_activate_referral_discount) and company
+-- names. Identical notifications in one transaction are delivered once, so a batch of
+-- vehicle inserts sends one per company.
+CREATE OR REPLACE FUNCTION notify_subscription_usage()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_TABLE_NAME = 'license_levels' THEN
+        PERFORM pg_notify('subscription_usage', '');
+    ELSIF TG_TABLE_NAME = 'company' THEN
+        PERFORM pg_notify('subscription_usage', NEW.id::text);
+    ELSE
+        IF TG_OP <> 'INSERT' THEN
+            PERFORM pg_notify('subscription_usage', OLD.company_id::text);
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            PERFORM pg_notify('subscription_usage', NEW.company_id::text);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_notify_company_usage
+AFTER INSERT OR UPDATE OR DELETE ON company_usage
+FOR EACH ROW EXECUTE FUNCTION notify_subscription_usage();
+
+CREATE TRIGGER trg_notify_subscriptions
+AFTER INSERT OR UPDATE OR DELETE ON subscriptions
+FOR EACH ROW EXECUTE FUNCTION notify_subscription_usage();
+
+CREATE TRIGGER trg_notify_license_levels
+AFTER UPDATE ON license_levels
+FOR EACH STATEMENT EXECUTE FUNCTION notify_subscription_usage();
+
+CREATE TRIGGER trg_notify_company_name
+AFTER UPDATE OF name ON company
+FOR EACH ROW
+WHEN (OLD.name IS DISTINCT FROM NEW.name)
+EXECUTE FUNCTION notify_subscription_usage();
+
+-- Trigger: Publish order tracking changes on the order_tracking channel
+-- Fires for progress inserts (sp_add_progress, batch ingestion, buffered pings) and for
+-- order creation, status changes and deletion. The payload is the order's vw_order_tracking
+-- row; orders leaving the view (DELIVERED, CANCELED or deleted) are sent as "removed".
+
+-- Tracking payloads of the given orders, one per company the order's vehicle belongs to
+CREATE OR REPLACE FUNCTION order_tracking_payloads(p_order_ids BIGINT[])
+RETURNS SETOF JSONB AS $$
+    -- Latest progress through idx_progress_order_time instead of the view's DISTINCT ON
+    SELECT jsonb_build_object(
+        'event', CASE WHEN o.status IN ('DELIVERED', 'CANCELED') THEN 'removed' ELSE 'update' END,
+        'order_id', o.id,
+        'company_id', cv.company_id,
+        'driver_id', o.driver_id,
+        'vehicle_id', o.vehicle_id,
+        'order_status', o.status,
+        'pick_up', o.pick_up::text,
+        'delivery', o.delivery::text,
+        'last_progress_event', p.type,
+        'last_known_location', p.current_pos::text,
+        'last_update_time', p.time)
+    FROM orders o
+    JOIN company_vehicles cv ON cv.vehicle_id = o.vehicle_id
+    LEFT JOIN LATERAL (
+        SELECT type, current_pos, time
+        FROM progress
+        WHERE order_id = o.id
+        ORDER BY time DESC, id DESC
+        LIMIT 1
+    ) p ON TRUE
+    WHERE o.id = ANY(p_order_ids)
+$$ LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION notify_order_tracking()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_payload JSONB;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        FOR v_payload IN
+            SELECT jsonb_build_object('event', 'removed', 'order_id', OLD.id, 'company_id', cv.company_id)
+            FROM company_vehicles cv
+            WHERE cv.vehicle_id = OLD.vehicle_id
+        LOOP
+            PERFORM pg_notify('order_tracking', v_payload::text);
+        END LOOP;
+        RETURN NULL;
+    ELSIF TG_OP = 'UPDATE' AND OLD.status IS NOT DISTINCT FROM NEW.status THEN
+        RETURN NULL;
+    END IF;
+
+    FOR v_payload IN SELECT * FROM order_tracking_payloads(ARRAY[NEW.id]) LOOP
+        PERFORM pg_notify('order_tracking', v_payload::text);
+    END LOOP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Once per statement, so a batch of pings costs one lookup and one notify per distinct
+-- order rather than per ping
+CREATE OR REPLACE FUNCTION notify_progress_tracking()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_payload JSONB;
+BEGIN
+    FOR v_payload IN
+        SELECT * FROM order_tracking_payloads(ARRAY(
+            SELECT DISTINCT order_id FROM new_progress WHERE order_id IS NOT NULL))
+    LOOP
+        PERFORM pg_notify('order_tracking', v_payload::text);
+    END LOOP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_notify_progress_tracking
+AFTER INSERT ON progress
+REFERENCING NEW TABLE AS new_progress
+FOR EACH STATEMENT EXECUTE FUNCTION notify_progress_tracking();
+
+CREATE TRIGGER trg_notify_order_tracking
+AFTER INSERT OR UPDATE OF status OR DELETE ON orders
+FOR EACH ROW EXECUTE FUNCTION notify_order_tracking();
+
+-- Trigger: Stamp delivered_at when an order becomes DELIVERED and clear it when it leaves
+CREATE OR REPLACE FUNCTION set_order_delivered_at()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.status = 'DELIVERED' THEN
+        NEW.delivered_at := COALESCE(NEW.delivered_at, NOW());
+    ELSE
+        NEW.delivered_at := NULL;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_set_order_delivered_at
+BEFORE INSERT OR UPDATE OF status ON orders
+FOR EACH ROW EXECUTE FUNCTION set_order_delivered_at();
+
+-- Trigger: Keep order_stats current
+-- Every write path (createOrder, CSV import, sp_create_order, sp_add_progress, batch progress
+-- ingestion, status updates, deletes) goes through orders, so each change takes the old row's
+-- contribution off its company's counters and adds the new row's.
+CREATE OR REPLACE FUNCTION apply_order_stats(o orders, p_sign INT)
+RETURNS VOID AS $$
+    INSERT INTO order_stats AS s (company_id, pending, in_transit, delivered, canceled,
+                                  on_time, late, transit_count, transit_seconds)
+    SELECT cv.company_id,
+           p_sign * (o.status = 'PENDING')::INT,
+           p_sign * (o.status = 'IN_TRANSIT')::INT,
+           p_sign * (o.status = 'DELIVERED')::INT,
+           p_sign * (o.status = 'CANCELED')::INT,
+           p_sign * COALESCE(o.status = 'DELIVERED' AND o.delivered_at <= o.arrival_time, FALSE)::INT,
+           p_sign * COALESCE(o.status = 'DELIVERED' AND o.delivered_at > o.arrival_time, FALSE)::INT,
+           p_sign * COALESCE(o.status = 'DELIVERED' AND o.delivered_at IS NOT NULL AND o.departure_time IS NOT NULL, FALSE)::INT,
+           p_sign * CASE WHEN o.status = 'DELIVERED'
+                         THEN COALESCE(EXTRACT(EPOCH FROM o.delivered_at - o.departure_time), 0)
+                         ELSE 0 END
+    FROM company_vehicles cv
+    WHERE cv.vehicle_id = o.vehicle_id
+    ON CONFLICT (company_id) DO UPDATE SET
+        pending = s.pending + EXCLUDED.pending,
+        in_transit = s.in_transit + EXCLUDED.in_transit,
+        delivered = s.delivered + EXCLUDED.delivered,
+        canceled = s.canceled + EXCLUDED.canceled,
+        on_time = s.on_time + EXCLUDED.on_time,
+        late = s.late + EXCLUDED.late,
+        transit_count = s.transit_count + EXCLUDED.transit_count,
+        transit_seconds = s.transit_seconds + EXCLUDED.transit_seconds;
+$$ LANGUAGE sql;
+
+CREATE OR REPLACE FUNCTION maintain_order_stats()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM apply_order_stats(OLD, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM apply_order_stats(NEW, 1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_order_stats_insert_delete
+AFTER INSERT OR DELETE ON orders
+FOR EACH ROW EXECUTE FUNCTION maintain_order_stats();
+
+CREATE TRIGGER trg_order_stats_update
+AFTER UPDATE OF status, delivered_at, departure_time, arrival_time, vehicle_id ON orders
+FOR EACH ROW
+WHEN (OLD.status IS DISTINCT FROM NEW.status
+      OR OLD.delivered_at IS DISTINCT FROM NEW.delivered_at
+      OR OLD.departure_time IS DISTINCT FROM NEW.departure_time
+      OR OLD.arrival_time IS DISTINCT FROM NEW.arrival_time
+      OR OLD.vehicle_id IS DISTINCT FROM NEW.vehicle_id)
+EXECUTE FUNCTION maintain_order_stats();
+
+-- Trigger: Keep the fleet_status snapshot current
+-- Vehicles joining or leaving a company fleet add or remove their snapshot rows
+CREATE OR REPLACE FUNCTION add_fleet_status()
+RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO fleet_status (company_id, vehicle_id, vehicle_type, load_capacity, load_type,
+                              sensor_data, last_odometer, current_maintenance_status)
+    SELECT n.company_id, v.id, v.type, v.load_capacity, CAST(v.load_type AS TEXT),
+           CAST(v.sensor_data AS TEXT), v.last_odometer, latest_maintenance_status(v.id)
+    FROM new_links n
+    JOIN vehicles v ON v.id = n.vehicle_id
+    ON CONFLICT (company_id, vehicle_id) DO NOTHING;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_fleet_status_link
+AFTER INSERT ON company_vehicles
+REFERENCING NEW TABLE AS new_links
+FOR EACH STATEMENT EXECUTE FUNCTION add_fleet_status();
+
+CREATE OR REPLACE FUNCTION remove_fleet_status()
+RETURNS TRIGGER AS $$
+BEGIN
+    DELETE FROM fleet_status f
+    USING old_links o
+    WHERE f.company_id = o.company_id AND f.vehicle_id = o.vehicle_id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_fleet_status_unlink
+AFTER DELETE ON company_vehicles
+REFERENCING OLD TABLE AS old_links
+FOR EACH STATEMENT EXECUTE FUNCTION remove_fleet_status();
+
+-- Vehicle edits are copied to the vehicle's rows
+CREATE OR REPLACE FUNCTION update_fleet_status_vehicle()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE fleet_status SET
+        vehicle_type = NEW.type,
+        load_capacity = NEW.load_capacity,
+        load_type = CAST(NEW.load_type AS TEXT),
+        sensor_data = CAST(NEW.sensor_data AS TEXT),
+        last_odometer = NEW.last_odometer
+    WHERE vehicle_id = NEW.id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_fleet_status_vehicle
+AFTER UPDATE OF type, load_capacity, load_type, sensor_data, last_odometer ON vehicles
+FOR EACH ROW
+WHEN (OLD.type IS DISTINCT FROM NEW.type
+      OR OLD.load_capacity IS DISTINCT FROM NEW.load_capacity
+      OR OLD.load_type IS DISTINCT FROM NEW.load_type
+      OR OLD.sensor_data IS DISTINCT FROM NEW.sensor_data
+      OR OLD.last_odometer IS DISTINCT FROM NEW.last_odometer)
+EXECUTE FUNCTION update_fleet_status_vehicle();
+
+-- Any maintenance change may change which record is the latest, so the status is looked up
+-- again for the vehicle(s) involved rather than taken from the changed row
+CREATE OR REPLACE FUNCTION update_fleet_status_maintenance()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE fleet_status SET current_maintenance_status = latest_maintenance_status(OLD.vehicle_id)
+        WHERE vehicle_id = OLD.vehicle_id;
+    END IF;
+    IF TG_OP = 'INSERT' OR (TG_OP = 'UPDATE' AND NEW.vehicle_id IS DISTINCT FROM OLD.vehicle_id) THEN
+        UPDATE fleet_status SET current_maintenance_status = latest_maintenance_status(NEW.vehicle_id)
+        WHERE vehicle_id = NEW.vehicle_id;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_fleet_status_maintenance
+AFTER INSERT OR UPDATE OF vehicle_id, status, date_created OR DELETE ON maintenance_records
+FOR EACH ROW EXECUTE FUNCTION update_fleet_status_maintenance();
+
+-- Trigger: Keep order_latest_progress current
+-- Statement level, so a batch of pings (sp_add_progress, batch ingestion, the write-behind
+-- buffer) does one upsert per order it touches. Orders are upserted in id order, so
+-- concurrent batches lock them in the same order. An event only replaces a newer one when
+-- it is later by (time, id), the order the tracking notifications use too.
+CREATE OR REPLACE FUNCTION advance_order_latest_progress()
+RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO order_latest_progress AS l (order_id, progress_id, type, position, time)
+    SELECT DISTINCT ON (order_id) order_id, id, type, current_pos, time
+    FROM new_progress
+    WHERE order_id IS NOT NULL
+    ORDER BY order_id, time DESC, id DESC
+    ON CONFLICT (order_id) DO UPDATE SET
+        progress_id = EXCLUDED.progress_id,
+        type = EXCLUDED.type,
+        position = EXCLUDED.position,
+        time = EXCLUDED.time
+    WHERE (EXCLUDED.time, EXCLUDED.progress_id) > (l.time, l.progress_id);
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_order_latest_progress_insert
+AFTER INSERT ON progress
+REFERENCING NEW TABLE AS new_progress
+FOR EACH STATEMENT EXECUTE FUNCTION advance_order_latest_progress();
+
+-- Orders whose latest event was deleted (e.g. rolled up by sp_archive_delivered_progress)
+-- fall back to their newest remaining one, or lose their row when none is left. Moving rows
+-- between partitions works on the partitions directly and does not fire this.
+CREATE OR REPLACE FUNCTION retreat_order_latest_progress()
+RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE order_latest_progress l SET
+        progress_id = p.id,
+        type = p.type,
+        position = p.current_pos,
+        time = p.time
+    FROM old_progress r
+    CROSS JOIN LATERAL (
+        SELECT id, type, current_pos, time
+        FROM progress
+        WHERE order_id = r.order_id
+        ORDER BY time DESC, id DESC
+        LIMIT 1
+    ) p
+    WHERE l.order_id = r.order_id AND l.progress_id = r.id;
+
+    DELETE FROM order_latest_progress l
+    USING old_progress r
+    WHERE l.order_id = r.order_id AND l.progress_id = r.id;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_order_latest_progress_delete
+AFTER DELETE ON progress
+REFERENCING OLD TABLE AS old_progress
+FOR EACH STATEMENT EXECUTE FUNCTION retreat_order_latest_progress();
+
+-- The seeded orders, vehicles, accounts, maintenance records and progress were inserted
+-- before the triggers existed. Delivered seed orders get the delivered_at that
+-- trg_set_order_delivered_at would have stamped, taken from their last arrival or
+-- completion ping as in migration 002, before order_stats is built from it
+UPDATE orders o
+SET delivered_at = p.time
+FROM (
+    SELECT order_id, MAX(time) AS time
+    FROM progress
+    WHERE type IN ('ARRIVAL', 'COMPLETION')
+    GROUP BY order_id
+) p
+WHERE p.order_id = o.id
+  AND o.status = 'DELIVERED'
+  AND o.delivered_at IS NULL;
+
+SELECT sp_rebuild_order_stats();
+SELECT sp_rebuild_company_usage();
+SELECT sp_rebuild_fleet_status();
+SELECT sp_rebuild_order_latest_progress();
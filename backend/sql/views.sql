@@ -6,16 +6,20 @@ SELECT
     ll.name AS license_tier,
     ll.max_vehicles,
     ll.max_drivers,
-    (SELECT COUNT(*) FROM company_vehicles cv WHERE cv.company_id = c.id) AS current_vehicles,
-    (SELECT COUNT(*) FROM company_account ca WHERE ca.company_id = c.id AND 'DRIVER' = ANY(ca.roles)) AS current_drivers
+    -- Counters kept by the limit triggers; drivers are active accounts with the DRIVER role
+    COALESCE(u.vehicles, 0) AS current_vehicles,
+    COALESCE(u.drivers, 0) AS current_drivers
 FROM company c
 JOIN subscriptions s ON c.id = s.company_id
 JOIN license_levels ll ON s.license_id = ll.id
+LEFT JOIN company_usage u ON u.company_id = c.id
 WHERE s.end_date IS NULL OR s.end_date > CURRENT_DATE;
 
 -- View: vw_order_tracking for monitoring active orders with their latest progress
+-- The latest progress comes from order_latest_progress, one row per order, so the cost follows
+-- the number of active orders rather than their ping history
 CREATE OR REPLACE VIEW vw_order_tracking AS
-SELECT DISTINCT ON (o.id)
+SELECT
     o.id AS order_id,
     -- Joining through company_vehicles to find the owner of the truck on this order
     cv.company_id, 
@@ -24,33 +28,30 @@ SELECT DISTINCT ON (o.id)
     o.status AS order_status,
     o.pick_up,
     o.delivery,
-    p.type AS last_progress_event,
-    p.current_pos AS last_known_location,
-    p.time AS last_update_time
+    lp.type AS last_progress_event,
+    lp.position AS last_known_location,
+    lp.time AS last_update_time
 FROM orders o
 JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id
-LEFT JOIN progress p ON o.id = p.order_id
--- We filter out completed ones
-WHERE o.status != 'DELIVERED' AND o.status != 'CANCELED'
-ORDER BY o.id, p.time DESC NULLS LAST;
+LEFT JOIN order_latest_progress lp ON lp.order_id = o.id
+-- We filter out completed ones (idx_orders_active_vehicle)
+WHERE o.status != 'DELIVERED' AND o.status != 'CANCELED';
 
 -- View: vw_fleet_status for overview of vehicles and their maintenance status per company
 DROP VIEW IF EXISTS vw_fleet_status CASCADE;
+-- Reads the fleet_status snapshot; the triggers keep it current on every write, so a read
+-- no longer looks up each vehicle's latest maintenance record or casts its arrays
 CREATE OR REPLACE VIEW vw_fleet_status AS
 SELECT 
-    cv.company_id,
-    v.id AS vehicle_id,
-    v.type AS vehicle_type,
-    v.load_capacity,
-    CAST(v.load_type AS TEXT) AS load_type, -- array of normal, refrigerated, hazardous
-    CAST(v.sensor_data AS TEXT) AS sensor_data, -- JSONB for real-time temp/fuel
-    v.last_odometer,
-    -- Get the most recent maintenance record status
-    (SELECT status FROM maintenance_records mr 
-     WHERE mr.vehicle_id = v.id 
-     ORDER BY date_created DESC LIMIT 1) AS current_maintenance_status
-FROM vehicles v
-JOIN company_vehicles cv ON v.id = cv.vehicle_id;
+    company_id,
+    vehicle_id,
+    vehicle_type,
+    load_capacity,
+    load_type, -- array of normal, refrigerated, hazardous, as text
+    sensor_data, -- JSONB for real-time temp/fuel, as text
+    last_odometer,
+    current_maintenance_status -- status of the most recent maintenance record
+FROM fleet_status;
 
 -- View: vw_user_profiles for retrieving user profiles with roles and preferences
 CREATE OR REPLACE VIEW vw_user_profiles AS
@@ -1,6 +1,8 @@
 package com.fleetmaster.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fleetmaster.dtos.FleetOverview;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
@@ -9,21 +11,26 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * HTTP Message Converter for CSV format
  * Implements RFC 4180 compliant CSV serialization
+ * Request bodies are read as a {@link CsvRows} stream
  */
 public class CsvHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Class<?>, List<BeanPropertyDefinition>> recordColumns = new ConcurrentHashMap<>();
 
     public CsvHttpMessageConverter() {
         super(MediaType.parseMediaType("text/csv"));
@@ -34,10 +41,27 @@ public class CsvHttpMessageConverter extends AbstractHttpMessageConverter<Object
         return true; // Support all classes, convert to CSV if possible
     }
 
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return CsvRows.class.isAssignableFrom(clazz) && canRead(mediaType);
+    }
+
+    /**
+     * Hands the body to the controller as an unread row stream; only the header is
+     * consumed here. The stream is valid for the duration of the request.
+     */
     @Override
     protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage)
             throws IOException, HttpMessageNotReadableException {
-        throw new UnsupportedOperationException("CSV reading is not supported");
+        MediaType contentType = inputMessage.getHeaders().getContentType();
+        Charset charset = contentType != null && contentType.getCharset() != null
+                ? contentType.getCharset()
+                : StandardCharsets.UTF_8;
+        try {
+            return new CsvRows(new InputStreamReader(inputMessage.getBody(), charset));
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("Invalid CSV header: " + e.getMessage(), e, inputMessage);
+        }
     }
 
     @Override
@@ -47,6 +71,15 @@ public class CsvHttpMessageConverter extends AbstractHttpMessageConverter<Object
         outputMessage.getHeaders().setContentType(MediaType.parseMediaType("text/csv; charset=UTF-8"));
         
         try (Writer writer = new OutputStreamWriter(outputMessage.getBody(), StandardCharsets.UTF_8)) {
+            if (object instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof Record) {
+                writeRecords(writer, list);
+                return;
+            }
+            if (object instanceof FleetOverview overview) {
+                writeSections(writer, overview.sections());
+                return;
+            }
+
             // Convert object to List<Map> structure
             List<Map<String, Object>> rows = convertToMapList(object);
             
@@ -82,6 +115,62 @@ public class CsvHttpMessageConverter extends AbstractHttpMessageConverter<Object
         }
     }
 
+    /**
+     * Write a list of records straight from their accessors, without an intermediate map
+     * per row. Column names follow the record's Jackson naming, as in JSON and XML.
+     */
+    private void writeRecords(Writer writer, List<?> rows) throws IOException {
+        List<BeanPropertyDefinition> columns = recordColumns.computeIfAbsent(rows.get(0).getClass(),
+                type -> objectMapper.getSerializationConfig()
+                        .introspect(objectMapper.constructType(type))
+                        .findProperties());
+
+        writer.write(String.join(",", columns.stream()
+                .map(column -> escapeCsvValue(column.getName()))
+                .toArray(String[]::new)));
+        writer.write("\r\n");
+
+        for (Object row : rows) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    writer.write(",");
+                }
+                Object value = columns.get(i).getAccessor().getValue(row);
+                writer.write(escapeCsvValue(value != null ? value.toString() : ""));
+            }
+            writer.write("\r\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write a summary row per section, then each section's rows as their own table after a
+     * blank line and a line with the section's name. Sections without rows end at the name.
+     */
+    private void writeSections(Writer writer, Map<String, FleetOverview.Section<?>> sections) throws IOException {
+        writer.write("section,state,elapsed_millis,error\r\n");
+        for (Map.Entry<String, FleetOverview.Section<?>> entry : sections.entrySet()) {
+            FleetOverview.Section<?> section = entry.getValue();
+            writer.write(String.join(",",
+                    escapeCsvValue(entry.getKey()),
+                    section.state().name(),
+                    String.valueOf(section.elapsedMillis()),
+                    escapeCsvValue(section.error())));
+            writer.write("\r\n");
+        }
+
+        for (Map.Entry<String, FleetOverview.Section<?>> entry : sections.entrySet()) {
+            writer.write("\r\n");
+            writer.write(escapeCsvValue(entry.getKey()));
+            writer.write("\r\n");
+            List<?> rows = entry.getValue().rows();
+            if (rows != null && !rows.isEmpty()) {
+                writeRecords(writer, rows);
+            }
+        }
+        writer.flush();
+    }
+
     /**
      * Convert object to List<Map<String, Object>> structure
      */
@@ -0,0 +1,134 @@
+package com.fleetmaster.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming RFC 4180 reader over a CSV request body. The first record is the header; every
+ * further record is read on demand, so an upload is never held in memory as a whole.
+ * Quoted fields may contain commas, doubled quotes and line breaks; both CRLF and LF line
+ * endings are accepted, and blank lines are skipped.
+ */
+public final class CsvRows implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> record = new ArrayList<>();
+    private final List<String> header;
+    private int position;
+    private int limit;
+    private long line = 1;
+    private long recordLine;
+
+    public CsvRows(Reader reader) throws IOException {
+        this.reader = reader;
+        // Spreadsheet exports often start with a byte order mark
+        if (read() != '\uFEFF') {
+            unread();
+        }
+        String[] first = next();
+        this.header = first == null ? List.of() : List.of(first);
+    }
+
+    public List<String> getHeader() {
+        return header;
+    }
+
+    /**
+     * The line of the file on which the last returned record started; the header is line 1.
+     */
+    public long getLine() {
+        return recordLine;
+    }
+
+    /**
+     * The next record, or null at the end of the input.
+     */
+    public String[] next() throws IOException {
+        record.clear();
+        int c;
+        do {
+            recordLine = line;
+            c = read();
+            if (c == '\n') {
+                line++;
+            }
+        } while (c == '\n' || c == '\r');
+        if (c < 0) {
+            return null;
+        }
+
+        while (true) {
+            field.setLength(0);
+            if (c == '"') {
+                c = readQuoted();
+            }
+            while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                field.append((char) c);
+                c = read();
+            }
+            record.add(field.toString());
+
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r' && read() != '\n') {
+                unread();
+            }
+            if (c >= 0) {
+                line++;
+            }
+            return record.toArray(String[]::new);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Reads a quoted field up to its closing quote; returns the character after it
+    private int readQuoted() throws IOException {
+        long startLine = line;
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Unterminated quoted field starting on line " + startLine);
+            }
+            if (c == '"') {
+                c = read();
+                if (c != '"') {
+                    return c;
+                }
+            } else if (c == '\n') {
+                line++;
+            }
+            field.append((char) c);
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread() {
+        if (position > 0) {
+            position--;
+        }
+    }
+}
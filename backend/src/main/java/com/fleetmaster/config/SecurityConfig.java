@@ -1,5 +1,6 @@
 package com.fleetmaster.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -35,7 +36,7 @@ public class SecurityConfig {
     
     configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "HEAD"));
     configuration.setAllowedHeaders(Arrays.asList("*"));
-    configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With"));
+    configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With", "X-Next-Cursor"));
     configuration.setAllowCredentials(true);
     configuration.setMaxAge(3600L);
 
@@ -50,6 +51,10 @@ public class SecurityConfig {
         .cors(cors -> cors.configurationSource(corsConfigurationSource()))
         .csrf(csrf -> csrf.disable())
         .authorizeHttpRequests(auth -> auth
+            // Completion of an already authorized async request (tracking stream), which
+            // runs without the JWT filter
+            .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
             // Public endpoints - no authentication required
             .requestMatchers("/api/auth/register").permitAll()
             .requestMatchers("/api/auth/login").permitAll()
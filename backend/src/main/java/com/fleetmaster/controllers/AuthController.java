@@ -2,19 +2,26 @@ package com.fleetmaster.controllers;
 
 import com.fleetmaster.dtos.ApiLoginDto;
 import com.fleetmaster.dtos.ApiRegisterDto;
+import com.fleetmaster.dtos.CreateApiKeyDto;
 import com.fleetmaster.dtos.EmailDto;
 import com.fleetmaster.dtos.LoginDto;
 import com.fleetmaster.dtos.RegisterDto;
 import com.fleetmaster.dtos.VerifyCodeDto;
 import com.fleetmaster.dtos.PasswordRecoveryRequestDto;
 import com.fleetmaster.dtos.PasswordResetDto;
+import com.fleetmaster.security.AccountPrincipal;
+import com.fleetmaster.security.ApiKeyIndex;
+import com.fleetmaster.security.ClientAddressResolver;
+import com.fleetmaster.services.ApiKeyService;
 import com.fleetmaster.services.AuthService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -25,9 +32,14 @@ import org.springframework.web.bind.annotation.*;
 @Tag(name = "Authentication", description = "Endpoints for user registration, login, and verification")
 public class AuthController {
     private final AuthService authService;
+    private final ApiKeyService apiKeyService;
+    private final ClientAddressResolver clientAddressResolver;
 
-    public AuthController(AuthService authService) {
+    public AuthController(AuthService authService, ApiKeyService apiKeyService,
+            ClientAddressResolver clientAddressResolver) {
         this.authService = authService;
+        this.apiKeyService = apiKeyService;
+        this.clientAddressResolver = clientAddressResolver;
     }
 
     @Operation(summary = "Register a new company account", description = "Creates a new company account and sends a verification code via email. Either provide companyId to join existing company or companyName to create new company.")
@@ -47,14 +59,15 @@ public class AuthController {
     @Operation(summary = "Login to company account", description = "Authenticates a user and returns a JWT token.")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Login successful, returns JWT token"),
-        @ApiResponse(responseCode = "401", description = "Invalid credentials")
+        @ApiResponse(responseCode = "401", description = "Invalid credentials"),
+        @ApiResponse(responseCode = "429", description = "Too many failed attempts")
     })
     @PostMapping(value = "/login", consumes = {
         MediaType.APPLICATION_JSON_VALUE,
         MediaType.APPLICATION_XML_VALUE
     })
-    public ResponseEntity<Object> login(@RequestBody LoginDto dto) {
-        String token = authService.login(dto);
+    public ResponseEntity<Object> login(@RequestBody LoginDto dto, HttpServletRequest request) {
+        String token = authService.login(dto, clientAddressResolver.resolve(request));
         return ResponseEntity.ok().body(java.util.Map.of("token", token));
     }
 
@@ -78,6 +91,64 @@ public class AuthController {
         return ResponseEntity.ok().body(java.util.Map.of("token", token));
     }
 
+    @Operation(summary = "Create API key", description = "Issues a long-lived API key for the logged-in API account. The key is only returned once; send it in the X-API-Key header. Scopes are <resource>:<read|write> (e.g. orders:read) or *.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "API key created"),
+        @ApiResponse(responseCode = "400", description = "Invalid scopes or inactive account"),
+        @ApiResponse(responseCode = "403", description = "Not logged in with an API account password")
+    })
+    @PostMapping(value = "/api-keys", consumes = {
+        MediaType.APPLICATION_JSON_VALUE,
+        MediaType.APPLICATION_XML_VALUE
+    })
+    public ResponseEntity<Object> createApiKey(@RequestBody CreateApiKeyDto dto, Authentication authentication) {
+        if (!canManageApiKeys(authentication)) {
+            return ResponseEntity.status(403).body("API keys can only be managed by a logged-in API account");
+        }
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok(apiKeyService.createKey(principal.id(), dto));
+    }
+
+    @Operation(summary = "List API keys", description = "Lists the API keys of the logged-in API account without their secrets.")
+    @ApiResponse(responseCode = "200", description = "API keys retrieved")
+    @GetMapping("/api-keys")
+    public ResponseEntity<Object> listApiKeys(Authentication authentication) {
+        if (!canManageApiKeys(authentication)) {
+            return ResponseEntity.status(403).body("API keys can only be managed by a logged-in API account");
+        }
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok(apiKeyService.listKeys(principal.id()));
+    }
+
+    @Operation(summary = "Rotate API key", description = "Revokes the key and returns a replacement with the same name, scopes and expiry.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "API key rotated"),
+        @ApiResponse(responseCode = "400", description = "API key not found")
+    })
+    @PostMapping("/api-keys/{id}/rotate")
+    public ResponseEntity<Object> rotateApiKey(@PathVariable Long id, Authentication authentication) {
+        if (!canManageApiKeys(authentication)) {
+            return ResponseEntity.status(403).body("API keys can only be managed by a logged-in API account");
+        }
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok(apiKeyService.rotateKey(principal.id(), id));
+    }
+
+    @Operation(summary = "Revoke API key", description = "Revokes the key immediately.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "API key revoked"),
+        @ApiResponse(responseCode = "400", description = "API key not found")
+    })
+    @DeleteMapping("/api-keys/{id}")
+    public ResponseEntity<Object> revokeApiKey(@PathVariable Long id, Authentication authentication) {
+        if (!canManageApiKeys(authentication)) {
+            return ResponseEntity.status(403).body("API keys can only be managed by a logged-in API account");
+        }
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        apiKeyService.revokeKey(principal.id(), id);
+        return ResponseEntity.ok("API key revoked.");
+    }
+
     @Operation(summary = "Send verification code", description = "Resends the verification code to the registered email.")
     @ApiResponse(responseCode = "200", description = "Verification code sent")
     @PostMapping(value = "/verify/code/send", consumes = {
@@ -98,15 +169,15 @@ public class AuthController {
         MediaType.APPLICATION_JSON_VALUE,
         MediaType.APPLICATION_XML_VALUE
     })
-    public ResponseEntity<Object> checkCode(@RequestBody VerifyCodeDto dto) {
-        authService.checkVerifyCode(dto);
+    public ResponseEntity<Object> checkCode(@RequestBody VerifyCodeDto dto, HttpServletRequest request) {
+        authService.checkVerifyCode(dto, clientAddressResolver.resolve(request));
         return ResponseEntity.ok("Verification checked.");
     }
 
     @Operation(summary = "Get current user info", description = "Returns details of the currently authenticated user.")
     @ApiResponse(responseCode = "200", description = "User details retrieved")
     @GetMapping("/me")
-    public ResponseEntity<Object> me(org.springframework.security.core.Authentication authentication) {
+    public ResponseEntity<Object> me(Authentication authentication) {
         return ResponseEntity.ok(authentication.getPrincipal());
     }
 
@@ -137,4 +208,13 @@ public class AuthController {
         authService.resetPassword(dto.getToken(), dto.getNewPassword());
         return ResponseEntity.ok("Password reset successful.");
     }
+
+    // Keys can only mint or revoke keys when the caller proved the account password, not with a key
+    private boolean canManageApiKeys(Authentication authentication) {
+        return authentication != null
+                && authentication.getPrincipal() instanceof AccountPrincipal principal
+                && AccountPrincipal.TYPE_API.equals(principal.type())
+                && authentication.getAuthorities().stream()
+                        .noneMatch(authority -> ApiKeyIndex.AUTHORITY.equals(authority.getAuthority()));
+    }
 }
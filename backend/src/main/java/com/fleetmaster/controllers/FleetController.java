@@ -1,7 +1,9 @@
 package com.fleetmaster.controllers;
 
-import com.fleetmaster.entities.CompanyAccount;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.FleetService;
+import com.fleetmaster.services.TrackingStreamService;
+import com.fleetmaster.services.VehiclePositionIndex;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -11,6 +13,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -23,9 +26,14 @@ import org.springframework.web.bind.annotation.RestController;
 public class FleetController {
 
     private final FleetService fleetService;
+    private final TrackingStreamService trackingStreamService;
+    private final VehiclePositionIndex vehiclePositionIndex;
 
-    public FleetController(FleetService fleetService) {
+    public FleetController(FleetService fleetService, TrackingStreamService trackingStreamService,
+            VehiclePositionIndex vehiclePositionIndex) {
         this.fleetService = fleetService;
+        this.trackingStreamService = trackingStreamService;
+        this.vehiclePositionIndex = vehiclePositionIndex;
     }
 
     @Operation(summary = "Ping endpoint", description = "Simple health check endpoint.")
@@ -42,11 +50,28 @@ public class FleetController {
     })
     @GetMapping("/status")
     public ResponseEntity<?> getFleetStatus(Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("Company account does not belong to a company.");
         }
-        return ResponseEntity.ok(fleetService.getFleetStatus(companyAccount.getCompanyId()));
+        return ResponseEntity.ok(fleetService.getFleetStatus(principal.companyId()));
+    }
+
+    @Operation(summary = "Get fleet overview", description = "Retrieves fleet status, order tracking and subscription usage in one response. "
+            + "The three sections are loaded concurrently and each reports its state (OK, FAILED or TIMED_OUT) and how long it took; "
+            + "a section that failed or timed out has no rows and an error, the others are returned as usual. "
+            + "As CSV, a summary of the sections comes first, then each section's rows under a line with its name.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Fleet overview retrieved, see each section's state"),
+        @ApiResponse(responseCode = "400", description = "Company account not valid")
+    })
+    @GetMapping("/overview")
+    public ResponseEntity<?> getOverview(Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("Company account does not belong to a company.");
+        }
+        return ResponseEntity.ok(fleetService.getOverview(principal.companyId()));
     }
 
     @Operation(summary = "Get order tracking", description = "Retrieves real-time tracking information for all active orders.")
@@ -56,11 +81,48 @@ public class FleetController {
     })
     @GetMapping("/tracking")
     public ResponseEntity<?> getOrderTracking(Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("Company account does not belong to a company.");
+        }
+        return ResponseEntity.ok(fleetService.getOrderTracking(principal.companyId()));
+    }
+
+    @Operation(summary = "Stream order tracking", description = "Server-Sent Events feed of active order tracking. "
+            + "Sends a 'snapshot' event with the same rows as /tracking, then an 'update' event per changed order "
+            + "and a 'removed' event when an order is delivered, canceled or deleted.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Event stream opened"),
+        @ApiResponse(responseCode = "400", description = "Company account not valid")
+    })
+    @GetMapping(value = "/tracking/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamOrderTracking(Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("Company account does not belong to a company.");
+        }
+        return ResponseEntity.ok(trackingStreamService.subscribe(principal.companyId()));
+    }
+
+    @Operation(summary = "Find nearby vehicles", description = "Lists the company's vehicles whose last known position "
+            + "is within radiusKm of the given point, nearest first. Optionally only vehicles that can carry loadType.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Nearby vehicles retrieved"),
+        @ApiResponse(responseCode = "400", description = "Invalid coordinates, radius, load type or limit")
+    })
+    @GetMapping("/nearby")
+    public ResponseEntity<?> findNearbyVehicles(
+            Authentication authentication,
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam double radiusKm,
+            @RequestParam(required = false) String loadType,
+            @RequestParam(defaultValue = "" + VehiclePositionIndex.DEFAULT_LIMIT) int limit) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("Company account does not belong to a company.");
         }
-        return ResponseEntity.ok(fleetService.getOrderTracking(companyAccount.getCompanyId()));
+        return ResponseEntity.ok(vehiclePositionIndex.findNearby(principal.companyId(), lat, lon, radiusKm, loadType, limit));
     }
 
     @Operation(summary = "Get subscription usage", description = "Retrieves the company's subscription details and resource usage.")
@@ -70,10 +132,10 @@ public class FleetController {
     })
     @GetMapping("/subscription")
     public ResponseEntity<?> getSubscription(Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("Company account does not belong to a company.");
         }
-        return ResponseEntity.ok(fleetService.getSubscriptionUsage(companyAccount.getCompanyId()));
+        return ResponseEntity.ok(fleetService.getSubscriptionUsage(principal.companyId()));
     }
 }
@@ -1,6 +1,7 @@
 package com.fleetmaster.controllers;
 
 import com.fleetmaster.entities.*;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.InfoService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -35,11 +36,11 @@ public class InfoController {
             return ResponseEntity.status(401).body("Unauthorized");
         }
         
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (!companyAccount.isVerified()) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (!principal.verified()) {
             return ResponseEntity.status(403).body("Company account not verified");
         }
-        if ("BLOCKED".equals(companyAccount.getAccountStatus())) {
+        if ("BLOCKED".equals(principal.accountStatus())) {
             return ResponseEntity.status(403).body("Company account blocked");
         }
 
@@ -1,8 +1,13 @@
 package com.fleetmaster.controllers;
 
+import com.fleetmaster.config.CsvRows;
 import com.fleetmaster.dtos.AddProgressDto;
 import com.fleetmaster.dtos.CreateOrderDto;
-import com.fleetmaster.entities.CompanyAccount;
+import com.fleetmaster.dtos.CursorPage;
+import com.fleetmaster.dtos.ImportReport;
+import com.fleetmaster.dtos.OrderFilterDto;
+import com.fleetmaster.dtos.OrderRow;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -25,6 +30,8 @@ import java.util.Map;
 @Tag(name = "Orders", description = "Endpoints for managing transport orders")
 public class OrderController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final OrderService orderService;
 
     public OrderController(OrderService orderService) {
@@ -41,26 +48,65 @@ public class OrderController {
         MediaType.APPLICATION_XML_VALUE
     })
     public ResponseEntity<?> createOrder(@RequestBody CreateOrderDto dto, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
         
-        Long orderId = orderService.createOrder(companyAccount.getCompanyId(), dto);
+        Long orderId = orderService.createOrder(principal.companyId(), dto);
         return ResponseEntity.ok(Map.of("message", "Order created", "orderId", orderId));
     }
 
-    @Operation(summary = "Get all orders", description = "Retrieves all orders for the authenticated company.")
-    @ApiResponse(responseCode = "200", description = "List of orders retrieved")
+    @Operation(summary = "Import orders from CSV", description = "Creates orders from a text/csv upload with a header row and the columns vehicleId, driverId, pickUpLat, pickUpLon, deliveryLat, deliveryLon, loadType, departureTime, arrivalTime. "
+            + "Column names are matched ignoring case, spaces and underscores; other columns are ignored. Each row is validated like a single create; "
+            + "the response counts created and rejected rows and lists the first 1000 errors with their line number.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Import processed, see rejected rows"),
+        @ApiResponse(responseCode = "400", description = "Missing columns or unreadable CSV")
+    })
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<?> importOrders(@RequestBody CsvRows rows, Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
+        }
+
+        ImportReport report = orderService.importOrders(principal.companyId(), rows);
+        return ResponseEntity.ok(Map.of(
+                "message", "Order import processed",
+                "created", report.created(),
+                "rejected", report.rejected(),
+                "errors", report.errors()));
+    }
+
+    @Operation(summary = "Get all orders", description = "Retrieves the company's orders in id order, one page at a time. Optional filters: status, vehicleId, driverId, departureFrom/departureTo, arrivalFrom/arrivalTo (ISO date-time). When more rows exist, the X-Next-Cursor header holds the cursor for the next page.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Page of orders retrieved"),
+        @ApiResponse(responseCode = "400", description = "Invalid filter or cursor")
+    })
     @GetMapping
-    public ResponseEntity<?> getAllOrders(Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+    public ResponseEntity<?> getAllOrders(@ModelAttribute OrderFilterDto filter,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + OrderService.DEFAULT_PAGE_SIZE) int limit,
+            Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
+        }
+
+        return page(orderService.getOrders(principal.companyId(), filter, cursor, limit));
+    }
+
+    @Operation(summary = "Get order statistics", description = "Retrieves the company's order counts per status, on-time and late deliveries and the average transit time in seconds (departure to delivery). Served from counters that are updated with every order change.")
+    @ApiResponse(responseCode = "200", description = "Order statistics retrieved")
+    @GetMapping("/stats")
+    public ResponseEntity<?> getOrderStats(Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        List<Map<String, Object>> orders = orderService.getAllOrders(companyAccount.getCompanyId());
-        return ResponseEntity.ok(orders);
+        return ResponseEntity.ok(orderService.getOrderStats(principal.companyId()));
     }
 
     @Operation(summary = "Get order by ID", description = "Retrieves a specific order by its ID.")
@@ -70,12 +116,12 @@ public class OrderController {
     })
     @GetMapping("/{id}")
     public ResponseEntity<?> getOrderById(@PathVariable Long id, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        Map<String, Object> order = orderService.getOrderById(companyAccount.getCompanyId(), id);
+        OrderRow order = orderService.getOrderById(principal.companyId(), id);
         return ResponseEntity.ok(order);
     }
 
@@ -86,12 +132,12 @@ public class OrderController {
     })
     @PutMapping("/{id}/status")
     public ResponseEntity<?> updateOrderStatus(@PathVariable Long id, @RequestParam String status, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        orderService.updateOrderStatus(companyAccount.getCompanyId(), id, status);
+        orderService.updateOrderStatus(principal.companyId(), id, status);
         return ResponseEntity.ok(Map.of("message", "Order status updated", "orderId", id, "status", status));
     }
 
@@ -102,44 +148,96 @@ public class OrderController {
     })
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteOrder(@PathVariable Long id, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        orderService.deleteOrder(companyAccount.getCompanyId(), id);
+        orderService.deleteOrder(principal.companyId(), id);
         return ResponseEntity.ok(Map.of("message", "Order deleted", "orderId", id));
     }
 
-    @Operation(summary = "Add progress to order", description = "Adds a progress update to an existing order.")
+    @Operation(summary = "Add progress to order", description = "Adds a progress update to an existing order. When write-behind ingestion is enabled, plain STOP/STOPOVER position pings are queued and answered with 202.")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Progress added successfully"),
-        @ApiResponse(responseCode = "400", description = "Invalid input or order not found")
+        @ApiResponse(responseCode = "202", description = "Position ping queued for writing"),
+        @ApiResponse(responseCode = "400", description = "Invalid input or order not found"),
+        @ApiResponse(responseCode = "503", description = "Ping buffer full, retry shortly")
     })
     @PostMapping(value = "/progress", consumes = {
         MediaType.APPLICATION_JSON_VALUE,
         MediaType.APPLICATION_XML_VALUE
     })
     public ResponseEntity<?> addProgress(@RequestBody AddProgressDto dto, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        Long progressId = orderService.addProgress(companyAccount.getCompanyId(), dto);
+        if (orderService.queueProgress(principal.companyId(), dto)) {
+            return ResponseEntity.accepted().body(Map.of("message", "Progress accepted"));
+        }
+        Long progressId = orderService.addProgress(principal.companyId(), dto);
         return ResponseEntity.ok(Map.of("message", "Progress added", "progressId", progressId));
     }
 
-    @Operation(summary = "Get order progress", description = "Retrieves all progress updates for a specific order.")
-    @ApiResponse(responseCode = "200", description = "Progress history retrieved")
+    @Operation(summary = "Add progress in bulk", description = "Adds up to 1000 progress updates in one request, e.g. points buffered while a vehicle was offline. Each item is validated separately; the response lists the result per item in request order.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Batch processed, see per-item results"),
+        @ApiResponse(responseCode = "400", description = "Empty or oversized batch")
+    })
+    @PostMapping(value = "/progress/batch", consumes = {
+        MediaType.APPLICATION_JSON_VALUE,
+        MediaType.APPLICATION_XML_VALUE
+    })
+    public ResponseEntity<?> addProgressBatch(@RequestBody List<AddProgressDto> items, Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
+        }
+
+        List<Map<String, Object>> results = orderService.addProgressBatch(principal.companyId(), items);
+        long created = results.stream().filter(result -> "CREATED".equals(result.get("status"))).count();
+        return ResponseEntity.ok(Map.of(
+                "message", "Progress batch processed",
+                "created", created,
+                "rejected", results.size() - created,
+                "results", results));
+    }
+
+    @Operation(summary = "Get order progress", description = "Retrieves the progress updates of an order in time order, one page at a time. When more rows exist, the X-Next-Cursor header holds the cursor for the next page. "
+            + "With simplify (meters) and/or maxPoints the whole route is returned at once, with STOP/STOPOVER pings thinned for drawing; all other events are always kept.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Page of progress history retrieved"),
+        @ApiResponse(responseCode = "400", description = "Order not found, invalid cursor or invalid simplification")
+    })
     @GetMapping("/{id}/progress")
-    public ResponseEntity<?> getOrderProgress(@PathVariable Long id, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+    public ResponseEntity<?> getOrderProgress(@PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + OrderService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) Double simplify,
+            @RequestParam(required = false) Integer maxPoints,
+            Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        List<Map<String, Object>> progress = orderService.getOrderProgress(companyAccount.getCompanyId(), id);
-        return ResponseEntity.ok(progress);
+        if (simplify != null || maxPoints != null) {
+            if (cursor != null) {
+                return ResponseEntity.badRequest().body("A simplified route is not paginated; omit the cursor");
+            }
+            return ResponseEntity.ok(orderService.getSimplifiedOrderProgress(principal.companyId(), id, simplify, maxPoints));
+        }
+        return page(orderService.getOrderProgress(principal.companyId(), id, cursor, limit));
+    }
+
+    // The cursor travels in a header so JSON, XML and CSV bodies stay plain row lists
+    private ResponseEntity<?> page(CursorPage<?> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
     }
 }
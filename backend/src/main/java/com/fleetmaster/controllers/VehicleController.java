@@ -1,7 +1,10 @@
 package com.fleetmaster.controllers;
 
+import com.fleetmaster.config.CsvRows;
 import com.fleetmaster.dtos.CreateVehicleDto;
-import com.fleetmaster.entities.CompanyAccount;
+import com.fleetmaster.dtos.ImportReport;
+import com.fleetmaster.dtos.VehicleRow;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.VehicleService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -40,25 +43,68 @@ public class VehicleController {
         MediaType.APPLICATION_XML_VALUE
     })
     public ResponseEntity<?> createVehicle(@RequestBody CreateVehicleDto dto, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        Long vehicleId = vehicleService.createVehicle(companyAccount.getCompanyId(), dto);
+        Long vehicleId = vehicleService.createVehicle(principal.companyId(), dto);
         return ResponseEntity.ok(Map.of("message", "Vehicle created", "vehicleId", vehicleId));
     }
 
+    @Operation(summary = "Create vehicles in bulk", description = "Creates up to 5000 vehicles in one request and assigns them to the authenticated company. "
+            + "The subscription's vehicle limit is checked once for the whole batch; if any vehicle is invalid or the batch does not fit the limit, none are created. "
+            + "The new ids are returned in the order the vehicles were given.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Vehicles created successfully"),
+        @ApiResponse(responseCode = "400", description = "Invalid vehicle, too many vehicles or vehicle limit exceeded")
+    })
+    @PostMapping(value = "/batch", consumes = {
+        MediaType.APPLICATION_JSON_VALUE,
+        MediaType.APPLICATION_XML_VALUE
+    })
+    public ResponseEntity<?> createVehicles(@RequestBody List<CreateVehicleDto> dtos, Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
+        }
+
+        List<Long> vehicleIds = vehicleService.createVehicles(principal.companyId(), dtos);
+        return ResponseEntity.ok(Map.of("message", "Vehicles created", "count", vehicleIds.size(), "vehicleIds", vehicleIds));
+    }
+
+    @Operation(summary = "Import vehicles from CSV", description = "Creates vehicles from a text/csv upload with a header row and the columns loadCapacity, type, yearOfManufacture, loadTypes (e.g. NORMAL;HAZARDOUS), lastOdometer. "
+            + "Column names are matched ignoring case, spaces and underscores; other columns are ignored. Each row is validated like a single create; "
+            + "the response counts created and rejected rows and lists the first 1000 errors with their line number.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Import processed, see rejected rows"),
+        @ApiResponse(responseCode = "400", description = "Missing columns or unreadable CSV")
+    })
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<?> importVehicles(@RequestBody CsvRows rows, Authentication authentication) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
+            return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
+        }
+
+        ImportReport report = vehicleService.importVehicles(principal.companyId(), rows);
+        return ResponseEntity.ok(Map.of(
+                "message", "Vehicle import processed",
+                "created", report.created(),
+                "rejected", report.rejected(),
+                "errors", report.errors()));
+    }
+
     @Operation(summary = "Get all vehicles", description = "Retrieves all vehicles for the authenticated company.")
     @ApiResponse(responseCode = "200", description = "List of vehicles retrieved")
     @GetMapping
     public ResponseEntity<?> getAllVehicles(Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        List<Map<String, Object>> vehicles = vehicleService.getAllVehicles(companyAccount.getCompanyId());
+        List<VehicleRow> vehicles = vehicleService.getAllVehicles(principal.companyId());
         return ResponseEntity.ok(vehicles);
     }
 
@@ -69,12 +115,12 @@ public class VehicleController {
     })
     @GetMapping("/{id}")
     public ResponseEntity<?> getVehicleById(@PathVariable Long id, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        Map<String, Object> vehicle = vehicleService.getVehicleById(companyAccount.getCompanyId(), id);
+        VehicleRow vehicle = vehicleService.getVehicleById(principal.companyId(), id);
         return ResponseEntity.ok(vehicle);
     }
 
@@ -88,12 +134,12 @@ public class VehicleController {
         MediaType.APPLICATION_XML_VALUE
     })
     public ResponseEntity<?> updateVehicle(@PathVariable Long id, @RequestBody CreateVehicleDto dto, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        vehicleService.updateVehicle(companyAccount.getCompanyId(), id, dto);
+        vehicleService.updateVehicle(principal.companyId(), id, dto);
         return ResponseEntity.ok(Map.of("message", "Vehicle updated", "vehicleId", id));
     }
 
@@ -104,12 +150,12 @@ public class VehicleController {
     })
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteVehicle(@PathVariable Long id, Authentication authentication) {
-        CompanyAccount companyAccount = (CompanyAccount) authentication.getPrincipal();
-        if (companyAccount.getCompanyId() == null) {
+        AccountPrincipal principal = (AccountPrincipal) authentication.getPrincipal();
+        if (principal.companyId() == null) {
             return ResponseEntity.badRequest().body("CompanyAccount does not belong to a company");
         }
 
-        vehicleService.deleteVehicle(companyAccount.getCompanyId(), id);
+        vehicleService.deleteVehicle(principal.companyId(), id);
         return ResponseEntity.ok(Map.of("message", "Vehicle deleted", "vehicleId", id));
     }
 }
@@ -0,0 +1,24 @@
+package com.fleetmaster.dtos;
+
+import jakarta.validation.constraints.*;
+import java.util.List;
+
+public class CreateApiKeyDto {
+    @NotBlank(message = "Name is required")
+    @Size(max = 100, message = "Name must not exceed 100 characters")
+    private String name;
+
+    @NotEmpty(message = "At least one scope is required")
+    private List<String> scopes; // e.g. orders:read, fleet:write, *
+
+    @Min(value = 1, message = "Expiry must be at least one day")
+    private Integer expiresInDays; // optional, never expires when null
+
+    // Getters and Setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public List<String> getScopes() { return scopes; }
+    public void setScopes(List<String> scopes) { this.scopes = scopes; }
+    public Integer getExpiresInDays() { return expiresInDays; }
+    public void setExpiresInDays(Integer expiresInDays) { this.expiresInDays = expiresInDays; }
+}
@@ -0,0 +1,48 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The dashboard's fleet status, order tracking and subscription usage in one document.
+ * Each section is loaded on its own and reports its own outcome, so a section that failed
+ * or ran out of time has no rows while the others still do.
+ */
+public record FleetOverview(
+        Section<FleetStatusRow> status,
+        Section<TrackingRow> tracking,
+        Section<SubscriptionUsageRow> subscription) {
+
+    public enum State {
+        OK,
+        FAILED,
+        TIMED_OUT
+    }
+
+    /**
+     * rows is null unless state is OK; error says why it is not.
+     */
+    public record Section<T>(State state, long elapsedMillis, List<T> rows, String error) {
+
+        public static <T> Section<T> ok(long elapsedMillis, List<T> rows) {
+            return new Section<>(State.OK, elapsedMillis, rows, null);
+        }
+
+        public static <T> Section<T> unavailable(State state, long elapsedMillis, String error) {
+            return new Section<>(state, elapsedMillis, null, error);
+        }
+    }
+
+    // By name in document order, for writers that walk the sections
+    @JsonIgnore
+    public Map<String, Section<?>> sections() {
+        Map<String, Section<?>> sections = new LinkedHashMap<>();
+        sections.put("status", status);
+        sections.put("tracking", tracking);
+        sections.put("subscription", subscription);
+        return sections;
+    }
+}
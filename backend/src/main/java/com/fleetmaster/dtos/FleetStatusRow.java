@@ -0,0 +1,19 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+/**
+ * One row of vw_fleet_status.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record FleetStatusRow(
+        Long companyId,
+        long vehicleId,
+        String vehicleType,
+        Long loadCapacity,
+        String loadType,
+        String sensorData,
+        Long lastOdometer,
+        String currentMaintenanceStatus) {
+}
@@ -0,0 +1,13 @@
+package com.fleetmaster.dtos;
+
+import java.util.List;
+
+/**
+ * Outcome of a CSV import. Rejected rows are listed by the line of the file they start on;
+ * only the first errors are listed, rejected always counts them all.
+ */
+public record ImportReport(long created, long rejected, List<RowError> errors) {
+
+    public record RowError(long line, String error) {
+    }
+}
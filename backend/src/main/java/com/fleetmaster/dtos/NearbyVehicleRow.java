@@ -0,0 +1,20 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A vehicle near a point, with its last known position and the great-circle distance to it.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record NearbyVehicleRow(
+        long vehicleId,
+        double distanceKm,
+        double lat,
+        double lon,
+        LocalDateTime lastUpdateTime,
+        List<String> loadType) {
+}
@@ -0,0 +1,41 @@
+package com.fleetmaster.dtos;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import java.time.LocalDateTime;
+
+/**
+ * Optional query-string filters for order listings; unset fields do not filter.
+ */
+public class OrderFilterDto {
+    private String status; // PENDING, IN_TRANSIT, DELIVERED, CANCELED
+    private Long vehicleId;
+    private Long driverId;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime departureFrom;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime departureTo;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime arrivalFrom;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime arrivalTo;
+
+    // Getters and Setters
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public Long getVehicleId() { return vehicleId; }
+    public void setVehicleId(Long vehicleId) { this.vehicleId = vehicleId; }
+    public Long getDriverId() { return driverId; }
+    public void setDriverId(Long driverId) { this.driverId = driverId; }
+    public LocalDateTime getDepartureFrom() { return departureFrom; }
+    public void setDepartureFrom(LocalDateTime departureFrom) { this.departureFrom = departureFrom; }
+    public LocalDateTime getDepartureTo() { return departureTo; }
+    public void setDepartureTo(LocalDateTime departureTo) { this.departureTo = departureTo; }
+    public LocalDateTime getArrivalFrom() { return arrivalFrom; }
+    public void setArrivalFrom(LocalDateTime arrivalFrom) { this.arrivalFrom = arrivalFrom; }
+    public LocalDateTime getArrivalTo() { return arrivalTo; }
+    public void setArrivalTo(LocalDateTime arrivalTo) { this.arrivalTo = arrivalTo; }
+}
@@ -0,0 +1,22 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of orders. Points are in PostgreSQL text form, e.g. "(52.37,4.89)".
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record OrderRow(
+        long id,
+        String pickUp,
+        String delivery,
+        String loadType,
+        LocalDateTime departureTime,
+        LocalDateTime arrivalTime,
+        String status,
+        Long vehicleId,
+        Long driverId) {
+}
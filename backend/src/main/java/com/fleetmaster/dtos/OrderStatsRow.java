@@ -0,0 +1,22 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+/**
+ * A company's order_stats counters. onTime and late only count deliveries with a planned
+ * arrival; averageTransitSeconds is null until an order with a planned departure is delivered.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record OrderStatsRow(
+        long total,
+        long pending,
+        long inTransit,
+        long delivered,
+        long canceled,
+        long onTime,
+        long late,
+        Double averageTransitSeconds) {
+
+    public static final OrderStatsRow EMPTY = new OrderStatsRow(0, 0, 0, 0, 0, 0, 0, null);
+}
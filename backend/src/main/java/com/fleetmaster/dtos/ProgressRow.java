@@ -0,0 +1,19 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of progress. The description is the JSONB document as text.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record ProgressRow(
+        long id,
+        Long orderId,
+        String currentPos,
+        LocalDateTime time,
+        String type,
+        String description) {
+}
@@ -0,0 +1,18 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+/**
+ * One row of vw_subscription_usage.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record SubscriptionUsageRow(
+        long companyId,
+        String companyName,
+        String licenseTier,
+        Long maxVehicles,
+        Long maxDrivers,
+        long currentVehicles,
+        long currentDrivers) {
+}
@@ -0,0 +1,24 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of vw_order_tracking: an active order with its latest progress, if any. Points
+ * are in PostgreSQL text form, e.g. "(52.37,4.89)", as in the order_tracking notifications.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record TrackingRow(
+        long orderId,
+        Long companyId,
+        Long driverId,
+        Long vehicleId,
+        String orderStatus,
+        String pickUp,
+        String delivery,
+        String lastProgressEvent,
+        String lastKnownLocation,
+        LocalDateTime lastUpdateTime) {
+}
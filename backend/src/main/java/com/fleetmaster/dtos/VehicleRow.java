@@ -0,0 +1,22 @@
+package com.fleetmaster.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * One row of vehicles. The sensor data is the JSONB document as text.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record VehicleRow(
+        long id,
+        Long loadCapacity,
+        String type,
+        LocalDate yearOfManufacture,
+        List<String> loadType,
+        Long maintenanceId,
+        Long lastOdometer,
+        String sensorData) {
+}
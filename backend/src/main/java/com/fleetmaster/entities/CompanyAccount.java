@@ -79,6 +79,12 @@ public class CompanyAccount {
     @Column(name = "preferences", columnDefinition = "jsonb")
     private Map<String, Object> preferences;
 
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion = 0;
+
+    @Column(name = "tokens_revoked_at")
+    private LocalDateTime tokensRevokedAt;
+
     public Long getId() {
         return id;
     }
@@ -210,4 +216,20 @@ public class CompanyAccount {
     public void setPreferences(Map<String, Object> preferences) {
         this.preferences = preferences;
     }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public void setTokenVersion(int tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
+
+    public LocalDateTime getTokensRevokedAt() {
+        return tokensRevokedAt;
+    }
+
+    public void setTokensRevokedAt(LocalDateTime tokensRevokedAt) {
+        this.tokensRevokedAt = tokensRevokedAt;
+    }
 }
@@ -2,8 +2,17 @@ package com.fleetmaster.repositories;
 
 import com.fleetmaster.entities.ApiAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface ApiAccountRepository extends JpaRepository<ApiAccount, Long> {
     Optional<ApiAccount> findByUsername(String username);
+
+    // (id, token_version, tokens_revoked_at) rows, read by TokenVersionRegistry
+    @Query("SELECT a.id, a.tokenVersion, a.tokensRevokedAt FROM ApiAccount a WHERE a.tokensRevokedAt > :since")
+    List<Object[]> findTokenRevocationsSince(@Param("since") LocalDateTime since);
 }
@@ -0,0 +1,19 @@
+package com.fleetmaster.repositories;
+
+import com.fleetmaster.entities.ApiKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
+    List<ApiKey> findByApiAccountIdOrderByIdDesc(Long apiAccountId);
+
+    Optional<ApiKey> findByIdAndApiAccountId(Long id, Long apiAccountId);
+
+    // (ApiKey, username) pairs for every key that can currently authenticate, read by ApiKeyIndex
+    @Query("SELECT k, a.username FROM ApiKey k, ApiAccount a " +
+            "WHERE a.id = k.apiAccountId AND k.active = true AND a.active = true")
+    List<Object[]> findUsableWithUsername();
+}
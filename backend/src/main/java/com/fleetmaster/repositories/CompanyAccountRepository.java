@@ -2,8 +2,23 @@ package com.fleetmaster.repositories;
 
 import com.fleetmaster.entities.CompanyAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface CompanyAccountRepository extends JpaRepository<CompanyAccount, Long> {
     Optional<CompanyAccount> findByEmail(String email);
+
+    // LOWER() on both sides so idx_company_account_email_lower serves the lookup
+    // (a derived IgnoreCase finder would compile to UPPER() and miss the index).
+    // A list: emails are only unique as written, so accounts may differ only in case
+    @Query("SELECT a FROM CompanyAccount a WHERE LOWER(a.email) = LOWER(:email)")
+    List<CompanyAccount> findAllByEmailIgnoreCase(@Param("email") String email);
+
+    // (id, token_version, tokens_revoked_at) rows, read by TokenVersionRegistry
+    @Query("SELECT a.id, a.tokenVersion, a.tokensRevokedAt FROM CompanyAccount a WHERE a.tokensRevokedAt > :since")
+    List<Object[]> findTokenRevocationsSince(@Param("since") LocalDateTime since);
 }
@@ -0,0 +1,47 @@
+package com.fleetmaster.security;
+
+import com.fleetmaster.entities.ApiAccount;
+import com.fleetmaster.entities.CompanyAccount;
+import com.fleetmaster.entities.UserRole;
+
+import java.util.List;
+
+/**
+ * Slim, immutable view of an authenticated account. This is what JwtFilter puts in the
+ * SecurityContext, so request handling never carries the full JPA entity around.
+ */
+public record AccountPrincipal(
+    String type,
+    Long id,
+    Long companyId,
+    String subject,
+    List<UserRole> roles,
+    String accountStatus,
+    boolean verified
+) {
+
+  public static final String TYPE_COMPANY = "COMPANY";
+  public static final String TYPE_API = "API";
+
+  public static AccountPrincipal of(CompanyAccount account) {
+    return new AccountPrincipal(
+        TYPE_COMPANY,
+        account.getId(),
+        account.getCompanyId(),
+        account.getEmail(),
+        account.getRoles() == null ? List.of() : List.of(account.getRoles()),
+        account.getAccountStatus(),
+        account.isVerified());
+  }
+
+  public static AccountPrincipal of(ApiAccount account) {
+    return new AccountPrincipal(
+        TYPE_API,
+        account.getId(),
+        null,
+        account.getUsername(),
+        List.of(),
+        account.isActive() ? "ACTIVE" : "INACTIVE",
+        true);
+  }
+}
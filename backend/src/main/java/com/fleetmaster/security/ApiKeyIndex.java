@@ -0,0 +1,159 @@
+package com.fleetmaster.security;
+
+import com.fleetmaster.entities.ApiKey;
+import com.fleetmaster.repositories.ApiKeyRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of usable API keys keyed by their HMAC-SHA256 hash, so a key is
+ * verified with one HMAC and a map lookup instead of BCrypt and a database read.
+ *
+ * The index is reloaded from api_key periodically and updated directly by ApiKeyService
+ * after each commit. Both paths are serialized, so a reload that read the table before a
+ * revocation committed can never overwrite it.
+ */
+@Component
+public class ApiKeyIndex implements MeterBinder {
+
+  public static final String HEADER = "X-API-Key";
+  public static final String AUTHORITY = "API_KEY";
+
+  private static final Logger log = LoggerFactory.getLogger(ApiKeyIndex.class);
+
+  /**
+   * Authenticated view of one key. Scopes are "<resource>:<read|write>" where resource is
+   * the first path segment after /api (orders, fleet, vehicles...), or "*" for everything.
+   */
+  public record ApiKeyEntry(Long keyId, Long accountId, String username, Set<String> scopes,
+      LocalDateTime expiresAt) {
+
+    public boolean allows(String method, String path) {
+      if (scopes.contains("*")) {
+        return true;
+      }
+      String access = "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method) ? "read" : "write";
+      String resource = resource(path);
+      return scopes.contains(resource + ":" + access) || scopes.contains(resource + ":*");
+    }
+
+    public AccountPrincipal principal() {
+      return new AccountPrincipal(AccountPrincipal.TYPE_API, accountId, null, username, List.of(), "ACTIVE", true);
+    }
+
+    private static String resource(String path) {
+      String[] segments = Arrays.stream(path.split("/")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+      if (segments.length == 0) {
+        return "";
+      }
+      return "api".equals(segments[0]) && segments.length > 1 ? segments[1] : segments[0];
+    }
+  }
+
+  private final ApiKeyRepository apiKeyRepository;
+  private final SecretKeySpec hmacKey;
+  private final ThreadLocal<Mac> macs;
+  private final Map<String, ApiKeyEntry> entries = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private volatile boolean loaded;
+
+  public ApiKeyIndex(
+      ApiKeyRepository apiKeyRepository,
+      @Value("${auth.api-keys.hmac-secret}") String hmacSecret) {
+    this.apiKeyRepository = apiKeyRepository;
+    this.hmacKey = new SecretKeySpec(hmacSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    // Mac is not thread-safe; one initialized instance per thread avoids re-keying per request
+    this.macs = ThreadLocal.withInitial(() -> {
+      try {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(hmacKey);
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("HmacSHA256 unavailable", e);
+      }
+    });
+  }
+
+  public String hash(String rawKey) {
+    return HexFormat.of().formatHex(macs.get().doFinal(rawKey.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Returns the entry for a raw key, or null when the key is unknown, revoked or expired.
+   */
+  public ApiKeyEntry authenticate(String rawKey) {
+    if (!loaded) {
+      reload();
+    }
+    ApiKeyEntry entry = entries.get(hash(rawKey));
+    if (entry == null || (entry.expiresAt() != null && entry.expiresAt().isBefore(LocalDateTime.now()))) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry;
+  }
+
+  public synchronized void put(ApiKey key, String username) {
+    entries.put(key.getKeyHash(), toEntry(key, username));
+  }
+
+  public synchronized void remove(String keyHash) {
+    entries.remove(keyHash);
+  }
+
+  @Scheduled(fixedDelayString = "${auth.api-keys.reload-interval-ms:30000}")
+  public synchronized void reload() {
+    try {
+      Map<String, ApiKeyEntry> usable = new HashMap<>();
+      for (Object[] row : apiKeyRepository.findUsableWithUsername()) {
+        ApiKey key = (ApiKey) row[0];
+        usable.put(key.getKeyHash(), toEntry(key, (String) row[1]));
+      }
+      entries.keySet().retainAll(usable.keySet());
+      entries.putAll(usable);
+      loaded = true;
+    } catch (RuntimeException e) {
+      // Keep serving the last loaded keys; the next run retries
+      log.warn("Failed to reload API keys: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("auth.api-keys.hits", hits, LongAdder::sum).register(registry);
+    FunctionCounter.builder("auth.api-keys.misses", misses, LongAdder::sum).register(registry);
+    Gauge.builder("auth.api-keys.size", entries, Map::size).register(registry);
+  }
+
+  private static ApiKeyEntry toEntry(ApiKey key, String username) {
+    Set<String> scopes = Arrays.stream(key.getScopes().split(","))
+        .map(String::trim)
+        .filter(scope -> !scope.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+    return new ApiKeyEntry(key.getId(), key.getApiAccountId(), username, scopes, key.getExpiresAt());
+  }
+}
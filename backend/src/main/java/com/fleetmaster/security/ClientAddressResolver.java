@@ -0,0 +1,114 @@
+package com.fleetmaster.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the address of the client behind a request for per-IP throttling. A request
+ * from a trusted proxy (auth.trusted-proxies: addresses or CIDR ranges) is attributed to
+ * the nearest untrusted hop in its X-Forwarded-For header; without that header the client
+ * is unknown and null is returned, so throttling falls back to the account alone instead
+ * of counting every client behind the proxy as one.
+ */
+@Component
+public class ClientAddressResolver {
+
+  private static final String FORWARDED_FOR = "X-Forwarded-For";
+  private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+  private final List<Range> trustedProxies = new ArrayList<>();
+
+  public ClientAddressResolver(@Value("${auth.trusted-proxies:}") List<String> trustedProxies) {
+    for (String proxy : trustedProxies) {
+      if (!proxy.isBlank()) {
+        this.trustedProxies.add(Range.parse(proxy.trim()));
+      }
+    }
+  }
+
+  public String resolve(HttpServletRequest request) {
+    String remoteAddr = request.getRemoteAddr();
+    if (!isTrusted(remoteAddr)) {
+      return remoteAddr;
+    }
+    String forwardedFor = request.getHeader(FORWARDED_FOR);
+    if (forwardedFor == null || forwardedFor.isBlank()) {
+      return null;
+    }
+    // Each proxy appends the address it received from; walk back past our own proxies
+    String[] hops = forwardedFor.split(",");
+    for (int i = hops.length - 1; i >= 0; i--) {
+      String hop = hops[i].trim();
+      if (!hop.isEmpty() && !isTrusted(hop)) {
+        return hop;
+      }
+    }
+    return null;
+  }
+
+  private boolean isTrusted(String address) {
+    if (trustedProxies.isEmpty() || address == null) {
+      return false;
+    }
+    byte[] bytes = Range.toBytes(address);
+    if (bytes == null) {
+      return false;
+    }
+    for (Range range : trustedProxies) {
+      if (range.contains(bytes)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private record Range(byte[] network, int prefixBits) {
+
+    static Range parse(String cidr) {
+      int slash = cidr.indexOf('/');
+      byte[] network = toBytes(slash < 0 ? cidr : cidr.substring(0, slash));
+      if (network == null) {
+        throw new IllegalArgumentException("Invalid trusted proxy address: " + cidr);
+      }
+      int prefixBits = slash < 0 ? network.length * 8 : Integer.parseInt(cidr.substring(slash + 1));
+      return new Range(network, prefixBits);
+    }
+
+    boolean contains(byte[] address) {
+      if (address.length != network.length) {
+        return false;
+      }
+      int fullBytes = prefixBits / 8;
+      for (int i = 0; i < fullBytes; i++) {
+        if (address[i] != network[i]) {
+          return false;
+        }
+      }
+      int remainingBits = prefixBits % 8;
+      if (remainingBits == 0) {
+        return true;
+      }
+      int mask = 0xFF << (8 - remainingBits) & 0xFF;
+      return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+    }
+
+    // Only literal addresses; a header value is never looked up in DNS
+    static byte[] toBytes(String address) {
+      if (address.indexOf(':') < 0 && !IPV4.matcher(address).matches()) {
+        return null;
+      }
+      try {
+        return InetAddress.getByName(address).getAddress();
+      } catch (UnknownHostException e) {
+        return null;
+      }
+    }
+  }
+}
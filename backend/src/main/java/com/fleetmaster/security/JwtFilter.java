@@ -1,9 +1,10 @@
 package com.fleetmaster.security;
 
-import com.fleetmaster.entities.CompanyAccount;
-import com.fleetmaster.entities.ApiAccount;
 import com.fleetmaster.services.AuthService;
+import io.jsonwebtoken.Claims;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -14,17 +15,26 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 @Component
 public class JwtFilter extends OncePerRequestFilter {
 
   private final JwtUtil jwtUtil;
   private final AuthService authService;
+  private final VerifiedTokenCache tokenCache;
+  private final TokenVersionRegistry tokenVersions;
+  private final ApiKeyIndex apiKeyIndex;
 
-  public JwtFilter(JwtUtil jwtUtil, AuthService authService) {
+  public JwtFilter(JwtUtil jwtUtil, AuthService authService, VerifiedTokenCache tokenCache,
+      TokenVersionRegistry tokenVersions, ApiKeyIndex apiKeyIndex) {
     this.jwtUtil = jwtUtil;
     this.authService = authService;
+    this.tokenCache = tokenCache;
+    this.tokenVersions = tokenVersions;
+    this.apiKeyIndex = apiKeyIndex;
   }
 
   @Override
@@ -38,33 +48,36 @@ public class JwtFilter extends OncePerRequestFilter {
       return;
     }
 
+    // Machine clients: one HMAC and a map lookup, no BCrypt and no database read
+    String apiKey = request.getHeader(ApiKeyIndex.HEADER);
+    if (apiKey != null) {
+      authenticateApiKey(apiKey, request);
+      filterChain.doFilter(request, response);
+      return;
+    }
+
     String authHeader = request.getHeader("Authorization");
 
     if (authHeader != null && authHeader.startsWith("Bearer ")) {
       String token = authHeader.substring(7);
       try {
-        String subject = jwtUtil.extractSubject(token);
-        String type = jwtUtil.extractType(token);
+        // Verify the token once; repeat requests with the same token skip the signature check
+        Claims claims = tokenCache.get(token);
+        if (claims == null) {
+          claims = jwtUtil.parseClaims(token);
+          tokenCache.put(token, claims);
+        }
+        String subject = claims.getSubject();
+        String type = jwtUtil.extractType(claims);
 
         if (subject != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-          if ("API".equals(type)) {
-               ApiAccount apiAccount = authService.getApiAccountByUsername(subject);
-               if (apiAccount != null && jwtUtil.validateToken(token, apiAccount.getUsername())) {
-                 // For now, no roles/authorities for API users, or we can add a simple "ROLE_API"
-                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                         apiAccount, null, Collections.emptyList());
-                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                 SecurityContextHolder.getContext().setAuthentication(authToken);
-               }
-          } else {
-             // Default to COMPANY if type is missing or matches
-              CompanyAccount companyAccount = authService.getCompanyAccountByEmail(subject);
-              if (companyAccount != null && jwtUtil.validateToken(token, companyAccount.getEmail())) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                    companyAccount, null, Collections.emptyList());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-              }
+          AccountPrincipal principal = resolvePrincipal(claims, type, subject);
+          if (principal != null && jwtUtil.validateClaims(claims, principal.subject())) {
+            // For now, no roles/authorities are mapped, API users included
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                principal, null, Collections.emptyList());
+            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
           }
         }
       } catch (Exception ignored) {
@@ -73,4 +86,34 @@ public class JwtFilter extends OncePerRequestFilter {
 
     filterChain.doFilter(request, response);
   }
+
+  private void authenticateApiKey(String apiKey, HttpServletRequest request) {
+    ApiKeyIndex.ApiKeyEntry entry = apiKeyIndex.authenticate(apiKey);
+    String path = request.getRequestURI().substring(request.getContextPath().length());
+    // A key outside its scopes stays unauthenticated, so protected endpoints answer 403
+    if (entry == null || !entry.allows(request.getMethod(), path)) {
+      return;
+    }
+    List<GrantedAuthority> authorities = new ArrayList<>();
+    authorities.add(new SimpleGrantedAuthority(ApiKeyIndex.AUTHORITY));
+    entry.scopes().forEach(scope -> authorities.add(new SimpleGrantedAuthority("SCOPE_" + scope)));
+    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+        entry.principal(), null, authorities);
+    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+    SecurityContextHolder.getContext().setAuthentication(authToken);
+  }
+
+  private AccountPrincipal resolvePrincipal(Claims claims, String type, String subject) {
+    // Stateless tokens carry the principal; only the revocation list is consulted
+    if (tokenVersions.isEnabled()) {
+      AccountPrincipal principal = jwtUtil.extractPrincipal(claims);
+      if (principal != null) {
+        return tokenVersions.isCurrent(principal.type(), principal.id(), jwtUtil.extractTokenVersion(claims))
+            ? principal
+            : null;
+      }
+    }
+    // Default to COMPANY if type is missing or matches
+    return authService.getPrincipal(type, subject);
+  }
 }
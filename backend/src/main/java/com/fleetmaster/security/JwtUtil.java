@@ -1,11 +1,14 @@
 package com.fleetmaster.security;
 
+import com.fleetmaster.entities.UserRole;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.List;
 
 @Component
 public class JwtUtil {
@@ -13,6 +16,18 @@ public class JwtUtil {
   private final String SECRET = "fleetmastersecretfhsdifgsduzfktsdufgsdt34zu2gwjhdsjhfdscjym"; // change to environment variable
   private final long EXPIRATION = 86400000; // 1 day in ms
 
+  // Claims carried by stateless tokens (see generateToken(AccountPrincipal, int))
+  private static final String CLAIM_ACCOUNT_ID = "uid";
+  private static final String CLAIM_COMPANY_ID = "cid";
+  private static final String CLAIM_ROLES = "roles";
+  private static final String CLAIM_STATUS = "status";
+  private static final String CLAIM_TOKEN_VERSION = "ver";
+
+  // Built once; JwtParser is immutable and thread-safe
+  private final JwtParser parser = Jwts.parserBuilder()
+      .setSigningKey(SECRET)
+      .build();
+
   public String generateToken(String subject) {
       return generateToken(subject, "COMPANY");
   }
@@ -27,8 +42,40 @@ public class JwtUtil {
         .compact();
   }
 
+  /**
+   * Issues a token that carries everything JwtFilter needs to rebuild the principal,
+   * so requests can be authenticated without loading the account.
+   */
+  public String generateToken(AccountPrincipal principal, int tokenVersion) {
+    return Jwts.builder()
+        .setSubject(principal.subject())
+        .claim("type", principal.type())
+        .claim(CLAIM_ACCOUNT_ID, principal.id())
+        .claim(CLAIM_COMPANY_ID, principal.companyId())
+        .claim(CLAIM_ROLES, principal.roles().stream().map(Enum::name).toList())
+        .claim(CLAIM_STATUS, principal.accountStatus())
+        .claim(CLAIM_TOKEN_VERSION, tokenVersion)
+        .setIssuedAt(new Date())
+        .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION))
+        .signWith(SignatureAlgorithm.HS256, SECRET)
+        .compact();
+  }
+
+  public long getExpirationMillis() {
+    return EXPIRATION;
+  }
+
+  /**
+   * Verifies the signature and expiry of the token and returns its claims.
+   * Callers that need several claims should use this once instead of the
+   * individual extract methods, which each re-verify the token.
+   */
+  public Claims parseClaims(String token) {
+    return parser.parseClaimsJws(token).getBody();
+  }
+
   public String extractSubject(String token) {
-    return getClaims(token).getSubject();
+    return parseClaims(token).getSubject();
   }
 
   // Deprecated wrapper for backward compatibility if needed, or just rename usages
@@ -37,23 +84,53 @@ public class JwtUtil {
   }
 
   public String extractType(String token) {
-    Claims claims = getClaims(token);
+    return extractType(parseClaims(token));
+  }
+
+  public String extractType(Claims claims) {
     return (String) claims.get("type");
   }
 
   public boolean validateToken(String token, String subject) {
-    String tokenSubject = extractSubject(token);
-    return tokenSubject.equals(subject) && !isTokenExpired(token);
+    return validateClaims(parseClaims(token), subject);
+  }
+
+  public boolean validateClaims(Claims claims, String subject) {
+    return claims.getSubject().equals(subject) && !isExpired(claims);
+  }
+
+  private boolean isExpired(Claims claims) {
+    return claims.getExpiration().before(new Date());
   }
 
-  private boolean isTokenExpired(String token) {
-    return getClaims(token).getExpiration().before(new Date());
+  /**
+   * Returns the token version of a stateless token, or null for tokens that
+   * only carry a subject and type.
+   */
+  public Integer extractTokenVersion(Claims claims) {
+    Number version = claims.get(CLAIM_TOKEN_VERSION, Number.class);
+    return version == null ? null : version.intValue();
   }
 
-  private Claims getClaims(String token) {
-    return Jwts.parser()
-        .setSigningKey(SECRET)
-        .parseClaimsJws(token)
-        .getBody();
+  /**
+   * Rebuilds the principal embedded in a stateless token, or returns null when the
+   * token was issued without account claims. Only verified accounts can log in, so
+   * a stateless principal is always verified.
+   */
+  public AccountPrincipal extractPrincipal(Claims claims) {
+    Number accountId = claims.get(CLAIM_ACCOUNT_ID, Number.class);
+    if (accountId == null || extractTokenVersion(claims) == null) {
+      return null;
+    }
+    Number companyId = claims.get(CLAIM_COMPANY_ID, Number.class);
+    List<?> roles = claims.get(CLAIM_ROLES, List.class);
+    return new AccountPrincipal(
+        AccountPrincipal.TYPE_API.equals(extractType(claims)) ? AccountPrincipal.TYPE_API : AccountPrincipal.TYPE_COMPANY,
+        accountId.longValue(),
+        companyId == null ? null : companyId.longValue(),
+        claims.getSubject(),
+        roles == null ? List.of() : roles.stream().map(role -> UserRole.valueOf(role.toString())).toList(),
+        (String) claims.get(CLAIM_STATUS),
+        true);
   }
 }
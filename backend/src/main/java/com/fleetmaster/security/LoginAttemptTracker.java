@@ -0,0 +1,148 @@
+package com.fleetmaster.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory sliding-window counter of failed authentication attempts, keyed by account
+ * and by client IP. Lets AuthService reject brute-force traffic before touching the
+ * database or BCrypt; only the resulting lock/block is persisted on the account.
+ *
+ * Each key owns a small ring of time buckets updated with CAS, so concurrent failures
+ * never take a lock. Counts are approximate at bucket boundaries, which is fine for
+ * throttling.
+ */
+@Component
+public class LoginAttemptTracker implements MeterBinder {
+
+  private static final int BUCKETS = 15;
+
+  private final long bucketMillis;
+  private final int maxAccountFailures;
+  private final int maxIpFailures;
+  private final Map<String, Window> windows = new ConcurrentHashMap<>();
+  private final LongAdder throttled = new LongAdder();
+
+  public LoginAttemptTracker(
+      @Value("${auth.login-throttle.window-seconds:900}") long windowSeconds,
+      @Value("${auth.login-throttle.max-account-failures:3}") int maxAccountFailures,
+      @Value("${auth.login-throttle.max-ip-failures:20}") int maxIpFailures) {
+    this.bucketMillis = Math.max(1, windowSeconds * 1000 / BUCKETS);
+    this.maxAccountFailures = maxAccountFailures;
+    this.maxIpFailures = maxIpFailures;
+  }
+
+  public int getMaxAccountFailures() {
+    return maxAccountFailures;
+  }
+
+  /**
+   * True when either the account or the client IP has used up its failures in the current window.
+   */
+  public boolean isThrottled(String scope, String account, String clientIp) {
+    long now = System.currentTimeMillis();
+    boolean blocked = count(accountKey(scope, account), now) >= maxAccountFailures
+        || (clientIp != null && count(ipKey(clientIp), now) >= maxIpFailures);
+    if (blocked) {
+      throttled.increment();
+    }
+    return blocked;
+  }
+
+  /**
+   * Records a failed attempt and returns the number of failures for the account in the window.
+   */
+  public int recordFailure(String scope, String account, String clientIp) {
+    long now = System.currentTimeMillis();
+    if (clientIp != null) {
+      window(ipKey(clientIp)).record(now, bucketMillis);
+    }
+    return account == null ? 0 : window(accountKey(scope, account)).record(now, bucketMillis);
+  }
+
+  public void reset(String scope, String account) {
+    if (account != null) {
+      windows.remove(accountKey(scope, account));
+    }
+  }
+
+  public long getThrottledCount() {
+    return throttled.sum();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("auth.login.throttled", throttled, LongAdder::sum).register(registry);
+    Gauge.builder("auth.login.tracked.keys", windows, Map::size).register(registry);
+  }
+
+  // Drop keys whose newest bucket has slid out of the window
+  @Scheduled(fixedDelayString = "${auth.login-throttle.purge-interval-ms:60000}")
+  public void purge() {
+    long current = System.currentTimeMillis() / bucketMillis;
+    windows.values().removeIf(window -> window.newestBucket() <= current - BUCKETS);
+  }
+
+  private int count(String key, long now) {
+    Window window = windows.get(key);
+    return window == null ? 0 : window.sum(now, bucketMillis);
+  }
+
+  private Window window(String key) {
+    return windows.computeIfAbsent(key, k -> new Window());
+  }
+
+  private static String accountKey(String scope, String account) {
+    return scope + ":" + account.toLowerCase();
+  }
+
+  private static String ipKey(String clientIp) {
+    return "ip:" + clientIp;
+  }
+
+  private static final class Window {
+    private final AtomicLongArray bucketIds = new AtomicLongArray(BUCKETS);
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS);
+
+    int record(long now, long bucketMillis) {
+      long bucket = now / bucketMillis;
+      int slot = (int) (bucket % BUCKETS);
+      long seen = bucketIds.get(slot);
+      if (seen != bucket && bucketIds.compareAndSet(slot, seen, bucket)) {
+        counts.set(slot, 0);
+      }
+      counts.incrementAndGet(slot);
+      return sum(now, bucketMillis);
+    }
+
+    int sum(long now, long bucketMillis) {
+      long oldest = now / bucketMillis - BUCKETS + 1;
+      int total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        if (bucketIds.get(i) >= oldest) {
+          total += counts.get(i);
+        }
+      }
+      return total;
+    }
+
+    long newestBucket() {
+      long newest = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        newest = Math.max(newest, bucketIds.get(i));
+      }
+      return newest;
+    }
+  }
+}
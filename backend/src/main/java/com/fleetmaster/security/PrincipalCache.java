@@ -0,0 +1,60 @@
+package com.fleetmaster.security;
+
+import com.fleetmaster.services.BoundedCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * TTL and size bounded cache of authenticated principals keyed by token type and subject.
+ * AuthService invalidates an entry whenever it changes the underlying account.
+ */
+@Component
+public class PrincipalCache implements MeterBinder {
+
+  private final long ttlMillis;
+  private final BoundedCache<String, AccountPrincipal> entries;
+
+  public PrincipalCache(
+      @Value("${auth.principal-cache.ttl-seconds:60}") long ttlSeconds,
+      @Value("${auth.principal-cache.max-size:10000}") int maxSize) {
+    this.ttlMillis = ttlSeconds * 1000;
+    this.entries = new BoundedCache<>("auth.principal.cache", ttlMillis > 0 ? maxSize : 0);
+  }
+
+  public AccountPrincipal get(String type, String subject) {
+    return entries.get(key(type, subject));
+  }
+
+  public void put(AccountPrincipal principal) {
+    entries.put(key(principal.type(), principal.subject()), principal, System.currentTimeMillis() + ttlMillis);
+  }
+
+  public void invalidate(String type, String subject) {
+    if (subject != null) {
+      entries.remove(key(type, subject));
+    }
+  }
+
+  public long getHits() {
+    return entries.getHits();
+  }
+
+  public long getMisses() {
+    return entries.getMisses();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    entries.bindTo(registry);
+  }
+
+  private static String key(String type, String subject) {
+    return type + ":" + subject;
+  }
+}
@@ -0,0 +1,135 @@
+package com.fleetmaster.security;
+
+import com.fleetmaster.repositories.ApiAccountRepository;
+import com.fleetmaster.repositories.CompanyAccountRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Revocation list for stateless tokens: the minimum token version still accepted per
+ * account. Only accounts revoked within the token lifetime are kept, since any older
+ * token has expired by itself, so the map stays small.
+ *
+ * The map is refreshed incrementally from tokens_revoked_at. Revocations made by this
+ * instance apply immediately; revocations made elsewhere (another instance, or the
+ * password reset procedure) apply after the next refresh.
+ */
+@Component
+public class TokenVersionRegistry implements MeterBinder {
+
+  private static final Logger log = LoggerFactory.getLogger(TokenVersionRegistry.class);
+
+  // NOW() in PostgreSQL is the transaction start, so a revocation can commit after a
+  // refresh has already read past its timestamp; re-reading this much is harmless.
+  private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(5);
+
+  private record Revocation(int minVersion, LocalDateTime revokedAt) {
+  }
+
+  private final CompanyAccountRepository companyAccountRepository;
+  private final ApiAccountRepository apiAccountRepository;
+  private final boolean enabled;
+  private final Duration retention;
+  private final Map<String, Revocation> revocations = new ConcurrentHashMap<>();
+  private final LongAdder rejected = new LongAdder();
+  private volatile LocalDateTime lastRefresh;
+  private volatile boolean loaded;
+
+  public TokenVersionRegistry(
+      CompanyAccountRepository companyAccountRepository,
+      ApiAccountRepository apiAccountRepository,
+      JwtUtil jwtUtil,
+      @Value("${auth.stateless.enabled:false}") boolean enabled) {
+    this.companyAccountRepository = companyAccountRepository;
+    this.apiAccountRepository = apiAccountRepository;
+    this.enabled = enabled;
+    this.retention = Duration.ofMillis(jwtUtil.getExpirationMillis());
+  }
+
+  /**
+   * Whether tokens are issued with account claims and authenticated without a lookup.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean isCurrent(String type, Long accountId, int tokenVersion) {
+    if (!loaded) {
+      refresh();
+      if (!loaded) {
+        // Fail closed until the revocation list has been read once
+        rejected.increment();
+        return false;
+      }
+    }
+    Revocation revocation = revocations.get(key(type, accountId));
+    if (revocation != null && tokenVersion < revocation.minVersion()) {
+      rejected.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Rejects tokens of the account below the given version on this instance right away.
+   */
+  public void revoke(String type, Long accountId, int minVersion) {
+    LocalDateTime now = LocalDateTime.now();
+    revocations.merge(key(type, accountId), new Revocation(minVersion, now),
+        (current, update) -> current.minVersion() >= update.minVersion() ? current : update);
+  }
+
+  @Scheduled(fixedDelayString = "${auth.stateless.revocation-refresh-ms:5000}")
+  public synchronized void refresh() {
+    if (!enabled) {
+      return;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime oldestRelevant = now.minus(retention);
+    LocalDateTime since = lastRefresh == null ? oldestRelevant : lastRefresh.minus(REFRESH_OVERLAP);
+    try {
+      apply(AccountPrincipal.TYPE_COMPANY, companyAccountRepository.findTokenRevocationsSince(since));
+      apply(AccountPrincipal.TYPE_API, apiAccountRepository.findTokenRevocationsSince(since));
+      lastRefresh = now;
+      loaded = true;
+    } catch (RuntimeException e) {
+      // Keep serving from the last known state; the next run retries
+      log.warn("Failed to refresh token revocations: {}", e.getMessage());
+    }
+    revocations.values().removeIf(revocation -> revocation.revokedAt().isBefore(oldestRelevant));
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("auth.stateless.tokens.rejected", rejected, LongAdder::sum).register(registry);
+    Gauge.builder("auth.stateless.revocations", revocations, Map::size).register(registry);
+  }
+
+  private void apply(String type, List<Object[]> rows) {
+    for (Object[] row : rows) {
+      Long accountId = ((Number) row[0]).longValue();
+      int version = ((Number) row[1]).intValue();
+      LocalDateTime revokedAt = (LocalDateTime) row[2];
+      revocations.merge(key(type, accountId), new Revocation(version, revokedAt),
+          (current, update) -> current.minVersion() >= update.minVersion() ? current : update);
+    }
+  }
+
+  private static String key(String type, Long accountId) {
+    return type + ":" + accountId;
+  }
+}
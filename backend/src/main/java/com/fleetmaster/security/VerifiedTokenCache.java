@@ -0,0 +1,64 @@
+package com.fleetmaster.security;
+
+import com.fleetmaster.services.BoundedCache;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Bounded cache of already verified JWT claims, keyed by a SHA-256 digest of the token
+ * so raw tokens are never held in memory. Entries are dropped once the token expires.
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+
+  private final BoundedCache<String, Claims> entries;
+
+  public VerifiedTokenCache(@Value("${jwt.cache.max-size:10000}") int maxSize) {
+    this.entries = new BoundedCache<>("jwt.cache", maxSize);
+  }
+
+  public Claims get(String token) {
+    return entries.get(digest(token));
+  }
+
+  public void put(String token, Claims claims) {
+    if (claims.getExpiration() == null) {
+      return;
+    }
+    entries.put(digest(token), claims, claims.getExpiration().getTime());
+  }
+
+  public long getHits() {
+    return entries.getHits();
+  }
+
+  public long getMisses() {
+    return entries.getMisses();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    entries.bindTo(registry);
+  }
+
+  private static String digest(String token) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return Base64.getEncoder().encodeToString(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.CreateApiKeyDto;
+import com.fleetmaster.entities.ApiAccount;
+import com.fleetmaster.entities.ApiKey;
+import com.fleetmaster.exceptions.BusinessException;
+import com.fleetmaster.repositories.ApiAccountRepository;
+import com.fleetmaster.repositories.ApiKeyRepository;
+import com.fleetmaster.security.ApiKeyIndex;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Issues, rotates and revokes API keys. The raw key is returned once on creation or
+ * rotation and never stored; ApiKeyIndex is updated after each save has committed.
+ */
+@Service
+public class ApiKeyService {
+
+    private static final String KEY_PREFIX = "fm_";
+    private static final Pattern SCOPE = Pattern.compile("\\*|[a-z-]+:(read|write|\\*)");
+    private static final String KEY_NOT_FOUND_MSG = "API key not found";
+
+    private final ApiKeyRepository apiKeyRepository;
+    private final ApiAccountRepository apiAccountRepository;
+    private final ApiKeyIndex apiKeyIndex;
+
+    private final Random random = new SecureRandom();
+
+    public ApiKeyService(ApiKeyRepository apiKeyRepository, ApiAccountRepository apiAccountRepository,
+            ApiKeyIndex apiKeyIndex) {
+        this.apiKeyRepository = apiKeyRepository;
+        this.apiAccountRepository = apiAccountRepository;
+        this.apiKeyIndex = apiKeyIndex;
+    }
+
+    public Map<String, Object> createKey(Long apiAccountId, CreateApiKeyDto dto) {
+        ApiAccount account = getActiveAccount(apiAccountId);
+        if (dto.getName() == null || dto.getName().isBlank()) {
+            throw new BusinessException("Name is required");
+        }
+        if (dto.getScopes() == null || dto.getScopes().isEmpty()) {
+            throw new BusinessException("At least one scope is required");
+        }
+        for (String scope : dto.getScopes()) {
+            if (scope == null || !SCOPE.matcher(scope).matches()) {
+                throw new BusinessException("Invalid scope: " + scope);
+            }
+        }
+
+        ApiKey key = new ApiKey();
+        key.setApiAccountId(apiAccountId);
+        key.setName(dto.getName());
+        key.setScopes(String.join(",", dto.getScopes()));
+        if (dto.getExpiresInDays() != null) {
+            key.setExpiresAt(LocalDateTime.now().plusDays(dto.getExpiresInDays()));
+        }
+        return issue(key, account);
+    }
+
+    /**
+     * Replaces the secret of a key: the old value stops working immediately and a new
+     * key with the same name, scopes and expiry is returned.
+     */
+    public Map<String, Object> rotateKey(Long apiAccountId, Long keyId) {
+        ApiAccount account = getActiveAccount(apiAccountId);
+        ApiKey current = apiKeyRepository.findByIdAndApiAccountId(keyId, apiAccountId)
+                .filter(ApiKey::isActive)
+                .orElseThrow(() -> new BusinessException(KEY_NOT_FOUND_MSG));
+
+        deactivate(current);
+
+        ApiKey replacement = new ApiKey();
+        replacement.setApiAccountId(apiAccountId);
+        replacement.setName(current.getName());
+        replacement.setScopes(current.getScopes());
+        replacement.setExpiresAt(current.getExpiresAt());
+        return issue(replacement, account);
+    }
+
+    public void revokeKey(Long apiAccountId, Long keyId) {
+        ApiKey key = apiKeyRepository.findByIdAndApiAccountId(keyId, apiAccountId)
+                .orElseThrow(() -> new BusinessException(KEY_NOT_FOUND_MSG));
+        if (key.isActive()) {
+            deactivate(key);
+        }
+    }
+
+    public List<Map<String, Object>> listKeys(Long apiAccountId) {
+        return apiKeyRepository.findByApiAccountIdOrderByIdDesc(apiAccountId).stream()
+                .map(this::describe)
+                .toList();
+    }
+
+    private Map<String, Object> issue(ApiKey key, ApiAccount account) {
+        String prefix = HexFormat.of().formatHex(randomBytes(4));
+        String rawKey = KEY_PREFIX + prefix + "_"
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes(32));
+        key.setKeyPrefix(KEY_PREFIX + prefix);
+        key.setKeyHash(apiKeyIndex.hash(rawKey));
+        key.setActive(true);
+
+        ApiKey saved = apiKeyRepository.save(key);
+        apiKeyIndex.put(saved, account.getUsername());
+
+        Map<String, Object> result = describe(saved);
+        result.put("key", rawKey);
+        return result;
+    }
+
+    private void deactivate(ApiKey key) {
+        key.setActive(false);
+        key.setRevokedAt(LocalDateTime.now());
+        apiKeyRepository.save(key);
+        apiKeyIndex.remove(key.getKeyHash());
+    }
+
+    private ApiAccount getActiveAccount(Long apiAccountId) {
+        ApiAccount account = apiAccountRepository.findById(apiAccountId)
+                .orElseThrow(() -> new BusinessException("API Account not found"));
+        if (!account.isActive()) {
+            throw new BusinessException("Account is inactive");
+        }
+        return account;
+    }
+
+    private Map<String, Object> describe(ApiKey key) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", key.getId());
+        result.put("name", key.getName());
+        result.put("prefix", key.getKeyPrefix());
+        result.put("scopes", key.getScopes().isEmpty() ? List.of() : List.of(key.getScopes().split(",")));
+        result.put("active", key.isActive());
+        result.put("expiresAt", key.getExpiresAt());
+        result.put("dateCreated", key.getDateCreated());
+        result.put("revokedAt", key.getRevokedAt());
+        return result;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -6,9 +6,14 @@ import com.fleetmaster.dtos.VerifyCodeDto;
 import com.fleetmaster.entities.CompanyAccount;
 import com.fleetmaster.entities.ApiAccount;
 import com.fleetmaster.exceptions.BusinessException;
+import com.fleetmaster.exceptions.TooManyRequestsException;
 import com.fleetmaster.repositories.CompanyAccountRepository;
 import com.fleetmaster.repositories.ApiAccountRepository;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.security.JwtUtil;
+import com.fleetmaster.security.LoginAttemptTracker;
+import com.fleetmaster.security.PrincipalCache;
+import com.fleetmaster.security.TokenVersionRegistry;
 import jakarta.persistence.EntityManager;
 
 import jakarta.persistence.PersistenceContext;
@@ -18,6 +23,8 @@ import org.springframework.stereotype.Service;
 
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 
 @Service
@@ -25,12 +32,19 @@ public class AuthService {
 
     private static final String ACCOUNT_BLOCKED = "BLOCKED";
     private static final String ACCOUNT_NOT_FOUND_MSG = "CompanyAccount not found";
+    private static final String TOO_MANY_ATTEMPTS_MSG = "Too many failed attempts, please try again later";
+    private static final String LOGIN_SCOPE = "login";
+    private static final String VERIFY_SCOPE = "verify";
 
     private final CompanyAccountRepository companyAccountRepository;
     private final ApiAccountRepository apiAccountRepository;
     private final EmailService emailService;
     private final JwtUtil jwtUtil;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
+    private final LoginAttemptTracker loginAttemptTracker;
+    private final TokenVersionRegistry tokenVersions;
+    private final FleetService fleetService;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -42,18 +56,26 @@ public class AuthService {
             ApiAccountRepository apiAccountRepository,
             EmailService emailService,
             JwtUtil jwtUtil,
-            PasswordEncoder passwordEncoder
+            PasswordEncoder passwordEncoder,
+            PrincipalCache principalCache,
+            LoginAttemptTracker loginAttemptTracker,
+            TokenVersionRegistry tokenVersions,
+            FleetService fleetService
     ) {
         this.companyAccountRepository = repo;
         this.apiAccountRepository = apiAccountRepository;
         this.emailService = emailService;
         this.jwtUtil = jwtUtil;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
+        this.loginAttemptTracker = loginAttemptTracker;
+        this.tokenVersions = tokenVersions;
+        this.fleetService = fleetService;
     }
 
     @Transactional
     public void register(RegisterDto dto) {
-        if (companyAccountRepository.findByEmail(dto.getEmail()).isPresent()) {
+        if (!companyAccountRepository.findAllByEmailIgnoreCase(dto.getEmail()).isEmpty()) {
             throw new BusinessException("Email already exists");
         }
 
@@ -108,11 +130,15 @@ public class AuthService {
         companyAccount.setVerificationCode(code);
 
         companyAccountRepository.save(companyAccount);
+        if (companyId != null) {
+            // A new company has a subscription now, and a new driver counts toward its usage
+            fleetService.invalidateSubscriptionUsage(companyId);
+        }
         emailService.sendVerificationCode(dto.getEmail(), code);
     }
 
     public void sendVerifyCode(String email) {
-        CompanyAccount companyAccount = companyAccountRepository.findByEmail(email)
+        CompanyAccount companyAccount = findAccountByEmail(email)
                 .orElseThrow(() -> new BusinessException(ACCOUNT_NOT_FOUND_MSG));
 
         if (ACCOUNT_BLOCKED.equals(companyAccount.getAccountStatus())) { 
@@ -125,12 +151,25 @@ public class AuthService {
         companyAccount.setVerifyAttempts(0);
 
         companyAccountRepository.save(companyAccount);
+        loginAttemptTracker.reset(VERIFY_SCOPE, email);
+        principalCache.invalidate(AccountPrincipal.TYPE_COMPANY, email);
         emailService.sendVerificationCode(email, code);
     }
 
     public void checkVerifyCode(VerifyCodeDto dto) {
-        CompanyAccount companyAccount = companyAccountRepository.findByEmail(dto.getEmail())
-                .orElseThrow(() -> new BusinessException(ACCOUNT_NOT_FOUND_MSG));
+        checkVerifyCode(dto, null);
+    }
+
+    public void checkVerifyCode(VerifyCodeDto dto, String clientIp) {
+        if (loginAttemptTracker.isThrottled(VERIFY_SCOPE, dto.getEmail(), clientIp)) {
+            throw new TooManyRequestsException(TOO_MANY_ATTEMPTS_MSG);
+        }
+
+        CompanyAccount companyAccount = findAccountByEmail(dto.getEmail()).orElse(null);
+        if (companyAccount == null) {
+            loginAttemptTracker.recordFailure(VERIFY_SCOPE, dto.getEmail(), clientIp);
+            throw new BusinessException(ACCOUNT_NOT_FOUND_MSG);
+        }
 
         if (ACCOUNT_BLOCKED.equals(companyAccount.getAccountStatus())) {
             throw new BusinessException("CompanyAccount is blocked");
@@ -142,18 +181,36 @@ public class AuthService {
             companyAccount.setVerifyAttempts(0);
             companyAccount.setVerificationCode(null); 
         } else {
-            companyAccount.setVerifyAttempts(companyAccount.getVerifyAttempts() + 1);
-            if (companyAccount.getVerifyAttempts() >= 3) {
-                companyAccount.setAccountStatus(ACCOUNT_BLOCKED);
+            // Failures are counted in memory; the account row is only written once it gets blocked
+            int failures = loginAttemptTracker.recordFailure(VERIFY_SCOPE, dto.getEmail(), clientIp);
+            if (failures < loginAttemptTracker.getMaxAccountFailures()) {
+                return;
             }
+            companyAccount.setVerifyAttempts(failures);
+            companyAccount.setAccountStatus(ACCOUNT_BLOCKED);
+            revokeTokens(companyAccount);
         }
 
+        loginAttemptTracker.reset(VERIFY_SCOPE, dto.getEmail());
         companyAccountRepository.save(companyAccount);
+        principalCache.invalidate(AccountPrincipal.TYPE_COMPANY, companyAccount.getEmail());
     }
 
     public String login(LoginDto dto) {
-        CompanyAccount companyAccount = companyAccountRepository.findByEmail(dto.getEmail())
-                .orElseThrow(() -> new BusinessException(ACCOUNT_NOT_FOUND_MSG));
+        return login(dto, null);
+    }
+
+    public String login(LoginDto dto, String clientIp) {
+        // Reject brute-force traffic before any database or BCrypt work
+        if (loginAttemptTracker.isThrottled(LOGIN_SCOPE, dto.getEmail(), clientIp)) {
+            throw new TooManyRequestsException(TOO_MANY_ATTEMPTS_MSG);
+        }
+
+        CompanyAccount companyAccount = findAccountByEmail(dto.getEmail()).orElse(null);
+        if (companyAccount == null) {
+            loginAttemptTracker.recordFailure(LOGIN_SCOPE, dto.getEmail(), clientIp);
+            throw new BusinessException(ACCOUNT_NOT_FOUND_MSG);
+        }
 
         if (!companyAccount.isVerified()) {
             throw new BusinessException("Email not verified");
@@ -169,31 +226,89 @@ public class AuthService {
         }
 
         if (!passwordEncoder.matches(dto.getPassword(), companyAccount.getPasswordHash())) {
-            companyAccount.setLoginAttempts(companyAccount.getLoginAttempts() + 1);
-            if (companyAccount.getLoginAttempts() >= 3) {
-                // Lock for 15 minutes
+            int failures = loginAttemptTracker.recordFailure(LOGIN_SCOPE, dto.getEmail(), clientIp);
+            if (failures >= loginAttemptTracker.getMaxAccountFailures()) {
+                // Lock for 15 minutes; this is the only failure that writes to the account
                 companyAccount.setLockedUntil(LocalDateTime.now().plusMinutes(15));
                 companyAccount.setLoginAttempts(0);
+                companyAccountRepository.save(companyAccount);
+                principalCache.invalidate(AccountPrincipal.TYPE_COMPANY, companyAccount.getEmail());
             }
-            companyAccountRepository.save(companyAccount);
             throw new BusinessException("Incorrect password");
         }
 
+        loginAttemptTracker.reset(LOGIN_SCOPE, dto.getEmail());
+
+        boolean changed = companyAccount.getLoginAttempts() != 0 || companyAccount.getLockedUntil() != null;
         companyAccount.setLoginAttempts(0);
         companyAccount.setLockedUntil(null);
-        companyAccountRepository.save(companyAccount);
+        // Rehash with the configured BCrypt cost while we still have the raw password
+        if (passwordEncoder.upgradeEncoding(companyAccount.getPasswordHash())) {
+            companyAccount.setPasswordHash(passwordEncoder.encode(dto.getPassword()));
+            changed = true;
+        }
+        if (changed) {
+            companyAccountRepository.save(companyAccount);
+            principalCache.invalidate(AccountPrincipal.TYPE_COMPANY, companyAccount.getEmail());
+        }
 
+        if (tokenVersions.isEnabled()) {
+            return jwtUtil.generateToken(AccountPrincipal.of(companyAccount), companyAccount.getTokenVersion());
+        }
         return jwtUtil.generateToken(companyAccount.getEmail(), "COMPANY");
     }
 
     public CompanyAccount getCompanyAccountByEmail(String email) {
-        return companyAccountRepository.findByEmail(email).orElse(null);
+        return findAccountByEmail(email).orElse(null);
+    }
+
+    /**
+     * The account with this email in any case. Accounts that differ only in case predate
+     * the case-insensitive lookup; among those only the exact spelling identifies one, and
+     * any other spelling finds none.
+     */
+    private Optional<CompanyAccount> findAccountByEmail(String email) {
+        List<CompanyAccount> accounts = companyAccountRepository.findAllByEmailIgnoreCase(email);
+        if (accounts.size() == 1) {
+            return Optional.of(accounts.get(0));
+        }
+        return accounts.stream()
+                .filter(account -> account.getEmail().equals(email))
+                .findFirst();
     }
 
     public ApiAccount getApiAccountByUsername(String username) {
         return apiAccountRepository.findByUsername(username).orElse(null);
     }
 
+    /**
+     * Resolves the principal for a verified token subject, going to the database
+     * only when the cached entry is missing or older than the configured TTL.
+     */
+    public AccountPrincipal getPrincipal(String type, String subject) {
+        String principalType = AccountPrincipal.TYPE_API.equals(type)
+                ? AccountPrincipal.TYPE_API
+                : AccountPrincipal.TYPE_COMPANY;
+
+        AccountPrincipal principal = principalCache.get(principalType, subject);
+        if (principal != null) {
+            return principal;
+        }
+
+        if (AccountPrincipal.TYPE_API.equals(principalType)) {
+            ApiAccount apiAccount = getApiAccountByUsername(subject);
+            principal = apiAccount == null ? null : AccountPrincipal.of(apiAccount);
+        } else {
+            CompanyAccount companyAccount = getCompanyAccountByEmail(subject);
+            principal = companyAccount == null ? null : AccountPrincipal.of(companyAccount);
+        }
+
+        if (principal != null) {
+            principalCache.put(principal);
+        }
+        return principal;
+    }
+
     public void registerApiAccount(String username, String password) {
         if (apiAccountRepository.findByUsername(username).isPresent()) {
             throw new BusinessException("Username already exists");
@@ -217,6 +332,14 @@ public class AuthService {
             throw new BusinessException("Incorrect password");
         }
 
+        if (passwordEncoder.upgradeEncoding(account.getPasswordHash())) {
+            account.setPasswordHash(passwordEncoder.encode(password));
+            apiAccountRepository.save(account);
+        }
+
+        if (tokenVersions.isEnabled()) {
+            return jwtUtil.generateToken(AccountPrincipal.of(account), account.getTokenVersion());
+        }
         return jwtUtil.generateToken(username, "API");
     }
 
@@ -246,17 +369,34 @@ public class AuthService {
         try {
             String hashedPassword = passwordEncoder.encode(newPassword);
             
-            entityManager.createNativeQuery(
-                    "SELECT * FROM sp_reset_password(CAST(:token AS uuid), :newPassword)")
+            Object[] result = (Object[]) entityManager.createNativeQuery(
+                    "SELECT user_id, email, password_reset FROM sp_reset_password(CAST(:token AS uuid), :newPassword)")
                     .setParameter("token", token)
                     .setParameter("newPassword", hashedPassword)
                     .getSingleResult();
+
+            principalCache.invalidate(AccountPrincipal.TYPE_COMPANY, (String) result[1]);
+
+            // sp_reset_password bumped token_version; apply it here without waiting for the refresh
+            Long userId = ((Number) result[0]).longValue();
+            Number tokenVersion = (Number) entityManager.createNativeQuery(
+                    "SELECT token_version FROM company_account WHERE id = :id")
+                    .setParameter("id", userId)
+                    .getSingleResult();
+            tokenVersions.revoke(AccountPrincipal.TYPE_COMPANY, userId, tokenVersion.intValue());
         } catch (Exception e) {
             throw new BusinessException("Failed to reset password: " + e.getMessage());
         }
     }
 
 
+    // Invalidates every token issued to the account so far; the caller saves the account
+    private void revokeTokens(CompanyAccount companyAccount) {
+        companyAccount.setTokenVersion(companyAccount.getTokenVersion() + 1);
+        companyAccount.setTokensRevokedAt(LocalDateTime.now());
+        tokenVersions.revoke(AccountPrincipal.TYPE_COMPANY, companyAccount.getId(), companyAccount.getTokenVersion());
+    }
+
     private String generateVerificationCode() {
         return String.format("%04d", random.nextInt(10000));
     }
@@ -0,0 +1,113 @@
+package com.fleetmaster.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Size bounded map of entries that each expire at their own time, with hit and miss
+ * counters. The caches in front of tokens, principals and per-company queries share it, so
+ * they evict and report the same way. A max size of 0 turns it off.
+ */
+public final class BoundedCache<K, V> implements MeterBinder {
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private final String name;
+    private final int maxSize;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param name meter prefix, e.g. "jwt.cache"
+     */
+    public BoundedCache(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The value stored for the key, or null when there is none or it has expired.
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            if (System.currentTimeMillis() < entry.expiresAt()) {
+                hits.increment();
+                return entry.value();
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(K key, V value, long expiresAt) {
+        put(key, value, expiresAt, () -> true);
+    }
+
+    /**
+     * Stores the value only if stillValid holds. It is checked under the key's lock, so a
+     * caller that changes what it checks before calling {@link #remove} cannot have its
+     * removal overtaken by this store.
+     */
+    public void put(K key, V value, long expiresAt, BooleanSupplier stillValid) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        entries.compute(key, (k, current) -> stillValid.getAsBoolean() ? new Entry<>(value, expiresAt) : current);
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(name + ".hits", hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder(name + ".misses", misses, LongAdder::sum).register(registry);
+        Gauge.builder(name + ".size", entries, Map::size).register(registry);
+    }
+
+    // Drop expired entries first; if the cache is still full, drop arbitrary entries down
+    // to 90% so inserts do not evict one entry at a time
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt() <= now);
+
+        int target = maxSize - Math.max(1, maxSize / 10);
+        Iterator<K> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.fleetmaster.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * TTL and size bounded cache of one query result per company. The services invalidate a
+ * company when they write what the result is built from; the TTL bounds how stale a read
+ * can be after a write made elsewhere (another instance, or straight in SQL). A TTL of 0
+ * turns the cache off.
+ */
+final class CompanyCache<V> implements MeterBinder {
+
+    private final String name;
+    private final long ttlMillis;
+    private final BoundedCache<Long, V> entries;
+    // Bumped by every invalidation; a load that overlapped one is not stored, since it may
+    // have read the data from before the write
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param name meter prefix, e.g. "fleet.status.cache"
+     */
+    CompanyCache(String name, long ttlMillis, int maxSize) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.entries = new BoundedCache<>(name, ttlMillis > 0 ? maxSize : 0);
+    }
+
+    V get(Long companyId, Function<Long, V> loader) {
+        V cached = entries.get(companyId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = invalidations.get();
+        long loadedAt = System.currentTimeMillis();
+        V value = loader.apply(companyId);
+        // Re-checked under the company's lock: drop() bumps the generation before it
+        // removes, so an invalidation either prevents this store or removes what it stored
+        entries.put(companyId, value, loadedAt + ttlMillis, () -> invalidations.get() == generation);
+        return value;
+    }
+
+    /**
+     * Drops the company's entry now and, inside a transaction, again after commit, so a read
+     * that ran between the write and the commit does not keep the old result.
+     */
+    void invalidate(Long companyId) {
+        drop(companyId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    drop(companyId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops every entry, for when the invalidations of individual companies may have been
+     * missed.
+     */
+    void invalidateAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    long getHits() {
+        return entries.getHits();
+    }
+
+    long getMisses() {
+        return entries.getMisses();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        entries.bindTo(registry);
+        FunctionCounter.builder(name + ".invalidations", invalidations, AtomicLong::get).register(registry);
+    }
+
+    private void drop(Long companyId) {
+        invalidations.incrementAndGet();
+        entries.remove(companyId);
+    }
+}
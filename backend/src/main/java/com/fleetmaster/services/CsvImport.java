@@ -0,0 +1,179 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.config.CsvRows;
+import com.fleetmaster.dtos.ImportReport;
+import com.fleetmaster.exceptions.BusinessException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a CSV upload record by record for an import and keeps its report. Columns are
+ * matched by name ignoring case and separators, so "pickUpLat", "pick_up_lat" and
+ * "Pick up lat" are the same column; unknown columns are ignored.
+ */
+final class CsvImport {
+
+    static final int BATCH_SIZE = 1000;
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final Pattern NOT_ALPHANUMERIC = Pattern.compile("[^A-Za-z0-9]");
+    private static final Pattern BRACKETS = Pattern.compile("[\\[\\]{}]");
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("[;|,]");
+
+    /**
+     * A cell that cannot be parsed; the row is rejected with the message.
+     */
+    static final class RowException extends RuntimeException {
+        RowException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final CsvRows rows;
+    private final String[] names;
+    private final int[] columns;
+    private final int width;
+    private final List<ImportReport.RowError> errors = new ArrayList<>();
+    private long created;
+    private long rejected;
+
+    /**
+     * @param names the columns to read, in the order fields are asked for; "a|b" accepts
+     *              either name
+     */
+    CsvImport(CsvRows rows, String... names) {
+        this.rows = rows;
+        this.names = new String[names.length];
+        this.columns = new int[names.length];
+        List<String> header = rows.getHeader().stream().map(CsvImport::normalize).toList();
+        List<String> missing = new ArrayList<>();
+        for (int field = 0; field < names.length; field++) {
+            String[] accepted = names[field].split("\\|");
+            this.names[field] = accepted[0];
+            columns[field] = -1;
+            for (String name : accepted) {
+                int column = header.indexOf(normalize(name));
+                if (column >= 0) {
+                    columns[field] = column;
+                    break;
+                }
+            }
+            if (columns[field] < 0) {
+                missing.add(accepted[0]);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new BusinessException("Missing CSV columns: " + String.join(", ", missing));
+        }
+        this.width = header.size();
+    }
+
+    /**
+     * The next record with as many cells as the header, or null at the end. Records of
+     * another width are rejected on the way.
+     */
+    String[] next() {
+        try {
+            String[] record;
+            while ((record = rows.next()) != null) {
+                if (record.length == width) {
+                    return record;
+                }
+                reject("Expected " + width + " columns but found " + record.length);
+            }
+            return null;
+        } catch (IOException e) {
+            throw new BusinessException("Could not read the CSV upload: " + e.getMessage());
+        }
+    }
+
+    void reject(String error) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new ImportReport.RowError(rows.getLine(), error));
+        }
+    }
+
+    void created(int count) {
+        created += count;
+    }
+
+    ImportReport report() {
+        return new ImportReport(created, rejected, errors);
+    }
+
+    // Empty cells are null, so a missing value reads the same as in a JSON body
+    String text(String[] record, int field) {
+        String value = record[columns[field]].trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    Long longValue(String[] record, int field) {
+        String value = text(record, field);
+        try {
+            return value == null ? null : Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw invalid("a whole number", field, value);
+        }
+    }
+
+    Double doubleValue(String[] record, int field) {
+        String value = text(record, field);
+        try {
+            return value == null ? null : Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw invalid("a number", field, value);
+        }
+    }
+
+    // ISO date-times; a space instead of the T is accepted, as spreadsheets write them
+    LocalDateTime dateTime(String[] record, int field) {
+        String value = text(record, field);
+        try {
+            return value == null ? null : LocalDateTime.parse(value.replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            throw invalid("a date-time like 2024-05-01T08:00", field, value);
+        }
+    }
+
+    // ISO dates, or a bare year which means January 1st of it
+    LocalDate date(String[] record, int field) {
+        String value = text(record, field);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return value.length() == 4 ? LocalDate.of(Integer.parseInt(value), 1, 1) : LocalDate.parse(value);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw invalid("a date like 2020-01-01", field, value);
+        }
+    }
+
+    // Values separated by ';', '|' or ',' with optional brackets, as in "[NORMAL, HAZARDOUS]"
+    List<String> list(String[] record, int field) {
+        String value = text(record, field);
+        if (value == null) {
+            return null;
+        }
+        return Arrays.stream(LIST_SEPARATOR.split(BRACKETS.matcher(value).replaceAll("")))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .toList();
+    }
+
+    private RowException invalid(String expected, int field, String value) {
+        return new RowException("Column " + names[field] + " must be " + expected + ", got '" + value + "'");
+    }
+
+    private static String normalize(String name) {
+        return NOT_ALPHANUMERIC.matcher(name).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,160 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.entities.EmailOutbox;
+import com.fleetmaster.repositories.EmailOutboxRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drains email_outbox in batches. Each batch is claimed in a short transaction, sent over a
+ * single SMTP connection (JavaMailSender opens one transport per send call), and the
+ * outcome recorded in a second transaction, so no DB connection is held during SMTP.
+ * Failed messages are retried with exponential backoff until max-attempts.
+ */
+@Service
+public class EmailOutboxDispatcher implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffSeconds;
+    private final long maxBackoffSeconds;
+    private final long leaseSeconds;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public EmailOutboxDispatcher(
+            EmailOutboxRepository outboxRepository,
+            JavaMailSender mailSender,
+            TransactionTemplate transactionTemplate,
+            @Value("${email.outbox.batch-size:50}") int batchSize,
+            @Value("${email.outbox.max-attempts:8}") int maxAttempts,
+            @Value("${email.outbox.initial-backoff-seconds:30}") long initialBackoffSeconds,
+            @Value("${email.outbox.max-backoff-seconds:3600}") long maxBackoffSeconds,
+            @Value("${email.outbox.lease-seconds:300}") long leaseSeconds
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffSeconds = initialBackoffSeconds;
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:2000}")
+    public void dispatch() {
+        List<EmailOutbox> batch;
+        do {
+            batch = claimBatch();
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private List<EmailOutbox> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<EmailOutbox> due = outboxRepository.lockDueBatch(now, batchSize);
+            // Push the next attempt out by the lease so a crashed sender's batch is retried later
+            due.forEach(message -> message.setNextAttemptAt(now.plusSeconds(leaseSeconds)));
+            return outboxRepository.saveAll(due);
+        });
+    }
+
+    private void deliver(List<EmailOutbox> batch) {
+        SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            EmailOutbox outbox = batch.get(i);
+            SimpleMailMessage msg = new SimpleMailMessage();
+            msg.setTo(outbox.getRecipient());
+            msg.setSubject(outbox.getSubject());
+            msg.setText(outbox.getBody());
+            messages[i] = msg;
+        }
+
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException ex) {
+            if (ex.getFailedMessages().isEmpty()) {
+                for (SimpleMailMessage msg : messages) {
+                    failures.put(msg, ex);
+                }
+            } else {
+                failures.putAll(ex.getFailedMessages());
+            }
+        } catch (MailException ex) {
+            for (SimpleMailMessage msg : messages) {
+                failures.put(msg, ex);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < batch.size(); i++) {
+            EmailOutbox outbox = batch.get(i);
+            Exception error = failures.get(messages[i]);
+            outbox.setAttempts(outbox.getAttempts() + 1);
+            if (error == null) {
+                outbox.setStatus(EmailOutbox.STATUS_SENT);
+                outbox.setDateSent(now);
+                outbox.setLastError(null);
+                sent.increment();
+            } else {
+                outbox.setLastError(error.getMessage());
+                if (outbox.getAttempts() >= maxAttempts) {
+                    outbox.setStatus(EmailOutbox.STATUS_FAILED);
+                    failed.increment();
+                    logger.warn("Giving up on email {} to {}: {}", outbox.getId(), outbox.getRecipient(), error.getMessage());
+                } else {
+                    outbox.setNextAttemptAt(now.plusSeconds(backoffSeconds(outbox.getAttempts())));
+                }
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> outboxRepository.saveAll(batch));
+    }
+
+    long backoffSeconds(int attempts) {
+        int exponent = Math.min(attempts - 1, 30);
+        return Math.min(maxBackoffSeconds, initialBackoffSeconds << exponent);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("email.outbox.sent", sent, LongAdder::sum).register(registry);
+        FunctionCounter.builder("email.outbox.failed", failed, LongAdder::sum).register(registry);
+        // Backlog across all instances, counted in the database on each scrape
+        Gauge.builder("email.outbox.backlog.pending", outboxRepository,
+                repository -> repository.countByStatus(EmailOutbox.STATUS_PENDING)).register(registry);
+        Gauge.builder("email.outbox.backlog.failed", outboxRepository,
+                repository -> repository.countByStatus(EmailOutbox.STATUS_FAILED)).register(registry);
+    }
+}
@@ -1,19 +1,23 @@
 package com.fleetmaster.services;
 
+import com.fleetmaster.entities.EmailOutbox;
+import com.fleetmaster.repositories.EmailOutboxRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+/**
+ * Queues outgoing mail in the email_outbox table. The row joins the caller's transaction,
+ * so a rolled back registration never sends a code; EmailOutboxDispatcher does the SMTP work.
+ */
 @Service
 public class EmailService {
 
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
-    private final JavaMailSender mailSender;
+    private final EmailOutboxRepository outboxRepository;
 
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailService(EmailOutboxRepository outboxRepository) {
+        this.outboxRepository = outboxRepository;
     }
 
     public void sendVerificationCode(String to, String code) {
@@ -22,15 +26,7 @@ public class EmailService {
         logger.info("Code: {}", code);
         logger.info("------------------");
 
-        SimpleMailMessage msg = new SimpleMailMessage();
-        msg.setTo(to);
-        msg.setSubject("FleetMaster Verification Code");
-        msg.setText("Your verification code: " + code);
-        try {
-            mailSender.send(msg);
-        } catch (Exception ex) {
-            logger.warn("Email send failed, proceeding without email: {}", ex.getMessage());
-        }
+        enqueue(to, "FleetMaster Verification Code", "Your verification code: " + code);
     }
 
     public void sendPasswordRecoveryEmail(String to, String token) {
@@ -39,14 +35,15 @@ public class EmailService {
         logger.info("Token: {}", token);
         logger.info("-------------------------------");
 
-        SimpleMailMessage msg = new SimpleMailMessage();
-        msg.setTo(to);
-        msg.setSubject("FleetMaster Password Recovery");
-        msg.setText("Your password recovery token: " + token + "\n\nThis token expires in 1 hour.");
-        try {
-            mailSender.send(msg);
-        } catch (Exception ex) {
-            logger.warn("Email send failed, proceeding without email: {}", ex.getMessage());
-        }
+        enqueue(to, "FleetMaster Password Recovery",
+                "Your password recovery token: " + token + "\n\nThis token expires in 1 hour.");
+    }
+
+    private void enqueue(String to, String subject, String body) {
+        EmailOutbox message = new EmailOutbox();
+        message.setRecipient(to);
+        message.setSubject(subject);
+        message.setBody(body);
+        outboxRepository.save(message);
     }
 }
@@ -1,40 +1,194 @@
 package com.fleetmaster.services;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import com.fleetmaster.dtos.FleetOverview;
+import com.fleetmaster.dtos.FleetStatusRow;
+import com.fleetmaster.dtos.SubscriptionUsageRow;
+import com.fleetmaster.dtos.TrackingRow;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+
 import java.util.List;
 import java.util.Map;
-import org.hibernate.query.NativeQuery;
-import org.hibernate.transform.AliasToEntityMapResultTransformer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Service
-public class FleetService {
+public class FleetService implements MeterBinder, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(FleetService.class);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    // Same data source, with a JDBC query timeout of the overview timeout
+    private final NamedParameterJdbcTemplate overviewJdbcTemplate;
+    private final CompanyCache<List<FleetStatusRow>> fleetStatusCache;
+    private final CompanyCache<List<SubscriptionUsageRow>> subscriptionUsageCache;
+    private final long overviewTimeoutMillis;
+    // One virtual thread per overview section; each query borrows its own pooled connection
+    private final ExecutorService overviewExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public FleetService(
+            NamedParameterJdbcTemplate jdbcTemplate,
+            @Value("${fleet.status-cache.ttl-seconds:30}") long fleetStatusTtlSeconds,
+            @Value("${fleet.status-cache.max-size:10000}") int fleetStatusMaxSize,
+            @Value("${fleet.subscription-cache.ttl-seconds:60}") long subscriptionUsageTtlSeconds,
+            @Value("${fleet.subscription-cache.max-size:10000}") int subscriptionUsageMaxSize,
+            @Value("${fleet.overview.timeout-ms:2000}") long overviewTimeoutMillis) {
+        this(jdbcTemplate, withQueryTimeout(jdbcTemplate, overviewTimeoutMillis), fleetStatusTtlSeconds,
+                fleetStatusMaxSize, subscriptionUsageTtlSeconds, subscriptionUsageMaxSize, overviewTimeoutMillis);
+    }
+
+    FleetService(NamedParameterJdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate overviewJdbcTemplate,
+            long fleetStatusTtlSeconds, int fleetStatusMaxSize, long subscriptionUsageTtlSeconds,
+            int subscriptionUsageMaxSize, long overviewTimeoutMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.overviewJdbcTemplate = overviewJdbcTemplate;
+        this.overviewTimeoutMillis = overviewTimeoutMillis;
+        this.fleetStatusCache = new CompanyCache<>("fleet.status.cache", fleetStatusTtlSeconds * 1000, fleetStatusMaxSize);
+        this.subscriptionUsageCache = new CompanyCache<>("fleet.subscription.cache",
+                subscriptionUsageTtlSeconds * 1000, subscriptionUsageMaxSize);
+    }
+
+    /**
+     * The company's fleet_status snapshot rows, from the per-company cache when present.
+     * VehicleService invalidates the company on every vehicle write; maintenance records
+     * changed in SQL show up within the TTL.
+     */
+    public List<FleetStatusRow> getFleetStatus(Long companyId) {
+        return getFleetStatus(jdbcTemplate, companyId);
+    }
+
+    public void invalidateFleetStatus(Long companyId) {
+        fleetStatusCache.invalidate(companyId);
+    }
+
+    public List<TrackingRow> getOrderTracking(Long companyId) {
+        return getOrderTracking(jdbcTemplate, companyId);
+    }
+
+    /**
+     * The company's subscription tier, limits and current usage, from the per-company cache
+     * when present. Vehicle writes and account registration invalidate the company, and so
+     * do the subscription_usage notifications TrackingStreamService receives for changes
+     * made in SQL; the TTL only bounds what is missed while its listener is disconnected.
+     */
+    public List<SubscriptionUsageRow> getSubscriptionUsage(Long companyId) {
+        return getSubscriptionUsage(jdbcTemplate, companyId);
+    }
+
+    public void invalidateSubscriptionUsage(Long companyId) {
+        subscriptionUsageCache.invalidate(companyId);
+    }
+
+    public void invalidateAllSubscriptionUsage() {
+        subscriptionUsageCache.invalidateAll();
+    }
+
+    /**
+     * Fleet status, order tracking and subscription usage loaded concurrently. A section
+     * that throws is FAILED and one not done within the timeout is TIMED_OUT; either way
+     * the other sections are returned as usual. The section queries run with a JDBC query
+     * timeout of the overview timeout, rounded up to whole seconds: PgJDBC does not stop a
+     * query when its thread is interrupted, but the driver cancels one that outlives the
+     * query timeout, so it gives its pooled connection back.
+     */
+    public FleetOverview getOverview(Long companyId) {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(overviewTimeoutMillis);
+        Future<FleetOverview.Section<FleetStatusRow>> status =
+                startSection("status", () -> getFleetStatus(overviewJdbcTemplate, companyId));
+        Future<FleetOverview.Section<TrackingRow>> tracking =
+                startSection("tracking", () -> getOrderTracking(overviewJdbcTemplate, companyId));
+        Future<FleetOverview.Section<SubscriptionUsageRow>> subscription =
+                startSection("subscription", () -> getSubscriptionUsage(overviewJdbcTemplate, companyId));
+        return new FleetOverview(
+                awaitSection("status", status, started, deadline),
+                awaitSection("tracking", tracking, started, deadline),
+                awaitSection("subscription", subscription, started, deadline));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        fleetStatusCache.bindTo(registry);
+        subscriptionUsageCache.bindTo(registry);
+    }
+
+    @Override
+    public void destroy() {
+        overviewExecutor.shutdownNow();
+    }
+
+    private List<FleetStatusRow> getFleetStatus(NamedParameterJdbcTemplate template, Long companyId) {
+        return fleetStatusCache.get(companyId, id -> List.copyOf(template.query(
+                "SELECT " + RowMappers.FLEET_STATUS_COLUMNS + " FROM sp_read_fleet_status(:cid)",
+                Map.of("cid", id), RowMappers.FLEET_STATUS)));
+    }
+
+    private List<TrackingRow> getOrderTracking(NamedParameterJdbcTemplate template, Long companyId) {
+        return template.query(
+                "SELECT " + RowMappers.TRACKING_COLUMNS + " FROM sp_read_order_tracking(:cid)",
+                Map.of("cid", companyId), RowMappers.TRACKING);
+    }
+
+    private List<SubscriptionUsageRow> getSubscriptionUsage(NamedParameterJdbcTemplate template, Long companyId) {
+        return subscriptionUsageCache.get(companyId, id -> List.copyOf(template.query(
+                "SELECT " + RowMappers.SUBSCRIPTION_USAGE_COLUMNS + " FROM sp_read_subscription_usage(:cid)",
+                Map.of("cid", id), RowMappers.SUBSCRIPTION_USAGE)));
+    }
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    private static NamedParameterJdbcTemplate withQueryTimeout(NamedParameterJdbcTemplate jdbcTemplate,
+            long timeoutMillis) {
+        JdbcTemplate timed = new JdbcTemplate(jdbcTemplate.getJdbcTemplate().getDataSource());
+        timed.setQueryTimeout((int) Math.max(1, (timeoutMillis + 999) / 1000));
+        return new NamedParameterJdbcTemplate(timed);
+    }
 
-    public List<Map<String, Object>> getFleetStatus(Long companyId) {
-        return entityManager.createNativeQuery("SELECT * FROM sp_read_fleet_status(:cid)")
-                .setParameter("cid", companyId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+    private <T> Future<FleetOverview.Section<T>> startSection(String name, Supplier<List<T>> query) {
+        return overviewExecutor.submit(() -> {
+            long started = System.nanoTime();
+            try {
+                List<T> rows = query.get();
+                return FleetOverview.Section.ok(millisSince(started), rows);
+            } catch (RuntimeException e) {
+                log.warn("Fleet overview section {} failed", name, e);
+                return FleetOverview.Section.unavailable(FleetOverview.State.FAILED, millisSince(started),
+                        "Could not load " + name);
+            }
+        });
     }
 
-    public List<Map<String, Object>> getOrderTracking(Long companyId) {
-        return entityManager.createNativeQuery("SELECT * FROM sp_read_order_tracking(:cid)")
-                .setParameter("cid", companyId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+    private <T> FleetOverview.Section<T> awaitSection(String name, Future<FleetOverview.Section<T>> section,
+            long started, long deadline) {
+        try {
+            return section.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            section.cancel(true);
+            return FleetOverview.Section.unavailable(FleetOverview.State.TIMED_OUT, millisSince(started),
+                    name + " took longer than " + overviewTimeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            section.cancel(true);
+            return FleetOverview.Section.unavailable(FleetOverview.State.FAILED, millisSince(started),
+                    "Could not load " + name);
+        } catch (ExecutionException e) {
+            log.warn("Fleet overview section {} failed", name, e.getCause());
+            return FleetOverview.Section.unavailable(FleetOverview.State.FAILED, millisSince(started),
+                    "Could not load " + name);
+        }
     }
 
-    public List<Map<String, Object>> getSubscriptionUsage(Long companyId) {
-        return entityManager.createNativeQuery("SELECT * FROM sp_read_subscription_usage(:cid)")
-                .setParameter("cid", companyId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+    private static long millisSince(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
     }
 }
@@ -0,0 +1,69 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.exceptions.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Opaque pagination cursors: the sort key of the last row returned, base64url encoded
+ * with a kind prefix so a cursor from one listing cannot be replayed on another.
+ * Cursors carry no authority; every query still filters by the caller's company.
+ */
+final class KeysetCursor {
+
+    record TimeAndId(LocalDateTime time, long id) {
+    }
+
+    private KeysetCursor() {
+    }
+
+    static String encodeId(String kind, long id) {
+        return encode(kind + "|" + id);
+    }
+
+    static long decodeId(String kind, String cursor) {
+        String[] parts = decode(kind, cursor, 2);
+        try {
+            return Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            throw invalid();
+        }
+    }
+
+    static String encodeTimeAndId(String kind, LocalDateTime time, long id) {
+        return encode(kind + "|" + time + "|" + id);
+    }
+
+    static TimeAndId decodeTimeAndId(String kind, String cursor) {
+        String[] parts = decode(kind, cursor, 3);
+        try {
+            return new TimeAndId(LocalDateTime.parse(parts[1]), Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw invalid();
+        }
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decode(String kind, String cursor, int expectedParts) {
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw invalid();
+        }
+        String[] parts = value.split("\\|");
+        if (parts.length != expectedParts || !kind.equals(parts[0])) {
+            throw invalid();
+        }
+        return parts;
+    }
+
+    private static BusinessException invalid() {
+        return new BusinessException("Invalid cursor");
+    }
+}
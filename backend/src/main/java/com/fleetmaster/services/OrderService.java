@@ -1,49 +1,102 @@
 package com.fleetmaster.services;
 
+import com.fleetmaster.config.CsvRows;
 import com.fleetmaster.dtos.AddProgressDto;
 import com.fleetmaster.dtos.CreateOrderDto;
+import com.fleetmaster.dtos.CursorPage;
+import com.fleetmaster.dtos.ImportReport;
+import com.fleetmaster.dtos.OrderFilterDto;
+import com.fleetmaster.dtos.OrderRow;
+import com.fleetmaster.dtos.OrderStatsRow;
+import com.fleetmaster.dtos.ProgressRow;
 import com.fleetmaster.exceptions.BusinessException;
+import com.fleetmaster.exceptions.ServiceUnavailableException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
-import org.hibernate.query.NativeQuery;
-import org.hibernate.transform.AliasToEntityMapResultTransformer;
+import org.hibernate.Session;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class OrderService {
 
+    static final int MAX_PROGRESS_BATCH = 1000;
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String ORDER_CURSOR = "order";
+    private static final String PROGRESS_CURSOR = "progress";
+    private static final Set<String> ORDER_STATUSES = Set.of("PENDING", "IN_TRANSIT", "DELIVERED", "CANCELED");
+
+    // Mirrors the progress_type enum so one bad item cannot abort the whole batch insert
+    private static final Set<String> PROGRESS_TYPES = Set.of(
+            "LOADING", "DEPARTURE", "STOPOVER", "BREAK", "FUEL", "STOP", "INSPECTION",
+            "DEVIATION", "BREAKDOWN", "INTERRUPTION", "UNLOADING", "ARRIVAL", "COMPLETION");
+
+    private static final Set<String> LOAD_TYPES = Set.of("NORMAL", "REFRIGERATED", "HAZARDOUS");
+
+    // CreateOrderDto fields, in the order importOrders reads them
+    private static final String[] IMPORT_COLUMNS = {
+            "vehicleId", "driverId", "pickUpLat", "pickUpLon", "deliveryLat", "deliveryLon",
+            "loadType", "departureTime", "arrivalTime"};
+
+    private record PendingProgress(int index, AddProgressDto dto, String position, String description) {
+    }
+
     @PersistenceContext
     private EntityManager entityManager;
     
+    private final NamedParameterJdbcTemplate jdbcTemplate;
     private final ObjectMapper objectMapper;
+    private final ProgressWriteBuffer progressWriteBuffer;
+    private final VehiclePositionIndex vehiclePositionIndex;
 
-    public OrderService(ObjectMapper objectMapper) {
+    public OrderService(NamedParameterJdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            ProgressWriteBuffer progressWriteBuffer, VehiclePositionIndex vehiclePositionIndex) {
+        this.jdbcTemplate = jdbcTemplate;
         this.objectMapper = objectMapper;
+        this.progressWriteBuffer = progressWriteBuffer;
+        this.vehiclePositionIndex = vehiclePositionIndex;
     }
 
+    /**
+     * Checks that vehicle and driver belong to the company and inserts the order in one
+     * statement. The ownership flags are returned either way, so a refusal still says
+     * which of the two failed.
+     */
     @Transactional
     public Long createOrder(Long companyId, CreateOrderDto dto) {
-        // 1. Validate ownership
-        if (!isVehicleOwnedByCompany(companyId, dto.getVehicleId())) {
-            throw new BusinessException("Vehicle does not belong to your company");
-        }
-        if (!isDriverOwnedByCompany(companyId, dto.getDriverId())) {
-            throw new BusinessException("Driver does not belong to your company");
-        }
-
-        // 2. Prepare Points
         Object pickUpPoint = createPoint(dto.getPickUpLat(), dto.getPickUpLon());
         Object deliveryPoint = createPoint(dto.getDeliveryLat(), dto.getDeliveryLon());
 
-        // 3. Call SP (Stored Procedure)
-        // sp_create_order(p_vehicle_id, p_driver_id, p_pick_up, p_delivery, p_load_type, p_departure_time, p_arrival_time)
-        Number orderId = (Number) entityManager.createNativeQuery(
-                "SELECT sp_create_order(:vid, :did, CAST(:pickup AS point), CAST(:delivery AS point), CAST(:ltype AS load_type), :dtime, :atime)")
+        Object[] result = (Object[]) entityManager.createNativeQuery(
+                "WITH owner AS (" +
+                "  SELECT EXISTS (SELECT 1 FROM company_vehicles WHERE company_id = :cid AND vehicle_id = :vid) AS vehicle_owned," +
+                "         EXISTS (SELECT 1 FROM company_account WHERE company_id = :cid AND id = :did) AS driver_owned" +
+                "), created AS (" +
+                "  INSERT INTO orders (pick_up, delivery, load_type, departure_time, arrival_time, status, vehicle_id, driver_id)" +
+                "  SELECT CAST(:pickup AS point), CAST(:delivery AS point), CAST(:ltype AS load_type), :dtime, :atime," +
+                "         'PENDING', :vid, :did" +
+                "  FROM owner WHERE vehicle_owned AND driver_owned" +
+                "  RETURNING id" +
+                ") " +
+                "SELECT owner.vehicle_owned, owner.driver_owned, (SELECT id FROM created) FROM owner")
+                .setParameter("cid", companyId)
                 .setParameter("vid", dto.getVehicleId())
                 .setParameter("did", dto.getDriverId())
                 .setParameter("pickup", pickUpPoint)
@@ -52,31 +105,117 @@ public class OrderService {
                 .setParameter("dtime", dto.getDepartureTime())
                 .setParameter("atime", dto.getArrivalTime())
                 .getSingleResult();
-        
-        return orderId.longValue();
+
+        if (!Boolean.TRUE.equals(result[0])) {
+            throw new BusinessException("Vehicle does not belong to your company");
+        }
+        if (!Boolean.TRUE.equals(result[1])) {
+            throw new BusinessException("Driver does not belong to your company");
+        }
+        return ((Number) result[2]).longValue();
     }
 
-    public List<Map<String, Object>> getAllOrders(Long companyId) {
-        return entityManager.createNativeQuery(
-                "SELECT o.* FROM orders o " +
+    /**
+     * Creates orders from a CSV upload with one column per CreateOrderDto field. The file
+     * is read as a stream: each row is checked like a single create, against the company's
+     * vehicles and drivers read once up front, and valid rows are inserted in JDBC batches.
+     * Rejected rows are listed in the report and do not stop the import.
+     */
+    @Transactional
+    public ImportReport importOrders(Long companyId, CsvRows rows) {
+        CsvImport csv = new CsvImport(rows, IMPORT_COLUMNS);
+        Map<String, Object> company = Map.of("cid", companyId);
+        Set<Long> vehicles = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT vehicle_id FROM company_vehicles WHERE company_id = :cid", company, Long.class));
+        Set<Long> drivers = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM company_account WHERE company_id = :cid", company, Long.class));
+        LocalDateTime now = LocalDateTime.now();
+
+        List<CreateOrderDto> batch = new ArrayList<>(CsvImport.BATCH_SIZE);
+        String[] record;
+        while ((record = csv.next()) != null) {
+            CreateOrderDto dto = new CreateOrderDto();
+            try {
+                dto.setVehicleId(csv.longValue(record, 0));
+                dto.setDriverId(csv.longValue(record, 1));
+                dto.setPickUpLat(csv.doubleValue(record, 2));
+                dto.setPickUpLon(csv.doubleValue(record, 3));
+                dto.setDeliveryLat(csv.doubleValue(record, 4));
+                dto.setDeliveryLon(csv.doubleValue(record, 5));
+                dto.setLoadType(csv.text(record, 6));
+                dto.setDepartureTime(csv.dateTime(record, 7));
+                dto.setArrivalTime(csv.dateTime(record, 8));
+            } catch (CsvImport.RowException e) {
+                csv.reject(e.getMessage());
+                continue;
+            }
+            String error = validateOrder(dto, vehicles, drivers, now);
+            if (error != null) {
+                csv.reject(error);
+                continue;
+            }
+            batch.add(dto);
+            if (batch.size() == CsvImport.BATCH_SIZE) {
+                csv.created(insertOrderBatch(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            csv.created(insertOrderBatch(batch));
+        }
+        return csv.report();
+    }
+
+    /**
+     * One keyset page of the company's orders in id order. Filters map onto indexed
+     * columns, and at most limit + 1 rows are read whatever the size of the tenant.
+     */
+    public CursorPage<OrderRow> getOrders(Long companyId, OrderFilterDto filter, String cursor, int limit) {
+        int pageSize = pageSize(limit);
+        StringBuilder sql = new StringBuilder(
+                "SELECT " + RowMappers.ORDER_COLUMNS + " FROM orders o " +
                 "JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id " +
-                "WHERE cv.company_id = :cid")
-                .setParameter("cid", companyId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+                "WHERE cv.company_id = :cid");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("cid", companyId);
+
+        if (cursor != null && !cursor.isBlank()) {
+            sql.append(" AND o.id > :afterId");
+            parameters.put("afterId", KeysetCursor.decodeId(ORDER_CURSOR, cursor));
+        }
+        if (filter != null) {
+            if (filter.getStatus() != null) {
+                if (!ORDER_STATUSES.contains(filter.getStatus())) {
+                    throw new BusinessException("Invalid order status: " + filter.getStatus());
+                }
+                sql.append(" AND o.status = CAST(:status AS order_status)");
+                parameters.put("status", filter.getStatus());
+            }
+            appendFilter(sql, parameters, "o.vehicle_id =", "vehicleId", filter.getVehicleId());
+            appendFilter(sql, parameters, "o.driver_id =", "driverId", filter.getDriverId());
+            appendFilter(sql, parameters, "o.departure_time >=", "departureFrom", filter.getDepartureFrom());
+            appendFilter(sql, parameters, "o.departure_time <", "departureTo", filter.getDepartureTo());
+            appendFilter(sql, parameters, "o.arrival_time >=", "arrivalFrom", filter.getArrivalFrom());
+            appendFilter(sql, parameters, "o.arrival_time <", "arrivalTo", filter.getArrivalTo());
+        }
+        sql.append(" ORDER BY o.id LIMIT :limit");
+        parameters.put("limit", pageSize + 1);
+
+        List<OrderRow> rows = jdbcTemplate.query(sql.toString(), parameters, RowMappers.ORDER);
+
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows, null);
+        }
+        List<OrderRow> items = rows.subList(0, pageSize);
+        return new CursorPage<>(items, KeysetCursor.encodeId(ORDER_CURSOR, items.get(pageSize - 1).id()));
     }
 
-    public Map<String, Object> getOrderById(Long companyId, Long orderId) {
-        List<Map<String, Object>> results = entityManager.createNativeQuery(
-                "SELECT o.* FROM orders o " +
+    public OrderRow getOrderById(Long companyId, Long orderId) {
+        List<OrderRow> results = jdbcTemplate.query(
+                "SELECT " + RowMappers.ORDER_COLUMNS + " FROM orders o " +
                 "JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id " +
-                "WHERE cv.company_id = :cid AND o.id = :oid")
-                .setParameter("cid", companyId)
-                .setParameter("oid", orderId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+                "WHERE cv.company_id = :cid AND o.id = :oid",
+                Map.of("cid", companyId, "oid", orderId), RowMappers.ORDER);
 
         if (results.isEmpty()) {
             throw new BusinessException("Order not found or does not belong to your company");
@@ -84,44 +223,60 @@ public class OrderService {
         return results.get(0);
     }
 
+    /**
+     * The company's order counters, kept current by triggers on orders, so this is a
+     * primary key lookup however many orders the company has.
+     */
+    public OrderStatsRow getOrderStats(Long companyId) {
+        List<OrderStatsRow> rows = jdbcTemplate.query(
+                "SELECT " + RowMappers.ORDER_STATS_COLUMNS + " FROM order_stats WHERE company_id = :cid",
+                Map.of("cid", companyId), RowMappers.ORDER_STATS);
+        return rows.isEmpty() ? OrderStatsRow.EMPTY : rows.get(0);
+    }
+
     @Transactional
     public void updateOrderStatus(Long companyId, Long orderId, String status) {
-        // Verify ownership
-        getOrderById(companyId, orderId);
-
+        // Ownership is part of the UPDATE, so no row means not found or not ours
         int updated = entityManager.createNativeQuery(
-                "UPDATE orders SET status = CAST(:status AS order_status) WHERE id = :oid")
+                "UPDATE orders o SET status = CAST(:status AS order_status) " +
+                "FROM company_vehicles cv " +
+                "WHERE cv.vehicle_id = o.vehicle_id AND cv.company_id = :cid AND o.id = :oid")
                 .setParameter("status", status)
+                .setParameter("cid", companyId)
                 .setParameter("oid", orderId)
                 .executeUpdate();
 
         if (updated == 0) {
-            throw new BusinessException("Failed to update order status");
+            throw new BusinessException("Order not found or does not belong to your company");
         }
     }
 
     @Transactional
     public void deleteOrder(Long companyId, Long orderId) {
-        // Verify ownership
-        getOrderById(companyId, orderId);
-
-        // Delete progress entries first
-        entityManager.createNativeQuery(
-                "DELETE FROM progress WHERE order_id = :oid")
+        // One statement: foreign keys are checked at its end, after the progress rows are gone
+        int deleted = entityManager.createNativeQuery(
+                "WITH target AS (" +
+                "  SELECT o.id FROM orders o JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id" +
+                "  WHERE cv.company_id = :cid AND o.id = :oid" +
+                "), removed_progress AS (" +
+                "  DELETE FROM progress WHERE order_id IN (SELECT id FROM target)" +
+                ") " +
+                "DELETE FROM orders WHERE id IN (SELECT id FROM target)")
+                .setParameter("cid", companyId)
                 .setParameter("oid", orderId)
                 .executeUpdate();
 
-        // Delete order
-        entityManager.createNativeQuery(
-                "DELETE FROM orders WHERE id = :oid")
-                .setParameter("oid", orderId)
-                .executeUpdate();
+        if (deleted == 0) {
+            throw new BusinessException("Order not found or does not belong to your company");
+        }
+        progressWriteBuffer.forgetOrder(orderId);
     }
 
     @Transactional
     public Long addProgress(Long companyId, AddProgressDto dto) {
         // 1. Validate order ownership
-        if(!isOrderOwnedByCompany(companyId, dto.getOrderId())) {
+        Long vehicleId = findOrderVehicle(companyId, dto.getOrderId());
+        if (vehicleId == null) {
              throw new BusinessException("Order does not belong to your company");
         }
 
@@ -144,47 +299,365 @@ public class OrderService {
             .setParameter("desc", jsonDescription)
             .getSingleResult();
 
+        if (position != null) {
+            vehiclePositionIndex.updatePosition(companyId, vehicleId, dto.getLat(), dto.getLon());
+        }
         return progressId.longValue();
     }
 
-    public List<Map<String, Object>> getOrderProgress(Long companyId, Long orderId) {
+    /**
+     * Queues a position-only ping on the write-behind buffer when that mode is enabled.
+     * Returns false when the ping has to go through addProgress instead.
+     */
+    public boolean queueProgress(Long companyId, AddProgressDto dto) {
+        if (!progressWriteBuffer.accepts(dto)) {
+            return false;
+        }
+        // Ownership never changes for an order, so it is only checked on first sight
+        Long vehicleId = progressWriteBuffer.knownVehicle(companyId, dto.getOrderId());
+        if (vehicleId == null) {
+            vehicleId = findOrderVehicle(companyId, dto.getOrderId());
+            if (vehicleId == null) {
+                throw new BusinessException("Order does not belong to your company");
+            }
+            progressWriteBuffer.rememberOrder(companyId, dto.getOrderId(), vehicleId);
+        }
+        if (!progressWriteBuffer.offer(dto.getOrderId(), createPoint(dto.getLat(), dto.getLon()), dto.getType())) {
+            throw new ServiceUnavailableException("Progress buffer is full, please retry shortly");
+        }
+        vehiclePositionIndex.updatePosition(companyId, vehicleId, dto.getLat(), dto.getLon());
+        return true;
+    }
+
+    /**
+     * Adds many progress points at once, e.g. a backlog a truck buffered while offline.
+     * Ownership is checked with one query for all distinct orders, the rows are inserted
+     * as a single JDBC batch and the status changes sp_add_progress would make are applied
+     * once per order. Invalid items are reported in the result instead of failing the batch.
+     */
+    @Transactional
+    public List<Map<String, Object>> addProgressBatch(Long companyId, List<AddProgressDto> items) {
+        if (items == null || items.isEmpty()) {
+            throw new BusinessException("At least one progress item is required");
+        }
+        if (items.size() > MAX_PROGRESS_BATCH) {
+            throw new BusinessException("A batch can contain at most " + MAX_PROGRESS_BATCH + " progress items");
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        Map<Long, Long> ownedOrders = findOwnedOrders(companyId,
+                items.stream().map(AddProgressDto::getOrderId).filter(id -> id != null).distinct().toList());
+
+        List<PendingProgress> pending = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            AddProgressDto dto = items.get(i);
+            results.add(null);
+            String error = validateProgress(dto, ownedOrders);
+            if (error != null) {
+                results.set(i, rejected(i, error));
+                continue;
+            }
+            try {
+                String description = dto.getDescription() == null ? "{}" : objectMapper.writeValueAsString(dto.getDescription());
+                pending.add(new PendingProgress(i, dto, createPoint(dto.getLat(), dto.getLon()), description));
+            } catch (Exception e) {
+                results.set(i, rejected(i, "Invalid JSON description"));
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            List<Long> progressIds = insertProgressBatch(pending);
+            for (int i = 0; i < pending.size(); i++) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("index", pending.get(i).index());
+                result.put("status", "CREATED");
+                result.put("progressId", i < progressIds.size() ? progressIds.get(i) : null);
+                results.set(pending.get(i).index(), result);
+            }
+            applyProgressStatuses(pending);
+            updateVehiclePositions(companyId, pending, ownedOrders);
+        }
+        return results;
+    }
+
+    /**
+     * One keyset page of an order's progress in (time, id) order, served by
+     * idx_progress_order_time.
+     */
+    public CursorPage<ProgressRow> getOrderProgress(Long companyId, Long orderId, String cursor, int limit) {
         // Verify ownership
         getOrderById(companyId, orderId);
+        int pageSize = pageSize(limit);
 
-        return entityManager.createNativeQuery(
-                "SELECT * FROM progress WHERE order_id = :oid ORDER BY time ASC")
-                .setParameter("oid", orderId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("oid", orderId);
+        parameters.put("limit", pageSize + 1);
+        String sql;
+        if (cursor != null && !cursor.isBlank()) {
+            KeysetCursor.TimeAndId after = KeysetCursor.decodeTimeAndId(PROGRESS_CURSOR, cursor);
+            parameters.put("afterTime", after.time());
+            parameters.put("afterId", after.id());
+            sql = "SELECT " + RowMappers.PROGRESS_COLUMNS + " FROM progress " +
+                    "WHERE order_id = :oid AND (time, id) > (:afterTime, :afterId) " +
+                    "ORDER BY time ASC, id ASC LIMIT :limit";
+        } else {
+            sql = "SELECT " + RowMappers.PROGRESS_COLUMNS + " FROM progress " +
+                    "WHERE order_id = :oid ORDER BY time ASC, id ASC LIMIT :limit";
+        }
+        List<ProgressRow> rows = jdbcTemplate.query(sql, parameters, RowMappers.PROGRESS);
+
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows, null);
+        }
+        List<ProgressRow> items = rows.subList(0, pageSize);
+        ProgressRow last = items.get(pageSize - 1);
+        return new CursorPage<>(items, KeysetCursor.encodeTimeAndId(PROGRESS_CURSOR, last.time(), last.id()));
     }
 
-    private boolean isVehicleOwnedByCompany(Long companyId, Long vehicleId) {
-        List<?> result = entityManager.createNativeQuery(
-                "SELECT 1 FROM company_vehicles WHERE company_id = :cid AND vehicle_id = :vid")
-                .setParameter("cid", companyId)
-                .setParameter("vid", vehicleId)
-                .getResultList();
-        return !result.isEmpty();
+    /**
+     * The whole progress route of an order, simplified for drawing. STOP/STOPOVER pings are
+     * thinned with Douglas-Peucker to the given tolerance in meters and/or a maximum number
+     * of points; every other event, and rows without a position, are always kept.
+     *
+     * The first pass streams only id, position and type into primitive arrays; the kept
+     * rows are then read in full by id.
+     */
+    public List<ProgressRow> getSimplifiedOrderProgress(Long companyId, Long orderId,
+            Double toleranceMeters, Integer maxPoints) {
+        if (toleranceMeters != null && (!Double.isFinite(toleranceMeters) || toleranceMeters < 0)) {
+            throw new BusinessException("simplify must be a non-negative number of meters");
+        }
+        if (maxPoints != null && maxPoints < 2) {
+            throw new BusinessException("maxPoints must be at least 2");
+        }
+        // Verify ownership
+        getOrderById(companyId, orderId);
+
+        RouteSimplifier route = new RouteSimplifier(256);
+        List<Long> withoutPosition = new ArrayList<>();
+        // Points are (lat, lon), as written by createPoint
+        jdbcTemplate.query(
+                "SELECT id, current_pos[0], current_pos[1], type NOT IN ('STOP', 'STOPOVER') FROM progress " +
+                "WHERE order_id = :oid ORDER BY time ASC, id ASC",
+                Map.of("oid", orderId),
+                (RowCallbackHandler) rs -> {
+                    double lat = rs.getDouble(2);
+                    if (rs.wasNull()) {
+                        withoutPosition.add(rs.getLong(1));
+                    } else {
+                        route.add(rs.getLong(1), lat, rs.getDouble(3), rs.getBoolean(4));
+                    }
+                });
+
+        long[] kept = route.simplify(toleranceMeters == null ? 0 : toleranceMeters, maxPoints == null ? 0 : maxPoints);
+        long[] ids = new long[kept.length + withoutPosition.size()];
+        System.arraycopy(kept, 0, ids, 0, kept.length);
+        for (int i = 0; i < withoutPosition.size(); i++) {
+            ids[kept.length + i] = withoutPosition.get(i);
+        }
+        if (ids.length == 0) {
+            return List.of();
+        }
+
+        return jdbcTemplate.query(
+                "SELECT " + RowMappers.PROGRESS_COLUMNS + " FROM progress " +
+                "WHERE order_id = :oid AND id = ANY(:ids) ORDER BY time ASC, id ASC",
+                Map.of("oid", orderId, "ids", ids), RowMappers.PROGRESS);
     }
-    
-    private boolean isDriverOwnedByCompany(Long companyId, Long driverId) {
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private static void appendFilter(StringBuilder sql, Map<String, Object> parameters,
+            String condition, String name, Object value) {
+        if (value != null) {
+            sql.append(" AND ").append(condition).append(" :").append(name);
+            parameters.put(name, value);
+        }
+    }
+
+    // Owned order id -> vehicle id
+    private Map<Long, Long> findOwnedOrders(Long companyId, List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Map.of();
+        }
         List<?> result = entityManager.createNativeQuery(
-                "SELECT 1 FROM company_account WHERE company_id = :cid AND id = :did")
+                "SELECT o.id, o.vehicle_id FROM orders o JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id " +
+                "WHERE cv.company_id = :cid AND o.id IN (:oids)")
                 .setParameter("cid", companyId)
-                .setParameter("did", driverId)
+                .setParameter("oids", orderIds)
                 .getResultList();
-        return !result.isEmpty();
+        Map<Long, Long> owned = new HashMap<>();
+        for (Object row : result) {
+            Object[] columns = (Object[]) row;
+            owned.put(((Number) columns[0]).longValue(), ((Number) columns[1]).longValue());
+        }
+        return owned;
+    }
+
+    // The last positioned item of each order is where its vehicle is now
+    private void updateVehiclePositions(Long companyId, List<PendingProgress> pending, Map<Long, Long> ownedOrders) {
+        Map<Long, AddProgressDto> latest = new LinkedHashMap<>();
+        for (PendingProgress row : pending) {
+            if (row.position() != null) {
+                latest.put(row.dto().getOrderId(), row.dto());
+            }
+        }
+        latest.forEach((orderId, dto) -> vehiclePositionIndex.updatePosition(
+                companyId, ownedOrders.get(orderId), dto.getLat(), dto.getLon()));
+    }
+
+    private String validateProgress(AddProgressDto dto, Map<Long, Long> ownedOrders) {
+        if (dto == null || dto.getOrderId() == null) {
+            return "Order ID is required";
+        }
+        if (!ownedOrders.containsKey(dto.getOrderId())) {
+            return "Order does not belong to your company";
+        }
+        if (dto.getLat() == null || dto.getLat() < -90 || dto.getLat() > 90) {
+            return "Latitude must be between -90 and 90";
+        }
+        if (dto.getLon() == null || dto.getLon() < -180 || dto.getLon() > 180) {
+            return "Longitude must be between -180 and 180";
+        }
+        if (dto.getType() == null || !PROGRESS_TYPES.contains(dto.getType())) {
+            return "Invalid progress type: " + dto.getType();
+        }
+        return null;
+    }
+
+    // The CreateOrderDto constraints, plus ownership as checked by createOrder
+    private String validateOrder(CreateOrderDto dto, Set<Long> vehicles, Set<Long> drivers, LocalDateTime now) {
+        if (dto.getVehicleId() == null) {
+            return "Vehicle ID is required";
+        }
+        if (dto.getDriverId() == null) {
+            return "Driver ID is required";
+        }
+        if (dto.getPickUpLat() == null || dto.getDeliveryLat() == null) {
+            return dto.getPickUpLat() == null ? "Pick up latitude is required" : "Delivery latitude is required";
+        }
+        if (dto.getPickUpLon() == null || dto.getDeliveryLon() == null) {
+            return dto.getPickUpLon() == null ? "Pick up longitude is required" : "Delivery longitude is required";
+        }
+        if (Math.abs(dto.getPickUpLat()) > 90 || Math.abs(dto.getDeliveryLat()) > 90) {
+            return "Latitude must be between -90 and 90";
+        }
+        if (Math.abs(dto.getPickUpLon()) > 180 || Math.abs(dto.getDeliveryLon()) > 180) {
+            return "Longitude must be between -180 and 180";
+        }
+        if (dto.getLoadType() == null) {
+            return "Load type is required";
+        }
+        if (!LOAD_TYPES.contains(dto.getLoadType())) {
+            return "Load type must be NORMAL, REFRIGERATED, or HAZARDOUS";
+        }
+        if (dto.getDepartureTime() == null) {
+            return "Departure time is required";
+        }
+        if (dto.getArrivalTime() == null) {
+            return "Arrival time is required";
+        }
+        if (!dto.getArrivalTime().isAfter(now)) {
+            return "Arrival time must be in the future";
+        }
+        if (!vehicles.contains(dto.getVehicleId())) {
+            return "Vehicle does not belong to your company";
+        }
+        if (!drivers.contains(dto.getDriverId())) {
+            return "Driver does not belong to your company";
+        }
+        return null;
+    }
+
+    private int insertOrderBatch(List<CreateOrderDto> batch) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO orders (pick_up, delivery, load_type, departure_time, arrival_time, status, vehicle_id, driver_id) " +
+                    "VALUES (CAST(? AS point), CAST(? AS point), CAST(? AS load_type), ?, ?, 'PENDING', ?, ?)")) {
+                for (CreateOrderDto dto : batch) {
+                    statement.setString(1, createPoint(dto.getPickUpLat(), dto.getPickUpLon()));
+                    statement.setString(2, createPoint(dto.getDeliveryLat(), dto.getDeliveryLon()));
+                    statement.setString(3, dto.getLoadType());
+                    statement.setTimestamp(4, Timestamp.valueOf(dto.getDepartureTime()));
+                    statement.setTimestamp(5, Timestamp.valueOf(dto.getArrivalTime()));
+                    statement.setLong(6, dto.getVehicleId());
+                    statement.setLong(7, dto.getDriverId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+        return batch.size();
+    }
+
+    private Map<String, Object> rejected(int index, String error) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index);
+        result.put("status", "REJECTED");
+        result.put("error", error);
+        return result;
+    }
+
+    private List<Long> insertProgressBatch(List<PendingProgress> pending) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO progress(order_id, current_pos, type, description) " +
+                    "VALUES (?, CAST(? AS point), CAST(? AS progress_type), CAST(? AS jsonb))",
+                    new String[]{"id"})) {
+                for (PendingProgress row : pending) {
+                    statement.setLong(1, row.dto().getOrderId());
+                    statement.setString(2, row.position());
+                    statement.setString(3, row.dto().getType());
+                    statement.setString(4, row.description());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                // Generated keys come back in batch order
+                List<Long> ids = new ArrayList<>(pending.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                return ids;
+            }
+        });
+    }
+
+    // Same rules as sp_add_progress; the last status-changing item of an order wins
+    private void applyProgressStatuses(List<PendingProgress> pending) {
+        Map<Long, String> finalStatus = new HashMap<>();
+        for (PendingProgress row : pending) {
+            String type = row.dto().getType();
+            if ("DEPARTURE".equals(type)) {
+                finalStatus.put(row.dto().getOrderId(), "IN_TRANSIT");
+            } else if ("ARRIVAL".equals(type) || "COMPLETION".equals(type)) {
+                finalStatus.put(row.dto().getOrderId(), "DELIVERED");
+            }
+        }
+
+        Map<String, List<Long>> ordersByStatus = new HashMap<>();
+        finalStatus.forEach((orderId, status) ->
+                ordersByStatus.computeIfAbsent(status, k -> new ArrayList<>()).add(orderId));
+        ordersByStatus.forEach((status, orderIds) -> entityManager.createNativeQuery(
+                "UPDATE orders SET status = CAST(:status AS order_status) WHERE id IN (:oids)")
+                .setParameter("status", status)
+                .setParameter("oids", orderIds)
+                .executeUpdate());
     }
 
-    private boolean isOrderOwnedByCompany(Long companyId, Long orderId) {
+    // The order's vehicle when the order belongs to the company, otherwise null
+    private Long findOrderVehicle(Long companyId, Long orderId) {
          List<?> result = entityManager.createNativeQuery(
-                "SELECT 1 FROM orders o JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id " +
+                "SELECT o.vehicle_id FROM orders o JOIN company_vehicles cv ON o.vehicle_id = cv.vehicle_id " +
                 "WHERE cv.company_id = :cid AND o.id = :oid")
                 .setParameter("cid", companyId)
                 .setParameter("oid", orderId)
                 .getResultList();
-        return !result.isEmpty();
+        return result.isEmpty() ? null : ((Number) result.get(0)).longValue();
     }
     
     private String createPoint(Double lat, Double lon) {
@@ -0,0 +1,97 @@
+package com.fleetmaster.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the monthly progress partitions created ahead of time and applies the retention
+ * policy: position pings of delivered orders older than the retention period are rolled
+ * up into progress_archive. Both steps are stored procedures; a run that fails is retried
+ * on the next schedule.
+ */
+@Component
+public class ProgressPartitionMaintainer implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressPartitionMaintainer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int monthsAhead;
+    private final boolean retentionEnabled;
+    private final int retentionDays;
+    private final int bucketMinutes;
+    private final int maxOrdersPerRun;
+
+    private final LongAdder partitionsCreated = new LongAdder();
+    private final LongAdder rowsArchived = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ProgressPartitionMaintainer(
+            JdbcTemplate jdbcTemplate,
+            @Value("${orders.progress.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${orders.progress.retention.enabled:false}") boolean retentionEnabled,
+            @Value("${orders.progress.retention.days:90}") int retentionDays,
+            @Value("${orders.progress.retention.bucket-minutes:15}") int bucketMinutes,
+            @Value("${orders.progress.retention.max-orders-per-run:1000}") int maxOrdersPerRun) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionEnabled = retentionEnabled;
+        this.retentionDays = retentionDays;
+        this.bucketMinutes = bucketMinutes;
+        this.maxOrdersPerRun = maxOrdersPerRun;
+    }
+
+    @Scheduled(initialDelayString = "${orders.progress.maintenance.initial-delay-ms:10000}",
+            fixedDelayString = "${orders.progress.maintenance.interval-ms:3600000}")
+    public void run() {
+        ensurePartitions();
+        if (retentionEnabled) {
+            archiveDeliveredProgress();
+        }
+    }
+
+    void ensurePartitions() {
+        try {
+            Integer created = jdbcTemplate.queryForObject(
+                    "SELECT sp_ensure_progress_partitions(?)", Integer.class, monthsAhead);
+            if (created != null && created > 0) {
+                partitionsCreated.add(created);
+                log.info("Created {} progress partitions", created);
+            }
+        } catch (DataAccessException e) {
+            failures.increment();
+            log.warn("Failed to create progress partitions: {}", e.getMessage());
+        }
+    }
+
+    void archiveDeliveredProgress() {
+        try {
+            Long archived = jdbcTemplate.queryForObject(
+                    "SELECT sp_archive_delivered_progress(?, ?, ?)", Long.class,
+                    retentionDays, bucketMinutes, maxOrdersPerRun);
+            if (archived != null && archived > 0) {
+                rowsArchived.add(archived);
+                log.info("Archived {} progress rows of delivered orders", archived);
+            }
+        } catch (DataAccessException e) {
+            failures.increment();
+            log.warn("Failed to archive delivered order progress: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("orders.progress.partitions.created", partitionsCreated, LongAdder::sum).register(registry);
+        FunctionCounter.builder("orders.progress.retention.archived", rowsArchived, LongAdder::sum).register(registry);
+        FunctionCounter.builder("orders.progress.maintenance.failures", failures, LongAdder::sum).register(registry);
+    }
+}
@@ -0,0 +1,279 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.AddProgressDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in write-behind path for position-only pings (STOP / STOPOVER with just lat/lon).
+ * Pings are acknowledged once they are in a bounded in-memory queue, partitioned by
+ * order so each order's pings stay in arrival order, and a single writer thread flushes
+ * them to progress every flush interval or flush-rows pings, one INSERT ... SELECT FROM
+ * unnest(...) statement per flush-rows pings.
+ *
+ * Durability: the ping time is taken on acceptance, and the buffer is flushed on a
+ * graceful shutdown. Pings still buffered when the process dies are lost. A failed
+ * flush is re-queued when retry-failed-flush is set, as far as capacity allows. A full
+ * partition rejects new pings, and the caller answers 503 so clients back off.
+ */
+@Component
+public class ProgressWriteBuffer implements MeterBinder, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressWriteBuffer.class);
+
+    private static final Set<String> POSITION_TYPES = Set.of("STOP", "STOPOVER");
+    static final int MAX_CACHED_ORDERS = 10000;
+
+    // One statement per chunk: the pings go as parallel arrays and are unnested in arrival
+    // order. The EXISTS guard turns a ping for an order deleted meanwhile into a no-op
+    // instead of an FK violation that would fail the whole chunk
+    private static final String INSERT_SQL =
+            "INSERT INTO progress(order_id, current_pos, time, type, description) " +
+            "SELECT p.order_id, CAST(p.pos AS point), p.time, CAST(p.type AS progress_type), '{}'::jsonb " +
+            "FROM unnest(?::bigint[], ?::text[], ?::timestamp[], ?::text[]) WITH ORDINALITY AS p(order_id, pos, time, type, n) " +
+            "WHERE EXISTS (SELECT 1 FROM orders o WHERE o.id = p.order_id) " +
+            "ORDER BY p.n";
+
+    private record OrderOwner(Long companyId, Long vehicleId) {
+    }
+
+    record Ping(long orderId, String position, String type, LocalDateTime time, long acceptedNanos) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int flushRows;
+    private final boolean retryFailedFlush;
+    private final List<ArrayBlockingQueue<Ping>> partitions;
+    private final ScheduledExecutorService writer;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // Least recently used orders are dropped first once MAX_CACHED_ORDERS is reached
+    private final Map<Long, OrderOwner> orderOwners = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, OrderOwner> eldest) {
+                    return size() > MAX_CACHED_ORDERS;
+                }
+            });
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final LongAdder lagNanos = new LongAdder();
+
+    public ProgressWriteBuffer(
+            JdbcTemplate jdbcTemplate,
+            @Value("${orders.progress.write-behind.enabled:false}") boolean enabled,
+            @Value("${orders.progress.write-behind.partitions:16}") int partitionCount,
+            @Value("${orders.progress.write-behind.capacity-per-partition:4096}") int capacityPerPartition,
+            @Value("${orders.progress.write-behind.flush-interval-ms:500}") long flushIntervalMs,
+            @Value("${orders.progress.write-behind.flush-rows:500}") int flushRows,
+            @Value("${orders.progress.write-behind.retry-failed-flush:true}") boolean retryFailedFlush) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.flushRows = flushRows;
+        this.retryFailedFlush = retryFailedFlush;
+        this.partitions = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new ArrayBlockingQueue<>(capacityPerPartition));
+        }
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            writer.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Whether the ping may take the write-behind path: the mode is on and the item is a
+     * plain position update without a description or status side effects.
+     */
+    public boolean accepts(AddProgressDto dto) {
+        return enabled
+                && dto.getOrderId() != null
+                && dto.getLat() != null && dto.getLat() >= -90 && dto.getLat() <= 90
+                && dto.getLon() != null && dto.getLon() >= -180 && dto.getLon() <= 180
+                && POSITION_TYPES.contains(dto.getType())
+                && (dto.getDescription() == null || dto.getDescription().isEmpty());
+    }
+
+    /**
+     * The vehicle of an order already checked to belong to the company, or null when the
+     * order has not been seen for that company.
+     */
+    public Long knownVehicle(Long companyId, Long orderId) {
+        OrderOwner owner = orderOwners.get(orderId);
+        return owner != null && companyId.equals(owner.companyId()) ? owner.vehicleId() : null;
+    }
+
+    public void rememberOrder(Long companyId, Long orderId, Long vehicleId) {
+        orderOwners.put(orderId, new OrderOwner(companyId, vehicleId));
+    }
+
+    public void forgetOrder(Long orderId) {
+        orderOwners.remove(orderId);
+    }
+
+    /**
+     * Queues a ping; returns false when its partition is full.
+     */
+    public boolean offer(Long orderId, String position, String type) {
+        Ping ping = new Ping(orderId, position, type, LocalDateTime.now(), System.nanoTime());
+        if (!partition(orderId).offer(ping)) {
+            rejected.increment();
+            return false;
+        }
+        accepted.increment();
+        if (pending.incrementAndGet() >= flushRows && flushRequested.compareAndSet(false, true)) {
+            writer.execute(this::flushSafely);
+        }
+        return true;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Writes everything currently buffered. Only ever runs on the writer thread, or on
+     * the shutdown thread once the writer has stopped.
+     */
+    void flush() {
+        flushRequested.set(false);
+        List<Ping> batch = new ArrayList<>();
+        for (ArrayBlockingQueue<Ping> partition : partitions) {
+            partition.drainTo(batch);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        pending.addAndGet(-batch.size());
+
+        long start = System.nanoTime();
+        int from = 0;
+        try {
+            while (from < batch.size()) {
+                List<Ping> chunk = batch.subList(from, Math.min(batch.size(), from + flushRows));
+                insert(chunk);
+                long end = System.nanoTime();
+                persisted.add(chunk.size());
+                chunk.forEach(ping -> lagNanos.add(end - ping.acceptedNanos()));
+                from += chunk.size();
+            }
+        } catch (DataAccessException e) {
+            // Chunks already written stay written; only the rest is retried
+            List<Ping> unwritten = batch.subList(from, batch.size());
+            log.warn("Failed to flush {} buffered progress pings: {}", unwritten.size(), e.getMessage());
+            requeueOrDrop(unwritten);
+        } finally {
+            flushCount.increment();
+            flushNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("orders.progress.buffer.pending", pending, AtomicInteger::get).register(registry);
+        FunctionCounter.builder("orders.progress.buffer.accepted", accepted, LongAdder::sum).register(registry);
+        FunctionCounter.builder("orders.progress.buffer.rejected", rejected, LongAdder::sum).register(registry);
+        FunctionCounter.builder("orders.progress.buffer.dropped", dropped, LongAdder::sum).register(registry);
+        FunctionTimer.builder("orders.progress.buffer.flush", this,
+                        buffer -> buffer.flushCount.sum(), buffer -> buffer.flushNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(registry);
+        // Accept-to-persist delay per ping
+        FunctionTimer.builder("orders.progress.buffer.lag", this,
+                        buffer -> buffer.persisted.sum(), buffer -> buffer.lagNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+        if (enabled) {
+            flushSafely();
+        }
+    }
+
+    private void insert(List<Ping> chunk) {
+        Object[] orderIds = new Object[chunk.size()];
+        Object[] positions = new Object[chunk.size()];
+        Object[] times = new Object[chunk.size()];
+        Object[] types = new Object[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            Ping ping = chunk.get(i);
+            orderIds[i] = ping.orderId();
+            positions[i] = ping.position();
+            times[i] = Timestamp.valueOf(ping.time());
+            types[i] = ping.type();
+        }
+        jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                statement.setArray(1, connection.createArrayOf("bigint", orderIds));
+                statement.setArray(2, connection.createArrayOf("text", positions));
+                statement.setArray(3, connection.createArrayOf("timestamp", times));
+                statement.setArray(4, connection.createArrayOf("text", types));
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled writer
+            log.error("Unexpected error while flushing progress pings", e);
+        }
+    }
+
+    private void requeueOrDrop(List<Ping> batch) {
+        for (Ping ping : batch) {
+            if (retryFailedFlush && partition(ping.orderId()).offer(ping)) {
+                pending.incrementAndGet();
+            } else {
+                dropped.increment();
+            }
+        }
+    }
+
+    private ArrayBlockingQueue<Ping> partition(long orderId) {
+        return partitions.get((int) Math.floorMod(orderId, (long) partitions.size()));
+    }
+}
@@ -0,0 +1,163 @@
+package com.fleetmaster.services;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of a progress route held in primitive arrays. Points are
+ * added in time order; pinned points (milestone events) and the two ends are always kept
+ * and split the route into segments that are simplified independently.
+ *
+ * Instead of a yes/no per tolerance, every point gets the distance at which Douglas-Peucker
+ * would drop it, capped by its parent split so the ranking stays consistent. Keeping the
+ * points above a tolerance gives the plain Douglas-Peucker result, and keeping the n highest
+ * gives the best route of n points, from the same single pass.
+ */
+final class RouteSimplifier {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000d;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180d;
+
+    private long[] ids;
+    private double[] xs;
+    private double[] ys;
+    private boolean[] pinned;
+    private int size;
+    private double metersPerDegreeLon = Double.NaN;
+
+    RouteSimplifier(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        ids = new long[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        pinned = new boolean[capacity];
+    }
+
+    /**
+     * Adds the next point of the route. Coordinates are projected to meters around the
+     * latitude of the first point, which is accurate enough for tolerances of a road trip.
+     */
+    void add(long id, double lat, double lon, boolean pin) {
+        if (size == ids.length) {
+            int capacity = size + (size >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            pinned = Arrays.copyOf(pinned, capacity);
+        }
+        if (Double.isNaN(metersPerDegreeLon)) {
+            metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+        }
+        ids[size] = id;
+        xs[size] = lon * metersPerDegreeLon;
+        ys[size] = lat * METERS_PER_DEGREE;
+        pinned[size] = pin;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Ids of the points to keep, in route order.
+     *
+     * @param toleranceMeters points within this distance of the simplified line are dropped
+     * @param maxPoints       upper bound on the kept points, or 0 for none; pinned points and the ends are kept even when they exceed it
+     */
+    long[] simplify(double toleranceMeters, int maxPoints) {
+        if (size == 0) {
+            return new long[0];
+        }
+        double[] significance = rank();
+
+        double threshold = toleranceMeters;
+        if (maxPoints > 0) {
+            threshold = Math.max(threshold, thresholdFor(significance, maxPoints));
+        }
+
+        int kept = 0;
+        long[] result = new long[size];
+        for (int i = 0; i < size; i++) {
+            if (significance[i] > threshold) {
+                result[kept++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(result, kept);
+    }
+
+    // Significance per point; anchors get +Infinity
+    private double[] rank() {
+        double[] significance = new double[size];
+        int[] stack = new int[64];
+        int anchor = 0;
+        significance[0] = Double.POSITIVE_INFINITY;
+        for (int i = 1; i < size; i++) {
+            if (pinned[i] || i == size - 1) {
+                significance[i] = Double.POSITIVE_INFINITY;
+                stack = rankSegment(anchor, i, significance, stack);
+                anchor = i;
+            }
+        }
+        return significance;
+    }
+
+    // Iterative Douglas-Peucker between two anchors. One end of every range is the split that
+    // created it and the other an earlier one, so the smaller of the two is the parent's cap.
+    private int[] rankSegment(int first, int last, double[] significance, int[] stack) {
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            if (end - start < 2) {
+                continue;
+            }
+
+            int split = start + 1;
+            double max = -1;
+            for (int i = start + 1; i < end; i++) {
+                double distance = distanceToSegment(i, start, end);
+                if (distance > max) {
+                    max = distance;
+                    split = i;
+                }
+            }
+            significance[split] = Math.min(max, Math.min(significance[start], significance[end]));
+
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = start;
+            stack[top++] = split;
+            stack[top++] = split;
+            stack[top++] = end;
+        }
+        return stack;
+    }
+
+    private double distanceToSegment(int point, int start, int end) {
+        double dx = xs[end] - xs[start];
+        double dy = ys[end] - ys[start];
+        double px = xs[point] - xs[start];
+        double py = ys[point] - ys[start];
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.sqrt(px * px + py * py);
+        }
+        double t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    // Largest significance that still leaves at most maxPoints above it (anchors always stay)
+    private static double thresholdFor(double[] significance, int maxPoints) {
+        if (significance.length <= maxPoints) {
+            return -1;
+        }
+        double[] sorted = significance.clone();
+        Arrays.sort(sorted);
+        return Math.min(sorted[sorted.length - maxPoints - 1], Double.MAX_VALUE);
+    }
+}
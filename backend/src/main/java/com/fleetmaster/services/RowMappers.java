@@ -0,0 +1,159 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.FleetStatusRow;
+import com.fleetmaster.dtos.OrderRow;
+import com.fleetmaster.dtos.OrderStatsRow;
+import com.fleetmaster.dtos.ProgressRow;
+import com.fleetmaster.dtos.SubscriptionUsageRow;
+import com.fleetmaster.dtos.TrackingRow;
+import com.fleetmaster.dtos.VehicleRow;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column lists and the row mappers that read them. Each mapper reads its columns by
+ * position straight into a record, so the SELECT must use the matching column list.
+ */
+final class RowMappers {
+
+    static final String ORDER_COLUMNS =
+            "o.id, o.pick_up, o.delivery, o.load_type, o.departure_time, o.arrival_time, " +
+            "o.status, o.vehicle_id, o.driver_id";
+
+    static final RowMapper<OrderRow> ORDER = (rs, rowNum) -> new OrderRow(
+            rs.getLong(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getString(4),
+            localDateTime(rs, 5),
+            localDateTime(rs, 6),
+            rs.getString(7),
+            nullableLong(rs, 8),
+            nullableLong(rs, 9));
+
+    static final String PROGRESS_COLUMNS = "id, order_id, current_pos, time, type, description";
+
+    static final RowMapper<ProgressRow> PROGRESS = (rs, rowNum) -> new ProgressRow(
+            rs.getLong(1),
+            nullableLong(rs, 2),
+            rs.getString(3),
+            localDateTime(rs, 4),
+            rs.getString(5),
+            rs.getString(6));
+
+    static final String VEHICLE_COLUMNS =
+            "v.id, v.load_capacity, v.type, v.year_of_manufacture, v.load_type, v.maintenance_id, " +
+            "v.last_odometer, v.sensor_data";
+
+    static final RowMapper<VehicleRow> VEHICLE = (rs, rowNum) -> new VehicleRow(
+            rs.getLong(1),
+            nullableLong(rs, 2),
+            rs.getString(3),
+            localDate(rs, 4),
+            stringList(rs, 5),
+            nullableLong(rs, 6),
+            nullableLong(rs, 7),
+            rs.getString(8));
+
+    static final String FLEET_STATUS_COLUMNS =
+            "company_id, vehicle_id, vehicle_type, load_capacity, load_type, sensor_data, " +
+            "last_odometer, current_maintenance_status";
+
+    static final RowMapper<FleetStatusRow> FLEET_STATUS = (rs, rowNum) -> new FleetStatusRow(
+            nullableLong(rs, 1),
+            rs.getLong(2),
+            rs.getString(3),
+            nullableLong(rs, 4),
+            rs.getString(5),
+            rs.getString(6),
+            nullableLong(rs, 7),
+            rs.getString(8));
+
+    static final String TRACKING_COLUMNS =
+            "order_id, company_id, driver_id, vehicle_id, order_status, pick_up, delivery, " +
+            "last_progress_event, last_known_location, last_update_time";
+
+    static final RowMapper<TrackingRow> TRACKING = (rs, rowNum) -> new TrackingRow(
+            rs.getLong(1),
+            nullableLong(rs, 2),
+            nullableLong(rs, 3),
+            nullableLong(rs, 4),
+            rs.getString(5),
+            rs.getString(6),
+            rs.getString(7),
+            rs.getString(8),
+            rs.getString(9),
+            localDateTime(rs, 10));
+
+    static final String SUBSCRIPTION_USAGE_COLUMNS =
+            "company_id, company_name, license_tier, max_vehicles, max_drivers, current_vehicles, current_drivers";
+
+    static final RowMapper<SubscriptionUsageRow> SUBSCRIPTION_USAGE = (rs, rowNum) -> new SubscriptionUsageRow(
+            rs.getLong(1),
+            rs.getString(2),
+            rs.getString(3),
+            nullableLong(rs, 4),
+            nullableLong(rs, 5),
+            rs.getLong(6),
+            rs.getLong(7));
+
+    static final String ORDER_STATS_COLUMNS =
+            "pending, in_transit, delivered, canceled, on_time, late, transit_count, transit_seconds";
+
+    static final RowMapper<OrderStatsRow> ORDER_STATS = (rs, rowNum) -> {
+        long pending = rs.getLong(1);
+        long inTransit = rs.getLong(2);
+        long delivered = rs.getLong(3);
+        long canceled = rs.getLong(4);
+        long transitCount = rs.getLong(7);
+        return new OrderStatsRow(
+                pending + inTransit + delivered + canceled,
+                pending,
+                inTransit,
+                delivered,
+                canceled,
+                rs.getLong(5),
+                rs.getLong(6),
+                transitCount == 0 ? null : rs.getDouble(8) / transitCount);
+    };
+
+    private RowMappers() {
+    }
+
+    static Long nullableLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    static LocalDateTime localDateTime(ResultSet rs, int column) throws SQLException {
+        Timestamp value = rs.getTimestamp(column);
+        return value == null ? null : value.toLocalDateTime();
+    }
+
+    static LocalDate localDate(ResultSet rs, int column) throws SQLException {
+        Date value = rs.getDate(column);
+        return value == null ? null : value.toLocalDate();
+    }
+
+    // Enum arrays come back from the driver as String[]
+    static List<String> stringList(ResultSet rs, int column) throws SQLException {
+        Array value = rs.getArray(column);
+        if (value == null) {
+            return List.of();
+        }
+        try {
+            return Arrays.stream((Object[]) value.getArray()).map(String::valueOf).toList();
+        } finally {
+            value.free();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.fleetmaster.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-Sent Events feed of order tracking. Each subscriber gets a "snapshot" event with
+ * the company's vw_order_tracking rows, then an "update" or "removed" event per change.
+ *
+ * Changes come from the notify_order_tracking triggers on the order_tracking channel. One
+ * LISTEN connection per instance, opened on the first subscription, fans each notification
+ * out to the subscribers of its company, so the database only runs a query when a client
+ * subscribes or the listener reconnects. After a reconnect every subscriber gets a fresh
+ * snapshot, since notifications sent while disconnected are lost.
+ *
+ * The same connection listens on the subscription_usage channel, where the
+ * notify_subscription_usage triggers name the companies whose vw_subscription_usage row
+ * changed, and drops them from FleetService's cache. For that it is opened at startup
+ * rather than on the first subscription, and every (re)connect drops the whole cache.
+ */
+@Component
+public class TrackingStreamService implements MeterBinder, DisposableBean {
+
+    static final String CHANNEL = "order_tracking";
+    static final String USAGE_CHANNEL = "subscription_usage";
+    static final String SNAPSHOT_EVENT = "snapshot";
+
+    private static final Logger log = LoggerFactory.getLogger(TrackingStreamService.class);
+
+    /**
+     * One open stream with its own bounded queue of events. The listener thread only
+     * queues; a sender thread writes the queue to the client, so a slow client delays
+     * nobody else. Deltas that arrive before the first snapshot are held back behind it,
+     * so the client never applies a snapshot older than a delta it already has.
+     */
+    static final class Subscriber {
+
+        private final Long companyId;
+        private final SseEmitter emitter;
+        private final int capacity;
+        private final Deque<SseEmitter.SseEventBuilder> queue = new ArrayDeque<>();
+        private boolean snapshotQueued;
+        private boolean sending;
+
+        Subscriber(Long companyId, SseEmitter emitter, int capacity) {
+            this.companyId = companyId;
+            this.emitter = emitter;
+            this.capacity = capacity;
+        }
+
+        // Always accepted: a snapshot replaces whatever the client has
+        synchronized void snapshot(String rows) {
+            SseEmitter.SseEventBuilder event = SseEmitter.event().name(SNAPSHOT_EVENT).data(rows);
+            if (snapshotQueued) {
+                queue.addLast(event);
+            } else {
+                queue.addFirst(event);
+                snapshotQueued = true;
+            }
+        }
+
+        /**
+         * Queues a delta; false when the client is capacity events behind.
+         */
+        synchronized boolean offer(String name, String data) {
+            if (queue.size() >= capacity) {
+                return false;
+            }
+            queue.addLast(SseEmitter.event().name(name).data(data));
+            return true;
+        }
+
+        // Only when idle; a client that is still being written to is known to be there
+        synchronized void heartbeat() {
+            if (snapshotQueued && queue.isEmpty() && !sending) {
+                queue.addLast(SseEmitter.event().comment("keepalive"));
+            }
+        }
+
+        /**
+         * Claims the sender role when there is something to send and nobody is sending.
+         */
+        synchronized boolean startSending() {
+            if (sending || !snapshotQueued || queue.isEmpty()) {
+                return false;
+            }
+            sending = true;
+            return true;
+        }
+
+        // The next event to send, or null after giving up the sender role
+        synchronized SseEmitter.SseEventBuilder next() {
+            SseEmitter.SseEventBuilder event = queue.pollFirst();
+            if (event == null) {
+                sending = false;
+            }
+            return event;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final FleetService fleetService;
+    private final ObjectMapper objectMapper;
+    private final long emitterTimeoutMs;
+    private final int heartbeatMs;
+    private final long reconnectDelayMs;
+    private final int maxQueuedEvents;
+    private final Executor sender;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+    private volatile boolean listening;
+    private volatile Thread listener;
+    private long lastHeartbeat;
+
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder lagging = new LongAdder();
+
+    public TrackingStreamService(
+            DataSource dataSource,
+            FleetService fleetService,
+            ObjectMapper objectMapper,
+            @Value("${fleet.tracking-stream.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+            @Value("${fleet.tracking-stream.heartbeat-ms:25000}") int heartbeatMs,
+            @Value("${fleet.tracking-stream.reconnect-delay-ms:5000}") long reconnectDelayMs,
+            @Value("${fleet.tracking-stream.max-queued-events:256}") int maxQueuedEvents) {
+        this(dataSource, fleetService, objectMapper, emitterTimeoutMs, heartbeatMs, reconnectDelayMs, maxQueuedEvents,
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    TrackingStreamService(DataSource dataSource, FleetService fleetService, ObjectMapper objectMapper,
+            long emitterTimeoutMs, int heartbeatMs, long reconnectDelayMs, int maxQueuedEvents, Executor sender) {
+        this.dataSource = dataSource;
+        this.fleetService = fleetService;
+        this.objectMapper = objectMapper;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.heartbeatMs = heartbeatMs;
+        this.reconnectDelayMs = reconnectDelayMs;
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.sender = sender;
+    }
+
+    /**
+     * Opens a stream for the company. The snapshot is sent right away when the listener is
+     * up, otherwise as soon as it has connected.
+     */
+    public SseEmitter subscribe(Long companyId) {
+        return subscribe(companyId, new SseEmitter(emitterTimeoutMs));
+    }
+
+    SseEmitter subscribe(Long companyId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(companyId, emitter, maxQueuedEvents);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        subscribers.computeIfAbsent(companyId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+
+        startListener();
+        if (listening) {
+            sendSnapshot(companyId, Set.of(subscriber));
+        }
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Routes one order_tracking payload to the subscribers of its company. The payload is
+     * forwarded as is; it already has the shape of a snapshot row plus its event name.
+     * A subscriber whose queue is full is closed; the client reconnects and starts over
+     * from a snapshot.
+     */
+    void dispatch(String payload) {
+        notifications.increment();
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(payload);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed order tracking notification: {}", e.getMessage());
+            return;
+        }
+        Set<Subscriber> targets = subscribers.get(node.path("company_id").asLong());
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+        String event = node.path("event").asText("update");
+        for (Subscriber subscriber : targets) {
+            if (subscriber.offer(event, payload)) {
+                send(subscriber);
+            } else {
+                lagging.increment();
+                log.debug("Closing order tracking stream of company {}: client fell behind", subscriber.companyId);
+                close(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Drops the company named by a subscription_usage payload from the subscription usage
+     * cache; an empty payload drops every company.
+     */
+    void invalidateUsage(String payload) {
+        if (payload.isEmpty()) {
+            fleetService.invalidateAllSubscriptionUsage();
+            return;
+        }
+        try {
+            fleetService.invalidateSubscriptionUsage(Long.valueOf(payload));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed subscription usage notification: {}", payload);
+        }
+    }
+
+    /**
+     * Sends a fresh snapshot to every open stream, one query per company.
+     */
+    void resync() {
+        subscribers.forEach(this::sendSnapshot);
+    }
+
+    void heartbeat() {
+        for (Set<Subscriber> targets : subscribers.values()) {
+            for (Subscriber subscriber : targets) {
+                // A heartbeat is what notices clients that went away without closing
+                subscriber.heartbeat();
+                send(subscriber);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("fleet.tracking-stream.subscribers", this, TrackingStreamService::getSubscriberCount)
+                .register(registry);
+        FunctionCounter.builder("fleet.tracking-stream.notifications", notifications, LongAdder::sum).register(registry);
+        FunctionCounter.builder("fleet.tracking-stream.delivered", delivered, LongAdder::sum).register(registry);
+        FunctionCounter.builder("fleet.tracking-stream.snapshots", snapshots, LongAdder::sum).register(registry);
+        FunctionCounter.builder("fleet.tracking-stream.reconnects", reconnects, LongAdder::sum).register(registry);
+        FunctionCounter.builder("fleet.tracking-stream.lagging", lagging, LongAdder::sum).register(registry);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        Thread thread = listener;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(heartbeatMs + 1000L);
+        }
+        for (Set<Subscriber> targets : subscribers.values()) {
+            targets.forEach(subscriber -> subscriber.emitter.complete());
+        }
+        subscribers.clear();
+        if (sender instanceof ExecutorService executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void sendSnapshot(Long companyId, Set<Subscriber> targets) {
+        String rows;
+        try {
+            rows = objectMapper.writeValueAsString(fleetService.getOrderTracking(companyId));
+        } catch (JsonProcessingException | DataAccessException e) {
+            log.warn("Failed to read order tracking snapshot for company {}: {}", companyId, e.getMessage());
+            targets.forEach(subscriber -> sender.execute(() -> subscriber.emitter.completeWithError(e)));
+            return;
+        }
+        snapshots.increment();
+        for (Subscriber subscriber : targets) {
+            subscriber.snapshot(rows);
+            send(subscriber);
+        }
+    }
+
+    // Writes the subscriber's queue on a sender thread, unless one is already at it
+    private void send(Subscriber subscriber) {
+        if (!subscriber.startSending()) {
+            return;
+        }
+        sender.execute(() -> {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.next()) != null) {
+                try {
+                    subscriber.emitter.send(event);
+                    delivered.increment();
+                } catch (IOException | IllegalStateException e) {
+                    remove(subscriber);
+                    return;
+                }
+            }
+        });
+    }
+
+    // The emitter is completed on a sender thread: it locks out completion while a send to
+    // the same client is blocked
+    private void close(Subscriber subscriber) {
+        remove(subscriber);
+        sender.execute(subscriber.emitter::complete);
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.companyId, (id, targets) -> {
+            targets.remove(subscriber);
+            return targets.isEmpty() ? null : targets;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        startListener();
+    }
+
+    private void startListener() {
+        if (started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::listen, "tracking-listener");
+            thread.setDaemon(true);
+            listener = thread;
+            thread.start();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                    statement.execute("LISTEN " + USAGE_CHANNEL);
+                }
+                listening = true;
+                fleetService.invalidateAllSubscriptionUsage();
+                resync();
+                while (running) {
+                    PGNotification[] received = pgConnection.getNotifications(heartbeatMs);
+                    if (received != null) {
+                        for (PGNotification notification : received) {
+                            if (USAGE_CHANNEL.equals(notification.getName())) {
+                                invalidateUsage(notification.getParameter());
+                            } else {
+                                dispatch(notification.getParameter());
+                            }
+                        }
+                    }
+                    heartbeatIfDue();
+                }
+            } catch (SQLException | RuntimeException e) {
+                listening = false;
+                if (running) {
+                    reconnects.increment();
+                    log.warn("Notification listener disconnected, retrying in {} ms: {}", reconnectDelayMs, e.getMessage());
+                    try {
+                        Thread.sleep(reconnectDelayMs);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void heartbeatIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastHeartbeat >= heartbeatMs) {
+            lastHeartbeat = now;
+            heartbeat();
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.NearbyVehicleRow;
+import com.fleetmaster.exceptions.BusinessException;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory grid of each vehicle's last known position, one grid per company, so "which of
+ * my vehicles are near this point" is answered without a query. It is loaded from progress
+ * when the application starts and updated after each committed progress write on this
+ * instance; writes made by other instances show up after the next restart.
+ */
+@Component
+public class VehiclePositionIndex implements MeterBinder {
+
+    public static final int DEFAULT_LIMIT = 10;
+    static final int MAX_LIMIT = 100;
+    static final double MAX_RADIUS_KM = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(VehiclePositionIndex.class);
+
+    private static final double CELL_DEGREES = 0.1;
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = EARTH_RADIUS_KM * Math.PI / 180;
+    // Mirrors the load_type enum
+    private static final List<String> LOAD_TYPES = List.of("NORMAL", "REFRIGERATED", "HAZARDOUS");
+    private static final int UNKNOWN_LOAD_TYPES = -1;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Map<Long, CompanyGrid> companies = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private final LongAdder queryCount = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+
+    public VehiclePositionIndex(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        load();
+    }
+
+    /**
+     * Rebuilds the index: every vehicle with its load types and the position of its most
+     * recent progress row that has one.
+     */
+    public synchronized void load() {
+        Map<Long, CompanyGrid> fresh = new HashMap<>();
+        try {
+            // Points are (lat, lon), as written by OrderService
+            jdbcTemplate.query(
+                    "SELECT cv.company_id, v.id, v.load_type, p.lat, p.lon, p.time " +
+                    "FROM vehicles v JOIN company_vehicles cv ON cv.vehicle_id = v.id " +
+                    "LEFT JOIN LATERAL (" +
+                    "  SELECT p.current_pos[0] AS lat, p.current_pos[1] AS lon, p.time " +
+                    "  FROM orders o JOIN progress p ON p.order_id = o.id " +
+                    "  WHERE o.vehicle_id = v.id AND p.current_pos IS NOT NULL " +
+                    "  ORDER BY p.time DESC LIMIT 1" +
+                    ") p ON TRUE",
+                    Map.of(),
+                    (RowCallbackHandler) rs -> {
+                        CompanyGrid grid = fresh.computeIfAbsent(rs.getLong(1), id -> new CompanyGrid());
+                        long vehicleId = rs.getLong(2);
+                        grid.register(vehicleId, loadTypeMask(RowMappers.stringList(rs, 3)));
+                        double lat = rs.getDouble(4);
+                        if (!rs.wasNull()) {
+                            grid.move(vehicleId, lat, rs.getDouble(5), epochMillis(rs.getTimestamp(6)));
+                        }
+                    });
+        } catch (DataAccessException e) {
+            log.warn("Failed to load vehicle positions: {}", e.getMessage());
+            return;
+        }
+        companies.keySet().retainAll(fresh.keySet());
+        companies.putAll(fresh);
+        loaded = true;
+    }
+
+    /**
+     * Records a vehicle's new position once the surrounding transaction commits, so a
+     * rolled back write never moves it.
+     */
+    public void updatePosition(Long companyId, Long vehicleId, double lat, double lon) {
+        long now = LocalDateTime.now().toInstant(ZoneOffset.UTC).toEpochMilli();
+        afterCommit(() -> {
+            CompanyGrid grid = companies.computeIfAbsent(companyId, id -> new CompanyGrid());
+            if (!grid.contains(vehicleId)) {
+                grid.register(vehicleId, loadTypesOf(vehicleId));
+            }
+            grid.move(vehicleId, lat, lon, now);
+        });
+    }
+
+    public void updateLoadTypes(Long companyId, Long vehicleId, List<String> loadTypes) {
+        int mask = loadTypeMask(loadTypes);
+        afterCommit(() -> companies.computeIfAbsent(companyId, id -> new CompanyGrid()).register(vehicleId, mask));
+    }
+
+    public void removeVehicle(Long companyId, Long vehicleId) {
+        afterCommit(() -> {
+            CompanyGrid grid = companies.get(companyId);
+            if (grid != null) {
+                grid.remove(vehicleId);
+            }
+        });
+    }
+
+    /**
+     * The company's vehicles within radiusKm of the point, nearest first.
+     *
+     * @param loadType only vehicles that can carry this load type, or null for all
+     */
+    public List<NearbyVehicleRow> findNearby(Long companyId, double lat, double lon, double radiusKm,
+            String loadType, int limit) {
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            throw new BusinessException("Latitude must be between -90 and 90 and longitude between -180 and 180");
+        }
+        if (!(radiusKm > 0 && radiusKm <= MAX_RADIUS_KM)) {
+            throw new BusinessException("radiusKm must be greater than 0 and at most " + (int) MAX_RADIUS_KM);
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new BusinessException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        int mask = 0;
+        if (loadType != null && !loadType.isBlank()) {
+            if (!LOAD_TYPES.contains(loadType)) {
+                throw new BusinessException("Invalid load type: " + loadType);
+            }
+            mask = loadTypeMask(List.of(loadType));
+        }
+        if (!loaded) {
+            load();
+        }
+
+        long start = System.nanoTime();
+        try {
+            CompanyGrid grid = companies.get(companyId);
+            return grid == null ? List.of() : grid.nearest(lat, lon, radiusKm, mask, limit);
+        } finally {
+            queryCount.increment();
+            queryNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public int size() {
+        return companies.values().stream().mapToInt(CompanyGrid::size).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("fleet.positions.vehicles", this, VehiclePositionIndex::size).register(registry);
+        FunctionTimer.builder("fleet.positions.nearby", this,
+                        index -> index.queryCount.sum(), index -> index.queryNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(registry);
+    }
+
+    private int loadTypesOf(Long vehicleId) {
+        try {
+            List<List<String>> rows = jdbcTemplate.query(
+                    "SELECT load_type FROM vehicles WHERE id = :vid",
+                    Map.of("vid", vehicleId), (rs, rowNum) -> RowMappers.stringList(rs, 1));
+            return rows.isEmpty() ? UNKNOWN_LOAD_TYPES : loadTypeMask(rows.get(0));
+        } catch (DataAccessException e) {
+            return UNKNOWN_LOAD_TYPES;
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    static int loadTypeMask(List<String> loadTypes) {
+        int mask = 0;
+        for (String loadType : loadTypes) {
+            int bit = LOAD_TYPES.indexOf(loadType);
+            if (bit >= 0) {
+                mask |= 1 << bit;
+            }
+        }
+        return mask;
+    }
+
+    private static List<String> loadTypeNames(int mask) {
+        if (mask == UNKNOWN_LOAD_TYPES) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>(LOAD_TYPES.size());
+        for (int bit = 0; bit < LOAD_TYPES.size(); bit++) {
+            if ((mask & (1 << bit)) != 0) {
+                names.add(LOAD_TYPES.get(bit));
+            }
+        }
+        return names;
+    }
+
+    private static long epochMillis(Timestamp time) {
+        return time == null ? 0 : time.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    private static int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    /**
+     * One company's vehicles in parallel primitive arrays. Positioned vehicles are chained
+     * per grid cell through next[]; freed slots are reused.
+     */
+    static final class CompanyGrid {
+
+        private static final int NONE = -1;
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Integer> slots = new HashMap<>();
+        private final Map<Long, Integer> cellHeads = new HashMap<>();
+        private long[] vehicleIds = new long[16];
+        private double[] lats = new double[16];
+        private double[] lons = new double[16];
+        private long[] updatedAt = new long[16];
+        private int[] loadTypes = new int[16];
+        private long[] cells = new long[16];
+        private boolean[] positioned = new boolean[16];
+        private int[] next = new int[16];
+        private int[] free = new int[16];
+        private int freeCount;
+        private int used;
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return slots.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean contains(long vehicleId) {
+            lock.readLock().lock();
+            try {
+                return slots.containsKey(vehicleId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void register(long vehicleId, int loadTypeMask) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.get(vehicleId);
+                if (slot == null) {
+                    slot = allocate();
+                    slots.put(vehicleId, slot);
+                    vehicleIds[slot] = vehicleId;
+                    positioned[slot] = false;
+                }
+                loadTypes[slot] = loadTypeMask;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void move(long vehicleId, double lat, double lon, long timeMillis) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.get(vehicleId);
+                if (slot == null) {
+                    return;
+                }
+                long cell = cellKey(cellIndex(lat), cellIndex(lon));
+                if (!positioned[slot] || cells[slot] != cell) {
+                    if (positioned[slot]) {
+                        unlink(slot);
+                    }
+                    cells[slot] = cell;
+                    next[slot] = cellHeads.getOrDefault(cell, NONE);
+                    cellHeads.put(cell, slot);
+                    positioned[slot] = true;
+                }
+                lats[slot] = lat;
+                lons[slot] = lon;
+                updatedAt[slot] = timeMillis;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(long vehicleId) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.remove(vehicleId);
+                if (slot == null) {
+                    return;
+                }
+                if (positioned[slot]) {
+                    unlink(slot);
+                    positioned[slot] = false;
+                }
+                free[freeCount++] = slot;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<NearbyVehicleRow> nearest(double lat, double lon, double radiusKm, int mask, int limit) {
+            double[] bestDistance = new double[limit];
+            int[] bestSlot = new int[limit];
+            int found = 0;
+
+            lock.readLock().lock();
+            try {
+                double latSpan = radiusKm / KM_PER_DEGREE;
+                double maxAbsLat = Math.min(90, Math.abs(lat) + latSpan);
+                double lonSpan = maxAbsLat >= 89.9 ? 360 : latSpan / Math.cos(Math.toRadians(maxAbsLat));
+                int firstRow = cellIndex(lat - latSpan);
+                int lastRow = cellIndex(lat + latSpan);
+                int firstColumn = cellIndex(lon - lonSpan);
+                int lastColumn = cellIndex(lon + lonSpan);
+                long cellCount = (long) (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1);
+
+                // Past the antimeridian, or when there are fewer vehicles than cells, a plain
+                // scan is cheaper than probing the cells
+                if (lon - lonSpan < -180 || lon + lonSpan > 180 || cellCount > slots.size()) {
+                    for (int slot = 0; slot < used; slot++) {
+                        if (positioned[slot]) {
+                            found = consider(slot, lat, lon, radiusKm, mask, bestDistance, bestSlot, found);
+                        }
+                    }
+                } else {
+                    for (int row = firstRow; row <= lastRow; row++) {
+                        for (int column = firstColumn; column <= lastColumn; column++) {
+                            Integer head = cellHeads.get(cellKey(row, column));
+                            for (int slot = head == null ? NONE : head; slot != NONE; slot = next[slot]) {
+                                found = consider(slot, lat, lon, radiusKm, mask, bestDistance, bestSlot, found);
+                            }
+                        }
+                    }
+                }
+
+                List<NearbyVehicleRow> result = new ArrayList<>(found);
+                for (int i = 0; i < found; i++) {
+                    int slot = bestSlot[i];
+                    result.add(new NearbyVehicleRow(vehicleIds[slot], bestDistance[i], lats[slot], lons[slot],
+                            LocalDateTime.ofEpochSecond(Math.floorDiv(updatedAt[slot], 1000L),
+                                    (int) Math.floorMod(updatedAt[slot], 1000L) * 1_000_000, ZoneOffset.UTC),
+                            loadTypeNames(loadTypes[slot])));
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // Keeps the nearest candidates sorted by insertion; limit is small
+        private int consider(int slot, double lat, double lon, double radiusKm, int mask,
+                double[] bestDistance, int[] bestSlot, int found) {
+            if (mask != 0 && (loadTypes[slot] == UNKNOWN_LOAD_TYPES || (loadTypes[slot] & mask) == 0)) {
+                return found;
+            }
+            double distance = haversineKm(lat, lon, lats[slot], lons[slot]);
+            if (distance > radiusKm || (found == bestDistance.length && distance >= bestDistance[found - 1])) {
+                return found;
+            }
+            int position = found == bestDistance.length ? found - 1 : found++;
+            while (position > 0 && bestDistance[position - 1] > distance) {
+                bestDistance[position] = bestDistance[position - 1];
+                bestSlot[position] = bestSlot[position - 1];
+                position--;
+            }
+            bestDistance[position] = distance;
+            bestSlot[position] = slot;
+            return found;
+        }
+
+        private int allocate() {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (used == vehicleIds.length) {
+                int capacity = used * 2;
+                vehicleIds = Arrays.copyOf(vehicleIds, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                updatedAt = Arrays.copyOf(updatedAt, capacity);
+                loadTypes = Arrays.copyOf(loadTypes, capacity);
+                cells = Arrays.copyOf(cells, capacity);
+                positioned = Arrays.copyOf(positioned, capacity);
+                next = Arrays.copyOf(next, capacity);
+                free = Arrays.copyOf(free, capacity);
+            }
+            return used++;
+        }
+
+        private void unlink(int slot) {
+            long cell = cells[slot];
+            int head = cellHeads.get(cell);
+            if (head == slot) {
+                if (next[slot] == NONE) {
+                    cellHeads.remove(cell);
+                } else {
+                    cellHeads.put(cell, next[slot]);
+                }
+                return;
+            }
+            int previous = head;
+            while (next[previous] != slot) {
+                previous = next[previous];
+            }
+            next[previous] = next[slot];
+        }
+    }
+}
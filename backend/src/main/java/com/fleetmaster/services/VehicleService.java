@@ -1,23 +1,54 @@
 package com.fleetmaster.services;
 
+import com.fleetmaster.config.CsvRows;
 import com.fleetmaster.dtos.CreateVehicleDto;
+import com.fleetmaster.dtos.ImportReport;
+import com.fleetmaster.dtos.VehicleRow;
 import com.fleetmaster.exceptions.BusinessException;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
-import org.hibernate.query.NativeQuery;
-import org.hibernate.transform.AliasToEntityMapResultTransformer;
+import org.hibernate.Session;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class VehicleService {
 
+    private static final Set<String> VEHICLE_TYPES = Set.of("LORRY", "VAN", "REFRIGERATED_TRUCK");
+    private static final Set<String> LOAD_TYPES = Set.of("NORMAL", "REFRIGERATED", "HAZARDOUS");
+
+    // CreateVehicleDto fields, in the order importVehicles reads them; the export calls the
+    // load types column load_type
+    private static final String[] IMPORT_COLUMNS = {
+            "loadCapacity", "type", "yearOfManufacture", "loadTypes|loadType", "lastOdometer"};
+
+    static final int MAX_BATCH_SIZE = 5000;
+
     @PersistenceContext
     private EntityManager entityManager;
 
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final VehiclePositionIndex vehiclePositionIndex;
+    private final FleetService fleetService;
+
+    public VehicleService(NamedParameterJdbcTemplate jdbcTemplate, VehiclePositionIndex vehiclePositionIndex,
+            FleetService fleetService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.vehiclePositionIndex = vehiclePositionIndex;
+        this.fleetService = fleetService;
+    }
+
     @Transactional
     public Long createVehicle(Long companyId, CreateVehicleDto dto) {
         // 1. Insert into vehicles
@@ -50,30 +81,103 @@ public class VehicleService {
         // Flush again to ensure the trigger can see subscription data
         entityManager.flush();
 
+        vehiclePositionIndex.updateLoadTypes(companyId, vehicleId.longValue(),
+                dto.getLoadTypes() == null ? List.of() : dto.getLoadTypes());
+        fleetService.invalidateFleetStatus(companyId);
+        fleetService.invalidateSubscriptionUsage(companyId);
         return vehicleId.longValue();
     }
 
-    public List<Map<String, Object>> getAllVehicles(Long companyId) {
-        return entityManager.createNativeQuery(
-                "SELECT v.* FROM vehicles v " +
+    /**
+     * Creates a fleet of vehicles in one go. The subscription limit is checked once for the
+     * whole batch and the vehicles are inserted with a single multi-row statement; either all
+     * of them are created or none.
+     *
+     * @return the ids of the new vehicles, in the order they were given
+     */
+    @Transactional
+    public List<Long> createVehicles(Long companyId, List<CreateVehicleDto> dtos) {
+        if (dtos == null || dtos.isEmpty()) {
+            throw new BusinessException("No vehicles given");
+        }
+        if (dtos.size() > MAX_BATCH_SIZE) {
+            throw new BusinessException("At most " + MAX_BATCH_SIZE + " vehicles can be created at once");
+        }
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < dtos.size(); i++) {
+            String error = validateVehicle(dtos.get(i), today);
+            if (error != null) {
+                throw new BusinessException("Vehicle " + (i + 1) + ": " + error);
+            }
+        }
+        long remaining = remainingVehicles(companyId);
+        if (dtos.size() > remaining) {
+            throw new BusinessException("Vehicle limit of your subscription allows " + Math.max(remaining, 0)
+                    + " more vehicles, " + dtos.size() + " given");
+        }
+        return insertVehicleBatch(companyId, dtos);
+    }
+
+    /**
+     * Creates vehicles from a CSV upload with one column per CreateVehicleDto field. Rows
+     * are checked like a single create and inserted in multi-row statements; rows past the
+     * subscription's vehicle limit are rejected instead of failing the whole upload.
+     */
+    @Transactional
+    public ImportReport importVehicles(Long companyId, CsvRows rows) {
+        CsvImport csv = new CsvImport(rows, IMPORT_COLUMNS);
+        long remaining = remainingVehicles(companyId);
+        LocalDate today = LocalDate.now();
+
+        List<CreateVehicleDto> batch = new ArrayList<>(CsvImport.BATCH_SIZE);
+        String[] record;
+        while ((record = csv.next()) != null) {
+            CreateVehicleDto dto = new CreateVehicleDto();
+            try {
+                dto.setLoadCapacity(csv.longValue(record, 0));
+                dto.setType(csv.text(record, 1));
+                dto.setYearOfManufacture(csv.date(record, 2));
+                dto.setLoadTypes(csv.list(record, 3));
+                dto.setLastOdometer(csv.longValue(record, 4));
+            } catch (CsvImport.RowException e) {
+                csv.reject(e.getMessage());
+                continue;
+            }
+            String error = validateVehicle(dto, today);
+            if (error == null && remaining <= 0) {
+                error = "Vehicle limit of your subscription reached";
+            }
+            if (error != null) {
+                csv.reject(error);
+                continue;
+            }
+            remaining--;
+            batch.add(dto);
+            if (batch.size() == CsvImport.BATCH_SIZE) {
+                csv.created(insertVehicleBatch(companyId, batch).size());
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            csv.created(insertVehicleBatch(companyId, batch).size());
+        }
+        return csv.report();
+    }
+
+    public List<VehicleRow> getAllVehicles(Long companyId) {
+        return jdbcTemplate.query(
+                "SELECT " + RowMappers.VEHICLE_COLUMNS + " FROM vehicles v " +
                 "JOIN company_vehicles cv ON v.id = cv.vehicle_id " +
-                "WHERE cv.company_id = :cid")
-                .setParameter("cid", companyId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+                "WHERE cv.company_id = :cid",
+                Map.of("cid", companyId), RowMappers.VEHICLE);
     }
 
-    public Map<String, Object> getVehicleById(Long companyId, Long vehicleId) {
-        List<Map<String, Object>> results = entityManager.createNativeQuery(
-                "SELECT v.* FROM vehicles v " +
+    public VehicleRow getVehicleById(Long companyId, Long vehicleId) {
+        List<VehicleRow> results = jdbcTemplate.query(
+                "SELECT " + RowMappers.VEHICLE_COLUMNS + " FROM vehicles v " +
                 "JOIN company_vehicles cv ON v.id = cv.vehicle_id " +
-                "WHERE cv.company_id = :cid AND v.id = :vid")
-                .setParameter("cid", companyId)
-                .setParameter("vid", vehicleId)
-                .unwrap(NativeQuery.class)
-                .setResultTransformer(AliasToEntityMapResultTransformer.INSTANCE)
-                .getResultList();
+                "WHERE cv.company_id = :cid AND v.id = :vid",
+                Map.of("cid", companyId, "vid", vehicleId), RowMappers.VEHICLE);
 
         if (results.isEmpty()) {
             throw new BusinessException("Vehicle not found or does not belong to your company");
@@ -108,6 +212,9 @@ public class VehicleService {
         if (updated == 0) {
             throw new BusinessException("Failed to update vehicle");
         }
+        vehiclePositionIndex.updateLoadTypes(companyId, vehicleId,
+                dto.getLoadTypes() == null ? List.of() : dto.getLoadTypes());
+        fleetService.invalidateFleetStatus(companyId);
     }
 
     @Transactional
@@ -127,5 +234,123 @@ public class VehicleService {
                 "DELETE FROM vehicles WHERE id = :vid")
                 .setParameter("vid", vehicleId)
                 .executeUpdate();
+
+        vehiclePositionIndex.removeVehicle(companyId, vehicleId);
+        fleetService.invalidateFleetStatus(companyId);
+        fleetService.invalidateSubscriptionUsage(companyId);
+    }
+
+    // Same lookup as enforce_vehicle_limit(), against the company_usage counter it keeps; no
+    // limit on the license means no limit
+    private long remainingVehicles(Long companyId) {
+        List<Long> remaining = jdbcTemplate.query(
+                "SELECT ll.max_vehicles - COALESCE((SELECT vehicles FROM company_usage WHERE company_id = :cid), 0) " +
+                "FROM subscriptions s JOIN license_levels ll ON s.license_id = ll.id " +
+                "WHERE s.company_id = :cid AND (s.end_date IS NULL OR s.end_date > CURRENT_DATE) " +
+                "ORDER BY s.start_date DESC LIMIT 1",
+                Map.of("cid", companyId), (rs, rowNum) -> {
+                    long value = rs.getLong(1);
+                    return rs.wasNull() ? Long.MAX_VALUE : value;
+                });
+        if (remaining.isEmpty()) {
+            throw new BusinessException("No active subscription found for your company");
+        }
+        return remaining.get(0);
+    }
+
+    // The CreateVehicleDto constraints
+    private String validateVehicle(CreateVehicleDto dto, LocalDate today) {
+        if (dto.getLoadCapacity() == null) {
+            return "Load capacity is required";
+        }
+        if (dto.getLoadCapacity() < 0) {
+            return "Load capacity cannot be negative";
+        }
+        if (dto.getType() == null) {
+            return "Vehicle type is required";
+        }
+        if (!VEHICLE_TYPES.contains(dto.getType())) {
+            return "Type must be LORRY, VAN, or REFRIGERATED_TRUCK";
+        }
+        if (dto.getYearOfManufacture() == null) {
+            return "Year of manufacture is required";
+        }
+        if (dto.getYearOfManufacture().isAfter(today)) {
+            return "Year of manufacture cannot be in the future";
+        }
+        if (dto.getLoadTypes() == null || dto.getLoadTypes().isEmpty()) {
+            return "Load types are required";
+        }
+        for (String loadType : dto.getLoadTypes()) {
+            if (!LOAD_TYPES.contains(loadType)) {
+                return "Invalid load type: " + loadType;
+            }
+        }
+        if (dto.getLastOdometer() == null) {
+            return "Last odometer reading is required";
+        }
+        if (dto.getLastOdometer() < 0) {
+            return "Odometer reading cannot be negative";
+        }
+        return null;
+    }
+
+    // Ids are drawn from the sequence up front so they come back in input order; then one
+    // INSERT for the vehicles and one for their company links, whatever the batch size
+    private List<Long> insertVehicleBatch(Long companyId, List<CreateVehicleDto> batch) {
+        List<Long> vehicleIds = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            List<Long> ids = new ArrayList<>(batch.size());
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT nextval(pg_get_serial_sequence('vehicles', 'id')) FROM generate_series(1, ?)")) {
+                statement.setInt(1, batch.size());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong(1));
+                    }
+                }
+            }
+
+            Object[] capacities = new Object[batch.size()];
+            Object[] types = new Object[batch.size()];
+            Object[] years = new Object[batch.size()];
+            Object[] loadTypes = new Object[batch.size()];
+            Object[] odometers = new Object[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                CreateVehicleDto dto = batch.get(i);
+                capacities[i] = dto.getLoadCapacity();
+                types[i] = dto.getType();
+                years[i] = Date.valueOf(dto.getYearOfManufacture());
+                // Ragged load_type arrays cannot be unnested, so each goes as its array literal
+                loadTypes[i] = "{" + String.join(",", dto.getLoadTypes()) + "}";
+                odometers[i] = dto.getLastOdometer();
+            }
+            Array idArray = connection.createArrayOf("bigint", ids.toArray());
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO vehicles (id, load_capacity, type, year_of_manufacture, load_type, last_odometer) " +
+                    "SELECT v.id, v.cap, CAST(v.vtype AS vehicle_type), v.yom, CAST(v.ltypes AS load_type[]), v.odo " +
+                    "FROM unnest(?, ?, ?, ?, ?, ?) AS v(id, cap, vtype, yom, ltypes, odo)")) {
+                statement.setArray(1, idArray);
+                statement.setArray(2, connection.createArrayOf("bigint", capacities));
+                statement.setArray(3, connection.createArrayOf("text", types));
+                statement.setArray(4, connection.createArrayOf("date", years));
+                statement.setArray(5, connection.createArrayOf("text", loadTypes));
+                statement.setArray(6, connection.createArrayOf("bigint", odometers));
+                statement.executeUpdate();
+            }
+            // One statement, so trg_enforce_vehicle_limit checks the whole batch once
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO company_vehicles (company_id, vehicle_id) SELECT ?, unnest(?)")) {
+                statement.setLong(1, companyId);
+                statement.setArray(2, idArray);
+                statement.executeUpdate();
+            }
+            return ids;
+        });
+        for (int i = 0; i < vehicleIds.size(); i++) {
+            vehiclePositionIndex.updateLoadTypes(companyId, vehicleIds.get(i), batch.get(i).getLoadTypes());
+        }
+        fleetService.invalidateFleetStatus(companyId);
+        fleetService.invalidateSubscriptionUsage(companyId);
+        return vehicleIds;
     }
 }
@@ -0,0 +1,119 @@
+package com.fleetmaster.config;
+
+import com.fleetmaster.dtos.FleetOverview;
+import com.fleetmaster.dtos.FleetStatusRow;
+import com.fleetmaster.dtos.OrderRow;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvHttpMessageConverterTest {
+
+    private final CsvHttpMessageConverter converter = new CsvHttpMessageConverter();
+
+    @Test
+    void testWrite_RecordsUseSnakeCaseColumnsInDeclarationOrder() throws Exception {
+        // Given
+        OrderRow row = new OrderRow(1L, "(52.37,4.89)", "(51.92,4.48)", "NORMAL",
+                LocalDateTime.of(2024, 5, 1, 8, 0), null, "PENDING", 7L, null);
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        // When
+        converter.write(List.of(row), MediaType.parseMediaType("text/csv"), output);
+
+        // Then
+        assertEquals(
+                "id,pick_up,delivery,load_type,departure_time,arrival_time,status,vehicle_id,driver_id\r\n" +
+                "1,\"(52.37,4.89)\",\"(51.92,4.48)\",NORMAL,2024-05-01T08:00,,PENDING,7,\r\n",
+                output.getBodyAsString());
+    }
+
+    @Test
+    void testWrite_MapsKeepTheirKeysAsColumns() throws Exception {
+        // Given
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        // When
+        converter.write(List.of(Map.of("message", "a \"quoted\" value")), MediaType.parseMediaType("text/csv"), output);
+
+        // Then
+        assertEquals("message\r\n\"a \"\"quoted\"\" value\"\r\n", output.getBodyAsString());
+    }
+
+    @Test
+    void testWrite_FleetOverviewIsASummaryFollowedByOneTablePerSection() throws Exception {
+        // Given
+        FleetOverview overview = new FleetOverview(
+                FleetOverview.Section.ok(3, List.of(new FleetStatusRow(1L, 10L, "VAN", 1000L, "NORMAL", null, 0L, null))),
+                FleetOverview.Section.unavailable(FleetOverview.State.TIMED_OUT, 2000, "tracking took longer than 2000 ms"),
+                FleetOverview.Section.ok(1, List.of()));
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        // When
+        converter.write(overview, MediaType.parseMediaType("text/csv"), output);
+
+        // Then
+        assertEquals(
+                "section,state,elapsed_millis,error\r\n" +
+                "status,OK,3,\r\n" +
+                "tracking,TIMED_OUT,2000,tracking took longer than 2000 ms\r\n" +
+                "subscription,OK,1,\r\n" +
+                "\r\nstatus\r\n" +
+                "company_id,vehicle_id,vehicle_type,load_capacity,load_type,sensor_data,last_odometer,current_maintenance_status\r\n" +
+                "1,10,VAN,1000,NORMAL,,0,\r\n" +
+                "\r\ntracking\r\n" +
+                "\r\nsubscription\r\n",
+                output.getBodyAsString());
+    }
+
+    @Test
+    void testRead_StreamsRowsAfterTheHeader() throws Exception {
+        // Given
+        MockHttpInputMessage input = new MockHttpInputMessage(
+                "\uFEFFid,note\r\n1,plain\r\n\r\n2,\"with, comma\"\n3,\"two\nlines and \"\"quotes\"\"\"\n4,\n"
+                        .getBytes(StandardCharsets.UTF_8));
+        input.getHeaders().setContentType(MediaType.parseMediaType("text/csv"));
+
+        // When
+        CsvRows rows = (CsvRows) converter.read(CsvRows.class, input);
+
+        // Then
+        assertEquals(List.of("id", "note"), rows.getHeader());
+        assertArrayEquals(new String[]{"1", "plain"}, rows.next());
+        assertEquals(2, rows.getLine());
+        assertArrayEquals(new String[]{"2", "with, comma"}, rows.next());
+        assertEquals(4, rows.getLine());
+        assertArrayEquals(new String[]{"3", "two\nlines and \"quotes\""}, rows.next());
+        assertArrayEquals(new String[]{"4", ""}, rows.next());
+        assertEquals(7, rows.getLine());
+        assertNull(rows.next());
+    }
+
+    @Test
+    void testRead_UnterminatedQuoteFails() throws Exception {
+        // Given
+        CsvRows rows = new CsvRows(new StringReader("id,note\n1,\"never closed\n2,x\n"));
+
+        // When & Then
+        IOException error = assertThrows(IOException.class, rows::next);
+        assertEquals("Unterminated quoted field starting on line 2", error.getMessage());
+    }
+
+    @Test
+    void testCanRead_OnlyRowStreams() {
+        MediaType csv = MediaType.parseMediaType("text/csv");
+        assertTrue(converter.canRead(CsvRows.class, csv));
+        assertFalse(converter.canRead(OrderRow.class, csv));
+        assertFalse(converter.canRead(CsvRows.class, MediaType.APPLICATION_JSON));
+    }
+}
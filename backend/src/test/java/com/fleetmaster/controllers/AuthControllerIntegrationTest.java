@@ -93,7 +93,7 @@ class AuthControllerIntegrationTest {
     void testLogin_Success() throws Exception {
         // Given
         String mockToken = "mock-jwt-token-12345";
-        when(authService.login(any(LoginDto.class))).thenReturn(mockToken);
+        when(authService.login(any(LoginDto.class), any())).thenReturn(mockToken);
 
         // When & Then
         mockMvc.perform(post("/api/auth/login")
@@ -107,7 +107,7 @@ class AuthControllerIntegrationTest {
     void testLogin_JSONResponse() throws Exception {
         // Given
         String mockToken = "mock-jwt-token-12345";
-        when(authService.login(any(LoginDto.class))).thenReturn(mockToken);
+        when(authService.login(any(LoginDto.class), any())).thenReturn(mockToken);
 
         // When & Then
         mockMvc.perform(post("/api/auth/login")
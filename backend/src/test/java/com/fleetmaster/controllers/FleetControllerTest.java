@@ -1,6 +1,10 @@
 package com.fleetmaster.controllers;
 
+import com.fleetmaster.dtos.FleetStatusRow;
+import com.fleetmaster.dtos.SubscriptionUsageRow;
+import com.fleetmaster.dtos.TrackingRow;
 import com.fleetmaster.entities.CompanyAccount;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.FleetService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +16,7 @@ import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.mockito.Mockito.when;
@@ -41,7 +46,7 @@ class FleetControllerTest {
         companyAccount.setVerified(true);
         
         authentication = org.mockito.Mockito.mock(Authentication.class);
-        when(authentication.getPrincipal()).thenReturn(companyAccount);
+        when(authentication.getPrincipal()).thenAnswer(invocation -> AccountPrincipal.of(companyAccount));
     }
 
     @Test
@@ -55,23 +60,18 @@ class FleetControllerTest {
     @Test
     void testGetFleetStatus_Success() throws Exception {
         // Given
-        Map<String, Object> fleetStatus = new HashMap<>();
-        fleetStatus.put("totalVehicles", 10);
-        fleetStatus.put("activeVehicles", 7);
-        fleetStatus.put("inMaintenanceVehicles", 2);
-        fleetStatus.put("idleVehicles", 1);
-
-        when(fleetService.getFleetStatus(100L)).thenReturn(fleetStatus);
+        FleetStatusRow vehicle = new FleetStatusRow(100L, 5L, "TRUCK", 25000L, "{NORMAL}", null, 120000L, "COMPLETED");
+        when(fleetService.getFleetStatus(100L)).thenReturn(List.of(vehicle));
 
         // When & Then
         mockMvc.perform(get("/api/fleet/status")
                 .with(authentication(authentication))
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.totalVehicles").value(10))
-                .andExpect(jsonPath("$.activeVehicles").value(7))
-                .andExpect(jsonPath("$.inMaintenanceVehicles").value(2))
-                .andExpect(jsonPath("$.idleVehicles").value(1));
+                .andExpect(jsonPath("$[0].vehicle_id").value(5))
+                .andExpect(jsonPath("$[0].vehicle_type").value("TRUCK"))
+                .andExpect(jsonPath("$[0].load_capacity").value(25000))
+                .andExpect(jsonPath("$[0].current_maintenance_status").value("COMPLETED"));
     }
 
     @Test
@@ -90,11 +90,8 @@ class FleetControllerTest {
     @Test
     void testGetFleetStatus_XMLResponse() throws Exception {
         // Given
-        Map<String, Object> fleetStatus = new HashMap<>();
-        fleetStatus.put("totalVehicles", 10);
-        fleetStatus.put("activeVehicles", 7);
-
-        when(fleetService.getFleetStatus(100L)).thenReturn(fleetStatus);
+        FleetStatusRow vehicle = new FleetStatusRow(100L, 5L, "TRUCK", 25000L, "{NORMAL}", null, 120000L, "COMPLETED");
+        when(fleetService.getFleetStatus(100L)).thenReturn(List.of(vehicle));
 
         // When & Then
         mockMvc.perform(get("/api/fleet/status")
@@ -107,20 +104,12 @@ class FleetControllerTest {
     @Test
     void testGetOrderTracking_Success() throws Exception {
         // Given
-        Map<String, Object> tracking1 = new HashMap<>();
-        tracking1.put("orderId", 1L);
-        tracking1.put("vehicleId", 5L);
-        tracking1.put("currentLocation", "Chicago");
-        tracking1.put("status", "IN_TRANSIT");
-
-        Map<String, Object> tracking2 = new HashMap<>();
-        tracking2.put("orderId", 2L);
-        tracking2.put("vehicleId", 6L);
-        tracking2.put("currentLocation", "Denver");
-        tracking2.put("status", "IN_TRANSIT");
+        TrackingRow tracking1 = new TrackingRow(1L, 100L, 3L, 5L, "IN_TRANSIT", "(41.88,-87.63)", "(39.74,-104.99)",
+                "STOPOVER", "(41.50,-90.50)", LocalDateTime.of(2024, 5, 1, 12, 0));
+        TrackingRow tracking2 = new TrackingRow(2L, 100L, 4L, 6L, "IN_TRANSIT", "(39.74,-104.99)", "(40.76,-111.89)",
+                null, null, null);
 
-        List<Map<String, Object>> trackingList = Arrays.asList(tracking1, tracking2);
-        when(fleetService.getOrderTracking(100L)).thenReturn(trackingList);
+        when(fleetService.getOrderTracking(100L)).thenReturn(List.of(tracking1, tracking2));
 
         // When & Then
         mockMvc.perform(get("/api/fleet/tracking")
@@ -128,10 +117,10 @@ class FleetControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].orderId").value(1))
-                .andExpect(jsonPath("$[0].currentLocation").value("Chicago"))
-                .andExpect(jsonPath("$[1].orderId").value(2))
-                .andExpect(jsonPath("$[1].currentLocation").value("Denver"));
+                .andExpect(jsonPath("$[0].order_id").value(1))
+                .andExpect(jsonPath("$[0].last_known_location").value("(41.50,-90.50)"))
+                .andExpect(jsonPath("$[1].order_id").value(2))
+                .andExpect(jsonPath("$[1].last_known_location").doesNotExist());
     }
 
     @Test
@@ -164,26 +153,19 @@ class FleetControllerTest {
     @Test
     void testGetSubscription_Success() throws Exception {
         // Given
-        Map<String, Object> subscription = new HashMap<>();
-        subscription.put("planName", "Premium");
-        subscription.put("maxVehicles", 50);
-        subscription.put("currentVehicles", 10);
-        subscription.put("maxDrivers", 100);
-        subscription.put("currentDrivers", 25);
-        subscription.put("expiryDate", "2026-12-31");
-
-        when(fleetService.getSubscriptionUsage(100L)).thenReturn(subscription);
+        SubscriptionUsageRow subscription = new SubscriptionUsageRow(100L, "Acme Logistics", "PREMIUM", 50L, 100L, 10L, 25L);
+        when(fleetService.getSubscriptionUsage(100L)).thenReturn(List.of(subscription));
 
         // When & Then
         mockMvc.perform(get("/api/fleet/subscription")
                 .with(authentication(authentication))
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.planName").value("Premium"))
-                .andExpect(jsonPath("$.maxVehicles").value(50))
-                .andExpect(jsonPath("$.currentVehicles").value(10))
-                .andExpect(jsonPath("$.maxDrivers").value(100))
-                .andExpect(jsonPath("$.currentDrivers").value(25));
+                .andExpect(jsonPath("$[0].license_tier").value("PREMIUM"))
+                .andExpect(jsonPath("$[0].max_vehicles").value(50))
+                .andExpect(jsonPath("$[0].current_vehicles").value(10))
+                .andExpect(jsonPath("$[0].max_drivers").value(100))
+                .andExpect(jsonPath("$[0].current_drivers").value(25));
     }
 
     @Test
@@ -202,11 +184,8 @@ class FleetControllerTest {
     @Test
     void testGetSubscription_CSVResponse() throws Exception {
         // Given
-        Map<String, Object> subscription = new HashMap<>();
-        subscription.put("planName", "Premium");
-        subscription.put("maxVehicles", 50);
-
-        when(fleetService.getSubscriptionUsage(100L)).thenReturn(subscription);
+        SubscriptionUsageRow subscription = new SubscriptionUsageRow(100L, "Acme Logistics", "PREMIUM", 50L, 100L, 10L, 25L);
+        when(fleetService.getSubscriptionUsage(100L)).thenReturn(List.of(subscription));
 
         // When & Then
         mockMvc.perform(get("/api/fleet/subscription")
@@ -2,6 +2,7 @@ package com.fleetmaster.controllers;
 
 import com.fleetmaster.entities.CompanyAccount;
 import com.fleetmaster.entities.Info;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.InfoService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -57,7 +58,7 @@ class InfoControllerTest {
         infoList = Arrays.asList(info1, info2);
         
         authentication = org.mockito.Mockito.mock(Authentication.class);
-        when(authentication.getPrincipal()).thenReturn(companyAccount);
+        when(authentication.getPrincipal()).thenAnswer(invocation -> AccountPrincipal.of(companyAccount));
         when(authentication.isAuthenticated()).thenReturn(true);
     }
 
@@ -3,7 +3,11 @@ package com.fleetmaster.controllers;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fleetmaster.dtos.AddProgressDto;
 import com.fleetmaster.dtos.CreateOrderDto;
+import com.fleetmaster.dtos.CursorPage;
+import com.fleetmaster.dtos.OrderRow;
+import com.fleetmaster.dtos.ProgressRow;
 import com.fleetmaster.entities.CompanyAccount;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.OrderService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,10 +19,12 @@ import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
@@ -65,7 +71,7 @@ class OrderControllerTest {
         progressDto.setNotes("Halfway through the journey");
         
         authentication = org.mockito.Mockito.mock(Authentication.class);
-        when(authentication.getPrincipal()).thenReturn(companyAccount);
+        when(authentication.getPrincipal()).thenAnswer(invocation -> AccountPrincipal.of(companyAccount));
     }
 
     @Test
@@ -100,20 +106,13 @@ class OrderControllerTest {
     @Test
     void testGetAllOrders_Success() throws Exception {
         // Given
-        Map<String, Object> order1 = new HashMap<>();
-        order1.put("id", 1L);
-        order1.put("origin", "New York");
-        order1.put("destination", "Los Angeles");
-        order1.put("status", "PENDING");
+        OrderRow order1 = new OrderRow(1L, "(40.71,-74.01)", "(34.05,-118.24)", "NORMAL",
+                LocalDateTime.of(2024, 5, 1, 8, 0), LocalDateTime.of(2024, 5, 3, 18, 0), "PENDING", 5L, 3L);
+        OrderRow order2 = new OrderRow(2L, "(41.88,-87.63)", "(25.76,-80.19)", "NORMAL",
+                LocalDateTime.of(2024, 5, 2, 8, 0), LocalDateTime.of(2024, 5, 3, 12, 0), "DELIVERED", 6L, 4L);
 
-        Map<String, Object> order2 = new HashMap<>();
-        order2.put("id", 2L);
-        order2.put("origin", "Chicago");
-        order2.put("destination", "Miami");
-        order2.put("status", "COMPLETED");
-
-        List<Map<String, Object>> orders = Arrays.asList(order1, order2);
-        when(orderService.getAllOrders(100L)).thenReturn(orders);
+        when(orderService.getOrders(eq(100L), any(), isNull(), eq(100)))
+                .thenReturn(new CursorPage<>(List.of(order1, order2), "next"));
 
         // When & Then
         mockMvc.perform(get("/api/orders")
@@ -121,14 +120,15 @@ class OrderControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].origin").value("New York"))
-                .andExpect(jsonPath("$[1].origin").value("Chicago"));
+                .andExpect(header().string("X-Next-Cursor", "next"))
+                .andExpect(jsonPath("$[0].pick_up").value("(40.71,-74.01)"))
+                .andExpect(jsonPath("$[1].pick_up").value("(41.88,-87.63)"));
     }
 
     @Test
     void testGetAllOrders_EmptyList() throws Exception {
         // Given
-        when(orderService.getAllOrders(100L)).thenReturn(new ArrayList<>());
+        when(orderService.getOrders(eq(100L), any(), isNull(), eq(100))).thenReturn(new CursorPage<>(List.of(), null));
 
         // When & Then
         mockMvc.perform(get("/api/orders")
@@ -155,12 +155,8 @@ class OrderControllerTest {
     @Test
     void testGetOrderById_Success() throws Exception {
         // Given
-        Map<String, Object> order = new HashMap<>();
-        order.put("id", 1L);
-        order.put("origin", "New York");
-        order.put("destination", "Los Angeles");
-        order.put("status", "IN_TRANSIT");
-        order.put("cargoWeight", 15000.0);
+        OrderRow order = new OrderRow(1L, "(40.71,-74.01)", "(34.05,-118.24)", "NORMAL",
+                LocalDateTime.of(2024, 5, 1, 8, 0), LocalDateTime.of(2024, 5, 3, 18, 0), "IN_TRANSIT", 5L, 3L);
 
         when(orderService.getOrderById(100L, 1L)).thenReturn(order);
 
@@ -170,7 +166,7 @@ class OrderControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(1))
-                .andExpect(jsonPath("$.origin").value("New York"))
+                .andExpect(jsonPath("$.departure_time").value("2024-05-01T08:00:00"))
                 .andExpect(jsonPath("$.status").value("IN_TRANSIT"));
     }
 
@@ -272,18 +268,10 @@ class OrderControllerTest {
     @Test
     void testGetOrderProgress_Success() throws Exception {
         // Given
-        Map<String, Object> progress1 = new HashMap<>();
-        progress1.put("id", 10L);
-        progress1.put("location", "Chicago");
-        progress1.put("status", "IN_TRANSIT");
-
-        Map<String, Object> progress2 = new HashMap<>();
-        progress2.put("id", 11L);
-        progress2.put("location", "Denver");
-        progress2.put("status", "IN_TRANSIT");
+        ProgressRow progress1 = new ProgressRow(10L, 1L, "(41.88,-87.63)", LocalDateTime.of(2024, 5, 1, 12, 0), "STOPOVER", null);
+        ProgressRow progress2 = new ProgressRow(11L, 1L, "(39.74,-104.99)", LocalDateTime.of(2024, 5, 2, 9, 0), "STOPOVER", null);
 
-        List<Map<String, Object>> progressList = Arrays.asList(progress1, progress2);
-        when(orderService.getOrderProgress(100L, 1L)).thenReturn(progressList);
+        when(orderService.getOrderProgress(100L, 1L, null, 100)).thenReturn(new CursorPage<>(List.of(progress1, progress2), null));
 
         // When & Then
         mockMvc.perform(get("/api/orders/1/progress")
@@ -291,8 +279,9 @@ class OrderControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].location").value("Chicago"))
-                .andExpect(jsonPath("$[1].location").value("Denver"));
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$[0].current_pos").value("(41.88,-87.63)"))
+                .andExpect(jsonPath("$[1].current_pos").value("(39.74,-104.99)"));
     }
 
     @Test
@@ -2,7 +2,9 @@ package com.fleetmaster.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fleetmaster.dtos.CreateVehicleDto;
+import com.fleetmaster.dtos.VehicleRow;
 import com.fleetmaster.entities.CompanyAccount;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.services.VehicleService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +17,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDate;
 import java.util.*;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -57,7 +60,7 @@ class VehicleControllerTest {
         vehicleDto.setCapacity(25000.0);
         
         authentication = org.mockito.Mockito.mock(Authentication.class);
-        when(authentication.getPrincipal()).thenReturn(companyAccount);
+        when(authentication.getPrincipal()).thenAnswer(invocation -> AccountPrincipal.of(companyAccount));
     }
 
     @Test
@@ -92,18 +95,10 @@ class VehicleControllerTest {
     @Test
     void testGetAllVehicles_Success() throws Exception {
         // Given
-        Map<String, Object> vehicle1 = new HashMap<>();
-        vehicle1.put("id", 1L);
-        vehicle1.put("licensePlate", "ABC-123");
-        vehicle1.put("brand", "Volvo");
+        VehicleRow vehicle1 = new VehicleRow(1L, 25000L, "TRUCK", LocalDate.of(2020, 1, 1), List.of("NORMAL"), null, 120000L, null);
+        VehicleRow vehicle2 = new VehicleRow(2L, 1500L, "VAN", LocalDate.of(2022, 1, 1), List.of("REFRIGERATED"), null, 40000L, null);
 
-        Map<String, Object> vehicle2 = new HashMap<>();
-        vehicle2.put("id", 2L);
-        vehicle2.put("licensePlate", "XYZ-456");
-        vehicle2.put("brand", "Scania");
-
-        List<Map<String, Object>> vehicles = Arrays.asList(vehicle1, vehicle2);
-        when(vehicleService.getAllVehicles(100L)).thenReturn(vehicles);
+        when(vehicleService.getAllVehicles(100L)).thenReturn(List.of(vehicle1, vehicle2));
 
         // When & Then
         mockMvc.perform(get("/api/vehicles")
@@ -111,8 +106,8 @@ class VehicleControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].licensePlate").value("ABC-123"))
-                .andExpect(jsonPath("$[1].licensePlate").value("XYZ-456"));
+                .andExpect(jsonPath("$[0].type").value("TRUCK"))
+                .andExpect(jsonPath("$[1].load_type[0]").value("REFRIGERATED"));
     }
 
     @Test
@@ -131,12 +126,8 @@ class VehicleControllerTest {
     @Test
     void testGetVehicleById_Success() throws Exception {
         // Given
-        Map<String, Object> vehicle = new HashMap<>();
-        vehicle.put("id", 1L);
-        vehicle.put("licensePlate", "ABC-123");
-        vehicle.put("brand", "Volvo");
-        vehicle.put("model", "FH16");
-        vehicle.put("capacity", 25000.0);
+        VehicleRow vehicle = new VehicleRow(1L, 25000L, "TRUCK", LocalDate.of(2020, 1, 1),
+                List.of("NORMAL", "HAZARDOUS"), null, 120000L, null);
 
         when(vehicleService.getVehicleById(100L, 1L)).thenReturn(vehicle);
 
@@ -146,8 +137,8 @@ class VehicleControllerTest {
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(1))
-                .andExpect(jsonPath("$.licensePlate").value("ABC-123"))
-                .andExpect(jsonPath("$.brand").value("Volvo"));
+                .andExpect(jsonPath("$.load_capacity").value(25000))
+                .andExpect(jsonPath("$.year_of_manufacture").value("2020-01-01"));
     }
 
     @Test
@@ -0,0 +1,89 @@
+package com.fleetmaster.repositories;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks on a real PostgreSQL that case-insensitive identity lookups are served by the
+ * LOWER() expression indexes once company_account holds 1M rows. Runs only when
+ * FLEETMASTER_TEST_DB_URL (plus FLEETMASTER_TEST_DB_USER / FLEETMASTER_TEST_DB_PASSWORD)
+ * points at a database; everything is created in a scratch schema and dropped afterwards.
+ */
+@EnabledIfEnvironmentVariable(named = "FLEETMASTER_TEST_DB_URL", matches = ".+")
+class CompanyAccountLookupIndexTest {
+
+    private static final String SCHEMA = "lookup_index_test";
+    private static final int ACCOUNTS = 1_000_000;
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void seed() throws Exception {
+        connection = DriverManager.getConnection(System.getenv("FLEETMASTER_TEST_DB_URL"),
+                System.getenv("FLEETMASTER_TEST_DB_USER"), System.getenv("FLEETMASTER_TEST_DB_PASSWORD"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            statement.execute("CREATE SCHEMA " + SCHEMA);
+            statement.execute("SET search_path TO " + SCHEMA);
+            statement.execute(Files.readString(Path.of("sql/tables.sql")));
+            statement.execute("INSERT INTO company_account (username, email, password_hash) " +
+                    "SELECT 'User' || g, 'User' || g || '@Example.com', 'x' FROM generate_series(1, " + ACCOUNTS + ") g");
+            statement.execute("ANALYZE company_account");
+        }
+    }
+
+    @AfterAll
+    static void drop() throws Exception {
+        if (connection != null) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            }
+            connection.close();
+        }
+    }
+
+    private String plan(String sql, String parameter) throws Exception {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            statement.setString(1, parameter);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    plan.append(rows.getString(1)).append('\n');
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    @Test
+    void testEmailLookup_UsesLowerEmailIndex() throws Exception {
+        // When
+        String plan = plan("SELECT * FROM company_account WHERE LOWER(email) = LOWER(?)", "user500000@example.COM");
+
+        // Then
+        assertTrue(plan.contains("idx_company_account_email_lower"), plan);
+        assertFalse(plan.contains("Seq Scan"), plan);
+    }
+
+    @Test
+    void testUsernameLookup_UsesLowerUsernameIndex() throws Exception {
+        // When
+        String plan = plan("SELECT * FROM company_account WHERE LOWER(username) = LOWER(?)", "USER500000");
+
+        // Then
+        assertTrue(plan.contains("idx_company_account_username_lower"), plan);
+        assertFalse(plan.contains("Seq Scan"), plan);
+    }
+}
@@ -0,0 +1,91 @@
+package com.fleetmaster.security;
+
+import com.fleetmaster.entities.ApiKey;
+import com.fleetmaster.repositories.ApiKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ApiKeyIndexTest {
+
+    @Mock
+    private ApiKeyRepository apiKeyRepository;
+
+    private ApiKeyIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ApiKeyIndex(apiKeyRepository, "test-secret");
+    }
+
+    private ApiKey key(String rawKey, String scopes, LocalDateTime expiresAt) {
+        ApiKey key = new ApiKey();
+        key.setId(1L);
+        key.setApiAccountId(9L);
+        key.setKeyHash(index.hash(rawKey));
+        key.setScopes(scopes);
+        key.setExpiresAt(expiresAt);
+        return key;
+    }
+
+    @Test
+    void testAuthenticate_LoadsIndexOnceAndMatchesByHash() {
+        // Given
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{key("fm_abc_secret", "orders:read", null), "telemetry"});
+        when(apiKeyRepository.findUsableWithUsername()).thenReturn(rows);
+
+        // When
+        ApiKeyIndex.ApiKeyEntry entry = index.authenticate("fm_abc_secret");
+
+        // Then
+        assertNotNull(entry);
+        assertEquals(9L, entry.accountId());
+        assertEquals("telemetry", entry.principal().subject());
+        assertNull(index.authenticate("fm_abc_wrong"));
+        verify(apiKeyRepository, times(1)).findUsableWithUsername();
+    }
+
+    @Test
+    void testAuthenticate_ExpiredAndRemovedKeysAreRejected() {
+        // Given
+        when(apiKeyRepository.findUsableWithUsername()).thenReturn(List.of());
+        index.reload();
+        ApiKey expired = key("fm_old_secret", "*", LocalDateTime.now().minusMinutes(1));
+        ApiKey live = key("fm_new_secret", "*", null);
+        live.setKeyHash(index.hash("fm_new_secret"));
+        index.put(expired, "telemetry");
+        index.put(live, "telemetry");
+
+        // When
+        index.remove(live.getKeyHash());
+
+        // Then
+        assertNull(index.authenticate("fm_old_secret"));
+        assertNull(index.authenticate("fm_new_secret"));
+    }
+
+    @Test
+    void testAllows_MatchesResourceAndAccess() {
+        // Given
+        ApiKeyIndex.ApiKeyEntry entry = new ApiKeyIndex.ApiKeyEntry(1L, 9L, "telemetry",
+                Set.of("orders:read", "fleet:*"), null);
+
+        // Then
+        assertTrue(entry.allows("GET", "/api/orders/12"));
+        assertFalse(entry.allows("POST", "/api/orders/12/progress"));
+        assertTrue(entry.allows("POST", "/api/fleet/ping"));
+        assertFalse(entry.allows("GET", "/api/vehicles"));
+    }
+}
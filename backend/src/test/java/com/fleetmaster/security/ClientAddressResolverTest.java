@@ -0,0 +1,59 @@
+package com.fleetmaster.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientAddressResolverTest {
+
+    private final ClientAddressResolver resolver = new ClientAddressResolver(List.of("10.0.0.5", "172.16.0.0/12"));
+
+    @Test
+    void testResolve_DirectClientIgnoresForwardedFor() {
+        // Given
+        MockHttpServletRequest request = request("203.0.113.7", "198.51.100.1");
+
+        // When & Then
+        assertEquals("203.0.113.7", resolver.resolve(request));
+    }
+
+    @Test
+    void testResolve_TrustedProxyUsesNearestUntrustedHop() {
+        // Given
+        MockHttpServletRequest request = request("172.18.0.3", "198.51.100.1, 203.0.113.9, 10.0.0.5");
+
+        // When & Then
+        assertEquals("203.0.113.9", resolver.resolve(request));
+    }
+
+    @Test
+    void testResolve_TrustedProxyWithoutForwardedForIsUnknown() {
+        // Given
+        MockHttpServletRequest request = request("10.0.0.5", null);
+
+        // When & Then
+        assertNull(resolver.resolve(request));
+    }
+
+    @Test
+    void testResolve_NoTrustedProxiesUsesRemoteAddress() {
+        // Given
+        ClientAddressResolver direct = new ClientAddressResolver(List.of());
+        MockHttpServletRequest request = request("172.18.0.3", "198.51.100.1");
+
+        // When & Then
+        assertEquals("172.18.0.3", direct.resolve(request));
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+}
@@ -1,11 +1,14 @@
 package com.fleetmaster.security;
 
+import com.fleetmaster.entities.UserRole;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jwts;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class JwtUtilTest {
@@ -168,4 +171,53 @@ class JwtUtilTest {
         assertTrue(jwtUtil.validateToken(token1, subject));
         assertTrue(jwtUtil.validateToken(token2, subject));
     }
+
+    @Test
+    void testParseClaims_ReturnsSubjectAndType() {
+        // Given
+        String token = jwtUtil.generateToken("apiuser", "API");
+
+        // When
+        Claims claims = jwtUtil.parseClaims(token);
+
+        // Then
+        assertEquals("apiuser", claims.getSubject());
+        assertEquals("API", jwtUtil.extractType(claims));
+        assertTrue(jwtUtil.validateClaims(claims, "apiuser"));
+        assertFalse(jwtUtil.validateClaims(claims, "other"));
+    }
+
+    @Test
+    void testParseClaims_TamperedToken() {
+        // Given
+        String token = jwtUtil.generateToken("user@example.com");
+        String tampered = token.substring(0, token.length() - 2) + "xx";
+
+        // When & Then
+        assertThrows(Exception.class, () -> jwtUtil.parseClaims(tampered));
+    }
+
+    @Test
+    void testGenerateToken_StatelessRoundTrip() {
+        // Given
+        AccountPrincipal principal = new AccountPrincipal(AccountPrincipal.TYPE_COMPANY, 7L, 3L,
+                "test@example.com", List.of(UserRole.ADMIN), "ACTIVE", true);
+
+        // When
+        Claims claims = jwtUtil.parseClaims(jwtUtil.generateToken(principal, 5));
+
+        // Then
+        assertEquals(principal, jwtUtil.extractPrincipal(claims));
+        assertEquals(5, jwtUtil.extractTokenVersion(claims));
+    }
+
+    @Test
+    void testExtractPrincipal_SubjectOnlyToken() {
+        // Given
+        Claims claims = jwtUtil.parseClaims(jwtUtil.generateToken("test@example.com"));
+
+        // When & Then
+        assertNull(jwtUtil.extractPrincipal(claims));
+        assertNull(jwtUtil.extractTokenVersion(claims));
+    }
 }
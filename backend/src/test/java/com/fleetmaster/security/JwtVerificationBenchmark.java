@@ -0,0 +1,87 @@
+package com.fleetmaster.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating one request's token in JwtFilter:
+ * <ul>
+ *   <li>reparsePerClaim: the old path, a new parser and signature check in extractSubject,
+ *       extractType, validateToken and isTokenExpired</li>
+ *   <li>parseOnce: one verification with JwtUtil's prebuilt parser, claims read from it</li>
+ *   <li>cachedClaims: a VerifiedTokenCache hit, as for a dashboard polling with the same token</li>
+ * </ul>
+ * Run after test-compile with
+ *
+ *   java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *       com.fleetmaster.security.JwtVerificationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    // JwtUtil's signing key, for the old parse-per-claim path
+    private static final String SECRET = "fleetmastersecretfhsdifgsduzfktsdufgsdt34zu2gwjhdsjhfdscjym";
+    private static final String SUBJECT = "dispatcher@example.com";
+
+    private JwtUtil jwtUtil;
+    private VerifiedTokenCache cache;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        cache = new VerifiedTokenCache(10_000);
+        token = jwtUtil.generateToken(SUBJECT);
+        cache.put(token, jwtUtil.parseClaims(token));
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public boolean reparsePerClaim() {
+        String subject = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+        String type = (String) Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().get("type");
+        boolean subjectMatches = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody()
+                .getSubject().equals(subject);
+        boolean expired = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody()
+                .getExpiration().before(new Date());
+        return type != null && subjectMatches && !expired;
+    }
+
+    @Benchmark
+    public boolean parseOnce() {
+        Claims claims = jwtUtil.parseClaims(token);
+        return jwtUtil.extractType(claims) != null && jwtUtil.validateClaims(claims, claims.getSubject());
+    }
+
+    @Benchmark
+    public boolean cachedClaims() {
+        Claims claims = cache.get(token);
+        return jwtUtil.extractType(claims) != null && jwtUtil.validateClaims(claims, claims.getSubject());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
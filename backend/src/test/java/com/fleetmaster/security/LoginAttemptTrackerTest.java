@@ -0,0 +1,66 @@
+package com.fleetmaster.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginAttemptTrackerTest {
+
+    private LoginAttemptTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new LoginAttemptTracker(900, 3, 5);
+    }
+
+    @Test
+    void testRecordFailure_CountsPerAccount() {
+        // When
+        tracker.recordFailure("login", "a@example.com", "10.0.0.1");
+        int failures = tracker.recordFailure("login", "A@example.com", "10.0.0.1");
+
+        // Then
+        assertEquals(2, failures);
+        assertFalse(tracker.isThrottled("login", "a@example.com", "10.0.0.1"));
+    }
+
+    @Test
+    void testIsThrottled_AfterMaxAccountFailures() {
+        // When
+        for (int i = 0; i < 3; i++) {
+            tracker.recordFailure("login", "a@example.com", null);
+        }
+
+        // Then
+        assertTrue(tracker.isThrottled("login", "a@example.com", null));
+        assertFalse(tracker.isThrottled("verify", "a@example.com", null));
+        assertEquals(1, tracker.getThrottledCount());
+    }
+
+    @Test
+    void testIsThrottled_AfterMaxIpFailures() {
+        // When
+        for (int i = 0; i < 5; i++) {
+            tracker.recordFailure("login", "user" + i + "@example.com", "10.0.0.1");
+        }
+
+        // Then
+        assertTrue(tracker.isThrottled("login", "new@example.com", "10.0.0.1"));
+        assertFalse(tracker.isThrottled("login", "new@example.com", "10.0.0.2"));
+    }
+
+    @Test
+    void testReset_ClearsAccount() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            tracker.recordFailure("login", "a@example.com", null);
+        }
+
+        // When
+        tracker.reset("login", "a@example.com");
+
+        // Then
+        assertFalse(tracker.isThrottled("login", "a@example.com", null));
+    }
+}
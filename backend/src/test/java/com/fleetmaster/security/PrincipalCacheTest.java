@@ -0,0 +1,72 @@
+package com.fleetmaster.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrincipalCacheTest {
+
+    private PrincipalCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new PrincipalCache(60, 3);
+    }
+
+    private AccountPrincipal principal(String subject) {
+        return new AccountPrincipal(AccountPrincipal.TYPE_COMPANY, 1L, 100L, subject, List.of(), "ACTIVE", true);
+    }
+
+    @Test
+    void testGet_MissThenHit() {
+        // Given
+        AccountPrincipal principal = principal("user@example.com");
+
+        // When
+        AccountPrincipal first = cache.get(AccountPrincipal.TYPE_COMPANY, "user@example.com");
+        cache.put(principal);
+        AccountPrincipal second = cache.get(AccountPrincipal.TYPE_COMPANY, "user@example.com");
+
+        // Then
+        assertNull(first);
+        assertSame(principal, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testInvalidate_RemovesEntry() {
+        // Given
+        cache.put(principal("user@example.com"));
+
+        // When
+        cache.invalidate(AccountPrincipal.TYPE_COMPANY, "user@example.com");
+
+        // Then
+        assertNull(cache.get(AccountPrincipal.TYPE_COMPANY, "user@example.com"));
+    }
+
+    @Test
+    void testGet_TypesAreSeparate() {
+        // Given
+        cache.put(principal("shared"));
+
+        // When & Then
+        assertNull(cache.get(AccountPrincipal.TYPE_API, "shared"));
+    }
+
+    @Test
+    void testPut_ZeroTtlDisablesCaching() {
+        // Given
+        PrincipalCache disabled = new PrincipalCache(0, 3);
+
+        // When
+        disabled.put(principal("user@example.com"));
+
+        // Then
+        assertEquals(0, disabled.size());
+    }
+}
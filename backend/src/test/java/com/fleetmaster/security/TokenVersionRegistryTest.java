@@ -0,0 +1,73 @@
+package com.fleetmaster.security;
+
+import com.fleetmaster.repositories.ApiAccountRepository;
+import com.fleetmaster.repositories.CompanyAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenVersionRegistryTest {
+
+    @Mock
+    private CompanyAccountRepository companyAccountRepository;
+
+    @Mock
+    private ApiAccountRepository apiAccountRepository;
+
+    private TokenVersionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new TokenVersionRegistry(companyAccountRepository, apiAccountRepository, new JwtUtil(), true);
+    }
+
+    @Test
+    void testIsCurrent_LoadsRevocationsOnFirstUse() {
+        // Given
+        List<Object[]> rows = List.<Object[]>of(new Object[]{1L, 3, LocalDateTime.now().minusMinutes(1)});
+        when(companyAccountRepository.findTokenRevocationsSince(any())).thenReturn(rows);
+        when(apiAccountRepository.findTokenRevocationsSince(any())).thenReturn(List.of());
+
+        // When & Then
+        assertFalse(registry.isCurrent(AccountPrincipal.TYPE_COMPANY, 1L, 2));
+        assertTrue(registry.isCurrent(AccountPrincipal.TYPE_COMPANY, 1L, 3));
+        assertTrue(registry.isCurrent(AccountPrincipal.TYPE_COMPANY, 2L, 0));
+        assertTrue(registry.isCurrent(AccountPrincipal.TYPE_API, 1L, 0));
+        verify(companyAccountRepository, times(1)).findTokenRevocationsSince(any());
+    }
+
+    @Test
+    void testRevoke_AppliesImmediatelyAndKeepsHighestVersion() {
+        // Given
+        when(companyAccountRepository.findTokenRevocationsSince(any())).thenReturn(List.of());
+        when(apiAccountRepository.findTokenRevocationsSince(any())).thenReturn(List.of());
+        registry.refresh();
+
+        // When
+        registry.revoke(AccountPrincipal.TYPE_COMPANY, 1L, 5);
+        registry.revoke(AccountPrincipal.TYPE_COMPANY, 1L, 4);
+
+        // Then
+        assertFalse(registry.isCurrent(AccountPrincipal.TYPE_COMPANY, 1L, 4));
+        assertTrue(registry.isCurrent(AccountPrincipal.TYPE_COMPANY, 1L, 5));
+    }
+
+    @Test
+    void testIsCurrent_FailsClosedWhenNeverLoaded() {
+        // Given
+        when(companyAccountRepository.findTokenRevocationsSince(any())).thenThrow(new RuntimeException("db down"));
+
+        // When & Then
+        assertFalse(registry.isCurrent(AccountPrincipal.TYPE_COMPANY, 1L, 0));
+    }
+}
@@ -0,0 +1,68 @@
+package com.fleetmaster.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedTokenCacheTest {
+
+    private VerifiedTokenCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new VerifiedTokenCache(3);
+    }
+
+    private Claims claims(String subject, long expiresInMs) {
+        return Jwts.claims()
+                .setSubject(subject)
+                .setExpiration(new Date(System.currentTimeMillis() + expiresInMs));
+    }
+
+    @Test
+    void testGet_MissThenHit() {
+        // Given
+        Claims claims = claims("user@example.com", 60_000);
+
+        // When
+        Claims first = cache.get("token-a");
+        cache.put("token-a", claims);
+        Claims second = cache.get("token-a");
+
+        // Then
+        assertNull(first);
+        assertSame(claims, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testGet_ExpiredEntryIsDropped() {
+        // Given
+        cache.put("token-a", claims("user@example.com", -1_000));
+
+        // When
+        Claims result = cache.get("token-a");
+
+        // Then
+        assertNull(result);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testPut_StaysWithinMaxSize() {
+        // When
+        for (int i = 0; i < 10; i++) {
+            cache.put("token-" + i, claims("user" + i, 60_000));
+        }
+
+        // Then
+        assertTrue(cache.size() <= 3);
+        assertNotNull(cache.get("token-9"));
+    }
+}
@@ -0,0 +1,124 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.CreateApiKeyDto;
+import com.fleetmaster.entities.ApiAccount;
+import com.fleetmaster.entities.ApiKey;
+import com.fleetmaster.exceptions.BusinessException;
+import com.fleetmaster.repositories.ApiAccountRepository;
+import com.fleetmaster.repositories.ApiKeyRepository;
+import com.fleetmaster.security.ApiKeyIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ApiKeyServiceTest {
+
+    @Mock
+    private ApiKeyRepository apiKeyRepository;
+
+    @Mock
+    private ApiAccountRepository apiAccountRepository;
+
+    private ApiKeyIndex apiKeyIndex;
+
+    private ApiKeyService apiKeyService;
+
+    private ApiAccount account;
+
+    @BeforeEach
+    void setUp() {
+        apiKeyIndex = new ApiKeyIndex(apiKeyRepository, "test-secret");
+        apiKeyService = new ApiKeyService(apiKeyRepository, apiAccountRepository, apiKeyIndex);
+
+        account = new ApiAccount();
+        account.setId(9L);
+        account.setUsername("telemetry");
+        account.setActive(true);
+        lenient().when(apiAccountRepository.findById(9L)).thenReturn(Optional.of(account));
+        lenient().when(apiKeyRepository.save(any(ApiKey.class))).thenAnswer(invocation -> {
+            ApiKey key = invocation.getArgument(0);
+            if (key.getId() == null) {
+                key.setId(100L);
+            }
+            return key;
+        });
+        lenient().when(apiKeyRepository.findUsableWithUsername()).thenReturn(List.of());
+        apiKeyIndex.reload();
+    }
+
+    private CreateApiKeyDto dto(String... scopes) {
+        CreateApiKeyDto dto = new CreateApiKeyDto();
+        dto.setName("pusher");
+        dto.setScopes(List.of(scopes));
+        return dto;
+    }
+
+    @Test
+    void testCreateKey_StoresHashOnlyAndAuthenticates() {
+        // When
+        Map<String, Object> result = apiKeyService.createKey(9L, dto("fleet:write"));
+
+        // Then
+        String rawKey = (String) result.get("key");
+        assertTrue(rawKey.startsWith((String) result.get("prefix") + "_"));
+        verify(apiKeyRepository).save(argThat(key -> !key.getKeyHash().contains(rawKey)
+                && key.getKeyHash().equals(apiKeyIndex.hash(rawKey))));
+        ApiKeyIndex.ApiKeyEntry entry = apiKeyIndex.authenticate(rawKey);
+        assertNotNull(entry);
+        assertTrue(entry.allows("POST", "/api/fleet/ping"));
+    }
+
+    @Test
+    void testCreateKey_InvalidScope() {
+        // When & Then
+        BusinessException exception = assertThrows(BusinessException.class,
+                () -> apiKeyService.createKey(9L, dto("orders:delete")));
+        assertEquals("Invalid scope: orders:delete", exception.getMessage());
+        verify(apiKeyRepository, never()).save(any(ApiKey.class));
+    }
+
+    @Test
+    void testRotateKey_OldKeyStopsWorking() {
+        // Given
+        String oldKey = (String) apiKeyService.createKey(9L, dto("*")).get("key");
+        ApiKey stored = new ApiKey();
+        stored.setId(100L);
+        stored.setApiAccountId(9L);
+        stored.setName("pusher");
+        stored.setScopes("*");
+        stored.setKeyHash(apiKeyIndex.hash(oldKey));
+        stored.setActive(true);
+        when(apiKeyRepository.findByIdAndApiAccountId(100L, 9L)).thenReturn(Optional.of(stored));
+
+        // When
+        String newKey = (String) apiKeyService.rotateKey(9L, 100L).get("key");
+
+        // Then
+        assertNotEquals(oldKey, newKey);
+        assertFalse(stored.isActive());
+        assertNotNull(stored.getRevokedAt());
+        assertNull(apiKeyIndex.authenticate(oldKey));
+        assertNotNull(apiKeyIndex.authenticate(newKey));
+    }
+
+    @Test
+    void testCreateKey_InactiveAccount() {
+        // Given
+        account.setActive(false);
+
+        // When & Then
+        assertThrows(BusinessException.class, () -> apiKeyService.createKey(9L, dto("*")));
+    }
+}
@@ -2,10 +2,16 @@ package com.fleetmaster.services;
 
 import com.fleetmaster.dtos.LoginDto;
 import com.fleetmaster.dtos.RegisterDto;
+import com.fleetmaster.dtos.VerifyCodeDto;
 import com.fleetmaster.entities.CompanyAccount;
 import com.fleetmaster.exceptions.BusinessException;
+import com.fleetmaster.exceptions.TooManyRequestsException;
 import com.fleetmaster.repositories.CompanyAccountRepository;
+import com.fleetmaster.security.AccountPrincipal;
 import com.fleetmaster.security.JwtUtil;
+import com.fleetmaster.security.LoginAttemptTracker;
+import com.fleetmaster.security.PrincipalCache;
+import com.fleetmaster.security.TokenVersionRegistry;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,16 +19,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.util.Optional;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -44,6 +52,18 @@ class AuthServiceTest {
     @Mock
     private EntityManager entityManager;
 
+    @Mock
+    private PrincipalCache principalCache;
+
+    @Mock
+    private TokenVersionRegistry tokenVersions;
+
+    @Mock
+    private FleetService fleetService;
+
+    @Spy
+    private LoginAttemptTracker loginAttemptTracker = new LoginAttemptTracker(900, 3, 20);
+
     @InjectMocks
     private AuthService authService;
 
@@ -92,7 +112,7 @@ class AuthServiceTest {
     @Test
     void testRegister_Success() {
         // Given
-        when(companyAccountRepository.findByEmail(anyString())).thenReturn(Optional.empty());
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of());
         when(passwordEncoder.encode(anyString())).thenReturn("$2a$10$hashedpassword");
 
         // When
@@ -101,12 +121,13 @@ class AuthServiceTest {
         // Then
         verify(companyAccountRepository, times(1)).save(any(CompanyAccount.class));
         verify(emailService, times(1)).sendVerificationCode(anyString(), anyString());
+        verify(fleetService).invalidateSubscriptionUsage(1L);
     }
 
     @Test
     void testRegister_EmailAlreadyExists() {
         // Given
-        when(companyAccountRepository.findByEmail(anyString())).thenReturn(Optional.of(companyAccount));
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -120,7 +141,7 @@ class AuthServiceTest {
     @Test
     void testLogin_Success() {
         // Given
-        when(companyAccountRepository.findByEmail(anyString())).thenReturn(Optional.of(companyAccount));
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
         when(passwordEncoder.matches(anyString(), anyString())).thenReturn(true);
         when(jwtUtil.generateToken(anyString(), anyString())).thenReturn("mock-jwt-token");
 
@@ -130,14 +151,14 @@ class AuthServiceTest {
         // Then
         assertNotNull(token);
         assertEquals("mock-jwt-token", token);
-        verify(companyAccountRepository, times(1)).save(any(CompanyAccount.class));
+        verify(companyAccountRepository, never()).save(any(CompanyAccount.class));
     }
 
     @Test
     void testLogin_EmailNotVerified() {
         // Given
         companyAccount.setVerified(false);
-        when(companyAccountRepository.findByEmail(anyString())).thenReturn(Optional.of(companyAccount));
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -151,7 +172,7 @@ class AuthServiceTest {
     void testLogin_AccountBlocked() {
         // Given
         companyAccount.setAccountStatus("BLOCKED");
-        when(companyAccountRepository.findByEmail(anyString())).thenReturn(Optional.of(companyAccount));
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -164,7 +185,7 @@ class AuthServiceTest {
     @Test
     void testLogin_IncorrectPassword() {
         // Given
-        when(companyAccountRepository.findByEmail(anyString())).thenReturn(Optional.of(companyAccount));
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
         when(passwordEncoder.matches(anyString(), anyString())).thenReturn(false);
 
         // When & Then
@@ -173,13 +194,13 @@ class AuthServiceTest {
         });
 
         assertEquals("Incorrect password", exception.getMessage());
-        verify(companyAccountRepository, times(1)).save(any(CompanyAccount.class));
+        verify(companyAccountRepository, never()).save(any(CompanyAccount.class));
     }
 
     @Test
     void testLogin_UserNotFound() {
         // Given
-        when(companyAccountRepository.findByEmail(anyString())).thenReturn(Optional.empty());
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of());
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -188,4 +209,175 @@ class AuthServiceTest {
 
         assertEquals("CompanyAccount not found", exception.getMessage());
     }
+
+    @Test
+    void testLogin_CaseVariantAccounts_ExactSpellingWins() {
+        // Given
+        CompanyAccount variant = new CompanyAccount();
+        variant.setId(2L);
+        variant.setEmail("Test@example.com");
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString()))
+                .thenReturn(List.of(variant, companyAccount));
+        when(passwordEncoder.matches(anyString(), anyString())).thenReturn(true);
+        when(jwtUtil.generateToken(anyString(), anyString())).thenReturn("mock-jwt-token");
+
+        // When
+        authService.login(loginDto);
+
+        // Then
+        verify(jwtUtil).generateToken("test@example.com", "COMPANY");
+    }
+
+    @Test
+    void testLogin_CaseVariantAccounts_OtherSpellingIsNotFound() {
+        // Given
+        CompanyAccount variant = new CompanyAccount();
+        variant.setId(2L);
+        variant.setEmail("Test@example.com");
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString()))
+                .thenReturn(List.of(variant, companyAccount));
+        loginDto.setEmail("TEST@example.com");
+
+        // When & Then
+        BusinessException exception = assertThrows(BusinessException.class, () -> authService.login(loginDto));
+        assertEquals("CompanyAccount not found", exception.getMessage());
+        verify(passwordEncoder, never()).matches(anyString(), anyString());
+    }
+
+    @Test
+    void testLogin_ThirdFailure_LocksAccountAndInvalidatesPrincipal() {
+        // Given
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
+        when(passwordEncoder.matches(anyString(), anyString())).thenReturn(false);
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            assertThrows(BusinessException.class, () -> authService.login(loginDto, "10.0.0.1"));
+        }
+
+        // Then
+        assertNotNull(companyAccount.getLockedUntil());
+        verify(companyAccountRepository, times(1)).save(companyAccount);
+        verify(principalCache).invalidate(AccountPrincipal.TYPE_COMPANY, "test@example.com");
+    }
+
+    @Test
+    void testLogin_Throttled_RejectsBeforeDatabase() {
+        // Given
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
+        when(passwordEncoder.matches(anyString(), anyString())).thenReturn(false);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(BusinessException.class, () -> authService.login(loginDto, "10.0.0.1"));
+        }
+        clearInvocations(companyAccountRepository, passwordEncoder);
+
+        // When & Then
+        assertThrows(TooManyRequestsException.class, () -> authService.login(loginDto, "10.0.0.2"));
+        verify(companyAccountRepository, never()).findByEmail(anyString());
+        verify(passwordEncoder, never()).matches(anyString(), anyString());
+    }
+
+    @Test
+    void testLogin_IpThrottledAcrossAccounts() {
+        // Given
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of());
+        for (int i = 0; i < 20; i++) {
+            LoginDto probe = new LoginDto();
+            probe.setEmail("user" + i + "@example.com");
+            probe.setPassword("guess");
+            assertThrows(BusinessException.class, () -> authService.login(probe, "10.0.0.9"));
+        }
+
+        // When & Then
+        assertThrows(TooManyRequestsException.class, () -> authService.login(loginDto, "10.0.0.9"));
+    }
+
+    @Test
+    void testGetPrincipal_CacheHit_SkipsRepository() {
+        // Given
+        AccountPrincipal cached = AccountPrincipal.of(companyAccount);
+        when(principalCache.get(AccountPrincipal.TYPE_COMPANY, "test@example.com")).thenReturn(cached);
+
+        // When
+        AccountPrincipal principal = authService.getPrincipal("COMPANY", "test@example.com");
+
+        // Then
+        assertSame(cached, principal);
+        verify(companyAccountRepository, never()).findByEmail(anyString());
+    }
+
+    @Test
+    void testGetPrincipal_CacheMiss_LoadsAndCaches() {
+        // Given
+        companyAccount.setCompanyId(5L);
+        when(companyAccountRepository.findAllByEmailIgnoreCase("test@example.com")).thenReturn(List.of(companyAccount));
+
+        // When
+        AccountPrincipal principal = authService.getPrincipal("COMPANY", "test@example.com");
+
+        // Then
+        assertNotNull(principal);
+        assertEquals(1L, principal.id());
+        assertEquals(5L, principal.companyId());
+        assertEquals("ACTIVE", principal.accountStatus());
+        verify(principalCache).put(principal);
+    }
+
+    @Test
+    void testLogin_Success_RehashesOutdatedCost() {
+        // Given
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
+        when(passwordEncoder.matches(anyString(), anyString())).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("$2a$10$hashedpassword")).thenReturn(true);
+        when(passwordEncoder.encode("password123")).thenReturn("$2a$12$rehashed");
+        when(jwtUtil.generateToken(anyString(), anyString())).thenReturn("mock-jwt-token");
+
+        // When
+        authService.login(loginDto);
+
+        // Then
+        assertEquals("$2a$12$rehashed", companyAccount.getPasswordHash());
+        verify(companyAccountRepository, times(1)).save(companyAccount);
+    }
+
+    @Test
+    void testLogin_StatelessMode_IssuesClaimsToken() {
+        // Given
+        companyAccount.setTokenVersion(4);
+        when(tokenVersions.isEnabled()).thenReturn(true);
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
+        when(passwordEncoder.matches(anyString(), anyString())).thenReturn(true);
+        when(jwtUtil.generateToken(any(AccountPrincipal.class), eq(4))).thenReturn("stateless-token");
+
+        // When
+        String token = authService.login(loginDto);
+
+        // Then
+        assertEquals("stateless-token", token);
+        verify(jwtUtil, never()).generateToken(anyString(), anyString());
+    }
+
+    @Test
+    void testCheckVerifyCode_Blocking_RevokesIssuedTokens() {
+        // Given
+        companyAccount.setVerified(false);
+        companyAccount.setVerificationCode("1234");
+        companyAccount.setTokenVersion(2);
+        when(companyAccountRepository.findAllByEmailIgnoreCase(anyString())).thenReturn(List.of(companyAccount));
+        VerifyCodeDto dto = new VerifyCodeDto();
+        dto.setEmail("test@example.com");
+        dto.setCode("0000");
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            authService.checkVerifyCode(dto);
+        }
+
+        // Then
+        assertEquals("BLOCKED", companyAccount.getAccountStatus());
+        assertEquals(3, companyAccount.getTokenVersion());
+        assertNotNull(companyAccount.getTokensRevokedAt());
+        verify(tokenVersions).revoke(AccountPrincipal.TYPE_COMPANY, 1L, 3);
+        verify(companyAccountRepository, times(1)).save(companyAccount);
+    }
 }
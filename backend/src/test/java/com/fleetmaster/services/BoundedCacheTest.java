@@ -0,0 +1,113 @@
+package com.fleetmaster.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+
+    private static long inAMinute() {
+        return System.currentTimeMillis() + 60_000;
+    }
+
+    @Test
+    void testGet_ExpiredEntryIsAMiss() {
+        // Given
+        BoundedCache<String, String> cache = new BoundedCache<>("test.cache", 10);
+        cache.put("fresh", "a", inAMinute());
+        cache.put("stale", "b", System.currentTimeMillis() - 1);
+
+        // When
+        String fresh = cache.get("fresh");
+        String stale = cache.get("stale");
+
+        // Then
+        assertEquals("a", fresh);
+        assertNull(stale);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testPut_EvictsExpiredEntriesBeforeLiveOnes() {
+        // Given
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>("test.cache", 10);
+        for (int i = 0; i < 5; i++) {
+            cache.put(i, i, inAMinute());
+        }
+        for (int i = 5; i < 10; i++) {
+            cache.put(i, i, System.currentTimeMillis() - 1);
+        }
+
+        // When
+        cache.put(10, 10, inAMinute());
+
+        // Then
+        assertEquals(6, cache.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, cache.get(i));
+        }
+        assertEquals(10, cache.get(10));
+    }
+
+    @Test
+    void testPut_StaysWithinMaxSize() {
+        // Given
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>("test.cache", 10);
+
+        // When
+        for (int i = 0; i < 25; i++) {
+            cache.put(i, i, inAMinute());
+        }
+
+        // Then
+        assertTrue(cache.size() <= 10);
+        assertEquals(24, cache.get(24));
+    }
+
+    @Test
+    void testPut_SkipsStoreThatIsNoLongerValid() {
+        // Given
+        BoundedCache<String, String> cache = new BoundedCache<>("test.cache", 10);
+        cache.put("key", "old", inAMinute());
+
+        // When
+        cache.put("key", "new", inAMinute(), () -> false);
+
+        // Then
+        assertEquals("old", cache.get("key"));
+    }
+
+    @Test
+    void testPut_ZeroMaxSizeDisablesCaching() {
+        // Given
+        BoundedCache<String, String> cache = new BoundedCache<>("test.cache", 0);
+
+        // When
+        cache.put("key", "value", inAMinute());
+
+        // Then
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testBindTo_PublishesHitsMissesAndSize() {
+        // Given
+        BoundedCache<String, String> cache = new BoundedCache<>("test.cache", 10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        cache.put("key", "value", inAMinute());
+
+        // When
+        cache.get("key");
+        cache.get("other");
+
+        // Then
+        assertEquals(1, registry.get("test.cache.hits").functionCounter().count());
+        assertEquals(1, registry.get("test.cache.misses").functionCounter().count());
+        assertEquals(1, registry.get("test.cache.size").gauge().value());
+    }
+}
@@ -0,0 +1,118 @@
+package com.fleetmaster.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompanyCacheTest {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testGet_LoadsOncePerCompany() {
+        // Given
+        CompanyCache<String> cache = new CompanyCache<>("test.cache", 60_000, 100);
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        String first = cache.get(1L, id -> "fleet-" + id + "-" + loads.incrementAndGet());
+        String second = cache.get(1L, id -> "fleet-" + id + "-" + loads.incrementAndGet());
+        String other = cache.get(2L, id -> "fleet-" + id + "-" + loads.incrementAndGet());
+
+        // Then
+        assertEquals("fleet-1-1", first);
+        assertEquals(first, second);
+        assertEquals("fleet-2-2", other);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testInvalidate_ReloadsAndDropsAgainAfterCommit() {
+        // Given
+        CompanyCache<Integer> cache = new CompanyCache<>("test.cache", 60_000, 100);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(1L, id -> loads.incrementAndGet());
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        cache.invalidate(1L);
+        // A read before the commit may still see the old rows...
+        assertEquals(2, cache.get(1L, id -> loads.incrementAndGet()));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        // Then ...so the commit drops what it loaded
+        assertEquals(1, synchronizations.size());
+        assertEquals(3, cache.get(1L, id -> loads.incrementAndGet()));
+    }
+
+    @Test
+    void testGet_DoesNotStoreLoadOverlappingAnInvalidation() {
+        // Given
+        CompanyCache<Integer> cache = new CompanyCache<>("test.cache", 60_000, 100);
+
+        // When
+        cache.get(1L, id -> {
+            cache.invalidate(1L);
+            return 1;
+        });
+
+        // Then
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testInvalidateAll_DropsEveryCompany() {
+        // Given
+        CompanyCache<Long> cache = new CompanyCache<>("test.cache", 60_000, 100);
+        cache.get(1L, id -> id);
+        cache.get(2L, id -> id);
+
+        // When
+        cache.invalidateAll();
+
+        // Then
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testGet_ZeroTtlDisablesCaching() {
+        // Given
+        CompanyCache<Integer> cache = new CompanyCache<>("test.cache", 0, 100);
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        cache.get(1L, id -> loads.incrementAndGet());
+        cache.get(1L, id -> loads.incrementAndGet());
+
+        // Then
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testGet_StaysWithinMaxSize() {
+        // Given
+        CompanyCache<Long> cache = new CompanyCache<>("test.cache", 60_000, 10);
+
+        // When
+        for (long companyId = 1; companyId <= 25; companyId++) {
+            cache.get(companyId, id -> id);
+        }
+
+        // Then
+        assertTrue(cache.size() <= 10);
+    }
+}
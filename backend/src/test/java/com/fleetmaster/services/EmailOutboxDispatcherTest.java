@@ -0,0 +1,145 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.entities.EmailOutbox;
+import com.fleetmaster.repositories.EmailOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailOutboxDispatcherTest {
+
+    @Mock
+    private EmailOutboxRepository outboxRepository;
+
+    @Mock
+    private JavaMailSender mailSender;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new EmailOutboxDispatcher(outboxRepository, mailSender,
+                new TransactionTemplate(transactionManager), 10, 3, 30, 3600, 300);
+        lenient().when(outboxRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    private EmailOutbox message(long id, String to, int attempts) {
+        EmailOutbox outbox = new EmailOutbox();
+        outbox.setId(id);
+        outbox.setRecipient(to);
+        outbox.setSubject("Subject");
+        outbox.setBody("Body");
+        outbox.setAttempts(attempts);
+        return outbox;
+    }
+
+    @Test
+    void testDispatch_SendsWholeBatchInOneCall() {
+        // Given
+        EmailOutbox first = message(1L, "a@example.com", 0);
+        EmailOutbox second = message(2L, "b@example.com", 0);
+        when(outboxRepository.lockDueBatch(any(LocalDateTime.class), eq(10))).thenReturn(List.of(first, second));
+
+        // When
+        dispatcher.dispatch();
+
+        // Then
+        verify(mailSender, times(1)).send(any(SimpleMailMessage[].class));
+        assertEquals(EmailOutbox.STATUS_SENT, first.getStatus());
+        assertEquals(EmailOutbox.STATUS_SENT, second.getStatus());
+        assertNotNull(first.getDateSent());
+    }
+
+    @Test
+    void testDispatch_PartialFailureIsRetriedWithBackoff() {
+        // Given
+        EmailOutbox ok = message(1L, "a@example.com", 0);
+        EmailOutbox bad = message(2L, "b@example.com", 0);
+        when(outboxRepository.lockDueBatch(any(LocalDateTime.class), eq(10))).thenReturn(List.of(ok, bad));
+        doAnswer(invocation -> {
+            SimpleMailMessage rejected = invocation.getArgument(1);
+            throw new MailSendException(Map.of(rejected, new RuntimeException("mailbox unavailable")));
+        }).when(mailSender).send(any(SimpleMailMessage[].class));
+
+        // When
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher.dispatch();
+
+        // Then
+        assertEquals(EmailOutbox.STATUS_SENT, ok.getStatus());
+        assertEquals(EmailOutbox.STATUS_PENDING, bad.getStatus());
+        assertEquals(1, bad.getAttempts());
+        assertEquals("mailbox unavailable", bad.getLastError());
+        assertFalse(bad.getNextAttemptAt().isBefore(before.plusSeconds(30)));
+    }
+
+    @Test
+    void testDispatch_GivesUpAfterMaxAttempts() {
+        // Given
+        EmailOutbox outbox = message(1L, "a@example.com", 2);
+        when(outboxRepository.lockDueBatch(any(LocalDateTime.class), eq(10))).thenReturn(List.of(outbox));
+        doThrow(new MailSendException("connection refused")).when(mailSender).send(any(SimpleMailMessage[].class));
+
+        // When
+        dispatcher.dispatch();
+
+        // Then
+        assertEquals(EmailOutbox.STATUS_FAILED, outbox.getStatus());
+        assertEquals(3, outbox.getAttempts());
+    }
+
+    @Test
+    void testDispatch_NothingDue() {
+        // Given
+        when(outboxRepository.lockDueBatch(any(LocalDateTime.class), eq(10))).thenReturn(List.of());
+
+        // When
+        dispatcher.dispatch();
+
+        // Then
+        verifyNoInteractions(mailSender);
+    }
+
+    @Test
+    void testBackoff_IsExponentialAndCapped() {
+        assertEquals(30, dispatcher.backoffSeconds(1));
+        assertEquals(60, dispatcher.backoffSeconds(2));
+        assertEquals(120, dispatcher.backoffSeconds(3));
+        assertEquals(3600, dispatcher.backoffSeconds(20));
+    }
+
+    @Test
+    void testBindTo_BacklogGaugesCountStoredMessages() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        when(outboxRepository.countByStatus(EmailOutbox.STATUS_PENDING)).thenReturn(12L);
+        when(outboxRepository.countByStatus(EmailOutbox.STATUS_FAILED)).thenReturn(2L);
+
+        // When
+        dispatcher.bindTo(registry);
+
+        // Then
+        assertEquals(12.0, registry.get("email.outbox.backlog.pending").gauge().value());
+        assertEquals(2.0, registry.get("email.outbox.backlog.failed").gauge().value());
+    }
+}
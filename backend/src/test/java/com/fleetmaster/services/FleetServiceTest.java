@@ -0,0 +1,159 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.FleetOverview;
+import com.fleetmaster.dtos.FleetStatusRow;
+import com.fleetmaster.dtos.SubscriptionUsageRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class FleetServiceTest {
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private FleetService fleetService;
+
+    private final FleetStatusRow vehicle = new FleetStatusRow(1L, 10L, "VAN", 1000L, "NORMAL", null, 0L, null);
+    private final SubscriptionUsageRow usage = new SubscriptionUsageRow(1L, "Test Company", "BASIC", 10L, 5L, 1, 0);
+
+    @BeforeEach
+    void setUp() {
+        fleetService = new FleetService(jdbcTemplate, jdbcTemplate, 30, 100, 60, 100, 500);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fleetService.destroy();
+    }
+
+    @Test
+    void testGetOverview_LoadsTheSectionsConcurrently() {
+        // Given
+        CountDownLatch allStarted = new CountDownLatch(3);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        when(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            allStarted.countDown();
+            // Only returns once every section is running at the same time
+            assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+            String sql = invocation.getArgument(0);
+            if (sql.contains("sp_read_fleet_status")) {
+                return List.of(vehicle);
+            }
+            return sql.contains("sp_read_subscription_usage") ? List.of(usage) : List.of();
+        });
+
+        // When
+        FleetOverview overview = fleetService.getOverview(1L);
+
+        // Then
+        assertEquals(FleetOverview.State.OK, overview.status().state());
+        assertEquals(List.of(vehicle), overview.status().rows());
+        assertEquals(FleetOverview.State.OK, overview.tracking().state());
+        assertEquals(List.of(), overview.tracking().rows());
+        assertEquals(List.of(usage), overview.subscription().rows());
+        assertEquals(3, threads.size());
+        assertTrue(threads.stream().allMatch(Thread::isVirtual));
+    }
+
+    @Test
+    void testGetOverview_FailedSectionDoesNotFailTheOthers() {
+        // Given
+        when(jdbcTemplate.query(contains("sp_read_fleet_status"), anyMap(), any(RowMapper.class)))
+                .thenReturn(List.of(vehicle));
+        when(jdbcTemplate.query(contains("sp_read_order_tracking"), anyMap(), any(RowMapper.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        when(jdbcTemplate.query(contains("sp_read_subscription_usage"), anyMap(), any(RowMapper.class)))
+                .thenReturn(List.of(usage));
+
+        // When
+        FleetOverview overview = fleetService.getOverview(1L);
+
+        // Then
+        assertEquals(FleetOverview.State.FAILED, overview.tracking().state());
+        assertNull(overview.tracking().rows());
+        assertEquals("Could not load tracking", overview.tracking().error());
+        assertEquals(List.of(vehicle), overview.status().rows());
+        assertEquals(List.of(usage), overview.subscription().rows());
+    }
+
+    @Test
+    void testGetOverview_SlowSectionTimesOutAlone() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        when(jdbcTemplate.query(contains("sp_read_fleet_status"), anyMap(), any(RowMapper.class)))
+                .thenReturn(List.of(vehicle));
+        when(jdbcTemplate.query(contains("sp_read_order_tracking"), anyMap(), any(RowMapper.class)))
+                .thenReturn(List.of());
+        when(jdbcTemplate.query(contains("sp_read_subscription_usage"), anyMap(), any(RowMapper.class)))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return List.of(usage);
+                });
+
+        // When
+        FleetOverview overview;
+        try {
+            overview = fleetService.getOverview(1L);
+        } finally {
+            release.countDown();
+        }
+
+        // Then
+        assertEquals(FleetOverview.State.TIMED_OUT, overview.subscription().state());
+        assertNull(overview.subscription().rows());
+        assertEquals("subscription took longer than 500 ms", overview.subscription().error());
+        assertTrue(overview.subscription().elapsedMillis() >= 500);
+        assertEquals(FleetOverview.State.OK, overview.status().state());
+        assertEquals(FleetOverview.State.OK, overview.tracking().state());
+    }
+
+    @Test
+    void testGetOverview_QueriesRunWithTheOverviewTimeout() throws Exception {
+        // Given
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(mock(ResultSet.class));
+        FleetService timed = new FleetService(new NamedParameterJdbcTemplate(dataSource), 30, 100, 60, 100, 2500);
+
+        // When
+        FleetOverview overview;
+        try {
+            overview = timed.getOverview(1L);
+        } finally {
+            timed.destroy();
+        }
+
+        // Then the driver cancels a query still running after 3 s, rounded up from 2500 ms
+        assertEquals(FleetOverview.State.OK, overview.status().state());
+        verify(statement, times(3)).setQueryTimeout(3);
+    }
+}
@@ -1,19 +1,34 @@
 package com.fleetmaster.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fleetmaster.config.CsvRows;
 import com.fleetmaster.dtos.AddProgressDto;
 import com.fleetmaster.dtos.CreateOrderDto;
+import com.fleetmaster.dtos.CursorPage;
+import com.fleetmaster.dtos.ImportReport;
+import com.fleetmaster.dtos.OrderFilterDto;
+import com.fleetmaster.dtos.OrderRow;
+import com.fleetmaster.dtos.OrderStatsRow;
+import com.fleetmaster.dtos.ProgressRow;
 import com.fleetmaster.exceptions.BusinessException;
+import com.fleetmaster.exceptions.ServiceUnavailableException;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
-import org.hibernate.query.NativeQuery;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -30,11 +45,17 @@ class OrderServiceTest {
     @Mock
     private ObjectMapper objectMapper;
 
+    @Mock
+    private ProgressWriteBuffer progressWriteBuffer;
+
+    @Mock
+    private VehiclePositionIndex vehiclePositionIndex;
+
     @Mock
     private Query query;
 
     @Mock
-    private NativeQuery nativeQuery;
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
     private OrderService orderService;
 
@@ -42,7 +63,7 @@ class OrderServiceTest {
 
     @BeforeEach
     void setUp() {
-        orderService = new OrderService(objectMapper);
+        orderService = new OrderService(jdbcTemplate, objectMapper, progressWriteBuffer, vehiclePositionIndex);
         // Manually inject the mocked EntityManager using reflection
         try {
             java.lang.reflect.Field field = OrderService.class.getDeclaredField("entityManager");
@@ -70,26 +91,12 @@ class OrderServiceTest {
         Long companyId = 1L;
         Long expectedOrderId = 100L;
 
-        // Mock vehicle ownership check
-        Query vehicleCheckQuery = mock(Query.class);
-        when(entityManager.createNativeQuery(contains("company_vehicles")))
-                .thenReturn(vehicleCheckQuery);
-        when(vehicleCheckQuery.setParameter(anyString(), any())).thenReturn(vehicleCheckQuery);
-        when(vehicleCheckQuery.getResultList()).thenReturn(Collections.singletonList(1));
-
-        // Mock driver ownership check
-        Query driverCheckQuery = mock(Query.class);
-        when(entityManager.createNativeQuery(contains("company_account")))
-                .thenReturn(driverCheckQuery);
-        when(driverCheckQuery.setParameter(anyString(), any())).thenReturn(driverCheckQuery);
-        when(driverCheckQuery.getResultList()).thenReturn(Collections.singletonList(1));
-
-        // Mock stored procedure call
-        Query spQuery = mock(Query.class);
-        when(entityManager.createNativeQuery(contains("sp_create_order")))
-                .thenReturn(spQuery);
-        when(spQuery.setParameter(anyString(), any())).thenReturn(spQuery);
-        when(spQuery.getSingleResult()).thenReturn(expectedOrderId);
+        // Ownership checks and insert run as one statement
+        Query createQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("INSERT INTO orders")))
+                .thenReturn(createQuery);
+        when(createQuery.setParameter(anyString(), any())).thenReturn(createQuery);
+        when(createQuery.getSingleResult()).thenReturn(new Object[] {true, true, expectedOrderId});
 
         // When
         Long orderId = orderService.createOrder(companyId, createOrderDto);
@@ -97,7 +104,8 @@ class OrderServiceTest {
         // Then
         assertNotNull(orderId);
         assertEquals(expectedOrderId, orderId);
-        verify(spQuery).getSingleResult();
+        verify(entityManager, times(1)).createNativeQuery(anyString());
+        verify(createQuery).setParameter("cid", companyId);
     }
 
     @Test
@@ -105,11 +113,11 @@ class OrderServiceTest {
         // Given
         Long companyId = 1L;
 
-        Query vehicleCheckQuery = mock(Query.class);
-        when(entityManager.createNativeQuery(contains("company_vehicles")))
-                .thenReturn(vehicleCheckQuery);
-        when(vehicleCheckQuery.setParameter(anyString(), any())).thenReturn(vehicleCheckQuery);
-        when(vehicleCheckQuery.getResultList()).thenReturn(Collections.emptyList());
+        Query createQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("INSERT INTO orders")))
+                .thenReturn(createQuery);
+        when(createQuery.setParameter(anyString(), any())).thenReturn(createQuery);
+        when(createQuery.getSingleResult()).thenReturn(new Object[] {false, true, null});
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -124,19 +132,11 @@ class OrderServiceTest {
         // Given
         Long companyId = 1L;
 
-        // Mock vehicle ownership check (pass)
-        Query vehicleCheckQuery = mock(Query.class);
-        when(entityManager.createNativeQuery(contains("company_vehicles")))
-                .thenReturn(vehicleCheckQuery);
-        when(vehicleCheckQuery.setParameter(anyString(), any())).thenReturn(vehicleCheckQuery);
-        when(vehicleCheckQuery.getResultList()).thenReturn(Collections.singletonList(1));
-
-        // Mock driver ownership check (fail)
-        Query driverCheckQuery = mock(Query.class);
-        when(entityManager.createNativeQuery(contains("company_account")))
-                .thenReturn(driverCheckQuery);
-        when(driverCheckQuery.setParameter(anyString(), any())).thenReturn(driverCheckQuery);
-        when(driverCheckQuery.getResultList()).thenReturn(Collections.emptyList());
+        Query createQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("INSERT INTO orders")))
+                .thenReturn(createQuery);
+        when(createQuery.setParameter(anyString(), any())).thenReturn(createQuery);
+        when(createQuery.getSingleResult()).thenReturn(new Object[] {true, false, null});
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -150,26 +150,72 @@ class OrderServiceTest {
     void testGetAllOrders_Success() {
         // Given
         Long companyId = 1L;
-        List<Map<String, Object>> expectedOrders = new ArrayList<>();
-        Map<String, Object> order1 = new HashMap<>();
-        order1.put("id", 100L);
-        order1.put("status", "IN_PROGRESS");
-        expectedOrders.add(order1);
-
-        when(entityManager.createNativeQuery(contains("SELECT o.* FROM orders")))
-                .thenReturn(query);
-        when(query.setParameter(anyString(), any())).thenReturn(query);
-        when(query.unwrap(NativeQuery.class)).thenReturn(nativeQuery);
-        when(nativeQuery.setResultTransformer(any())).thenReturn(nativeQuery);
-        when(nativeQuery.getResultList()).thenReturn(expectedOrders);
+        when(jdbcTemplate.query(contains("FROM orders o"), anyMap(), eq(RowMappers.ORDER)))
+                .thenReturn(List.of(order(100L)));
+
+        // When
+        CursorPage<OrderRow> page = orderService.getOrders(companyId, new OrderFilterDto(), null, 10);
+
+        // Then
+        assertNotNull(page.getItems());
+        assertEquals(1, page.getItems().size());
+        assertEquals(100L, page.getItems().get(0).id());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testGetOrders_FullPageReturnsCursorAndResumesAfterLastId() {
+        // Given
+        when(jdbcTemplate.query(anyString(), anyMap(), eq(RowMappers.ORDER)))
+                .thenReturn(List.of(order(1L), order(2L), order(3L)));
+
+        // When
+        CursorPage<OrderRow> first = orderService.getOrders(1L, null, null, 2);
+        orderService.getOrders(1L, null, first.getNextCursor(), 2);
+
+        // Then
+        assertEquals(2, first.getItems().size());
+        assertNotNull(first.getNextCursor());
+        verify(jdbcTemplate).query(contains("AND o.id > :afterId"),
+                argThat((Map<String, ?> parameters) -> Long.valueOf(2L).equals(parameters.get("afterId"))
+                        && Integer.valueOf(3).equals(parameters.get("limit"))),
+                eq(RowMappers.ORDER));
+    }
+
+    @Test
+    void testGetOrders_FiltersBecomeIndexedPredicates() {
+        // Given
+        OrderFilterDto filter = new OrderFilterDto();
+        filter.setStatus("IN_TRANSIT");
+        filter.setVehicleId(7L);
+        filter.setDepartureFrom(LocalDateTime.of(2024, 1, 1, 0, 0));
+        when(jdbcTemplate.query(anyString(), anyMap(), eq(RowMappers.ORDER))).thenReturn(List.of());
 
         // When
-        List<Map<String, Object>> orders = orderService.getAllOrders(companyId);
+        orderService.getOrders(1L, filter, null, 5000);
 
         // Then
-        assertNotNull(orders);
-        assertEquals(1, orders.size());
-        assertEquals(100L, orders.get(0).get("id"));
+        verify(jdbcTemplate).query(
+                argThat((String sql) -> sql.contains("o.status = CAST(:status AS order_status)")
+                        && sql.contains("o.vehicle_id = :vehicleId")
+                        && sql.contains("o.departure_time >= :departureFrom")
+                        && !sql.contains("o.driver_id =")),
+                argThat((Map<String, ?> parameters) -> Long.valueOf(7L).equals(parameters.get("vehicleId"))
+                        && Integer.valueOf(OrderService.MAX_PAGE_SIZE + 1).equals(parameters.get("limit"))),
+                eq(RowMappers.ORDER));
+    }
+
+    @Test
+    void testGetOrders_InvalidStatusOrCursor() {
+        OrderFilterDto filter = new OrderFilterDto();
+        filter.setStatus("LOST");
+
+        assertThrows(BusinessException.class, () -> orderService.getOrders(1L, filter, null, 10));
+        assertThrows(BusinessException.class, () -> orderService.getOrders(1L, null, "not-a-cursor", 10));
+        // A progress cursor cannot be replayed on the order listing
+        String progressCursor = KeysetCursor.encodeTimeAndId("progress", LocalDateTime.now(), 1L);
+        assertThrows(BusinessException.class, () -> orderService.getOrders(1L, null, progressCursor, 10));
+        verifyNoInteractions(jdbcTemplate);
     }
 
     @Test
@@ -177,25 +223,16 @@ class OrderServiceTest {
         // Given
         Long companyId = 1L;
         Long orderId = 100L;
-        List<Map<String, Object>> results = new ArrayList<>();
-        Map<String, Object> order = new HashMap<>();
-        order.put("id", orderId);
-        order.put("status", "IN_PROGRESS");
-        results.add(order);
-
-        when(entityManager.createNativeQuery(contains("SELECT o.* FROM orders")))
-                .thenReturn(query);
-        when(query.setParameter(anyString(), any())).thenReturn(query);
-        when(query.unwrap(NativeQuery.class)).thenReturn(nativeQuery);
-        when(nativeQuery.setResultTransformer(any())).thenReturn(nativeQuery);
-        when(nativeQuery.getResultList()).thenReturn(results);
+        when(jdbcTemplate.query(contains("FROM orders o"), anyMap(), eq(RowMappers.ORDER)))
+                .thenReturn(List.of(order(orderId)));
 
         // When
-        Map<String, Object> result = orderService.getOrderById(companyId, orderId);
+        OrderRow result = orderService.getOrderById(companyId, orderId);
 
         // Then
         assertNotNull(result);
-        assertEquals(orderId, result.get("id"));
+        assertEquals(orderId, result.id());
+        assertEquals("IN_TRANSIT", result.status());
     }
 
     @Test
@@ -204,12 +241,8 @@ class OrderServiceTest {
         Long companyId = 1L;
         Long orderId = 999L;
 
-        when(entityManager.createNativeQuery(contains("SELECT o.* FROM orders")))
-                .thenReturn(query);
-        when(query.setParameter(anyString(), any())).thenReturn(query);
-        when(query.unwrap(NativeQuery.class)).thenReturn(nativeQuery);
-        when(nativeQuery.setResultTransformer(any())).thenReturn(nativeQuery);
-        when(nativeQuery.getResultList()).thenReturn(Collections.emptyList());
+        when(jdbcTemplate.query(contains("FROM orders o"), anyMap(), eq(RowMappers.ORDER)))
+                .thenReturn(Collections.emptyList());
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -224,26 +257,10 @@ class OrderServiceTest {
         // Given
         Long companyId = 1L;
         Long orderId = 100L;
-        String newStatus = "COMPLETED";
+        String newStatus = "DELIVERED";
 
-        // Mock getOrderById (ownership check)
-        List<Map<String, Object>> results = new ArrayList<>();
-        Map<String, Object> order = new HashMap<>();
-        order.put("id", orderId);
-        results.add(order);
-
-        Query selectQuery = mock(Query.class);
         Query updateQuery = mock(Query.class);
-        NativeQuery selectNativeQuery = mock(NativeQuery.class);
-
-        when(entityManager.createNativeQuery(contains("SELECT o.* FROM orders")))
-                .thenReturn(selectQuery);
-        when(selectQuery.setParameter(anyString(), any())).thenReturn(selectQuery);
-        when(selectQuery.unwrap(NativeQuery.class)).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.setResultTransformer(any())).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.getResultList()).thenReturn(results);
-
-        when(entityManager.createNativeQuery(contains("UPDATE orders SET status")))
+        when(entityManager.createNativeQuery(contains("UPDATE orders o SET status")))
                 .thenReturn(updateQuery);
         when(updateQuery.setParameter(anyString(), any())).thenReturn(updateQuery);
         when(updateQuery.executeUpdate()).thenReturn(1);
@@ -252,7 +269,25 @@ class OrderServiceTest {
         assertDoesNotThrow(() -> orderService.updateOrderStatus(companyId, orderId, newStatus));
 
         // Then
+        verify(updateQuery).setParameter("cid", companyId);
         verify(updateQuery).executeUpdate();
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testUpdateOrderStatus_NotOwned() {
+        // Given
+        Query updateQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("UPDATE orders o SET status")))
+                .thenReturn(updateQuery);
+        when(updateQuery.setParameter(anyString(), any())).thenReturn(updateQuery);
+        when(updateQuery.executeUpdate()).thenReturn(0);
+
+        // When & Then
+        BusinessException exception = assertThrows(BusinessException.class,
+                () -> orderService.updateOrderStatus(1L, 999L, "DELIVERED"));
+
+        assertEquals("Order not found or does not belong to your company", exception.getMessage());
     }
 
     @Test
@@ -261,40 +296,37 @@ class OrderServiceTest {
         Long companyId = 1L;
         Long orderId = 100L;
 
-        // Mock getOrderById (ownership check)
-        List<Map<String, Object>> results = new ArrayList<>();
-        Map<String, Object> order = new HashMap<>();
-        order.put("id", orderId);
-        results.add(order);
-
-        Query selectQuery = mock(Query.class);
-        Query deleteProgressQuery = mock(Query.class);
-        Query deleteOrderQuery = mock(Query.class);
-        NativeQuery selectNativeQuery = mock(NativeQuery.class);
-
-        when(entityManager.createNativeQuery(contains("SELECT o.* FROM orders")))
-                .thenReturn(selectQuery);
-        when(selectQuery.setParameter(anyString(), any())).thenReturn(selectQuery);
-        when(selectQuery.unwrap(NativeQuery.class)).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.setResultTransformer(any())).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.getResultList()).thenReturn(results);
-
-        when(entityManager.createNativeQuery(contains("DELETE FROM progress")))
-                .thenReturn(deleteProgressQuery);
-        when(deleteProgressQuery.setParameter(anyString(), any())).thenReturn(deleteProgressQuery);
-        when(deleteProgressQuery.executeUpdate()).thenReturn(1);
-
+        // Progress and order are removed by the same statement
+        Query deleteQuery = mock(Query.class);
         when(entityManager.createNativeQuery(contains("DELETE FROM orders")))
-                .thenReturn(deleteOrderQuery);
-        when(deleteOrderQuery.setParameter(anyString(), any())).thenReturn(deleteOrderQuery);
-        when(deleteOrderQuery.executeUpdate()).thenReturn(1);
+                .thenReturn(deleteQuery);
+        when(deleteQuery.setParameter(anyString(), any())).thenReturn(deleteQuery);
+        when(deleteQuery.executeUpdate()).thenReturn(1);
 
         // When
         assertDoesNotThrow(() -> orderService.deleteOrder(companyId, orderId));
 
         // Then
-        verify(deleteProgressQuery).executeUpdate();
-        verify(deleteOrderQuery).executeUpdate();
+        verify(entityManager).createNativeQuery(contains("DELETE FROM progress"));
+        verify(deleteQuery).executeUpdate();
+        verify(progressWriteBuffer).forgetOrder(orderId);
+    }
+
+    @Test
+    void testDeleteOrder_NotOwned() {
+        // Given
+        Query deleteQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("DELETE FROM orders")))
+                .thenReturn(deleteQuery);
+        when(deleteQuery.setParameter(anyString(), any())).thenReturn(deleteQuery);
+        when(deleteQuery.executeUpdate()).thenReturn(0);
+
+        // When & Then
+        BusinessException exception = assertThrows(BusinessException.class,
+                () -> orderService.deleteOrder(1L, 999L));
+
+        assertEquals("Order not found or does not belong to your company", exception.getMessage());
+        verify(progressWriteBuffer, never()).forgetOrder(any());
     }
 
     @Test
@@ -336,6 +368,7 @@ class OrderServiceTest {
         assertNotNull(progressId);
         assertEquals(expectedProgressId, progressId);
         verify(spQuery).getSingleResult();
+        verify(vehiclePositionIndex).updatePosition(companyId, 1L, 40.7128, -74.0060);
     }
 
     @Test
@@ -345,44 +378,301 @@ class OrderServiceTest {
         Long orderId = 100L;
 
         // Mock getOrderById (ownership check)
-        List<Map<String, Object>> orderResults = new ArrayList<>();
-        Map<String, Object> order = new HashMap<>();
-        order.put("id", orderId);
-        orderResults.add(order);
+        when(jdbcTemplate.query(contains("FROM orders o"), anyMap(), eq(RowMappers.ORDER)))
+                .thenReturn(List.of(order(orderId)));
 
-        Query selectOrderQuery = mock(Query.class);
-        NativeQuery selectOrderNativeQuery = mock(NativeQuery.class);
+        // Mock progress query
+        ProgressRow progress1 = new ProgressRow(1L, orderId, "(52.37,4.89)", LocalDateTime.now(), "CHECKPOINT", null);
+        when(jdbcTemplate.query(contains("FROM progress"), anyMap(), eq(RowMappers.PROGRESS)))
+                .thenReturn(List.of(progress1));
 
-        when(entityManager.createNativeQuery(contains("SELECT o.* FROM orders")))
-                .thenReturn(selectOrderQuery);
-        when(selectOrderQuery.setParameter(anyString(), any())).thenReturn(selectOrderQuery);
-        when(selectOrderQuery.unwrap(NativeQuery.class)).thenReturn(selectOrderNativeQuery);
-        when(selectOrderNativeQuery.setResultTransformer(any())).thenReturn(selectOrderNativeQuery);
-        when(selectOrderNativeQuery.getResultList()).thenReturn(orderResults);
+        // When
+        CursorPage<ProgressRow> page = orderService.getOrderProgress(companyId, orderId, null, 10);
 
-        // Mock progress query
-        List<Map<String, Object>> progressResults = new ArrayList<>();
-        Map<String, Object> progress1 = new HashMap<>();
-        progress1.put("id", 1L);
-        progress1.put("type", "CHECKPOINT");
-        progressResults.add(progress1);
-
-        Query progressQuery = mock(Query.class);
-        NativeQuery progressNativeQuery = mock(NativeQuery.class);
-
-        when(entityManager.createNativeQuery(contains("SELECT * FROM progress")))
-                .thenReturn(progressQuery);
-        when(progressQuery.setParameter(anyString(), any())).thenReturn(progressQuery);
-        when(progressQuery.unwrap(NativeQuery.class)).thenReturn(progressNativeQuery);
-        when(progressNativeQuery.setResultTransformer(any())).thenReturn(progressNativeQuery);
-        when(progressNativeQuery.getResultList()).thenReturn(progressResults);
+        // Then
+        assertNotNull(page.getItems());
+        assertEquals(1, page.getItems().size());
+        assertEquals("CHECKPOINT", page.getItems().get(0).type());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testGetOrderProgress_CursorCarriesTimeAndId() {
+        // Given
+        when(jdbcTemplate.query(contains("FROM orders o"), anyMap(), eq(RowMappers.ORDER)))
+                .thenReturn(List.of(order(100L)));
+
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 12, 30);
+        when(jdbcTemplate.query(contains("FROM progress"), anyMap(), eq(RowMappers.PROGRESS)))
+                .thenReturn(List.of(
+                        new ProgressRow(10L, 100L, null, time, "STOP", null),
+                        new ProgressRow(11L, 100L, null, time.plusMinutes(1), "STOP", null)));
+
+        // When
+        CursorPage<ProgressRow> first = orderService.getOrderProgress(1L, 100L, null, 1);
+        orderService.getOrderProgress(1L, 100L, first.getNextCursor(), 1);
+
+        // Then
+        assertEquals(1, first.getItems().size());
+        verify(jdbcTemplate).query(contains("(time, id) > (:afterTime, :afterId)"),
+                argThat((Map<String, ?> parameters) -> time.equals(parameters.get("afterTime"))
+                        && Long.valueOf(10L).equals(parameters.get("afterId"))),
+                eq(RowMappers.PROGRESS));
+    }
+
+    @Test
+    void testGetSimplifiedOrderProgress_ReadsOnlyKeptRows() throws Exception {
+        // Given
+        when(jdbcTemplate.query(contains("FROM orders o"), anyMap(), eq(RowMappers.ORDER)))
+                .thenReturn(List.of(order(100L)));
+        // A straight line of pings with a departure halfway
+        doAnswer(invocation -> {
+            org.springframework.jdbc.core.RowCallbackHandler handler = invocation.getArgument(2);
+            for (int i = 0; i < 10; i++) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn((long) i);
+                when(rs.getDouble(2)).thenReturn(52.0 + i * 0.001);
+                when(rs.getDouble(3)).thenReturn(4.0);
+                when(rs.getBoolean(4)).thenReturn(i == 5);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(contains("current_pos[0]"), anyMap(),
+                any(org.springframework.jdbc.core.RowCallbackHandler.class));
+        when(jdbcTemplate.query(contains("id = ANY(:ids)"), anyMap(), eq(RowMappers.PROGRESS)))
+                .thenReturn(List.of());
+
+        // When
+        orderService.getSimplifiedOrderProgress(1L, 100L, 5.0, null);
+
+        // Then
+        verify(jdbcTemplate).query(contains("id = ANY(:ids)"),
+                argThat((Map<String, ?> parameters) -> Arrays.equals(new long[] {0, 5, 9}, (long[]) parameters.get("ids"))),
+                eq(RowMappers.PROGRESS));
+    }
+
+    @Test
+    void testGetSimplifiedOrderProgress_InvalidParameters() {
+        // When & Then
+        assertThrows(BusinessException.class, () -> orderService.getSimplifiedOrderProgress(1L, 100L, -1.0, null));
+        assertThrows(BusinessException.class, () -> orderService.getSimplifiedOrderProgress(1L, 100L, null, 1));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private OrderRow order(Long id) {
+        return new OrderRow(id, "(40.71,-74.01)", "(34.05,-118.24)", "NORMAL",
+                LocalDateTime.of(2024, 5, 1, 8, 0), LocalDateTime.of(2024, 5, 1, 13, 0), "IN_TRANSIT", 1L, 1L);
+    }
+
+    private AddProgressDto progress(Long orderId, String type) {
+        AddProgressDto dto = new AddProgressDto();
+        dto.setOrderId(orderId);
+        dto.setLat(52.37);
+        dto.setLon(4.89);
+        dto.setType(type);
+        return dto;
+    }
+
+    @Test
+    void testAddProgressBatch_SingleOwnershipQueryAndJdbcBatch() throws Exception {
+        // Given
+        Long companyId = 1L;
+        List<AddProgressDto> items = List.of(
+                progress(100L, "DEPARTURE"),
+                progress(100L, "FUEL"),
+                progress(200L, "ARRIVAL"),
+                progress(300L, "STOP"),
+                progress(100L, "TELEPORT"));
+
+        Query ownershipQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("SELECT o.id, o.vehicle_id FROM orders o JOIN company_vehicles")))
+                .thenReturn(ownershipQuery);
+        when(ownershipQuery.setParameter(anyString(), any())).thenReturn(ownershipQuery);
+        when(ownershipQuery.getResultList()).thenReturn(List.of(new Object[]{100L, 7L}, new Object[]{200L, 8L}));
+
+        Query statusQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("UPDATE orders SET status"))).thenReturn(statusQuery);
+        when(statusQuery.setParameter(anyString(), any())).thenReturn(statusQuery);
+
+        Session session = mock(Session.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet keys = mock(ResultSet.class);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).thenAnswer(invocation ->
+                ((ReturningWork<?>) invocation.getArgument(0)).execute(connection));
+        when(connection.prepareStatement(anyString(), any(String[].class))).thenReturn(statement);
+        when(statement.getGeneratedKeys()).thenReturn(keys);
+        when(keys.next()).thenReturn(true, true, true, false);
+        when(keys.getLong(1)).thenReturn(11L, 12L, 13L);
+
+        // When
+        List<Map<String, Object>> results = orderService.addProgressBatch(companyId, items);
+
+        // Then
+        verify(ownershipQuery, times(1)).getResultList();
+        verify(statement, times(3)).addBatch();
+        verify(statement, times(1)).executeBatch();
+        verify(objectMapper, never()).writeValueAsString(any());
+
+        assertEquals(5, results.size());
+        assertEquals(11L, results.get(0).get("progressId"));
+        assertEquals(12L, results.get(1).get("progressId"));
+        assertEquals(13L, results.get(2).get("progressId"));
+        assertEquals("REJECTED", results.get(3).get("status"));
+        assertEquals("Order does not belong to your company", results.get(3).get("error"));
+        assertEquals("Invalid progress type: TELEPORT", results.get(4).get("error"));
+
+        // One UPDATE per target status, not per item
+        verify(statusQuery).setParameter("status", "IN_TRANSIT");
+        verify(statusQuery).setParameter("status", "DELIVERED");
+        verify(statusQuery, times(2)).executeUpdate();
+
+        // One position per vehicle of an accepted order
+        verify(vehiclePositionIndex).updatePosition(companyId, 7L, 52.37, 4.89);
+        verify(vehiclePositionIndex).updatePosition(companyId, 8L, 52.37, 4.89);
+        verifyNoMoreInteractions(vehiclePositionIndex);
+    }
+
+    @Test
+    void testAddProgressBatch_TooLarge() {
+        // Given
+        List<AddProgressDto> items = Collections.nCopies(OrderService.MAX_PROGRESS_BATCH + 1, progress(100L, "STOP"));
+
+        // When & Then
+        assertThrows(BusinessException.class, () -> orderService.addProgressBatch(1L, items));
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    void testAddProgressBatch_NothingValidSkipsInsert() {
+        // Given
+        Query ownershipQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("SELECT o.id, o.vehicle_id FROM orders o JOIN company_vehicles")))
+                .thenReturn(ownershipQuery);
+        when(ownershipQuery.setParameter(anyString(), any())).thenReturn(ownershipQuery);
+        when(ownershipQuery.getResultList()).thenReturn(List.of());
+
+        // When
+        List<Map<String, Object>> results = orderService.addProgressBatch(1L, List.of(progress(100L, "STOP")));
+
+        // Then
+        assertEquals("REJECTED", results.get(0).get("status"));
+        verify(entityManager, never()).unwrap(Session.class);
+    }
+
+    @Test
+    void testQueueProgress_ChecksOwnershipOnceThenQueues() {
+        // Given
+        AddProgressDto ping = progress(100L, "STOP");
+        when(progressWriteBuffer.accepts(ping)).thenReturn(true);
+        when(progressWriteBuffer.knownVehicle(1L, 100L)).thenReturn(null, 7L);
+        when(progressWriteBuffer.offer(eq(100L), anyString(), eq("STOP"))).thenReturn(true);
+
+        Query orderCheckQuery = mock(Query.class);
+        when(entityManager.createNativeQuery(contains("orders o JOIN company_vehicles"))).thenReturn(orderCheckQuery);
+        when(orderCheckQuery.setParameter(anyString(), any())).thenReturn(orderCheckQuery);
+        when(orderCheckQuery.getResultList()).thenReturn(Collections.singletonList(1));
+
+        // When
+        assertTrue(orderService.queueProgress(1L, ping));
+        assertTrue(orderService.queueProgress(1L, ping));
+
+        // Then
+        verify(orderCheckQuery, times(1)).getResultList();
+        verify(progressWriteBuffer).rememberOrder(1L, 100L, 1L);
+        verify(progressWriteBuffer, times(2)).offer(eq(100L), anyString(), eq("STOP"));
+        verify(vehiclePositionIndex).updatePosition(1L, 1L, 52.37, 4.89);
+        verify(vehiclePositionIndex).updatePosition(1L, 7L, 52.37, 4.89);
+    }
+
+    @Test
+    void testQueueProgress_BufferFull() {
+        // Given
+        AddProgressDto ping = progress(100L, "STOP");
+        when(progressWriteBuffer.accepts(ping)).thenReturn(true);
+        when(progressWriteBuffer.knownVehicle(1L, 100L)).thenReturn(7L);
+        when(progressWriteBuffer.offer(eq(100L), anyString(), eq("STOP"))).thenReturn(false);
+
+        // When & Then
+        assertThrows(ServiceUnavailableException.class, () -> orderService.queueProgress(1L, ping));
+    }
+
+    @Test
+    void testQueueProgress_NotEligible() {
+        // Given
+        AddProgressDto departure = progress(100L, "DEPARTURE");
+        when(progressWriteBuffer.accepts(departure)).thenReturn(false);
+
+        // When & Then
+        assertFalse(orderService.queueProgress(1L, departure));
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    void testImportOrders_InsertsValidRowsAndReportsTheRest() throws Exception {
+        // Given
+        String arrival = LocalDateTime.now().plusDays(2).withNano(0).toString();
+        CsvRows rows = new CsvRows(new StringReader(
+                "vehicle_id,driver_id,pick_up_lat,pick_up_lon,delivery_lat,delivery_lon,load_type,departure_time,arrival_time,notes\n" +
+                "1,10,52.37,4.89,51.92,4.48,NORMAL,2024-05-01 08:00," + arrival + ",first\n" +
+                "1,10,north,4.89,51.92,4.48,NORMAL,2024-05-01 08:00," + arrival + ",\n" +
+                "2,10,52.37,4.89,51.92,4.48,NORMAL,2024-05-01 08:00," + arrival + ",\n" +
+                "1,10,52.37,4.89,51.92,4.48,NORMAL,2024-05-01 08:00,2020-01-01T00:00,\n" +
+                "1,10,52.37\n"));
+
+        when(jdbcTemplate.queryForList(contains("FROM company_vehicles"), anyMap(), eq(Long.class))).thenReturn(List.of(1L));
+        when(jdbcTemplate.queryForList(contains("FROM company_account"), anyMap(), eq(Long.class))).thenReturn(List.of(10L));
+
+        Session session = mock(Session.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        doAnswer(invocation -> {
+            ((Work) invocation.getArgument(0)).execute(connection);
+            return null;
+        }).when(session).doWork(any());
+        when(connection.prepareStatement(contains("INSERT INTO orders"))).thenReturn(statement);
+
+        // When
+        ImportReport report = orderService.importOrders(1L, rows);
+
+        // Then
+        assertEquals(1, report.created());
+        assertEquals(4, report.rejected());
+        assertEquals(List.of(
+                new ImportReport.RowError(3, "Column pickUpLat must be a number, got 'north'"),
+                new ImportReport.RowError(4, "Vehicle does not belong to your company"),
+                new ImportReport.RowError(5, "Arrival time must be in the future"),
+                new ImportReport.RowError(6, "Expected 10 columns but found 3")),
+                report.errors());
+        verify(statement).setString(1, "(52.37,4.89)");
+        verify(statement).setString(3, "NORMAL");
+        verify(statement, times(1)).addBatch();
+        verify(statement, times(1)).executeBatch();
+    }
+
+    @Test
+    void testImportOrders_MissingColumns() throws Exception {
+        // Given
+        CsvRows rows = new CsvRows(new StringReader("vehicleId,driverId\n1,10\n"));
+
+        // When & Then
+        BusinessException error = assertThrows(BusinessException.class, () -> orderService.importOrders(1L, rows));
+        assertTrue(error.getMessage().startsWith("Missing CSV columns: pickUpLat, pickUpLon"));
+        verifyNoInteractions(jdbcTemplate, entityManager);
+    }
+
+    @Test
+    void testGetOrderStats_CompanyWithoutOrders() {
+        // Given
+        when(jdbcTemplate.query(contains("FROM order_stats"), anyMap(), eq(RowMappers.ORDER_STATS))).thenReturn(List.of());
 
         // When
-        List<Map<String, Object>> progress = orderService.getOrderProgress(companyId, orderId);
+        OrderStatsRow stats = orderService.getOrderStats(1L);
 
         // Then
-        assertNotNull(progress);
-        assertEquals(1, progress.size());
-        assertEquals("CHECKPOINT", progress.get(0).get("type"));
+        assertEquals(OrderStatsRow.EMPTY, stats);
+        verifyNoInteractions(entityManager);
     }
 }
@@ -0,0 +1,65 @@
+package com.fleetmaster.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProgressPartitionMaintainerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testRun_CreatesPartitionsAndArchives() {
+        // Given
+        ProgressPartitionMaintainer maintainer = new ProgressPartitionMaintainer(jdbcTemplate, 3, true, 90, 15, 1000);
+        when(jdbcTemplate.queryForObject(contains("sp_ensure_progress_partitions"), eq(Integer.class), eq(3)))
+                .thenReturn(1);
+        when(jdbcTemplate.queryForObject(contains("sp_archive_delivered_progress"), eq(Long.class),
+                eq(90), eq(15), eq(1000))).thenReturn(250L);
+
+        // When
+        maintainer.run();
+
+        // Then
+        verify(jdbcTemplate).queryForObject(contains("sp_ensure_progress_partitions"), eq(Integer.class), eq(3));
+        verify(jdbcTemplate).queryForObject(contains("sp_archive_delivered_progress"), eq(Long.class),
+                eq(90), eq(15), eq(1000));
+    }
+
+    @Test
+    void testRun_RetentionDisabled_OnlyCreatesPartitions() {
+        // Given
+        ProgressPartitionMaintainer maintainer = new ProgressPartitionMaintainer(jdbcTemplate, 3, false, 90, 15, 1000);
+
+        // When
+        maintainer.run();
+
+        // Then
+        verify(jdbcTemplate).queryForObject(contains("sp_ensure_progress_partitions"), eq(Integer.class), eq(3));
+        verify(jdbcTemplate, never()).queryForObject(contains("sp_archive_delivered_progress"), eq(Long.class),
+                any(), any(), any());
+    }
+
+    @Test
+    void testRun_PartitionFailureStillArchives() {
+        // Given
+        ProgressPartitionMaintainer maintainer = new ProgressPartitionMaintainer(jdbcTemplate, 3, true, 90, 15, 1000);
+        when(jdbcTemplate.queryForObject(contains("sp_ensure_progress_partitions"), eq(Integer.class), eq(3)))
+                .thenThrow(new DataAccessResourceFailureException("Connection refused"));
+
+        // When
+        maintainer.run();
+
+        // Then
+        verify(jdbcTemplate).queryForObject(contains("sp_archive_delivered_progress"), eq(Long.class),
+                eq(90), eq(15), eq(1000));
+    }
+}
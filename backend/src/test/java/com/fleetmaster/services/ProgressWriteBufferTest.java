@@ -0,0 +1,190 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.AddProgressDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProgressWriteBufferTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ProgressWriteBuffer buffer;
+
+    private ProgressWriteBuffer buffer(int capacity, int flushRows, boolean retry) {
+        // Long interval so only explicit or size-triggered flushes run
+        buffer = new ProgressWriteBuffer(jdbcTemplate, true, 2, capacity, 60000, flushRows, retry);
+        return buffer;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reset(jdbcTemplate);
+        if (buffer != null) {
+            buffer.destroy();
+        }
+    }
+
+    private AddProgressDto ping(String type) {
+        AddProgressDto dto = new AddProgressDto();
+        dto.setOrderId(100L);
+        dto.setLat(52.37);
+        dto.setLon(4.89);
+        dto.setType(type);
+        return dto;
+    }
+
+    @Test
+    void testAccepts_OnlyPlainPositionPings() {
+        // Given
+        ProgressWriteBuffer buffer = buffer(10, 100, true);
+        AddProgressDto withDescription = ping("STOP");
+        withDescription.setDescription(Map.of("note", "gate 4"));
+
+        // Then
+        assertTrue(buffer.accepts(ping("STOP")));
+        assertTrue(buffer.accepts(ping("STOPOVER")));
+        assertFalse(buffer.accepts(ping("DEPARTURE")));
+        assertFalse(buffer.accepts(withDescription));
+    }
+
+    @Test
+    void testAccepts_DisabledMode() throws Exception {
+        // Given
+        ProgressWriteBuffer disabled = new ProgressWriteBuffer(jdbcTemplate, false, 2, 10, 60000, 100, true);
+
+        // Then
+        assertFalse(disabled.accepts(ping("STOP")));
+        disabled.destroy();
+    }
+
+    // Runs ConnectionCallbacks against a mocked connection and collects the order id array
+    // of each insert
+    @SuppressWarnings("unchecked")
+    private List<Object[]> captureInserts() throws Exception {
+        List<Object[]> inserts = Collections.synchronizedList(new ArrayList<>());
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.createArrayOf(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            Array array = mock(Array.class);
+            Object[] values = invocation.getArgument(1);
+            lenient().when(array.getArray()).thenReturn(values);
+            return array;
+        });
+        doAnswer(invocation -> {
+            Array array = invocation.getArgument(1);
+            if (invocation.<Integer>getArgument(0) == 1) {
+                inserts.add((Object[]) array.getArray());
+            }
+            return null;
+        }).when(statement).setArray(anyInt(), any(Array.class));
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation ->
+                invocation.<ConnectionCallback<Object>>getArgument(0).doInConnection(connection));
+        return inserts;
+    }
+
+    @Test
+    void testFlush_WritesBufferedPingsAsOneStatementPerChunk() throws Exception {
+        // Given
+        ProgressWriteBuffer buffer = buffer(10, 2, true);
+        List<Object[]> inserts = captureInserts();
+        buffer.offer(100L, "(52.37,4.89)", "STOP");
+        buffer.offer(101L, "(52.38,4.90)", "STOP");
+        buffer.offer(100L, "(52.39,4.91)", "STOPOVER");
+
+        // When (reaching flush-rows starts a flush on the writer; shutdown flushes the rest)
+        verify(jdbcTemplate, timeout(2000).atLeastOnce()).execute(any(ConnectionCallback.class));
+        buffer.destroy();
+
+        // Then
+        assertEquals(3, inserts.stream().mapToInt(orderIds -> orderIds.length).sum());
+        assertTrue(inserts.stream().allMatch(orderIds -> orderIds.length <= 2));
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    void testOffer_FullPartitionAppliesBackpressure() {
+        // Given
+        ProgressWriteBuffer buffer = buffer(2, 100, true);
+
+        // When
+        boolean first = buffer.offer(100L, "(1,1)", "STOP");
+        boolean second = buffer.offer(102L, "(1,1)", "STOP");
+        boolean third = buffer.offer(104L, "(1,1)", "STOP");
+
+        // Then (orders 100, 102 and 104 share a partition of capacity 2)
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        assertTrue(buffer.offer(101L, "(1,1)", "STOP"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_FailureRequeuesPings() {
+        // Given
+        ProgressWriteBuffer buffer = buffer(10, 100, true);
+        buffer.offer(100L, "(1,1)", "STOP");
+        buffer.offer(101L, "(1,1)", "STOP");
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        // When
+        buffer.flush();
+
+        // Then
+        assertEquals(2, buffer.getPendingCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testOffer_ReachingFlushRowsTriggersWriter() {
+        // Given
+        ProgressWriteBuffer buffer = buffer(10, 2, true);
+
+        // When
+        buffer.offer(100L, "(1,1)", "STOP");
+        buffer.offer(101L, "(1,1)", "STOP");
+
+        // Then
+        verify(jdbcTemplate, timeout(2000)).execute(any(ConnectionCallback.class));
+    }
+
+    @Test
+    void testRememberOrder_DropsLeastRecentlyUsedOrders() {
+        // Given
+        ProgressWriteBuffer buffer = buffer(10, 100, true);
+        for (long orderId = 1; orderId <= ProgressWriteBuffer.MAX_CACHED_ORDERS; orderId++) {
+            buffer.rememberOrder(1L, orderId, 7L);
+        }
+
+        // When
+        buffer.knownVehicle(1L, 1L);
+        buffer.rememberOrder(1L, 0L, 7L);
+
+        // Then
+        assertEquals(7L, buffer.knownVehicle(1L, 1L));
+        assertNull(buffer.knownVehicle(1L, 2L));
+        assertEquals(7L, buffer.knownVehicle(1L, 0L));
+    }
+}
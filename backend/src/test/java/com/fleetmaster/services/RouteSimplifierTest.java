@@ -0,0 +1,87 @@
+package com.fleetmaster.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteSimplifierTest {
+
+    // Roughly 111 m per 0.001 degree of latitude
+    private static RouteSimplifier zigzag(int points, double amplitudeDegrees) {
+        RouteSimplifier route = new RouteSimplifier(4);
+        for (int i = 0; i < points; i++) {
+            double lat = 52.0 + i * 0.001;
+            double lon = 4.0 + (i % 2 == 0 ? 0 : amplitudeDegrees);
+            route.add(i, lat, lon, false);
+        }
+        return route;
+    }
+
+    @Test
+    void testSimplify_DropsPointsOnTheLine() {
+        // Given
+        RouteSimplifier route = new RouteSimplifier(4);
+        for (int i = 0; i < 100; i++) {
+            route.add(i, 52.0 + i * 0.001, 4.0, false);
+        }
+
+        // When
+        long[] kept = route.simplify(1, 0);
+
+        // Then
+        assertArrayEquals(new long[] {0, 99}, kept);
+    }
+
+    @Test
+    void testSimplify_KeepsDeviationsAboveTolerance() {
+        // Given: a detour of about 680 m at point 50 on an otherwise straight line
+        RouteSimplifier route = new RouteSimplifier(4);
+        for (int i = 0; i < 100; i++) {
+            route.add(i, 52.0 + i * 0.001, i == 50 ? 4.01 : 4.0, false);
+        }
+
+        // Then
+        assertArrayEquals(new long[] {0, 49, 50, 51, 99}, route.simplify(10, 0));
+        assertArrayEquals(new long[] {0, 99}, route.simplify(1000, 0));
+    }
+
+    @Test
+    void testSimplify_MaxPointsBoundsResult() {
+        // Given
+        RouteSimplifier route = zigzag(1000, 0.0005);
+
+        // When
+        long[] kept = route.simplify(0, 50);
+
+        // Then
+        assertTrue(kept.length <= 50);
+        assertEquals(0, kept[0]);
+        assertEquals(999, kept[kept.length - 1]);
+    }
+
+    @Test
+    void testSimplify_PinnedPointsAlwaysKept() {
+        // Given
+        RouteSimplifier route = new RouteSimplifier(4);
+        for (int i = 0; i < 100; i++) {
+            route.add(i, 52.0 + i * 0.001, 4.0, i == 30 || i == 70);
+        }
+
+        // When
+        long[] kept = route.simplify(1000, 2);
+
+        // Then
+        assertArrayEquals(new long[] {0, 30, 70, 99}, kept);
+    }
+
+    @Test
+    void testSimplify_EmptyAndSinglePoint() {
+        // Given
+        RouteSimplifier single = new RouteSimplifier(1);
+        single.add(7, 52.0, 4.0, false);
+
+        // Then
+        assertEquals(0, new RouteSimplifier(1).simplify(0, 0).length);
+        assertArrayEquals(new long[] {7}, single.simplify(0, 2));
+    }
+}
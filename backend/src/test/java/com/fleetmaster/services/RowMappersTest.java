@@ -0,0 +1,103 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.OrderRow;
+import com.fleetmaster.dtos.OrderStatsRow;
+import com.fleetmaster.dtos.VehicleRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RowMappersTest {
+
+    @Mock
+    private ResultSet rs;
+
+    @Test
+    void testOrderMapper_ReadsColumnsByPositionAndKeepsNulls() throws Exception {
+        // Given
+        LocalDateTime departure = LocalDateTime.of(2024, 5, 1, 8, 0);
+        when(rs.getLong(1)).thenReturn(42L);
+        when(rs.getString(2)).thenReturn("(52.37,4.89)");
+        when(rs.getString(3)).thenReturn("(51.92,4.48)");
+        when(rs.getString(4)).thenReturn("NORMAL");
+        when(rs.getTimestamp(5)).thenReturn(Timestamp.valueOf(departure));
+        when(rs.getTimestamp(6)).thenReturn(null);
+        when(rs.getString(7)).thenReturn("PENDING");
+        when(rs.getLong(8)).thenReturn(7L);
+        when(rs.getLong(9)).thenReturn(0L);
+        // wasNull is asked after each nullable long: vehicle_id is set, driver_id is NULL
+        when(rs.wasNull()).thenReturn(false, true);
+
+        // When
+        OrderRow row = RowMappers.ORDER.mapRow(rs, 0);
+
+        // Then
+        assertEquals(new OrderRow(42L, "(52.37,4.89)", "(51.92,4.48)", "NORMAL", departure, null, "PENDING", 7L, null), row);
+    }
+
+    @Test
+    void testVehicleMapper_ReadsEnumArrayAndDate() throws Exception {
+        // Given
+        Array loadTypes = mock(Array.class);
+        when(loadTypes.getArray()).thenReturn(new String[] {"NORMAL", "HAZARDOUS"});
+        when(rs.getLong(anyInt())).thenReturn(10L);
+        when(rs.wasNull()).thenReturn(false);
+        when(rs.getString(3)).thenReturn("TRUCK");
+        when(rs.getDate(4)).thenReturn(Date.valueOf(LocalDate.of(2020, 1, 1)));
+        when(rs.getArray(5)).thenReturn(loadTypes);
+
+        // When
+        VehicleRow row = RowMappers.VEHICLE.mapRow(rs, 0);
+
+        // Then
+        assertEquals(List.of("NORMAL", "HAZARDOUS"), row.loadType());
+        assertEquals(LocalDate.of(2020, 1, 1), row.yearOfManufacture());
+        assertNull(row.sensorData());
+        verify(loadTypes).free();
+    }
+
+    @Test
+    void testOrderStatsMapper_DerivesTotalAndAverageTransit() throws Exception {
+        // Given
+        when(rs.getLong(1)).thenReturn(3L);
+        when(rs.getLong(2)).thenReturn(2L);
+        when(rs.getLong(3)).thenReturn(5L);
+        when(rs.getLong(4)).thenReturn(1L);
+        when(rs.getLong(5)).thenReturn(3L);
+        when(rs.getLong(6)).thenReturn(1L);
+        when(rs.getLong(7)).thenReturn(4L);
+        when(rs.getDouble(8)).thenReturn(36000.0);
+
+        // When
+        OrderStatsRow row = RowMappers.ORDER_STATS.mapRow(rs, 0);
+
+        // Then
+        assertEquals(new OrderStatsRow(11, 3, 2, 5, 1, 3, 1, 9000.0), row);
+    }
+
+    @Test
+    void testOrderStatsMapper_NoTimedDeliveryHasNoAverage() throws Exception {
+        // Given
+        when(rs.getLong(anyInt())).thenReturn(0L);
+
+        // When
+        OrderStatsRow row = RowMappers.ORDER_STATS.mapRow(rs, 0);
+
+        // Then
+        assertEquals(OrderStatsRow.EMPTY, row);
+        verify(rs, never()).getDouble(8);
+    }
+}
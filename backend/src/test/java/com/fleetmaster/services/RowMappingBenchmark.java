@@ -0,0 +1,125 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.OrderRow;
+import org.hibernate.transform.AliasToEntityMapResultTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of turning an orders result set into response objects: the old path
+ * (a boxed Object[] tuple per row turned into a HashMap by AliasToEntityMapResultTransformer)
+ * against RowMappers.ORDER reading straight into an OrderRow.
+ *
+ * Rows come from an in-memory CachedRowSet so only the mapping is measured. Scores are
+ * per row; gc.alloc.rate.norm is the bytes allocated per row. Run after test-compile with
+ *
+ *   java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *       com.fleetmaster.services.RowMappingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final String[] ALIASES = {
+            "id", "pick_up", "delivery", "load_type", "departure_time", "arrival_time",
+            "status", "vehicle_id", "driver_id"};
+
+    private CachedRowSet rows;
+
+    @Setup
+    public void setUp() throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(ALIASES.length);
+        int[] types = {Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP,
+                Types.TIMESTAMP, Types.VARCHAR, Types.BIGINT, Types.BIGINT};
+        for (int i = 0; i < ALIASES.length; i++) {
+            metaData.setColumnName(i + 1, ALIASES[i]);
+            metaData.setColumnType(i + 1, types[i]);
+        }
+        rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+
+        LocalDateTime departure = LocalDateTime.of(2024, 5, 1, 8, 0);
+        for (int i = 0; i < ROWS; i++) {
+            rows.moveToInsertRow();
+            rows.updateLong(1, i + 1L);
+            rows.updateString(2, "(52.37,4.89)");
+            rows.updateString(3, "(51.92,4.48)");
+            rows.updateString(4, "NORMAL");
+            rows.updateTimestamp(5, Timestamp.valueOf(departure.plusMinutes(i)));
+            rows.updateTimestamp(6, Timestamp.valueOf(departure.plusHours(5).plusMinutes(i)));
+            rows.updateString(7, "IN_TRANSIT");
+            rows.updateLong(8, i % 50 + 1L);
+            rows.updateLong(9, i % 20 + 1L);
+            rows.insertRow();
+        }
+        rows.moveToCurrentRow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    @SuppressWarnings("deprecation")
+    public List<Map<String, Object>> aliasToEntityMap() throws SQLException {
+        List<Map<String, Object>> result = new ArrayList<>(ROWS);
+        rows.beforeFirst();
+        while (rows.next()) {
+            Object[] tuple = new Object[ALIASES.length];
+            for (int i = 0; i < tuple.length; i++) {
+                tuple[i] = rows.getObject(i + 1);
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> row = (Map<String, Object>) AliasToEntityMapResultTransformer.INSTANCE
+                    .transformTuple(tuple, ALIASES);
+            result.add(row);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<OrderRow> recordRowMapper() throws SQLException {
+        List<OrderRow> result = new ArrayList<>(ROWS);
+        rows.beforeFirst();
+        int rowNum = 0;
+        while (rows.next()) {
+            result.add(RowMappers.ORDER.mapRow(rows, rowNum++));
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(RowMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
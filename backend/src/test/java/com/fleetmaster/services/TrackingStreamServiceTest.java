@@ -0,0 +1,230 @@
+package com.fleetmaster.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fleetmaster.dtos.TrackingRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TrackingStreamServiceTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private FleetService fleetService;
+
+    private TrackingStreamService service;
+
+    /**
+     * Records what would be written to the client.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<String> events = new ArrayList<>();
+        private boolean broken;
+
+        @Override
+        public synchronized void send(SseEventBuilder builder) throws IOException {
+            if (broken) {
+                throw new IOException("Broken pipe");
+            }
+            events.add(builder.build().stream()
+                    .map(part -> String.valueOf(part.getData()))
+                    .collect(Collectors.joining()));
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // The listener never connects, so snapshots are only sent by an explicit resync
+        lenient().when(dataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        // Sends run on the calling thread, so each test sees them as soon as dispatch returns
+        service = new TrackingStreamService(dataSource, fleetService, objectMapper, 60000, 60000, 60000, 2, Runnable::run);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        service.destroy();
+    }
+
+    private static String payload(long companyId, long orderId, String event) {
+        return "{\"event\":\"" + event + "\",\"order_id\":" + orderId + ",\"company_id\":" + companyId + "}";
+    }
+
+    @Test
+    void testDispatch_FansOutToSubscribersOfTheCompanyOnly() {
+        // Given
+        when(fleetService.getOrderTracking(anyLong())).thenReturn(List.of());
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        RecordingEmitter otherCompany = new RecordingEmitter();
+        service.subscribe(100L, first);
+        service.subscribe(100L, second);
+        service.subscribe(200L, otherCompany);
+        service.resync();
+
+        // When
+        service.dispatch(payload(100L, 7L, "update"));
+
+        // Then
+        assertEquals(List.of("event:snapshot\ndata:[]\n\n", "event:update\ndata:" + payload(100L, 7L, "update") + "\n\n"),
+                first.events);
+        assertEquals(first.events, second.events);
+        assertEquals(1, otherCompany.events.size());
+        verify(fleetService, times(1)).getOrderTracking(100L);
+        verify(fleetService, times(1)).getOrderTracking(200L);
+    }
+
+    @Test
+    void testDispatch_HoldsDeltasUntilSnapshotIsSent() {
+        // Given
+        when(fleetService.getOrderTracking(100L)).thenReturn(List.of(
+                new TrackingRow(7L, 100L, 3L, 5L, "PENDING", "(1,2)", "(3,4)", null, null, null)));
+        RecordingEmitter emitter = new RecordingEmitter();
+        service.subscribe(100L, emitter);
+
+        // When
+        service.dispatch(payload(100L, 7L, "removed"));
+
+        // Then
+        assertTrue(emitter.events.isEmpty());
+
+        // When
+        service.resync();
+
+        // Then
+        assertEquals(2, emitter.events.size());
+        assertTrue(emitter.events.get(0).startsWith("event:snapshot\n"));
+        assertTrue(emitter.events.get(0).contains("\"order_status\":\"PENDING\""));
+        assertTrue(emitter.events.get(1).startsWith("event:removed\n"));
+    }
+
+    @Test
+    void testDispatch_DropsSubscriberWhenClientIsGone() {
+        // Given
+        when(fleetService.getOrderTracking(100L)).thenReturn(List.of());
+        RecordingEmitter emitter = new RecordingEmitter();
+        service.subscribe(100L, emitter);
+        service.resync();
+        emitter.broken = true;
+
+        // When
+        service.dispatch(payload(100L, 7L, "update"));
+
+        // Then
+        assertEquals(0, service.getSubscriberCount());
+    }
+
+    @Test
+    void testDispatch_ClosesSubscriberThatFellBehind() {
+        // Given
+        RecordingEmitter emitter = new RecordingEmitter();
+        service.subscribe(100L, emitter);
+
+        // When (no snapshot yet, so the deltas queue up against a capacity of 2)
+        service.dispatch(payload(100L, 7L, "update"));
+        service.dispatch(payload(100L, 8L, "update"));
+        service.dispatch(payload(100L, 9L, "update"));
+
+        // Then
+        assertEquals(0, service.getSubscriberCount());
+    }
+
+    @Test
+    void testDispatch_SlowClientDoesNotHoldUpOthers() throws Exception {
+        // Given
+        ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+        TrackingStreamService threaded = new TrackingStreamService(dataSource, fleetService,
+                new ObjectMapper(), 60000, 60000, 60000, 16, sender);
+        when(fleetService.getOrderTracking(anyLong())).thenReturn(List.of());
+        CountDownLatch release = new CountDownLatch(1);
+        SseEmitter stalled = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        CountDownLatch received = new CountDownLatch(2);
+        SseEmitter healthy = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                received.countDown();
+            }
+        };
+        threaded.subscribe(100L, stalled);
+        threaded.subscribe(100L, healthy);
+
+        try {
+            // When
+            threaded.resync();
+            threaded.dispatch(payload(100L, 7L, "update"));
+
+            // Then (snapshot and update reach the healthy client while the other is stuck)
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            threaded.destroy();
+        }
+    }
+
+    @Test
+    void testInvalidateUsage_DropsTheNamedCompany() {
+        // When
+        service.invalidateUsage("100");
+
+        // Then
+        verify(fleetService).invalidateSubscriptionUsage(100L);
+        verify(fleetService, never()).invalidateAllSubscriptionUsage();
+    }
+
+    @Test
+    void testInvalidateUsage_EmptyPayloadDropsEveryCompany() {
+        // When
+        service.invalidateUsage("");
+        service.invalidateUsage("not a company");
+
+        // Then
+        verify(fleetService).invalidateAllSubscriptionUsage();
+        verify(fleetService, never()).invalidateSubscriptionUsage(anyLong());
+    }
+
+    @Test
+    void testDispatch_IgnoresMalformedPayload() {
+        // Given
+        RecordingEmitter emitter = new RecordingEmitter();
+        service.subscribe(100L, emitter);
+
+        // When
+        service.dispatch("not json");
+
+        // Then
+        assertEquals(1, service.getSubscriberCount());
+        assertTrue(emitter.events.isEmpty());
+    }
+}
@@ -0,0 +1,140 @@
+package com.fleetmaster.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of adding one vehicle to a company that already has fleetSize vehicles, with the
+ * subscription limit enforced by trg_enforce_vehicle_limit. insertVehicle should stay flat
+ * as the fleet grows, since the trigger bumps the company_usage counter instead of counting;
+ * countVehicles is the COUNT(*) the trigger used to run per insert, for comparison.
+ *
+ * Needs a database loaded from backend/sql. Each trial creates its own company and
+ * subscription and removes them afterwards; each measured insert is rolled back. Run after
+ * test-compile with
+ *
+ *   java -Dbenchmark.url=jdbc:postgresql://localhost:5432/fleetmaster -Dbenchmark.user=... -Dbenchmark.password=... \
+ *       -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *       com.fleetmaster.services.VehicleLimitBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleLimitBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int fleetSize;
+
+    private Connection connection;
+    private long licenseId;
+    private long companyId;
+    private PreparedStatement insertVehicle;
+    private PreparedStatement insertLink;
+    private PreparedStatement countVehicles;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.url", "jdbc:postgresql://localhost:5432/fleetmaster"),
+                System.getProperty("benchmark.user", "postgres"),
+                System.getProperty("benchmark.password", ""));
+        connection.setAutoCommit(false);
+
+        // A real limit well above the fleet, so every insert is checked and passes
+        licenseId = insertReturningId(
+                "INSERT INTO license_levels (name, max_vehicles, max_drivers, max_assignments, monthly_fee) " +
+                "VALUES ('ENTERPRISE', " + (fleetSize + 1_000_000) + ", NULL, NULL, 0) RETURNING id");
+        companyId = insertReturningId("INSERT INTO company (name) VALUES ('VehicleLimitBenchmark') RETURNING id");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO subscriptions (company_id, license_id, start_date) " +
+                    "VALUES (" + companyId + ", " + licenseId + ", CURRENT_DATE)");
+            statement.executeUpdate("WITH fleet AS (" +
+                    "INSERT INTO vehicles (load_capacity, type, year_of_manufacture, load_type, last_odometer) " +
+                    "SELECT 5000, 'LORRY', DATE '2020-01-01', ARRAY['NORMAL']::load_type[], 0 " +
+                    "FROM generate_series(1, " + fleetSize + ") RETURNING id) " +
+                    "INSERT INTO company_vehicles (company_id, vehicle_id) SELECT " + companyId + ", id FROM fleet");
+        }
+        connection.commit();
+
+        insertVehicle = connection.prepareStatement(
+                "INSERT INTO vehicles (load_capacity, type, year_of_manufacture, load_type, last_odometer) " +
+                "VALUES (5000, 'LORRY', DATE '2020-01-01', ARRAY['NORMAL']::load_type[], 0) RETURNING id");
+        insertLink = connection.prepareStatement("INSERT INTO company_vehicles (company_id, vehicle_id) VALUES (?, ?)");
+        countVehicles = connection.prepareStatement("SELECT COUNT(*) FROM company_vehicles WHERE company_id = ?");
+    }
+
+    @Benchmark
+    public void insertVehicle() throws SQLException {
+        long vehicleId;
+        try (ResultSet resultSet = insertVehicle.executeQuery()) {
+            resultSet.next();
+            vehicleId = resultSet.getLong(1);
+        }
+        insertLink.setLong(1, companyId);
+        insertLink.setLong(2, vehicleId);
+        insertLink.executeUpdate();
+        connection.rollback();
+    }
+
+    @Benchmark
+    public long countVehicles() throws SQLException {
+        countVehicles.setLong(1, companyId);
+        try (ResultSet resultSet = countVehicles.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.rollback();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TEMP TABLE benchmark_fleet ON COMMIT DROP AS " +
+                    "SELECT vehicle_id FROM company_vehicles WHERE company_id = " + companyId);
+            statement.executeUpdate("DELETE FROM company_vehicles WHERE company_id = " + companyId);
+            statement.executeUpdate("DELETE FROM vehicles WHERE id IN (SELECT vehicle_id FROM benchmark_fleet)");
+            statement.executeUpdate("DELETE FROM subscriptions WHERE company_id = " + companyId);
+            statement.executeUpdate("DELETE FROM company WHERE id = " + companyId);
+            statement.executeUpdate("DELETE FROM license_levels WHERE id = " + licenseId);
+        }
+        connection.commit();
+        connection.close();
+    }
+
+    private long insertReturningId(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(VehicleLimitBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,151 @@
+package com.fleetmaster.services;
+
+import com.fleetmaster.dtos.NearbyVehicleRow;
+import com.fleetmaster.exceptions.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VehiclePositionIndexTest {
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private VehiclePositionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // Starts empty; positions come from the update calls of each test
+        index = new VehiclePositionIndex(jdbcTemplate);
+        index.load();
+    }
+
+    private List<Long> nearbyIds(Long companyId, double lat, double lon, double radiusKm, String loadType, int limit) {
+        return index.findNearby(companyId, lat, lon, radiusKm, loadType, limit).stream()
+                .map(NearbyVehicleRow::vehicleId)
+                .toList();
+    }
+
+    @Test
+    void testFindNearby_NearestFirstWithinRadius() {
+        // Given
+        index.updateLoadTypes(1L, 10L, List.of("NORMAL"));
+        index.updateLoadTypes(1L, 11L, List.of("NORMAL"));
+        index.updateLoadTypes(1L, 12L, List.of("NORMAL"));
+        index.updatePosition(1L, 10L, 52.37, 4.89);   // Amsterdam
+        index.updatePosition(1L, 11L, 52.09, 5.12);   // Utrecht, ~35 km
+        index.updatePosition(1L, 12L, 51.92, 4.48);   // Rotterdam, ~57 km
+
+        // When
+        List<NearbyVehicleRow> result = index.findNearby(1L, 52.36, 4.90, 50, null, 10);
+
+        // Then
+        assertEquals(List.of(10L, 11L), result.stream().map(NearbyVehicleRow::vehicleId).toList());
+        assertTrue(result.get(0).distanceKm() < 2);
+        assertEquals(52.37, result.get(0).lat());
+        assertEquals(List.of("NORMAL"), result.get(0).loadType());
+    }
+
+    @Test
+    void testFindNearby_FiltersByLoadTypeAndCompany() {
+        // Given
+        index.updateLoadTypes(1L, 10L, List.of("NORMAL"));
+        index.updateLoadTypes(1L, 11L, List.of("NORMAL", "REFRIGERATED"));
+        index.updateLoadTypes(2L, 20L, List.of("REFRIGERATED"));
+        index.updatePosition(1L, 10L, 52.37, 4.89);
+        index.updatePosition(1L, 11L, 52.38, 4.90);
+        index.updatePosition(2L, 20L, 52.37, 4.89);
+
+        // When & Then
+        assertEquals(List.of(11L), nearbyIds(1L, 52.37, 4.89, 10, "REFRIGERATED", 10));
+        assertEquals(List.of(20L), nearbyIds(2L, 52.37, 4.89, 10, null, 10));
+        assertEquals(List.of(), nearbyIds(3L, 52.37, 4.89, 10, null, 10));
+    }
+
+    @Test
+    void testFindNearby_FollowsMovesAndRemovals() {
+        // Given
+        index.updateLoadTypes(1L, 10L, List.of("NORMAL"));
+        index.updateLoadTypes(1L, 11L, List.of("NORMAL"));
+        index.updatePosition(1L, 10L, 52.37, 4.89);
+        index.updatePosition(1L, 11L, 52.37, 4.89);
+
+        // When
+        index.updatePosition(1L, 10L, 48.85, 2.35);
+        index.removeVehicle(1L, 11L);
+
+        // Then
+        assertEquals(List.of(), nearbyIds(1L, 52.37, 4.89, 10, null, 10));
+        assertEquals(List.of(10L), nearbyIds(1L, 48.85, 2.35, 10, null, 10));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testFindNearby_LooksUpLoadTypesOfUnknownVehicle() {
+        // Given
+        when(jdbcTemplate.query(contains("SELECT load_type FROM vehicles"), anyMap(), any(RowMapper.class)))
+                .thenReturn(List.of(List.of("HAZARDOUS")));
+
+        // When
+        index.updatePosition(1L, 10L, 52.37, 4.89);
+
+        // Then
+        assertEquals(List.of(10L), nearbyIds(1L, 52.37, 4.89, 10, "HAZARDOUS", 10));
+    }
+
+    @Test
+    void testFindNearby_MatchesLinearScan() {
+        // Given
+        Random random = new Random(42);
+        double[][] positions = new double[2000][];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new double[]{50 + random.nextDouble() * 4, 3 + random.nextDouble() * 4};
+            index.updateLoadTypes(1L, (long) i, List.of("NORMAL"));
+            index.updatePosition(1L, (long) i, positions[i][0], positions[i][1]);
+        }
+
+        // When
+        List<NearbyVehicleRow> result = index.findNearby(1L, 52, 5, 25, null, 20);
+
+        // Then
+        List<Long> expected = IntStream.range(0, positions.length)
+                .boxed()
+                .filter(i -> distanceKm(52, 5, positions[i][0], positions[i][1]) <= 25)
+                .sorted(Comparator.comparingDouble(i -> distanceKm(52, 5, positions[i][0], positions[i][1])))
+                .limit(20)
+                .map(Integer::longValue)
+                .toList();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, result.stream().map(NearbyVehicleRow::vehicleId).toList());
+    }
+
+    @Test
+    void testFindNearby_InvalidArguments() {
+        assertThrows(BusinessException.class, () -> index.findNearby(1L, 91, 0, 10, null, 10));
+        assertThrows(BusinessException.class, () -> index.findNearby(1L, 0, 0, 0, null, 10));
+        assertThrows(BusinessException.class, () -> index.findNearby(1L, 0, 0, 10, "LIQUID", 10));
+        assertThrows(BusinessException.class, () -> index.findNearby(1L, 0, 0, 10, null, VehiclePositionIndex.MAX_LIMIT + 1));
+    }
+
+    private static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * 6371.0088 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -1,17 +1,28 @@
 package com.fleetmaster.services;
 
+import com.fleetmaster.config.CsvRows;
 import com.fleetmaster.dtos.CreateVehicleDto;
+import com.fleetmaster.dtos.ImportReport;
+import com.fleetmaster.dtos.VehicleRow;
 import com.fleetmaster.exceptions.BusinessException;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
-import org.hibernate.query.NativeQuery;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.util.*;
 
@@ -26,18 +37,25 @@ class VehicleServiceTest {
     private EntityManager entityManager;
 
     @Mock
-    private Query query;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private VehiclePositionIndex vehiclePositionIndex;
 
     @Mock
-    private NativeQuery nativeQuery;
+    private FleetService fleetService;
 
-    @InjectMocks
     private VehicleService vehicleService;
 
     private CreateVehicleDto createVehicleDto;
 
     @BeforeEach
-    void setUp() {
+    void setUp() throws Exception {
+        vehicleService = new VehicleService(jdbcTemplate, vehiclePositionIndex, fleetService);
+        java.lang.reflect.Field field = VehicleService.class.getDeclaredField("entityManager");
+        field.setAccessible(true);
+        field.set(vehicleService, entityManager);
+
         createVehicleDto = new CreateVehicleDto();
         createVehicleDto.setType("TRUCK");
         createVehicleDto.setLoadCapacity(5000L);
@@ -74,34 +92,27 @@ class VehicleServiceTest {
         verify(entityManager, times(2)).createNativeQuery(anyString());
         verify(insertVehicleQuery).getSingleResult();
         verify(linkCompanyQuery).executeUpdate();
+        verify(vehiclePositionIndex).updateLoadTypes(companyId, expectedVehicleId, List.of("NORMAL", "HAZARDOUS"));
     }
 
     @Test
     void testGetAllVehicles_Success() {
         // Given
         Long companyId = 1L;
-        List<Map<String, Object>> expectedVehicles = new ArrayList<>();
-        Map<String, Object> vehicle1 = new HashMap<>();
-        vehicle1.put("id", 1L);
-        vehicle1.put("type", "TRUCK");
-        vehicle1.put("load_capacity", 5000L);
-        expectedVehicles.add(vehicle1);
-
-        when(entityManager.createNativeQuery(contains("SELECT v.* FROM vehicles")))
-                .thenReturn(query);
-        when(query.setParameter(anyString(), any())).thenReturn(query);
-        when(query.unwrap(NativeQuery.class)).thenReturn(nativeQuery);
-        when(nativeQuery.setResultTransformer(any())).thenReturn(nativeQuery);
-        when(nativeQuery.getResultList()).thenReturn(expectedVehicles);
+        List<VehicleRow> expectedVehicles = List.of(vehicle(1L));
+
+        when(jdbcTemplate.query(contains("FROM vehicles v"), anyMap(), eq(RowMappers.VEHICLE)))
+                .thenReturn(expectedVehicles);
 
         // When
-        List<Map<String, Object>> vehicles = vehicleService.getAllVehicles(companyId);
+        List<VehicleRow> vehicles = vehicleService.getAllVehicles(companyId);
 
         // Then
         assertNotNull(vehicles);
         assertEquals(1, vehicles.size());
-        assertEquals(1L, vehicles.get(0).get("id"));
-        verify(entityManager).createNativeQuery(contains("SELECT v.* FROM vehicles"));
+        assertEquals(1L, vehicles.get(0).id());
+        assertEquals(5000L, vehicles.get(0).loadCapacity());
+        verify(entityManager, never()).createNativeQuery(anyString());
     }
 
     @Test
@@ -109,26 +120,18 @@ class VehicleServiceTest {
         // Given
         Long companyId = 1L;
         Long vehicleId = 10L;
-        List<Map<String, Object>> results = new ArrayList<>();
-        Map<String, Object> vehicle = new HashMap<>();
-        vehicle.put("id", vehicleId);
-        vehicle.put("type", "TRUCK");
-        results.add(vehicle);
-
-        when(entityManager.createNativeQuery(contains("SELECT v.* FROM vehicles")))
-                .thenReturn(query);
-        when(query.setParameter(anyString(), any())).thenReturn(query);
-        when(query.unwrap(NativeQuery.class)).thenReturn(nativeQuery);
-        when(nativeQuery.setResultTransformer(any())).thenReturn(nativeQuery);
-        when(nativeQuery.getResultList()).thenReturn(results);
+        List<VehicleRow> results = List.of(vehicle(vehicleId));
+
+        when(jdbcTemplate.query(contains("FROM vehicles v"), anyMap(), eq(RowMappers.VEHICLE)))
+                .thenReturn(results);
 
         // When
-        Map<String, Object> result = vehicleService.getVehicleById(companyId, vehicleId);
+        VehicleRow result = vehicleService.getVehicleById(companyId, vehicleId);
 
         // Then
         assertNotNull(result);
-        assertEquals(vehicleId, result.get("id"));
-        verify(entityManager).createNativeQuery(contains("SELECT v.* FROM vehicles"));
+        assertEquals(vehicleId, result.id());
+        assertEquals(List.of("NORMAL", "HAZARDOUS"), result.loadType());
     }
 
     @Test
@@ -137,12 +140,8 @@ class VehicleServiceTest {
         Long companyId = 1L;
         Long vehicleId = 999L;
 
-        when(entityManager.createNativeQuery(contains("SELECT v.* FROM vehicles")))
-                .thenReturn(query);
-        when(query.setParameter(anyString(), any())).thenReturn(query);
-        when(query.unwrap(NativeQuery.class)).thenReturn(nativeQuery);
-        when(nativeQuery.setResultTransformer(any())).thenReturn(nativeQuery);
-        when(nativeQuery.getResultList()).thenReturn(Collections.emptyList());
+        when(jdbcTemplate.query(contains("FROM vehicles v"), anyMap(), eq(RowMappers.VEHICLE)))
+                .thenReturn(Collections.emptyList());
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -159,21 +158,12 @@ class VehicleServiceTest {
         Long vehicleId = 10L;
 
         // Mock getVehicleById (ownership check)
-        List<Map<String, Object>> results = new ArrayList<>();
-        Map<String, Object> vehicle = new HashMap<>();
-        vehicle.put("id", vehicleId);
-        results.add(vehicle);
+        List<VehicleRow> results = List.of(vehicle(vehicleId));
 
-        Query selectQuery = mock(Query.class);
         Query updateQuery = mock(Query.class);
-        NativeQuery selectNativeQuery = mock(NativeQuery.class);
 
-        when(entityManager.createNativeQuery(contains("SELECT v.* FROM vehicles")))
-                .thenReturn(selectQuery);
-        when(selectQuery.setParameter(anyString(), any())).thenReturn(selectQuery);
-        when(selectQuery.unwrap(NativeQuery.class)).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.setResultTransformer(any())).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.getResultList()).thenReturn(results);
+        when(jdbcTemplate.query(contains("FROM vehicles v"), anyMap(), eq(RowMappers.VEHICLE)))
+                .thenReturn(results);
 
         when(entityManager.createNativeQuery(contains("UPDATE vehicles SET")))
                 .thenReturn(updateQuery);
@@ -193,12 +183,8 @@ class VehicleServiceTest {
         Long companyId = 1L;
         Long vehicleId = 999L;
 
-        when(entityManager.createNativeQuery(contains("SELECT v.* FROM vehicles")))
-                .thenReturn(query);
-        when(query.setParameter(anyString(), any())).thenReturn(query);
-        when(query.unwrap(NativeQuery.class)).thenReturn(nativeQuery);
-        when(nativeQuery.setResultTransformer(any())).thenReturn(nativeQuery);
-        when(nativeQuery.getResultList()).thenReturn(Collections.emptyList());
+        when(jdbcTemplate.query(contains("FROM vehicles v"), anyMap(), eq(RowMappers.VEHICLE)))
+                .thenReturn(Collections.emptyList());
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -215,22 +201,13 @@ class VehicleServiceTest {
         Long vehicleId = 10L;
 
         // Mock getVehicleById (ownership check)
-        List<Map<String, Object>> results = new ArrayList<>();
-        Map<String, Object> vehicle = new HashMap<>();
-        vehicle.put("id", vehicleId);
-        results.add(vehicle);
+        List<VehicleRow> results = List.of(vehicle(vehicleId));
 
-        Query selectQuery = mock(Query.class);
         Query deleteCompanyVehiclesQuery = mock(Query.class);
         Query deleteVehicleQuery = mock(Query.class);
-        NativeQuery selectNativeQuery = mock(NativeQuery.class);
 
-        when(entityManager.createNativeQuery(contains("SELECT v.* FROM vehicles")))
-                .thenReturn(selectQuery);
-        when(selectQuery.setParameter(anyString(), any())).thenReturn(selectQuery);
-        when(selectQuery.unwrap(NativeQuery.class)).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.setResultTransformer(any())).thenReturn(selectNativeQuery);
-        when(selectNativeQuery.getResultList()).thenReturn(results);
+        when(jdbcTemplate.query(contains("FROM vehicles v"), anyMap(), eq(RowMappers.VEHICLE)))
+                .thenReturn(results);
 
         when(entityManager.createNativeQuery(contains("DELETE FROM company_vehicles")))
                 .thenReturn(deleteCompanyVehiclesQuery);
@@ -248,5 +225,127 @@ class VehicleServiceTest {
         // Then
         verify(deleteCompanyVehiclesQuery).executeUpdate();
         verify(deleteVehicleQuery).executeUpdate();
+        verify(vehiclePositionIndex).removeVehicle(companyId, vehicleId);
+        verify(fleetService).invalidateFleetStatus(companyId);
+        verify(fleetService).invalidateSubscriptionUsage(companyId);
+    }
+
+    private VehicleRow vehicle(Long id) {
+        return new VehicleRow(id, 5000L, "TRUCK", LocalDate.of(2020, 1, 1),
+                List.of("NORMAL", "HAZARDOUS"), null, 100000L, null);
+    }
+
+    private CreateVehicleDto van(List<String> loadTypes) {
+        CreateVehicleDto dto = new CreateVehicleDto();
+        dto.setType("VAN");
+        dto.setLoadCapacity(3000L);
+        dto.setYearOfManufacture(LocalDate.of(2019, 6, 1));
+        dto.setLoadTypes(loadTypes);
+        dto.setLastOdometer(0L);
+        return dto;
+    }
+
+    // The id lookup, vehicle insert and link insert of insertVehicleBatch, in that order
+    private List<PreparedStatement> mockBatchInsert(Long... ids) throws Exception {
+        Session session = mock(Session.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement idLookup = mock(PreparedStatement.class);
+        PreparedStatement vehicleInsert = mock(PreparedStatement.class);
+        PreparedStatement linkInsert = mock(PreparedStatement.class);
+        ResultSet idRows = mock(ResultSet.class);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).thenAnswer(invocation ->
+                ((ReturningWork<?>) invocation.getArgument(0)).execute(connection));
+        when(connection.prepareStatement(contains("nextval"))).thenReturn(idLookup);
+        when(connection.prepareStatement(contains("INSERT INTO vehicles"))).thenReturn(vehicleInsert);
+        when(connection.prepareStatement(contains("INSERT INTO company_vehicles"))).thenReturn(linkInsert);
+        when(connection.createArrayOf(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            Array array = mock(Array.class);
+            lenient().when(array.getArray()).thenReturn(invocation.getArgument(1));
+            return array;
+        });
+        when(idLookup.executeQuery()).thenReturn(idRows);
+        Boolean[] more = new Boolean[ids.length];
+        Arrays.fill(more, true);
+        more[ids.length - 1] = false;
+        when(idRows.next()).thenReturn(true, more);
+        when(idRows.getLong(1)).thenReturn(ids[0], Arrays.copyOfRange(ids, 1, ids.length));
+        return List.of(idLookup, vehicleInsert, linkInsert);
+    }
+
+    private static Object[] arrayValues(PreparedStatement statement, int index) throws Exception {
+        ArgumentCaptor<Array> captor = ArgumentCaptor.forClass(Array.class);
+        verify(statement).setArray(eq(index), captor.capture());
+        return (Object[]) captor.getValue().getArray();
+    }
+
+    @Test
+    void testCreateVehicles_OneInsertPerTableForTheWholeBatch() throws Exception {
+        // Given
+        when(jdbcTemplate.query(contains("ll.max_vehicles"), anyMap(), any(RowMapper.class))).thenReturn(List.of(2L));
+        List<PreparedStatement> statements = mockBatchInsert(31L, 32L);
+
+        // When
+        List<Long> ids = vehicleService.createVehicles(1L,
+                List.of(van(List.of("NORMAL")), van(List.of("REFRIGERATED", "HAZARDOUS"))));
+
+        // Then
+        assertEquals(List.of(31L, 32L), ids);
+        verify(statements.get(0)).setInt(1, 2);
+        verify(statements.get(1)).executeUpdate();
+        verify(statements.get(2)).executeUpdate();
+        assertArrayEquals(new Object[]{31L, 32L}, arrayValues(statements.get(1), 1));
+        assertArrayEquals(new Object[]{"{NORMAL}", "{REFRIGERATED,HAZARDOUS}"}, arrayValues(statements.get(1), 5));
+        verify(statements.get(2)).setLong(1, 1L);
+        verify(jdbcTemplate, times(1)).query(contains("ll.max_vehicles"), anyMap(), any(RowMapper.class));
+        verify(vehiclePositionIndex).updateLoadTypes(1L, 32L, List.of("REFRIGERATED", "HAZARDOUS"));
+        verify(fleetService).invalidateFleetStatus(1L);
+        verify(fleetService).invalidateSubscriptionUsage(1L);
+    }
+
+    @Test
+    void testCreateVehicles_RejectsTheWholeBatch() {
+        // Given
+        when(jdbcTemplate.query(contains("ll.max_vehicles"), anyMap(), any(RowMapper.class))).thenReturn(List.of(1L));
+        CreateVehicleDto invalid = van(List.of("LIQUID"));
+
+        // When & Then
+        BusinessException tooMany = assertThrows(BusinessException.class, () ->
+                vehicleService.createVehicles(1L, List.of(van(List.of("NORMAL")), van(List.of("NORMAL")))));
+        assertEquals("Vehicle limit of your subscription allows 1 more vehicles, 2 given", tooMany.getMessage());
+        BusinessException badRow = assertThrows(BusinessException.class, () ->
+                vehicleService.createVehicles(1L, List.of(van(List.of("NORMAL")), invalid)));
+        assertEquals("Vehicle 2: Invalid load type: LIQUID", badRow.getMessage());
+        assertThrows(BusinessException.class, () -> vehicleService.createVehicles(1L, List.of()));
+        verify(entityManager, never()).unwrap(any());
+    }
+
+    @Test
+    void testImportVehicles_StopsAtTheSubscriptionLimit() throws Exception {
+        // Given
+        CsvRows rows = new CsvRows(new StringReader(
+                "load_capacity,type,year_of_manufacture,load_type,last_odometer\n" +
+                "5000,LORRY,2020,\"[NORMAL, HAZARDOUS]\",100\n" +
+                "5000,BUS,2020,NORMAL,100\n" +
+                "3000,VAN,2019-06-01,REFRIGERATED;NORMAL,0\n" +
+                "3000,VAN,2019-06-01,NORMAL,0\n"));
+
+        when(jdbcTemplate.query(contains("ll.max_vehicles"), anyMap(), any(RowMapper.class))).thenReturn(List.of(2L));
+
+        List<PreparedStatement> statements = mockBatchInsert(21L, 22L);
+
+        // When
+        ImportReport report = vehicleService.importVehicles(1L, rows);
+
+        // Then
+        assertEquals(2, report.created());
+        assertEquals(List.of(
+                new ImportReport.RowError(3, "Type must be LORRY, VAN, or REFRIGERATED_TRUCK"),
+                new ImportReport.RowError(5, "Vehicle limit of your subscription reached")),
+                report.errors());
+        assertArrayEquals(new Object[]{"{NORMAL,HAZARDOUS}", "{REFRIGERATED,NORMAL}"}, arrayValues(statements.get(1), 5));
+        assertArrayEquals(new Object[]{21L, 22L}, arrayValues(statements.get(2), 2));
+        verify(vehiclePositionIndex).updateLoadTypes(1L, 21L, List.of("NORMAL", "HAZARDOUS"));
+        verify(vehiclePositionIndex).updateLoadTypes(1L, 22L, List.of("REFRIGERATED", "NORMAL"));
     }
 }
@@ -19,6 +19,8 @@ export default defineConfig({
         target: 'http://backend:8081',
         changeOrigin: true,
         secure: false,
+        // Pass the browser's address on, so the backend can throttle per client
+        xfwd: true,
       },
     },
   },